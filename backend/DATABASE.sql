@@ -1670,6 +1670,7 @@ GO
 	CREATE NONCLUSTERED INDEX idx_post_status_created_at ON tblPost (status, created_at);
 	CREATE NONCLUSTERED INDEX idx_post_owner_status ON tblPost (owner_id, status);
 	CREATE NONCLUSTERED INDEX idx_post_group_status ON tblPost (group_id, status);
+	CREATE NONCLUSTERED INDEX idx_post_status_created_at_id ON tblPost (status, created_at DESC, id DESC) INCLUDE (owner_id, privacy_setting, group_id);
 	--index for hiddenPost
 	CREATE NONCLUSTERED INDEX idx_hidden_post_user_status ON tblHiddenPost (user_id, status) INCLUDE (post_id);
 	--index for comment
@@ -2286,6 +2287,16 @@ GO
         PRIMARY KEY (chat_id, user_id)
     );
 
+    -- Chat 1-1 theo cặp người dùng chuẩn hóa (id nhỏ, id lớn): tra cứu chat đã có bằng một lần đọc khóa chính
+    CREATE TABLE tblDirectChat (
+        user_low_id INT NOT NULL FOREIGN KEY REFERENCES tblUser(id),
+        user_high_id INT NOT NULL FOREIGN KEY REFERENCES tblUser(id),
+        chat_id INT NOT NULL UNIQUE FOREIGN KEY REFERENCES tblChat(id),
+        created_at DATETIME DEFAULT GETDATE(),
+        PRIMARY KEY (user_low_id, user_high_id),
+        CONSTRAINT CK_tblDirectChat_order CHECK (user_low_id < user_high_id)
+    );
+
     CREATE TABLE tblMessageType (
         id INT PRIMARY KEY IDENTITY(1, 1),
         name VARCHAR(50),
@@ -2303,9 +2314,26 @@ GO
         media_url VARCHAR(512) NULL,
         media_type VARCHAR(10) NULL,
         status BIT DEFAULT 1,
+        ingest_id VARCHAR(64) NULL, -- id của bản ghi trong hàng đợi ghi tin nhắn, chống ghi trùng khi ghi lại
         CONSTRAINT CK_tblMessage_media_type CHECK (media_type IN ('image', 'video', NULL))
     );
 
+	-- Phân trang lịch sử chat theo con trỏ id (before / after)
+	CREATE NONCLUSTERED INDEX idx_message_chat_id ON tblMessage (chat_id, id) INCLUDE (created_at);
+	CREATE UNIQUE NONCLUSTERED INDEX ux_message_ingest_id ON tblMessage (ingest_id) WHERE ingest_id IS NOT NULL;
+
+    -- Tóm tắt chat cho hộp thư: tin nhắn cuối và thời điểm hoạt động cuối, được cập nhật khi gửi tin
+    -- (không đặt khóa ngoại last_message_id vì tin nhắn có thể bị xóa cứng; bản tóm tắt được tính lại khi xóa)
+    CREATE TABLE tblChatSummary (
+        chat_id INT PRIMARY KEY FOREIGN KEY REFERENCES tblChat(id),
+        last_message_id INT NULL,
+        last_message_content NVARCHAR(MAX) NULL,
+        last_sender_id INT NULL FOREIGN KEY REFERENCES tblUser(id),
+        updated_at DATETIME NOT NULL DEFAULT GETDATE()
+    );
+
+	CREATE NONCLUSTERED INDEX idx_chat_member_user_status ON tblChatMember (user_id, status) INCLUDE (joined_at);
+
 	CREATE TABLE tblMessageStatus (
     message_id INT NOT NULL,
     user_id INT NOT NULL,
@@ -2316,6 +2344,8 @@ GO
     FOREIGN KEY (user_id) REFERENCES tblUser(id)
 );
 
+	CREATE NONCLUSTERED INDEX idx_message_status_user_status ON tblMessageStatus (user_id, status) INCLUDE (message_id);
+
     CREATE TABLE tblCallSession (
         id INT PRIMARY KEY IDENTITY(1, 1),
         chat_id INT NOT NULL FOREIGN KEY REFERENCES tblChat(id),
@@ -3469,6 +3499,16 @@ WHERE definition LIKE '%friendship%';
         status BIT DEFAULT 1,
         PRIMARY KEY (user_id, target_id, target_type_id)
     );
+
+    -- Số reaction theo từng loại của mỗi đối tượng, được ghi định kỳ từ bộ đếm Redis (ReactionCounterService)
+    CREATE TABLE tblReactionCount (
+        target_type_id INT NOT NULL FOREIGN KEY REFERENCES tblTargetType(id),
+        target_id INT NOT NULL,
+        reaction_type_id INT NOT NULL FOREIGN KEY REFERENCES tblReactionType(id),
+        reaction_count BIGINT NOT NULL DEFAULT 0,
+        updated_at DATETIME DEFAULT GETDATE(),
+        PRIMARY KEY (target_type_id, target_id, reaction_type_id)
+    );
     CREATE PROCEDURE sp_AddReaction
         @user_id INT,
         @reaction_type_id INT,
@@ -3692,11 +3732,30 @@ WHERE definition LIKE '%friendship%';
         target_type_id INT NOT NULL FOREIGN KEY REFERENCES tblTargetType(id), -- Loại nội dung
         media_type_id INT NOT NULL FOREIGN KEY REFERENCES tblMediaType(id), -- Loại media
         media_url NVARCHAR(512) NOT NULL, -- Đường dẫn đến media
+        thumbnail_url NVARCHAR(512) NULL, -- Ảnh thu nhỏ (NULL khi chưa tạo xong)
+        feed_url NVARCHAR(512) NULL, -- Ảnh cỡ bảng tin
+        full_url NVARCHAR(512) NULL, -- Ảnh đầy đủ đã nén lại
+        derivative_attempts INT NOT NULL DEFAULT 0, -- Số lần tạo biến thể thất bại
+        derivative_retry_at DATETIME NULL, -- Lượt tạo bù kế tiếp không chạy trước thời điểm này
         caption NVARCHAR(255), -- Mô tả media (nếu có)
         created_at DATETIME DEFAULT GETDATE(),
         status BIT DEFAULT 1,
         CONSTRAINT UQ_Media UNIQUE (target_id, target_type_id, media_url) -- Đảm bảo không trùng media_url cho cùng target
     );
+    -- Ảnh còn chờ tạo biến thể, quét theo id ở lượt tạo bù
+    CREATE NONCLUSTERED INDEX idx_media_pending_derivative ON tblMedia (id)
+        INCLUDE (media_url, media_type_id, created_at, derivative_retry_at)
+        WHERE thumbnail_url IS NULL AND status = 1;
+
+    -- Object trên GCS lưu theo nội dung (cas/{digest}); ref_count = số dòng tblMedia đang dùng
+    CREATE TABLE tblMediaBlob (
+        digest CHAR(64) PRIMARY KEY, -- SHA-256 (hex) của nội dung file, hoặc "chunked-{uploadId}" với file upload nhiều phần
+        media_url VARCHAR(512) NOT NULL,
+        size BIGINT NOT NULL,
+        ref_count INT NOT NULL DEFAULT 1,
+        created_at DATETIME NOT NULL DEFAULT GETDATE(),
+        CONSTRAINT UQ_MediaBlob_url UNIQUE (media_url)
+    );
 
     CREATE TABLE tblMediaType (
         id INT PRIMARY KEY IDENTITY(1, 1),
@@ -3923,3 +3982,27 @@ INSERT INTO tblReportStatus (name, description, status) VALUES
 ('Approved', N'Báo cáo được chấp nhận', 1),
 ('Rejected', N'Báo cáo bị từ chối', 1);
 
+
+-- Đồng bộ tblDirectChat cho các chat 1-1 đã tạo trước khi có bảng (mỗi cặp giữ chat có id nhỏ nhất)
+INSERT INTO tblDirectChat (user_low_id, user_high_id, chat_id, created_at)
+SELECT pair.user_low_id, pair.user_high_id, MIN(pair.chat_id), GETDATE()
+FROM (
+    SELECT c.id AS chat_id, MIN(cm.user_id) AS user_low_id, MAX(cm.user_id) AS user_high_id
+    FROM tblChat c
+    JOIN tblChatMember cm ON cm.chat_id = c.id
+    WHERE c.is_group = 0
+    GROUP BY c.id
+    HAVING COUNT(*) = 2
+) pair
+WHERE NOT EXISTS (
+    SELECT 1 FROM tblDirectChat dc
+    WHERE dc.user_low_id = pair.user_low_id AND dc.user_high_id = pair.user_high_id
+)
+GROUP BY pair.user_low_id, pair.user_high_id;
+
+-- Đồng bộ tblChatSummary cho các chat đã có tin nhắn
+INSERT INTO tblChatSummary (chat_id, last_message_id, last_message_content, last_sender_id, updated_at)
+SELECT m.chat_id, m.id, m.content, m.sender_id, m.created_at
+FROM tblMessage m
+WHERE m.id = (SELECT MAX(m2.id) FROM tblMessage m2 WHERE m2.chat_id = m.chat_id)
+  AND NOT EXISTS (SELECT 1 FROM tblChatSummary cs WHERE cs.chat_id = m.chat_id);
@@ -0,0 +1,34 @@
+package com.example.social_media.service;
+
+import com.example.social_media.dto.comment.CommentResponseDto;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dựng cây bình luận của một bài viết từ danh sách phẳng (phần CPU của CommentService.getCommentsByPostId khi cache miss).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CommentTreeBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int size;
+
+    private SyntheticGraph graph;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        graph = new SyntheticGraph(size);
+    }
+
+    @Benchmark
+    public List<CommentResponseDto> buildCommentTree() {
+        return CommentService.buildCommentTree(graph.comments, graph.commentMedia);
+    }
+}
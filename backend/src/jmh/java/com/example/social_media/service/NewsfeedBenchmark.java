@@ -0,0 +1,52 @@
+package com.example.social_media.service;
+
+import com.example.social_media.dto.post.PostResponseDto;
+import com.example.social_media.entity.Post;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Các bước CPU của getAllPosts sau khi đã nạp dữ liệu: sắp xếp newsfeed, lọc quyền hiển thị
+ * và dựng PostResponseDto.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NewsfeedBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int size;
+
+    private SyntheticGraph graph;
+    private List<Post> sortedPosts;
+    private List<Post> visiblePosts;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        graph = new SyntheticGraph(size);
+        sortedPosts = PostService.sortForNewsfeed(graph.posts, graph.premiumUserIds, PostService.NEWSFEED_ZONE);
+        visiblePosts = PostService.filterNewsfeedPosts(sortedPosts, graph.viewerId, graph.accessMap, graph.hiddenPostIds,
+                graph.flaggedPostIds, graph.joinedGroupIds, graph.blockedUsers);
+    }
+
+    @Benchmark
+    public List<Post> sortForNewsfeed() {
+        return PostService.sortForNewsfeed(graph.posts, graph.premiumUserIds, PostService.NEWSFEED_ZONE);
+    }
+
+    @Benchmark
+    public List<Post> filterNewsfeedPosts() {
+        return PostService.filterNewsfeedPosts(sortedPosts, graph.viewerId, graph.accessMap, graph.hiddenPostIds,
+                graph.flaggedPostIds, graph.joinedGroupIds, graph.blockedUsers);
+    }
+
+    @Benchmark
+    public List<PostResponseDto> buildPostDtos() {
+        return FeedHydrationService.assemble(visiblePosts, graph.originalBySharedId, graph.hydrationContext);
+    }
+}
@@ -0,0 +1,71 @@
+package com.example.social_media.service;
+
+import com.example.social_media.entity.Post;
+import com.example.social_media.repository.*;
+import com.example.social_media.repository.report.ReportStatusRepository;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * PrivacyService.checkContentAccessBatch với repository giả trả về dữ liệu dựng sẵn,
+ * đo phần dựng map và quyết định quyền truy cập cho cả trang newsfeed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PrivacyAccessBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int size;
+
+    private SyntheticGraph graph;
+    private List<Integer> postIds;
+    private PrivacyService privacyService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        graph = new SyntheticGraph(size);
+        postIds = graph.posts.stream().map(Post::getId).toList();
+
+        Map<String, Function<Object[], Object>> empty = Map.of("findAll", args -> List.of());
+        ReferenceDataRegistry referenceDataRegistry = new ReferenceDataRegistry(
+                RepositoryStubs.stub(TargetTypeRepository.class, Map.of("findAll", args -> List.of(graph.postTargetType))),
+                RepositoryStubs.stub(MediaTypeRepository.class, empty),
+                RepositoryStubs.stub(ReactionTypeRepository.class, Map.of("findAll", args -> graph.reactionTypes)),
+                RepositoryStubs.stub(NotificationTypeRepository.class, empty),
+                RepositoryStubs.stub(NotificationStatusRepository.class, empty),
+                RepositoryStubs.stub(ReportStatusRepository.class, empty),
+                RepositoryStubs.stub(ActionTypeRepository.class, empty),
+                // Chỉ dùng khi phát thông báo nạp lại, benchmark không gọi tới Redis
+                new StringRedisTemplate(RepositoryStubs.stub(RedisConnectionFactory.class, Map.of())));
+
+        privacyService = new PrivacyService(
+                RepositoryStubs.stub(CustomPrivacyListRepository.class, Map.of()),
+                RepositoryStubs.stub(CustomPrivacyListMemberRepository.class,
+                        Map.of("findByListIdsAndMemberUserIdAndStatus", args -> graph.customListMembers)),
+                RepositoryStubs.stub(UserRepository.class,
+                        Map.of("findById", args -> Optional.of(graph.users.get(graph.viewerId - 1)))),
+                RepositoryStubs.stub(ContentPrivacyRepository.class, Map.of(
+                        "findByContentIdsAndContentTypeId", args -> graph.contentPrivacies,
+                        "findOwnerIdsByContentIds", args -> graph.contentOwners)),
+                referenceDataRegistry,
+                RepositoryStubs.stub(PrivacySettingRepository.class, Map.of("findByUserIdIn", args -> graph.privacySettings)),
+                RepositoryStubs.stub(FriendshipRepository.class,
+                        Map.of("findBidirectionalFriendIdsByUserIdAndStatus", args -> graph.friendIds)));
+    }
+
+    @Benchmark
+    public Map<Integer, Boolean> checkContentAccessBatch() {
+        return privacyService.checkContentAccessBatch(graph.viewerId, postIds, "post");
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.social_media.service;
+
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Tạo repository giả bằng dynamic proxy: chỉ các phương thức được khai báo trả dữ liệu dựng sẵn,
+ * phương thức khác ném UnsupportedOperationException để benchmark không âm thầm đo sai đường đi.
+ */
+final class RepositoryStubs {
+
+    private RepositoryStubs() {
+    }
+
+    static <T> T stub(Class<T> type, Map<String, Function<Object[], Object>> answers) {
+        Object proxy = Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (self, method, args) -> {
+            switch (method.getName()) {
+                case "toString":
+                    return type.getSimpleName() + "Stub";
+                case "hashCode":
+                    return System.identityHashCode(self);
+                case "equals":
+                    return self == args[0];
+                default:
+                    Function<Object[], Object> answer = answers.get(method.getName());
+                    if (answer == null) {
+                        throw new UnsupportedOperationException(type.getSimpleName() + "." + method.getName());
+                    }
+                    return answer.apply(args);
+            }
+        });
+        return type.cast(proxy);
+    }
+}
@@ -0,0 +1,212 @@
+package com.example.social_media.service;
+
+import com.example.social_media.dto.media.MediaDto;
+import com.example.social_media.entity.*;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Đồ thị entity dựng sẵn trong bộ nhớ cho benchmark: người dùng, nhóm, bài viết, quyền riêng tư,
+ * reaction, tag, media và cây bình luận. Dùng seed cố định để mọi lần chạy có cùng dữ liệu.
+ */
+final class SyntheticGraph {
+
+    static final String[] PRIVACY_SETTINGS = {"public", "public", "friends", "friends", "custom", "only_me"};
+    static final String[] REACTION_NAMES = {"like", "love", "haha", "wow", "sad", "angry"};
+
+    final int viewerId = 1;
+    final TargetType postTargetType;
+    final List<ReactionType> reactionTypes = new ArrayList<>();
+    final List<User> users = new ArrayList<>();
+    final List<Group> groups = new ArrayList<>();
+    final List<Post> posts = new ArrayList<>();
+    final Set<Integer> premiumUserIds = new HashSet<>();
+    final List<Integer> friendIds = new ArrayList<>();
+    final List<ContentPrivacy> contentPrivacies = new ArrayList<>();
+    final List<Object[]> contentOwners = new ArrayList<>();
+    final List<PrivacySetting> privacySettings = new ArrayList<>();
+    final List<CustomPrivacyListMember> customListMembers = new ArrayList<>();
+    final List<Comment> comments = new ArrayList<>();
+    final Map<Integer, List<MediaDto>> commentMedia = new HashMap<>();
+
+    final Map<Integer, Boolean> accessMap = new HashMap<>();
+    final Set<Integer> hiddenPostIds = new HashSet<>();
+    final Set<Integer> flaggedPostIds = new HashSet<>();
+    final Set<Integer> joinedGroupIds = new HashSet<>();
+    final BlockGraphService.BlockedUsers blockedUsers;
+    final Map<Integer, Post> originalBySharedId = new HashMap<>();
+    final FeedHydrationService.HydrationContext hydrationContext;
+
+    /**
+     * @param size số bài viết; số người dùng = size / 10, số bình luận của một bài = size
+     */
+    SyntheticGraph(int size) {
+        Random random = new Random(42);
+        Instant now = Instant.parse("2025-01-01T00:00:00Z");
+
+        postTargetType = new TargetType(1);
+        postTargetType.setCode("POST");
+        postTargetType.setName("Post");
+        for (int i = 0; i < REACTION_NAMES.length; i++) {
+            ReactionType reactionType = new ReactionType();
+            reactionType.setId(i + 1);
+            reactionType.setName(REACTION_NAMES[i]);
+            reactionTypes.add(reactionType);
+        }
+
+        int userCount = Math.max(10, size / 10);
+        for (int id = 1; id <= userCount; id++) {
+            User user = new User();
+            user.setId(id);
+            user.setUsername("user" + id);
+            user.setDisplayName("User " + id);
+            users.add(user);
+
+            PrivacySetting setting = new PrivacySetting();
+            setting.setId(id);
+            setting.setPostViewer(PRIVACY_SETTINGS[random.nextInt(4)]);
+            privacySettings.add(setting);
+
+            if (random.nextInt(10) == 0) premiumUserIds.add(id);
+            if (id != viewerId && random.nextInt(3) == 0) friendIds.add(id);
+        }
+
+        int groupCount = Math.max(2, size / 50);
+        for (int id = 1; id <= groupCount; id++) {
+            Group group = new Group();
+            group.setId(id);
+            group.setName("Group " + id);
+            group.setPrivacyLevel(id % 2 == 0 ? "public" : "private");
+            groups.add(group);
+            if (random.nextBoolean()) joinedGroupIds.add(id);
+        }
+
+        Map<Integer, CustomPrivacyList> customLists = new HashMap<>();
+        for (int id = 1; id <= size; id++) {
+            Post post = new Post();
+            post.setId(id);
+            post.setOwner(users.get(random.nextInt(userCount)));
+            post.setContent("Nội dung bài viết " + id);
+            // Trải đều trong 30 ngày để bộ so sánh gặp cả nhánh cùng ngày và khác ngày
+            post.setCreatedAt(now.minus(Duration.ofMinutes(random.nextInt(30 * 24 * 60))));
+            post.setStatus(true);
+            String privacy = PRIVACY_SETTINGS[random.nextInt(PRIVACY_SETTINGS.length)];
+            post.setPrivacySetting(privacy);
+            if (random.nextInt(5) == 0) post.setGroup(groups.get(random.nextInt(groupCount)));
+            posts.add(post);
+
+            contentOwners.add(new Object[]{id, post.getOwner().getId()});
+            if (random.nextInt(4) != 0) {
+                ContentPrivacy contentPrivacy = new ContentPrivacy();
+                contentPrivacy.setId(new ContentPrivacyId(id, postTargetType.getId()));
+                contentPrivacy.setContentType(postTargetType);
+                contentPrivacy.setPrivacySetting(privacy);
+                if ("custom".equals(privacy)) {
+                    CustomPrivacyList list = customLists.computeIfAbsent(post.getOwner().getId(), ownerId -> {
+                        CustomPrivacyList newList = new CustomPrivacyList();
+                        newList.setId(ownerId);
+                        return newList;
+                    });
+                    contentPrivacy.setCustomList(list);
+                }
+                contentPrivacies.add(contentPrivacy);
+            }
+
+            accessMap.put(id, random.nextInt(4) != 0);
+            if (random.nextInt(50) == 0) hiddenPostIds.add(id);
+            if (random.nextInt(100) == 0) flaggedPostIds.add(id);
+        }
+        for (CustomPrivacyList list : customLists.values()) {
+            if (random.nextBoolean()) {
+                CustomPrivacyListMember member = new CustomPrivacyListMember();
+                member.setList(list);
+                member.setMemberUser(users.get(viewerId - 1));
+                customListMembers.add(member);
+            }
+        }
+        blockedUsers = BlockGraphService.BlockedUsers.of(
+                users.stream().map(User::getId).filter(id -> random.nextInt(50) == 0).toList());
+
+        // 10% bài viết là bài chia sẻ
+        for (Post post : posts) {
+            if (random.nextInt(10) == 0) {
+                originalBySharedId.put(post.getId(), posts.get(random.nextInt(size)));
+            }
+        }
+        hydrationContext = buildHydrationContext(random);
+
+        // Cây bình luận của một bài: 30% bình luận gốc, còn lại trả lời một bình luận trước đó
+        for (int id = 1; id <= size; id++) {
+            Comment comment = new Comment();
+            comment.setId(id);
+            comment.setUser(users.get(random.nextInt(userCount)));
+            comment.setContent("Bình luận " + id);
+            comment.setCreatedAt(now.plusSeconds(id));
+            comment.setStatus(true);
+            if (id > 1 && random.nextInt(10) >= 3) {
+                comment.setParentComment(comments.get(random.nextInt(id - 1)));
+            }
+            comments.add(comment);
+            if (random.nextInt(10) == 0) {
+                commentMedia.put(id, List.of(new MediaDto(id, "https://storage.example.com/comment/" + id + ".jpg",
+                        "image", id, "COMMENT", true)));
+            }
+        }
+    }
+
+    private FeedHydrationService.HydrationContext buildHydrationContext(Random random) {
+        Map<Integer, User> owners = new HashMap<>();
+        users.forEach(user -> owners.put(user.getId(), user));
+        Map<Integer, Group> groupById = new HashMap<>();
+        Map<Integer, String> groupAvatars = new HashMap<>();
+        groups.forEach(group -> {
+            groupById.put(group.getId(), group);
+            groupAvatars.put(group.getId(), "https://storage.example.com/group/" + group.getId() + ".jpg");
+        });
+
+        Map<Integer, List<PostTag>> tagsByPost = new HashMap<>();
+        Map<Integer, List<MediaDto>> mediaByPost = new HashMap<>();
+        Map<Integer, Map<ReactionType, Long>> reactionsByPost = new HashMap<>();
+        Map<Integer, Long> commentCounts = new HashMap<>();
+        Map<Integer, Long> shareCounts = new HashMap<>();
+        Set<Integer> savedIds = new HashSet<>();
+
+        for (Post post : posts) {
+            int postId = post.getId();
+            int tagCount = random.nextInt(3);
+            if (tagCount > 0) {
+                List<PostTag> tags = new ArrayList<>();
+                for (int i = 0; i < tagCount; i++) {
+                    PostTag tag = new PostTag();
+                    tag.setPost(post);
+                    tag.setTaggedUser(users.get(random.nextInt(users.size())));
+                    tag.setStatus(true);
+                    tags.add(tag);
+                }
+                tagsByPost.put(postId, tags);
+            }
+            int mediaCount = random.nextInt(4);
+            if (mediaCount > 0) {
+                List<MediaDto> media = new ArrayList<>();
+                for (int i = 0; i < mediaCount; i++) {
+                    media.add(new MediaDto(postId * 10 + i, "https://storage.example.com/post/" + postId + "/" + i + ".jpg",
+                            "image", postId, "POST", true));
+                }
+                mediaByPost.put(postId, media);
+            }
+            Map<ReactionType, Long> reactions = new HashMap<>();
+            for (ReactionType reactionType : reactionTypes) {
+                if (random.nextBoolean()) reactions.put(reactionType, (long) random.nextInt(500));
+            }
+            reactionsByPost.put(postId, reactions);
+            commentCounts.put(postId, (long) random.nextInt(100));
+            shareCounts.put(postId, (long) random.nextInt(20));
+            if (random.nextInt(20) == 0) savedIds.add(postId);
+        }
+
+        return new FeedHydrationService.HydrationContext(owners, groupById, groupAvatars, tagsByPost, mediaByPost,
+                reactionsByPost, commentCounts, shareCounts, savedIds);
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.social_media.config;
+
+// Thông điệp pub/sub báo các node khác xóa entry L1 (in-heap) của cache
+public class CacheInvalidationMessage {
+
+    public enum Type { EVICT, EVICT_PATTERN, CLEAR }
+
+    private String nodeId;
+    private String cacheName;
+    private Type type;
+    private String key;
+
+    public CacheInvalidationMessage() {
+    }
+
+    public CacheInvalidationMessage(String nodeId, String cacheName, Type type, String key) {
+        this.nodeId = nodeId;
+        this.cacheName = cacheName;
+        this.type = type;
+        this.key = key;
+    }
+
+    public String getNodeId() { return nodeId; }
+    public void setNodeId(String nodeId) { this.nodeId = nodeId; }
+
+    public String getCacheName() { return cacheName; }
+    public void setCacheName(String cacheName) { this.cacheName = cacheName; }
+
+    public Type getType() { return type; }
+    public void setType(Type type) { this.type = type; }
+
+    public String getKey() { return key; }
+    public void setKey(String key) { this.key = key; }
+}
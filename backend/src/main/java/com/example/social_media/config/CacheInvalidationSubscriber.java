@@ -0,0 +1,32 @@
+package com.example.social_media.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.stereotype.Component;
+
+@Component
+public class CacheInvalidationSubscriber implements MessageListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(CacheInvalidationSubscriber.class);
+
+    private final TwoLevelCacheManager cacheManager;
+    private final ObjectMapper objectMapper;
+
+    public CacheInvalidationSubscriber(TwoLevelCacheManager cacheManager, ObjectMapper objectMapper) {
+        this.cacheManager = cacheManager;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        try {
+            CacheInvalidationMessage invalidation = objectMapper.readValue(message.getBody(), CacheInvalidationMessage.class);
+            cacheManager.onInvalidation(invalidation);
+        } catch (Exception e) {
+            logger.warn("Lỗi xử lý thông điệp hủy cache: {}", e.getMessage());
+        }
+    }
+}
@@ -2,8 +2,11 @@ package com.example.social_media.config;
 
 import com.example.social_media.dto.comment.CommentResponseDto;
 import com.example.social_media.dto.message.MessageDto;
+import com.example.social_media.service.ReferenceDataRegistry;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.metrics.cache.CacheMeterBinderProvider;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
@@ -11,11 +14,14 @@ import org.springframework.data.redis.cache.RedisCacheConfiguration;
 import org.springframework.data.redis.cache.RedisCacheManager;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.listener.ChannelTopic;
 import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
+import org.springframework.util.unit.DataSize;
+
 import java.time.Duration;
 import java.util.HashMap;
 import java.util.List;
@@ -35,36 +41,20 @@ public class RedisConfig {
         return template;
     }
 
-    // RedisTemplate cho media: String -> List<MediaDto>
-    @Bean
-    public RedisTemplate<String, String> redisMediaTemplate(RedisConnectionFactory connectionFactory) {
-        RedisTemplate<String, String> template = new RedisTemplate<>();
-        template.setConnectionFactory(connectionFactory);
-        template.setKeySerializer(new StringRedisSerializer());
-        template.setValueSerializer(new StringRedisSerializer());
-        template.afterPropertiesSet();
-        return template;
-    }
-
-    // Đăng ký Redis Pub/Sub cho chat
+    // Đăng ký Redis Pub/Sub; channel STOMP của cluster do RedisMessageSubscriber tự thêm/bớt theo subscription cục bộ
     @Bean
-    public RedisMessageListenerContainer container(RedisConnectionFactory connectionFactory, RedisMessageSubscriber subscriber) {
+    public RedisMessageListenerContainer container(RedisConnectionFactory connectionFactory,
+                                                   CacheInvalidationSubscriber cacheInvalidationSubscriber,
+                                                   ReferenceDataRegistry referenceDataRegistry) {
         RedisMessageListenerContainer container = new RedisMessageListenerContainer();
         container.setConnectionFactory(connectionFactory);
-        container.addMessageListener(subscriber, new ChannelTopic("chat-messages"));
+        // Hủy cache L1 trên mọi node
+        container.addMessageListener(cacheInvalidationSubscriber, new ChannelTopic(TwoLevelCacheManager.INVALIDATION_CHANNEL));
+        // Nạp lại dữ liệu tra cứu trên mọi node khi admin cập nhật
+        container.addMessageListener(referenceDataRegistry, new ChannelTopic(ReferenceDataRegistry.REFRESH_CHANNEL));
         return container;
     }
 
-    @Bean
-    public RedisTemplate<String, String> redisAvatarTemplate(RedisConnectionFactory connectionFactory) {
-        RedisTemplate<String, String> template = new RedisTemplate<>();
-        template.setConnectionFactory(connectionFactory);
-        template.setKeySerializer(new StringRedisSerializer());
-        template.setValueSerializer(new StringRedisSerializer());
-        template.afterPropertiesSet();
-        return template;
-    }
-
     @Bean
     public RedisTemplate<String, Object> redisReactionTemplate(RedisConnectionFactory connectionFactory, ObjectMapper objectMapper) {
         RedisTemplate<String, Object> template = new RedisTemplate<>();
@@ -95,7 +85,23 @@ public class RedisConfig {
 
     @Bean
     @Primary
-    public RedisCacheManager redisCacheManager(RedisConnectionFactory connectionFactory) {
+    public TwoLevelCacheManager cacheManager(RedisConnectionFactory connectionFactory, StringRedisTemplate stringRedisTemplate,
+                                             ObjectMapper objectMapper,
+                                             @Value("${cache.local.max-size:64MB}") DataSize localMaxSize,
+                                             @Value("${cache.local.ttl:PT30S}") Duration localTtl) {
+        // L2: Redis dùng chung giữa các node; L1: Caffeine trong heap với TTL ngắn
+        RedisCacheManager redisCacheManager = redisCacheManager(connectionFactory);
+        redisCacheManager.afterPropertiesSet();
+        return new TwoLevelCacheManager(redisCacheManager, stringRedisTemplate,
+                objectMapper, localMaxSize.toBytes(), localTtl);
+    }
+
+    @Bean
+    public CacheMeterBinderProvider<TwoLevelCache> twoLevelCacheMeterBinderProvider() {
+        return TwoLevelCacheMetrics::new;
+    }
+
+    private RedisCacheManager redisCacheManager(RedisConnectionFactory connectionFactory) {
         RedisCacheConfiguration defaultConfig = RedisCacheConfiguration.defaultCacheConfig()
                 .entryTtl(Duration.ofMinutes(10));
 
@@ -104,10 +110,15 @@ public class RedisConfig {
                 .entryTtl(Duration.ofMinutes(5)));
         cacheConfigurations.put("savedPosts", RedisCacheConfiguration.defaultCacheConfig()
                 .entryTtl(Duration.ofMinutes(30)));
+        // Khai báo sẵn các cache feed để actuator gắn metric cache.gets (hit/miss) theo từng tên cache ngay khi khởi động
+        for (String cacheName : List.of("postsByUsername", "communityFeed", "postsByGroup", "postsByUserInGroup")) {
+            cacheConfigurations.put(cacheName, defaultConfig);
+        }
 
         return RedisCacheManager.builder(connectionFactory)
                 .cacheDefaults(defaultConfig)
                 .withInitialCacheConfigurations(cacheConfigurations)
+                .enableStatistics()
                 .build();
     }
 }
@@ -1,33 +1,122 @@
 package com.example.social_media.config;
 
-import com.example.social_media.dto.message.MessageDto;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.event.EventListener;
 import org.springframework.data.redis.connection.Message;
 import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
 
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Nhận tin STOMP do node khác publish qua {@link StompClusterRelay} và giao cho session trên node này.
+ * Chỉ subscribe Redis channel của những destination đang có session cục bộ subscribe,
+ * hủy khi subscription cuối cùng của destination đó kết thúc.
+ */
 @Component
 public class RedisMessageSubscriber implements MessageListener {
 
+    private static final Logger logger = LoggerFactory.getLogger(RedisMessageSubscriber.class);
+
     private final SimpMessagingTemplate messagingTemplate;
     private final ObjectMapper objectMapper;
+    private final RedisMessageListenerContainer container;
+    private final StompClusterRelay clusterRelay;
 
-    public RedisMessageSubscriber(SimpMessagingTemplate messagingTemplate, ObjectMapper objectMapper) {
+    // sessionId -> (subscriptionId -> destination) và số subscription cục bộ của mỗi destination
+    private final Map<String, Map<String, String>> sessionSubscriptions = new HashMap<>();
+    private final Map<String, Integer> destinationCounts = new HashMap<>();
+
+    public RedisMessageSubscriber(SimpMessagingTemplate messagingTemplate, ObjectMapper objectMapper,
+                                  RedisMessageListenerContainer container, StompClusterRelay clusterRelay) {
         this.messagingTemplate = messagingTemplate;
         this.objectMapper = objectMapper;
+        this.container = container;
+        this.clusterRelay = clusterRelay;
     }
 
     @Override
     public void onMessage(Message message, byte[] pattern) {
         try {
-            // Deserialize message body thành MessageDto
-            MessageDto messageDto = objectMapper.readValue(message.getBody(), MessageDto.class);
-            // Gửi qua WebSocket
-            messagingTemplate.convertAndSend("/topic/chat/" + messageDto.getChatId(), messageDto);
-            System.out.println("Received message from Redis for chatId " + messageDto.getChatId() + ": " + messageDto.getContent());
+            StompClusterRelay.RelayEnvelope envelope =
+                    objectMapper.readValue(message.getBody(), StompClusterRelay.RelayEnvelope.class);
+            if (clusterRelay.isFromThisNode(envelope)) {
+                return; // Đã giao cục bộ lúc gửi
+            }
+            SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+            accessor.setHeader(StompClusterRelay.RELAYED_HEADER, Boolean.TRUE);
+            if (envelope.contentType() != null) {
+                accessor.setContentType(MimeTypeUtils.parseMimeType(envelope.contentType()));
+            }
+            accessor.setLeaveMutable(true);
+            messagingTemplate.send(envelope.destination(),
+                    MessageBuilder.createMessage(envelope.payload(), accessor.getMessageHeaders()));
         } catch (Exception e) {
-            System.err.println("Error processing Redis message: " + e.getMessage());
+            logger.warn("Không giao được tin STOMP nhận từ Redis: {}", e.getMessage());
+        }
+    }
+
+    @EventListener
+    public void onSubscribe(SessionSubscribeEvent event) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(event.getMessage());
+        String destination = accessor.getDestination();
+        if (!clusterRelay.isEnabled() || !clusterRelay.isRelayed(destination)) {
+            return;
+        }
+        synchronized (this) {
+            String previous = sessionSubscriptions
+                    .computeIfAbsent(accessor.getSessionId(), id -> new HashMap<>())
+                    .put(accessor.getSubscriptionId(), destination);
+            if (previous != null) {
+                release(previous);
+            }
+            if (destinationCounts.merge(destination, 1, Integer::sum) == 1) {
+                container.addMessageListener(this, new ChannelTopic(clusterRelay.channelFor(destination)));
+            }
+        }
+    }
+
+    @EventListener
+    public void onUnsubscribe(SessionUnsubscribeEvent event) {
+        if (!clusterRelay.isEnabled()) return;
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(event.getMessage());
+        synchronized (this) {
+            Map<String, String> subscriptions = sessionSubscriptions.get(accessor.getSessionId());
+            String destination = subscriptions != null ? subscriptions.remove(accessor.getSubscriptionId()) : null;
+            if (destination != null) {
+                release(destination);
+            }
+        }
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        if (!clusterRelay.isEnabled()) return;
+        synchronized (this) {
+            Map<String, String> subscriptions = sessionSubscriptions.remove(event.getSessionId());
+            if (subscriptions != null) {
+                subscriptions.values().forEach(this::release);
+            }
+        }
+    }
+
+    private void release(String destination) {
+        Integer remaining = destinationCounts.computeIfPresent(destination, (key, count) -> count > 1 ? count - 1 : null);
+        if (remaining == null) {
+            container.removeMessageListener(this, new ChannelTopic(clusterRelay.channelFor(destination)));
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,102 @@
+package com.example.social_media.config;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Chế độ cluster cho STOMP: mọi tin server gửi tới "/topic/..." trên brokerChannel được giao cho subscriber cục bộ
+ * như cũ, đồng thời publish lên Redis channel "stomp:{destination}" để {@link RedisMessageSubscriber} trên các node
+ * khác giao tiếp cho session của chúng. Tắt mặc định ({@code websocket.cluster.enabled}).
+ */
+@Component
+public class StompClusterRelay implements ChannelInterceptor {
+
+    private static final Logger logger = LoggerFactory.getLogger(StompClusterRelay.class);
+
+    public static final String CHANNEL_PREFIX = "stomp:";
+    // Đánh dấu tin nhận từ Redis để không publish lại
+    static final String RELAYED_HEADER = "clusterRelayed";
+
+    private final boolean enabled;
+    private final List<String> relayPrefixes;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+
+    public StompClusterRelay(StringRedisTemplate redisTemplate, ObjectMapper objectMapper,
+                             @Value("${websocket.cluster.enabled:false}") boolean enabled,
+                             @Value("${websocket.cluster.relay-prefixes:/topic/}") List<String> relayPrefixes) {
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+        this.enabled = enabled;
+        this.relayPrefixes = relayPrefixes;
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        if (!enabled || !(message.getPayload() instanceof byte[] payload)) {
+            return message;
+        }
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+        String destination = accessor.getDestination();
+        if (accessor.getMessageType() != SimpMessageType.MESSAGE
+                || Boolean.TRUE.equals(accessor.getHeader(RELAYED_HEADER))
+                // Tin /user đã được resolve theo session cục bộ, không có ý nghĩa trên node khác
+                || accessor.getFirstNativeHeader(SimpMessageHeaderAccessor.ORIGINAL_DESTINATION) != null
+                || !isRelayed(destination)) {
+            return message;
+        }
+
+        MimeType contentType = accessor.getContentType();
+        RelayEnvelope envelope = new RelayEnvelope(nodeId, destination,
+                contentType != null ? contentType.toString() : null, payload);
+        try {
+            redisTemplate.convertAndSend(channelFor(destination), objectMapper.writeValueAsString(envelope));
+        } catch (JsonProcessingException | DataAccessException e) {
+            // Redis lỗi: session trên node này vẫn nhận được, các node khác bị lỡ tin này
+            logger.warn("Không publish được tin STOMP {} lên Redis: {}", destination, e.getMessage());
+        }
+        return message;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isRelayed(String destination) {
+        if (destination == null) return false;
+        for (String prefix : relayPrefixes) {
+            if (destination.startsWith(prefix)) return true;
+        }
+        return false;
+    }
+
+    public String channelFor(String destination) {
+        return CHANNEL_PREFIX + destination;
+    }
+
+    boolean isFromThisNode(RelayEnvelope envelope) {
+        return nodeId.equals(envelope.origin());
+    }
+
+    /**
+     * Tin đã serialize sẵn (payload là JSON do SimpMessagingTemplate tạo), node nhận chỉ cần giao lại nguyên văn.
+     */
+    record RelayEnvelope(String origin, String destination, String contentType, byte[] payload) {
+    }
+}
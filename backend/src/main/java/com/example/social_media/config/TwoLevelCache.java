@@ -0,0 +1,201 @@
+package com.example.social_media.config;
+
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.NullValue;
+import org.springframework.cache.support.SimpleValueWrapper;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.regex.Pattern;
+
+/**
+ * Cache hai tầng: L1 là Caffeine trong heap (TTL ngắn, giới hạn theo tổng kích thước ước lượng),
+ * L2 là RedisCache dùng chung giữa các node.
+ * Mọi thao tác ghi/xóa được phát qua Redis pub/sub để các node khác bỏ entry L1 tương ứng.
+ * L1 giữ chính đối tượng đã cache và trả về nó ở mỗi lần đọc, không serialize lại; value được coi là bất biến.
+ * List được chép nông một lần lúc nạp thành danh sách chỉ đọc, để caller không thêm / bớt phần tử của entry dùng chung.
+ */
+public class TwoLevelCache implements Cache {
+
+    // Trọng số của value không serialize được (không thể có khi L2 là RedisCache JDK) và của entry null
+    static final int DEFAULT_ENTRY_SIZE = 1024;
+    static final int NULL_ENTRY_SIZE = 64;
+
+    // weight = số byte khi serialize JDK (cùng định dạng L2), tính một lần lúc nạp vào L1
+    record LocalValue(Object value, int weight) {
+    }
+
+    private final String name;
+    private final com.github.benmanes.caffeine.cache.Cache<String, Object> localCache;
+    private final Cache remoteCache;
+    private final TwoLevelCacheManager cacheManager;
+
+    public TwoLevelCache(String name,
+                         com.github.benmanes.caffeine.cache.Cache<String, Object> localCache,
+                         Cache remoteCache,
+                         TwoLevelCacheManager cacheManager) {
+        this.name = name;
+        this.localCache = localCache;
+        this.remoteCache = remoteCache;
+        this.cacheManager = cacheManager;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return remoteCache.getNativeCache();
+    }
+
+    public com.github.benmanes.caffeine.cache.Cache<String, Object> getLocalCache() {
+        return localCache;
+    }
+
+    public Cache getRemoteCache() {
+        return remoteCache;
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        String localKey = localKey(key);
+        Object localValue = localCache.getIfPresent(localKey);
+        if (localValue != null) {
+            return new SimpleValueWrapper(fromStoreValue(localValue));
+        }
+
+        ValueWrapper remoteValue = remoteCache.get(key);
+        if (remoteValue == null) {
+            return null;
+        }
+        Object stored = toStoreValue(remoteValue.get());
+        localCache.put(localKey, stored);
+        return new SimpleValueWrapper(fromStoreValue(stored));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper wrapper = get(key);
+        Object value = wrapper != null ? wrapper.get() : null;
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException("Cached value is not of required type [" + type.getName() + "]: " + value);
+        }
+        return (T) value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        String localKey = localKey(key);
+        Object localValue = localCache.getIfPresent(localKey);
+        if (localValue != null) {
+            return (T) fromStoreValue(localValue);
+        }
+
+        Object stored = toStoreValue(remoteCache.get(key, valueLoader));
+        localCache.put(localKey, stored);
+        return (T) fromStoreValue(stored);
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        remoteCache.put(key, value);
+        localCache.put(localKey(key), toStoreValue(value));
+        cacheManager.publish(name, CacheInvalidationMessage.Type.EVICT, localKey(key));
+    }
+
+    @Override
+    public void evict(Object key) {
+        remoteCache.evict(key);
+        localCache.invalidate(localKey(key));
+        cacheManager.publish(name, CacheInvalidationMessage.Type.EVICT, localKey(key));
+    }
+
+    @Override
+    public void clear() {
+        remoteCache.clear();
+        localCache.invalidateAll();
+        cacheManager.publish(name, CacheInvalidationMessage.Type.CLEAR, null);
+    }
+
+    // Chỉ xóa L1 của node hiện tại (nhận từ pub/sub hoặc sau khi L2 đã được xóa theo pattern)
+    public void evictLocal(String key) {
+        localCache.invalidate(key);
+    }
+
+    public void clearLocal() {
+        localCache.invalidateAll();
+    }
+
+    public void evictLocalMatching(String globPattern) {
+        Pattern regex = globToRegex(globPattern);
+        localCache.asMap().keySet().removeIf(k -> regex.matcher(k).matches());
+    }
+
+    private String localKey(Object key) {
+        return String.valueOf(key);
+    }
+
+    private Object toStoreValue(Object value) {
+        if (value == null) {
+            return NullValue.INSTANCE;
+        }
+        Object shared = value instanceof List<?> list ? Collections.unmodifiableList(new ArrayList<>(list)) : value;
+        return new LocalValue(shared, estimateSize(value));
+    }
+
+    private Object fromStoreValue(Object value) {
+        return value instanceof LocalValue local ? local.value() : null;
+    }
+
+    // Đếm số byte serialize mà không giữ lại mảng byte
+    static int estimateSize(Object value) {
+        CountingOutputStream counter = new CountingOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(counter)) {
+            out.writeObject(value);
+        } catch (IOException e) {
+            return DEFAULT_ENTRY_SIZE;
+        }
+        return (int) Math.min(Integer.MAX_VALUE, counter.count);
+    }
+
+    private static final class CountingOutputStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+
+    // Chuyển glob kiểu Redis ("*", "?", "\x") sang regex
+    private static Pattern globToRegex(String glob) {
+        StringBuilder regex = new StringBuilder();
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            if (c == '\\' && i + 1 < glob.length()) {
+                regex.append(Pattern.quote(String.valueOf(glob.charAt(++i))));
+            } else if (c == '*') {
+                regex.append(".*");
+            } else if (c == '?') {
+                regex.append('.');
+            } else {
+                regex.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return Pattern.compile(regex.toString());
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.social_media.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * CacheManager hai tầng bọc RedisCacheManager: mỗi cache Redis (L2) được đặt sau một cache Caffeine (L1).
+ * Hủy L1 giữa các node qua kênh Redis pub/sub {@link #INVALIDATION_CHANNEL}.
+ */
+public class TwoLevelCacheManager implements CacheManager {
+
+    private static final Logger logger = LoggerFactory.getLogger(TwoLevelCacheManager.class);
+
+    public static final String INVALIDATION_CHANNEL = "cache-invalidation";
+
+    private final CacheManager remoteCacheManager;
+    private final StringRedisTemplate redisTemplate;
+    private final ObjectMapper objectMapper;
+    private final long localMaxBytes;
+    private final Duration localTtl;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final Map<String, TwoLevelCache> caches = new ConcurrentHashMap<>();
+
+    public TwoLevelCacheManager(CacheManager remoteCacheManager, StringRedisTemplate redisTemplate,
+                                ObjectMapper objectMapper, long localMaxBytes, Duration localTtl) {
+        this.remoteCacheManager = remoteCacheManager;
+        this.redisTemplate = redisTemplate;
+        this.objectMapper = objectMapper;
+        this.localMaxBytes = localMaxBytes;
+        this.localTtl = localTtl;
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        TwoLevelCache cache = caches.get(name);
+        if (cache != null) {
+            return cache;
+        }
+        Cache remoteCache = remoteCacheManager.getCache(name);
+        if (remoteCache == null) {
+            return null;
+        }
+        return caches.computeIfAbsent(name, n -> new TwoLevelCache(n, buildLocalCache(), remoteCache, this));
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return remoteCacheManager.getCacheNames();
+    }
+
+    /**
+     * Sau khi L2 đã bị xóa theo pattern (SCAN), xóa các entry L1 khớp pattern trên node này và các node khác.
+     */
+    public void evictLocalByPattern(String cacheName, String keyPattern) {
+        TwoLevelCache cache = caches.get(cacheName);
+        if (cache != null) {
+            cache.evictLocalMatching(keyPattern);
+        }
+        publish(cacheName, CacheInvalidationMessage.Type.EVICT_PATTERN, keyPattern);
+    }
+
+    void publish(String cacheName, CacheInvalidationMessage.Type type, String key) {
+        try {
+            String payload = objectMapper.writeValueAsString(new CacheInvalidationMessage(nodeId, cacheName, type, key));
+            redisTemplate.convertAndSend(INVALIDATION_CHANNEL, payload);
+        } catch (Exception e) {
+            // L1 có TTL ngắn nên node khác sẽ tự hết hạn entry cũ nếu không nhận được thông điệp
+            logger.warn("Không thể phát thông điệp hủy cache {} ({}): {}", cacheName, type, e.getMessage());
+        }
+    }
+
+    void onInvalidation(CacheInvalidationMessage message) {
+        if (nodeId.equals(message.getNodeId())) {
+            return;
+        }
+        TwoLevelCache cache = caches.get(message.getCacheName());
+        if (cache == null) {
+            return;
+        }
+        switch (message.getType()) {
+            case EVICT -> cache.evictLocal(message.getKey());
+            case EVICT_PATTERN -> cache.evictLocalMatching(message.getKey());
+            case CLEAR -> cache.clearLocal();
+        }
+    }
+
+    // Trọng số = kích thước serialize ước lượng của entry (byte), nên giới hạn L1 tính theo bộ nhớ thay vì số phần tử
+    private com.github.benmanes.caffeine.cache.Cache<String, Object> buildLocalCache() {
+        return Caffeine.newBuilder()
+                .maximumWeight(localMaxBytes)
+                .weigher((String key, Object value) -> value instanceof TwoLevelCache.LocalValue local
+                        ? local.weight() : TwoLevelCache.NULL_ENTRY_SIZE)
+                .expireAfterWrite(localTtl)
+                .recordStats()
+                .build();
+    }
+}
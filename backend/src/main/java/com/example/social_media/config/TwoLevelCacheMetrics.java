@@ -0,0 +1,71 @@
+package com.example.social_media.config;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.binder.cache.CacheMeterBinder;
+import org.springframework.data.redis.cache.CacheStatistics;
+import org.springframework.data.redis.cache.RedisCache;
+
+/**
+ * Metric cache.gets / cache.puts cho {@link TwoLevelCache}: hit = hit L1 + hit L2, miss = miss ở L2.
+ * Thêm cache.local.gets để theo dõi riêng tỉ lệ hit của L1.
+ */
+public class TwoLevelCacheMetrics extends CacheMeterBinder<TwoLevelCache> {
+
+    private final TwoLevelCache cache;
+
+    public TwoLevelCacheMetrics(TwoLevelCache cache, Iterable<Tag> tags) {
+        super(cache, cache.getName(), tags);
+        this.cache = cache;
+    }
+
+    @Override
+    protected Long size() {
+        return cache.getLocalCache().estimatedSize();
+    }
+
+    @Override
+    protected long hitCount() {
+        CacheStatistics remote = remoteStatistics();
+        return localStats().hitCount() + (remote != null ? remote.getHits() : 0);
+    }
+
+    @Override
+    protected Long missCount() {
+        CacheStatistics remote = remoteStatistics();
+        return remote != null ? remote.getMisses() : localStats().missCount();
+    }
+
+    @Override
+    protected Long evictionCount() {
+        return localStats().evictionCount();
+    }
+
+    @Override
+    protected long putCount() {
+        CacheStatistics remote = remoteStatistics();
+        return remote != null ? remote.getPuts() : 0;
+    }
+
+    @Override
+    protected void bindImplementationSpecificMetrics(MeterRegistry registry) {
+        FunctionCounter.builder("cache.local.gets", cache, c -> c.getLocalCache().stats().hitCount())
+                .tags(getTagsWithCacheName()).tag("result", "hit")
+                .description("Số lần đọc trúng L1 (in-heap)")
+                .register(registry);
+        FunctionCounter.builder("cache.local.gets", cache, c -> c.getLocalCache().stats().missCount())
+                .tags(getTagsWithCacheName()).tag("result", "miss")
+                .description("Số lần đọc trượt L1 (in-heap)")
+                .register(registry);
+    }
+
+    private CacheStats localStats() {
+        return cache.getLocalCache().stats();
+    }
+
+    private CacheStatistics remoteStatistics() {
+        return cache.getRemoteCache() instanceof RedisCache redisCache ? redisCache.getStatistics() : null;
+    }
+}
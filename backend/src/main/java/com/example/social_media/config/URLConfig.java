@@ -21,6 +21,7 @@ public class URLConfig {
     // Post Management URLs
     public static final String POST_BASE = "/api/posts";
     public static final String NEWSFEED = "/newsfeed";
+    public static final String NEWSFEED_PAGE = "/newsfeed/page";
     public static final String USER_POST = "/user/{username}";
     public static final String SAVE_POST = "/{postId}/save";
     public static final String HIDE_POST = "/{postId}/hide";
@@ -114,6 +115,11 @@ public class URLConfig {
     public static final String GET_MEDIA_BY_TARGET = "/target";
     public static final String MEDIA_FOR_POST = "/posts/{postId}/media";
     public static final String DELETE_MEDIA = "/{mediaId}";
+    public static final String CHUNKED_UPLOADS = "/uploads";
+    public static final String CHUNKED_UPLOAD = "/uploads/{uploadId}";
+    public static final String CHUNKED_UPLOAD_PART = "/uploads/{uploadId}/parts/{partNumber}";
+    public static final String CHUNKED_UPLOAD_COMPLETE = "/uploads/{uploadId}/complete";
+    public static final String MEDIA_FOR_POST_FROM_UPLOADS = "/posts/{postId}/uploads";
     // Group URLs
     public static final String GROUP_BASE = "/api/groups";
     public static final String CREATE_GROUP ="/create";
@@ -143,6 +149,7 @@ public class URLConfig {
     public static final String UPDATE_USER_LOCK_STATUS = "/users/{userId}/lock";
     public static final String SEND_NOTIFICATION_FOR_USER = "/users/send-notification";
     public static final String DELETE_GROUP_BY_ADMIN = "/groups/{groupId}";
+    public static final String REFRESH_REFERENCE_DATA = "/reference-data/refresh";
     // Dashboard URLs
     public static final String DASHBOARD_BASE = ADMIN_BASE + "/dashboard";
     public static final String DASHBOARD_STATS = "/stats";
@@ -33,15 +33,19 @@ import java.util.concurrent.ConcurrentHashMap;
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
     private final JwtService jwtService;
+    private final StompClusterRelay clusterRelay;
     public final Map<String, String> sessionTokenMap = new ConcurrentHashMap<>();
 
-    public WebSocketConfig(JwtService jwtService) {
+    public WebSocketConfig(JwtService jwtService, StompClusterRelay clusterRelay) {
         this.jwtService = jwtService;
+        this.clusterRelay = clusterRelay;
     }
 
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
         config.enableSimpleBroker("/topic", "/queue");
+        // Chế độ cluster: tin /topic do server gửi được phát thêm qua Redis cho session ở các node khác
+        config.configureBrokerChannel().interceptors(clusterRelay);
         config.setApplicationDestinationPrefixes("/app");
     }
 
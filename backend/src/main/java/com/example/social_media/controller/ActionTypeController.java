@@ -2,6 +2,7 @@ package com.example.social_media.controller;
 
 import com.example.social_media.entity.ActionType;
 import com.example.social_media.repository.ActionTypeRepository;
+import com.example.social_media.service.ReferenceDataRegistry;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -16,6 +17,9 @@ public class ActionTypeController {
     @Autowired
     private ActionTypeRepository actionTypeRepository;
 
+    @Autowired
+    private ReferenceDataRegistry referenceDataRegistry;
+
     @GetMapping("/check-duplicates")
     public ResponseEntity<?> checkDuplicates() {
         try {
@@ -43,6 +47,7 @@ public class ActionTypeController {
             // Delete specific duplicate IDs
             actionTypeRepository.deleteById(37);
             actionTypeRepository.deleteById(38);
+            referenceDataRegistry.refresh();
             
             return ResponseEntity.ok(Map.of(
                 "message", "Duplicate ActionTypes cleaned up successfully",
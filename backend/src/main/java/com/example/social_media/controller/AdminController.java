@@ -10,6 +10,7 @@ import com.example.social_media.repository.report.ReportHistoryRepository;
 import com.example.social_media.repository.report.ReportRepository;
 import com.example.social_media.service.CustomUserDetailsService;
 import com.example.social_media.service.NotificationService;
+import com.example.social_media.service.ReferenceDataRegistry;
 import com.example.social_media.service.ReportService;
 import com.example.social_media.service.UserService;
 import com.example.social_media.service.GroupService;
@@ -39,6 +40,7 @@ public class AdminController {
     private final ReportRepository reportRepository;
     private final ReportHistoryRepository reportHistoryRepository;
     private final GroupService groupService;
+    private final ReferenceDataRegistry referenceDataRegistry;
 
 
     public AdminController(
@@ -48,8 +50,8 @@ public class AdminController {
             ReportService reportService,
             ReportRepository reportRepository,
             ReportHistoryRepository reportHistoryRepository,
-            GroupService groupService
-
+            GroupService groupService,
+            ReferenceDataRegistry referenceDataRegistry
     ) {
         this.userService = userService;
         this.notificationService = notificationService;
@@ -58,6 +60,7 @@ public class AdminController {
         this.reportRepository = reportRepository;
         this.reportHistoryRepository = reportHistoryRepository;
         this.groupService = groupService;
+        this.referenceDataRegistry = referenceDataRegistry;
 
     }
 
@@ -424,6 +427,17 @@ public class AdminController {
 
 
 
+    @PostMapping(URLConfig.REFRESH_REFERENCE_DATA)
+    public ResponseEntity<?> refreshReferenceData() {
+        try {
+            referenceDataRegistry.refresh();
+            return ResponseEntity.ok(Map.of("message", "Reference data refreshed successfully"));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body(Map.of("message", "Error refreshing reference data", "error", e.getMessage()));
+        }
+    }
+
     @GetMapping(URLConfig.GET_UNREAD_REPORT)
     public ResponseEntity<?> getUnreadReports(
             @RequestParam(defaultValue = "0") int page,
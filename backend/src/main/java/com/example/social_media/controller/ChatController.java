@@ -13,12 +13,14 @@ import com.example.social_media.repository.ChatRepository;
 import com.example.social_media.repository.message.MessageRepository;
 import com.example.social_media.repository.UserRepository;
 import com.example.social_media.service.CallSessionService;
+import com.example.social_media.service.ChatEventAggregator;
 import com.example.social_media.service.ChatService;
 import com.example.social_media.service.MessageQueueService;
 import com.example.social_media.service.MessageService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.elasticsearch.ResourceNotFoundException;
-import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.messaging.handler.annotation.Header;
 import org.springframework.messaging.handler.annotation.MessageMapping;
@@ -32,6 +34,7 @@ import org.springframework.web.multipart.MultipartFile;
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
 import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.util.Base64;
 import java.util.HashMap;
 import java.util.List;
@@ -42,6 +45,8 @@ import java.util.stream.Collectors;
 @RequestMapping(URLConfig.CHAT_BASE)
 public class ChatController {
 
+    private static final Logger logger = LoggerFactory.getLogger(ChatController.class);
+
     @Value("${stringee.api-key-sid}")
     private String apiKeySid;
 
@@ -56,11 +61,11 @@ public class ChatController {
     private final SimpMessagingTemplate messagingTemplate;
     private final WebSocketConfig webSocketConfig;
     private final MessageQueueService messageQueueService;
-    private final RedisTemplate<String, MessageDto> redisTemplate;
     private final ChatMemberRepository chatMemberRepository;
     private final ChatRepository chatRepository;
     private final JdbcTemplate jdbcTemplate;
     private final MessageRepository messageRepository;
+    private final ChatEventAggregator chatEventAggregator;
 
     public ChatController(ChatService chatService,
                           MessageService messageService,
@@ -70,11 +75,11 @@ public class ChatController {
                           SimpMessagingTemplate messagingTemplate,
                           WebSocketConfig webSocketConfig,
                           MessageQueueService messageQueueService,
-                          RedisTemplate<String, MessageDto> redisTemplate,
                           ChatMemberRepository chatMemberRepository,
                           ChatRepository chatRepository,
                           JdbcTemplate jdbcTemplate,
-                          MessageRepository messageRepository) {
+                          MessageRepository messageRepository,
+                          ChatEventAggregator chatEventAggregator) {
         this.chatService = chatService;
         this.messageService = messageService;
         this.callSessionService = callSessionService;
@@ -83,11 +88,11 @@ public class ChatController {
         this.messagingTemplate = messagingTemplate;
         this.webSocketConfig = webSocketConfig;
         this.messageQueueService = messageQueueService;
-        this.redisTemplate = redisTemplate;
         this.chatMemberRepository = chatMemberRepository;
         this.chatRepository = chatRepository;
         this.jdbcTemplate = jdbcTemplate;
         this.messageRepository = messageRepository;
+        this.chatEventAggregator = chatEventAggregator;
     }
 
 
@@ -110,12 +115,8 @@ public class ChatController {
                 throw new UnauthorizedException("Không thể xác thực người dùng.");
             }
         }
-        MessageDto savedMessage = messageService.sendMessage(messageDto, username);
-        System.out.println("Saved message: " + savedMessage);
-        redisTemplate.opsForList().rightPush("chat:" + messageDto.getChatId() + ":messages", savedMessage);
-        redisTemplate.convertAndSend("chat-messages", savedMessage);
-        System.out.println("Message published to Redis channel chat-messages for chatId: " + messageDto.getChatId());
-        messagingTemplate.convertAndSend("/topic/chat/" + messageDto.getChatId(), savedMessage);
+        // Tin được ghi theo lô và broadcast /topic/chat sau khi commit bởi MessageIngestWriter
+        messageService.sendMessage(messageDto, username);
         // ...
     }
 
@@ -123,13 +124,14 @@ public class ChatController {
     public MessageDto sendMessageWithMedia(
             @PathVariable Integer chatId,
             @RequestPart(value = "content", required = false) String content,
-            @RequestPart(value = "media", required = false) List<MultipartFile> files
+            @RequestPart(value = "media", required = false) List<MultipartFile> files,
+            @RequestParam(value = "uploadIds", required = false) List<String> uploadIds
     ) {
         String username = SecurityContextHolder.getContext().getAuthentication().getName();
         Integer senderId = userRepository.findByUsername(username)
                 .orElseThrow(() -> new IllegalArgumentException("User not found")).getId();
 
-        return messageService.sendMessageWithMedia(chatId, senderId, content, files);
+        return messageService.sendMessageWithMedia(chatId, senderId, content, files, uploadIds);
     }
 
     @MessageMapping(URLConfig.TYPING)
@@ -137,7 +139,9 @@ public class ChatController {
         Integer chatId = (Integer) typingData.get("chatId");
         Boolean isTyping = (Boolean) typingData.get("isTyping");
         Integer userId = (Integer) typingData.get("userId");
-        messagingTemplate.convertAndSend("/topic/typing/" + chatId, typingData);
+        if (chatId == null || userId == null) return;
+        // Frame lặp lại bị bỏ, "dừng gõ" được debounce trước khi phát tới /topic/typing
+        chatEventAggregator.onTyping(chatId, userId, Boolean.TRUE.equals(isTyping), typingData);
     }
 
     @MessageMapping(URLConfig.CHAT_PING)
@@ -153,6 +157,7 @@ public class ChatController {
                 throw new UnauthorizedException("Không thể xác thực người dùng.");
             }
         }
+        chatEventAggregator.onPing(sessionId, username);
         messagingTemplate.convertAndSendToUser(sessionId, "/topic/ping", Map.of("status", "pong"));
     }
 
@@ -185,13 +190,12 @@ public class ChatController {
     }
 
     @GetMapping(URLConfig.GET_CHAT_MESSAGES)
-    public List<MessageDto> getChatMessages(@PathVariable Integer chatId) {
+    public List<MessageDto> getChatMessages(@PathVariable Integer chatId,
+                                            @RequestParam(required = false) Integer before,
+                                            @RequestParam(required = false) Integer after,
+                                            @RequestParam(defaultValue = "50") int size) {
         String username = SecurityContextHolder.getContext().getAuthentication().getName();
-        List<MessageDto> messages = messageService.getChatMessages(chatId, username);
-        redisTemplate.delete("chat:" + chatId + ":messages");
-        messages.forEach(message ->
-                redisTemplate.opsForList().rightPush("chat:" + chatId + ":messages", message));
-        return messages;
+        return messageService.getChatMessages(chatId, username, before, after, size);
     }
 
     @GetMapping(URLConfig.GET_CHAT)
@@ -201,9 +205,16 @@ public class ChatController {
     }
 
     @GetMapping(URLConfig.CHATS)
-    public List<ChatDto> getChats() {
+    public List<ChatDto> getChats(@RequestParam(required = false) String beforeActivityAt,
+                                  @RequestParam(required = false) Integer beforeId,
+                                  @RequestParam(defaultValue = "50") int size) {
         String username = SecurityContextHolder.getContext().getAuthentication().getName();
-        return chatService.getChats(username);
+        // Con trỏ là (lastActivityAt, id) của chat cuối trang trước
+        Instant before = beforeActivityAt != null && !beforeActivityAt.isBlank() ? Instant.parse(beforeActivityAt) : null;
+        if ((before == null) != (beforeId == null)) {
+            throw new IllegalArgumentException("beforeActivityAt và beforeId phải được cung cấp cùng nhau");
+        }
+        return chatService.getChats(username, before, beforeId, size);
     }
 
     @PostMapping(URLConfig.CHAT_CREATE)
@@ -269,7 +280,7 @@ public class ChatController {
         Integer chatId = request.get("chatId");
         Integer messageId = request.get("messageId");
         messageService.deleteMessage(chatId, messageId, username);
-        redisTemplate.opsForList().remove("chat:" + chatId + ":messages", 1, messageId);
+        messageQueueService.removeMessage(chatId, messageId);
     }
 
     @GetMapping(URLConfig.UNREAD_MESSAGE_COUNT)
@@ -284,16 +295,29 @@ public class ChatController {
     @MessageMapping(URLConfig.RESEND)
     public void resendMessages(@Payload Map<String, Object> payload, @Header("simpSessionId") String sessionId) {
         String chatId = payload.get("chatId").toString();
-        System.out.println("Resend requested for chatId: " + chatId);
-        messageQueueService.resendQueuedMessages(chatId, sessionId);
+        // seq của tin cuối client đã nhận; thiếu hoặc sai định dạng thì gửi lại toàn bộ bộ đệm
+        Long lastSeq = parseLastSeq(payload.get("lastSeq"));
+        logger.debug("Yêu cầu gửi lại tin cho chatId {}, lastSeq {}", chatId, lastSeq);
+        messageQueueService.resendQueuedMessages(chatId, sessionId, lastSeq);
+    }
+
+    private Long parseLastSeq(Object lastSeqValue) {
+        if (lastSeqValue == null) return null;
+        try {
+            return Long.valueOf(lastSeqValue.toString());
+        } catch (NumberFormatException e) {
+            logger.debug("lastSeq không hợp lệ: {}, gửi lại toàn bộ bộ đệm", lastSeqValue);
+            return null;
+        }
     }
 
     @PutMapping(URLConfig.MARK_READ)
-    public void markMessagesAsRead(@PathVariable Integer chatId) {
+    public void markMessagesAsRead(@PathVariable Integer chatId,
+                                   @RequestParam(required = false) Integer upToMessageId) {
         String username = SecurityContextHolder.getContext().getAuthentication().getName();
         User user = userRepository.findByUsername(username)
                 .orElseThrow(() -> new IllegalArgumentException("User not found"));
-        messageService.markMessagesAsRead(chatId, user.getId());
+        messageService.markMessagesAsRead(chatId, user.getId(), upToMessageId);
     }
 
 
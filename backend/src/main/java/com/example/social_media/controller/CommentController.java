@@ -3,13 +3,18 @@ package com.example.social_media.controller;
 import com.example.social_media.config.URLConfig;
 import com.example.social_media.dto.comment.CommentRequestDto;
 import com.example.social_media.dto.comment.CommentResponseDto;
+import com.example.social_media.entity.User;
 import com.example.social_media.exception.UnauthorizedException;
+import com.example.social_media.repository.UserRepository;
 import com.example.social_media.service.CommentService;
 import jakarta.validation.Valid;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 import org.springframework.http.MediaType;
@@ -24,9 +29,20 @@ public class CommentController {
 
     private static final Logger logger = LoggerFactory.getLogger(CommentController.class);
     private final CommentService commentService;
+    private final UserRepository userRepository;
 
-    public CommentController(CommentService commentService) {
+    public CommentController(CommentService commentService, UserRepository userRepository) {
         this.commentService = commentService;
+        this.userRepository = userRepository;
+    }
+
+    // Id người xem hiện tại (null nếu chưa đăng nhập) để lọc bình luận của user bị chặn
+    private Integer currentUserIdOrNull() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || authentication instanceof AnonymousAuthenticationToken) {
+            return null;
+        }
+        return userRepository.findByUsername(authentication.getName()).map(User::getId).orElse(null);
     }
 
     @PostMapping(consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
@@ -81,7 +97,7 @@ public class CommentController {
     @GetMapping
     public ResponseEntity<?> getCommentsByPostId(@RequestParam Integer postId) {
         try {
-            List<CommentResponseDto> comments = commentService.getCommentsByPostId(postId);
+            List<CommentResponseDto> comments = commentService.getCommentsByPostId(postId, currentUserIdOrNull());
             return ResponseEntity.ok(Map.of(
                     "message", "Lấy bình luận thành công",
                     "data", comments
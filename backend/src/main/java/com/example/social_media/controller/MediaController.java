@@ -1,8 +1,11 @@
 package com.example.social_media.controller;
 
 import com.example.social_media.config.URLConfig;
+import com.example.social_media.dto.media.ChunkedUploadDto;
 import com.example.social_media.dto.media.MediaDto;
+import com.example.social_media.service.ChunkedUploadService;
 import com.example.social_media.service.MediaService;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
@@ -18,9 +21,11 @@ import java.util.Map;
 public class MediaController {
 
     private final MediaService mediaService;
+    private final ChunkedUploadService chunkedUploadService;
 
-    public MediaController(MediaService mediaService) {
+    public MediaController(MediaService mediaService, ChunkedUploadService chunkedUploadService) {
         this.mediaService = mediaService;
+        this.chunkedUploadService = chunkedUploadService;
     }
 
     @PostMapping(URLConfig.MEDIA_UPLOAD)
@@ -69,6 +74,91 @@ public class MediaController {
         return ResponseEntity.ok(mediaList);
     }
 
+    // Upload nhiều phần: khởi tạo phiên cho file có loại hợp lệ với target
+    @PostMapping(URLConfig.CHUNKED_UPLOADS)
+    public ResponseEntity<?> initChunkedUpload(
+            @RequestParam("userId") Integer userId,
+            @RequestParam("targetTypeCode") String targetTypeCode,
+            @RequestParam("filename") String filename,
+            @RequestParam("contentType") String contentType,
+            @RequestParam("size") long size) {
+        try {
+            mediaService.validateContentTypeByTarget(targetTypeCode, contentType);
+            ChunkedUploadDto upload = chunkedUploadService.init(userId, targetTypeCode, filename, contentType, size);
+            return new ResponseEntity<>(upload, HttpStatus.CREATED);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body("Invalid request: " + e.getMessage());
+        }
+    }
+
+    // Thân request là dữ liệu thô của phần; gửi lại phần lỗi với cùng partNumber
+    @PutMapping(URLConfig.CHUNKED_UPLOAD_PART)
+    public ResponseEntity<?> uploadChunk(
+            @PathVariable String uploadId,
+            @PathVariable int partNumber,
+            @RequestParam("userId") Integer userId,
+            HttpServletRequest request) {
+        try {
+            return ResponseEntity.ok(chunkedUploadService.uploadPart(uploadId, userId, partNumber,
+                    request.getInputStream(), request.getContentLengthLong()));
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("Failed to upload part: " + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body("Invalid request: " + e.getMessage());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+        }
+    }
+
+    // Trạng thái phiên: các phần đã nhận, để client tiếp tục sau khi mất kết nối
+    @GetMapping(URLConfig.CHUNKED_UPLOAD)
+    public ResponseEntity<?> getChunkedUpload(@PathVariable String uploadId, @RequestParam("userId") Integer userId) {
+        try {
+            return ResponseEntity.ok(chunkedUploadService.status(uploadId, userId));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+        }
+    }
+
+    @PostMapping(URLConfig.CHUNKED_UPLOAD_COMPLETE)
+    public ResponseEntity<?> completeChunkedUpload(@PathVariable String uploadId, @RequestParam("userId") Integer userId) {
+        try {
+            return ResponseEntity.ok(chunkedUploadService.complete(uploadId, userId));
+        } catch (IOException e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                    .body("Failed to complete upload: " + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+        }
+    }
+
+    @DeleteMapping(URLConfig.CHUNKED_UPLOAD)
+    public ResponseEntity<?> abortChunkedUpload(@PathVariable String uploadId, @RequestParam("userId") Integer userId) {
+        try {
+            chunkedUploadService.abort(uploadId, userId);
+            return ResponseEntity.ok("Upload aborted.");
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+        }
+    }
+
+    // Gắn các file đã upload nhiều phần vào bài viết theo uploadId
+    @PostMapping(URLConfig.MEDIA_FOR_POST_FROM_UPLOADS)
+    public ResponseEntity<?> attachUploadsToPost(
+            @RequestParam Integer userId,
+            @PathVariable Integer postId,
+            @RequestParam("uploadIds") List<String> uploadIds,
+            @RequestParam(required = false) String caption) {
+        try {
+            return ResponseEntity.ok(mediaService.attachChunkedUploads(userId, postId, "POST", uploadIds, caption));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body("Invalid request: " + e.getMessage());
+        }
+    }
+
     @DeleteMapping(URLConfig.DELETE_MEDIA)
     public ResponseEntity<?> deleteMedia(@PathVariable Integer mediaId) {
         try {
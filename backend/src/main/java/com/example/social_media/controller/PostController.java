@@ -1,6 +1,7 @@
 package com.example.social_media.controller;
 
 import com.example.social_media.config.URLConfig;
+import com.example.social_media.dto.post.NewsfeedPageDto;
 import com.example.social_media.dto.post.PostRequestDto;
 import com.example.social_media.dto.post.PostResponseDto;
 import com.example.social_media.exception.UnauthorizedException;
@@ -163,13 +164,61 @@ public class PostController {
         }
     }
 
+    @GetMapping(URLConfig.NEWSFEED_PAGE)
+    public ResponseEntity<Map<String, Object>> getNewsfeedPage(
+            @RequestHeader("Authorization") String authHeader,
+            @RequestParam(required = false) String beforeCreatedAt,
+            @RequestParam(required = false) Integer beforeId,
+            @RequestParam(required = false) Boolean beforePremium,
+            @RequestParam(required = false) String asOf,
+            @RequestParam(defaultValue = "20") int size) {
+        try {
+            String token = authHeader.substring(7);
+            String username = jwtService.extractUsername(token);
+            logger.debug("Fetching newsfeed page for user: {}, beforeCreatedAt: {}, beforeId: {}", username, beforeCreatedAt, beforeId);
+
+            Instant beforeInstant = (beforeCreatedAt != null && !beforeCreatedAt.isBlank()) ? Instant.parse(beforeCreatedAt) : null;
+            if ((beforeInstant == null) != (beforeId == null) || (beforeInstant == null) != (beforePremium == null)) {
+                throw new IllegalArgumentException("beforeCreatedAt, beforeId và beforePremium phải được cung cấp cùng nhau");
+            }
+            Instant asOfInstant = (asOf != null && !asOf.isBlank()) ? Instant.parse(asOf) : null;
+
+            NewsfeedPageDto page = postService.getNewsfeedPage(username, beforeInstant, beforeId, beforePremium, asOfInstant, size);
+            Map<String, Object> response = new HashMap<>();
+            response.put("message", "Lấy newsfeed thành công");
+            response.put("data", page);
+            return ResponseEntity.ok(response);
+        } catch (DateTimeParseException e) {
+            logger.error("Invalid cursor format: {}", e.getMessage());
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("status", "error");
+            errorResponse.put("message", "Sai định dạng ngày: " + e.getParsedString());
+            errorResponse.put("errors", new HashMap<>());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(errorResponse);
+        } catch (IllegalArgumentException e) {
+            logger.error("Error fetching newsfeed page: {}", e.getMessage());
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("status", "error");
+            errorResponse.put("message", e.getMessage());
+            errorResponse.put("errors", new HashMap<>());
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(errorResponse);
+        } catch (Exception e) {
+            logger.error("Unexpected error: {}", e.getMessage(), e);
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("status", "error");
+            errorResponse.put("message", "Lỗi hệ thống: " + e.getMessage());
+            errorResponse.put("errors", new HashMap<>());
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(errorResponse);
+        }
+    }
+
     @GetMapping(URLConfig.NEWSFEED)
     public ResponseEntity<Map<String, Object>> getNewsfeed(@RequestHeader("Authorization") String authHeader) {
         try {
             String token = authHeader.substring(7);
             String username = jwtService.extractUsername(token);
             logger.debug("Fetching newsfeed for user: {}", username);
-            List<PostResponseDto> posts = postService.getAllPosts(username);
+            List<PostResponseDto> posts = postService.withCurrentReactions(postService.getAllPosts(username));
             Map<String, Object> response = new HashMap<>();
             response.put("message", "Lấy newsfeed thành công");
             response.put("data", posts);
@@ -198,7 +247,7 @@ public class PostController {
             String token = authHeader.substring(7);
             String currentUsername = jwtService.extractUsername(token);
             logger.debug("Fetching posts for user: {} by viewer: {}", username, currentUsername);
-            List<PostResponseDto> posts = postService.getPostsByUsername(username, currentUsername);
+            List<PostResponseDto> posts = postService.withCurrentReactions(postService.getPostsByUsername(username, currentUsername));
             Map<String, Object> response = new HashMap<>();
             response.put("message", "Lấy bài post của người dùng thành công");
             response.put("data", posts);
@@ -307,7 +356,7 @@ public class PostController {
             Instant fromInstant = (from != null && !from.isBlank()) ? Instant.parse(from) : null;
             Instant toInstant = (to != null && !to.isBlank()) ? Instant.parse(to) : null;
 
-            List<PostResponseDto> posts = postService.getSavedPostsForUser(username, fromInstant, toInstant);
+            List<PostResponseDto> posts = postService.withCurrentReactions(postService.getSavedPostsForUser(username, fromInstant, toInstant));
 
             Map<String, Object> response = new HashMap<>();
             response.put("message", "Lấy bài viết đã lưu thành công");
@@ -363,7 +412,7 @@ public class PostController {
             String token = authHeader.substring(7);
             String username = jwtService.extractUsername(token);
             logger.debug("Fetching community feed for user: {}", username);
-            List<PostResponseDto> posts = postService.getCommunityFeed(username);
+            List<PostResponseDto> posts = postService.withCurrentReactions(postService.getCommunityFeed(username));
             Map<String, Object> response = new HashMap<>();
             response.put("message", "Lấy bảng tin cộng đồng thành công");
             response.put("data", posts);
@@ -394,7 +443,7 @@ public class PostController {
             String username = jwtService.extractUsername(token);
             logger.debug("Fetching posts from group {} for user: {}", groupId, username);
 
-            List<PostResponseDto> posts = postService.getPostsByGroup(groupId, username);
+            List<PostResponseDto> posts = postService.withCurrentReactions(postService.getPostsByGroup(groupId, username));
 
             Map<String, Object> response = new HashMap<>();
             response.put("message", "Lấy bài đăng nhóm thành công");
@@ -425,7 +474,7 @@ public class PostController {
             String currentUsername = jwtService.extractUsername(token);
             logger.debug("Fetching posts in group {} of user {} by viewer {}", groupId, username, currentUsername);
 
-            List<PostResponseDto> posts = postService.getPostsByUserInGroup(groupId, username, currentUsername);
+            List<PostResponseDto> posts = postService.withCurrentReactions(postService.getPostsByUserInGroup(groupId, username, currentUsername));
 
             Map<String, Object> response = new HashMap<>();
             response.put("message", "Lấy bài viết của người dùng trong nhóm thành công");
@@ -6,12 +6,18 @@ import com.example.social_media.document.UserDocument;
 import com.example.social_media.dto.search.SearchResponseDto;
 import com.example.social_media.dto.group.GroupDto;
 import com.example.social_media.dto.user.UserDto;
+import com.example.social_media.entity.User;
 import com.example.social_media.mapper.DocumentMapper;
+import com.example.social_media.repository.UserRepository;
+import com.example.social_media.service.BlockGraphService;
 import com.example.social_media.service.DataSyncService;
 import com.example.social_media.service.ElasticsearchSearchService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.authentication.AnonymousAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.Collections;
@@ -27,11 +33,32 @@ public class SearchController {
     private final ElasticsearchSearchService searchService;
     private final DataSyncService dataSyncService;
     private final DocumentMapper documentMapper;
+    private final BlockGraphService blockGraphService;
+    private final UserRepository userRepository;
 
-    public SearchController(ElasticsearchSearchService searchService, DataSyncService dataSyncService, DocumentMapper documentMapper) {
+    public SearchController(ElasticsearchSearchService searchService, DataSyncService dataSyncService, DocumentMapper documentMapper,
+                            BlockGraphService blockGraphService, UserRepository userRepository) {
         this.searchService = searchService;
         this.dataSyncService = dataSyncService;
         this.documentMapper = documentMapper;
+        this.blockGraphService = blockGraphService;
+        this.userRepository = userRepository;
+    }
+
+    // Ẩn khỏi kết quả tìm kiếm những user mà người xem chặn / bị chặn
+    private List<UserDto> filterBlockedUsers(List<UserDto> users) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || authentication instanceof AnonymousAuthenticationToken) {
+            return users;
+        }
+        Integer viewerId = userRepository.findByUsername(authentication.getName()).map(User::getId).orElse(null);
+        BlockGraphService.BlockedUsers blockedUsers = blockGraphService.getBlockedUsers(viewerId);
+        if (blockedUsers.isEmpty()) {
+            return users;
+        }
+        return users.stream()
+                .filter(u -> u.getId() == null || !blockedUsers.contains(u.getId()))
+                .collect(Collectors.toList());
     }
 
     @GetMapping(URLConfig.SEARCH_USER)
@@ -41,7 +68,7 @@ public class SearchController {
             List<UserDto> userDtos = users != null ? users.stream()
                     .map(documentMapper::toUserDto)
                     .collect(Collectors.toList()) : Collections.emptyList();
-            return ResponseEntity.ok(userDtos);
+            return ResponseEntity.ok(filterBlockedUsers(userDtos));
         } catch (Exception e) {
             logger.error("Error searching users with keyword '{}': {}", keyword, e.getMessage(), e);
             return ResponseEntity.status(500).body(Collections.emptyList());
@@ -78,9 +105,9 @@ public class SearchController {
     @GetMapping(URLConfig.SEARCH_ALL)
     public ResponseEntity<SearchResponseDto> searchAll(@RequestParam("keyword") String keyword) {
         try {
-            List<UserDto> userDtos = searchService.searchUsers(keyword).stream()
+            List<UserDto> userDtos = filterBlockedUsers(searchService.searchUsers(keyword).stream()
                     .map(documentMapper::toUserDto)
-                    .collect(Collectors.toList());
+                    .collect(Collectors.toList()));
 
             List<GroupDto> groupDtos = searchService.searchGroups(keyword).stream()
                     .map(documentMapper::toGroupDto)
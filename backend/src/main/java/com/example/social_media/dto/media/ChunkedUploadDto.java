@@ -0,0 +1,83 @@
+package com.example.social_media.dto.media;
+
+import java.util.Map;
+
+public class ChunkedUploadDto {
+    private String uploadId;
+    private String filename;
+    private String contentType;
+    private Long size;
+    // UPLOADING / COMPLETED
+    private String status;
+    // Số phần -> số byte đã nhận, để client biết cần gửi lại phần nào
+    private Map<Integer, Long> parts;
+    private Long receivedBytes;
+    private String url;
+
+    public ChunkedUploadDto() {
+    }
+
+    public String getUploadId() {
+        return uploadId;
+    }
+
+    public void setUploadId(String uploadId) {
+        this.uploadId = uploadId;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public void setFilename(String filename) {
+        this.filename = filename;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    public void setContentType(String contentType) {
+        this.contentType = contentType;
+    }
+
+    public Long getSize() {
+        return size;
+    }
+
+    public void setSize(Long size) {
+        this.size = size;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public Map<Integer, Long> getParts() {
+        return parts;
+    }
+
+    public void setParts(Map<Integer, Long> parts) {
+        this.parts = parts;
+    }
+
+    public Long getReceivedBytes() {
+        return receivedBytes;
+    }
+
+    public void setReceivedBytes(Long receivedBytes) {
+        this.receivedBytes = receivedBytes;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public void setUrl(String url) {
+        this.url = url;
+    }
+}
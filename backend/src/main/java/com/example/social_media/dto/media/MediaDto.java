@@ -6,6 +6,10 @@ public class MediaDto implements Serializable {
     private static final long serialVersionUID = 1L;
     private Integer id;
     private String url;
+    // Biến thể đã thu nhỏ; bằng url khi chưa tạo xong hoặc không áp dụng (video, audio, gif)
+    private String thumbnailUrl;
+    private String feedUrl;
+    private String fullUrl;
     private String type;
     private Integer targetId;
     private String targetType;
@@ -39,6 +43,30 @@ public class MediaDto implements Serializable {
         this.url = url;
     }
 
+    public String getThumbnailUrl() {
+        return thumbnailUrl;
+    }
+
+    public void setThumbnailUrl(String thumbnailUrl) {
+        this.thumbnailUrl = thumbnailUrl;
+    }
+
+    public String getFeedUrl() {
+        return feedUrl;
+    }
+
+    public void setFeedUrl(String feedUrl) {
+        this.feedUrl = feedUrl;
+    }
+
+    public String getFullUrl() {
+        return fullUrl;
+    }
+
+    public void setFullUrl(String fullUrl) {
+        this.fullUrl = fullUrl;
+    }
+
     public String getType() {
         return type;
     }
@@ -1,11 +1,18 @@
 // ChatDto.java
 package com.example.social_media.dto.message;
 
+import com.fasterxml.jackson.annotation.JsonFormat;
+
+import java.time.Instant;
+
 public class ChatDto {
     private Integer id;
     private String name;
     private String lastMessage;
     private Integer unreadMessagesCount; // Thêm trường này
+    // Thời điểm tin nhắn cuối (hoặc lúc tạo chat), dùng làm con trỏ phân trang hộp thư
+    @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", timezone = "UTC")
+    private Instant lastActivityAt;
 
     public ChatDto() {}
 
@@ -16,6 +23,11 @@ public class ChatDto {
         this.unreadMessagesCount = unreadMessagesCount;
     }
 
+    public ChatDto(Integer id, String name, String lastMessage, Integer unreadMessagesCount, Instant lastActivityAt) {
+        this(id, name, lastMessage, unreadMessagesCount);
+        this.lastActivityAt = lastActivityAt;
+    }
+
     public Integer getId() { return id; }
     public void setId(Integer id) { this.id = id; }
     public String getName() { return name; }
@@ -24,4 +36,6 @@ public class ChatDto {
     public void setLastMessage(String lastMessage) { this.lastMessage = lastMessage; }
     public Integer getUnreadMessagesCount() { return unreadMessagesCount; }
     public void setUnreadMessagesCount(Integer unreadMessagesCount) { this.unreadMessagesCount = unreadMessagesCount; }
+    public Instant getLastActivityAt() { return lastActivityAt; }
+    public void setLastActivityAt(Instant lastActivityAt) { this.lastActivityAt = lastActivityAt; }
 }
\ No newline at end of file
@@ -16,6 +16,8 @@ public class MessageDto implements Serializable {
     @JsonFormat(shape = JsonFormat.Shape.STRING, pattern = "yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", timezone = "UTC")
     private Instant createdAt;
     private List<MediaDto> mediaList;
+    // Số thứ tự tăng dần trong từng chat, client gửi lại khi reconnect để chỉ nhận phần bị lỡ
+    private Long seq;
 
     public MessageDto() {}
 
@@ -54,4 +56,6 @@ public class MessageDto implements Serializable {
     public void setCreatedAt(Instant createdAt) { this.createdAt = createdAt; }
     public List<MediaDto> getMediaList() { return mediaList; }
     public void setMediaList(List<MediaDto> mediaList) { this.mediaList = mediaList; }
+    public Long getSeq() { return seq; }
+    public void setSeq(Long seq) { this.seq = seq; }
 }
\ No newline at end of file
@@ -0,0 +1,52 @@
+package com.example.social_media.dto.post;
+
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.List;
+
+public class NewsfeedPageDto implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    private List<PostResponseDto> content;
+    private int pageSize;
+    private boolean hasMore;
+    // Con trỏ cho trang tiếp theo: (createdAt, id, premium) của bài cuối cùng đã đọc từ DB
+    private Instant nextBeforeCreatedAt;
+    private Integer nextBeforeId;
+    private Boolean nextBeforePremium;
+    // Thời điểm tính premium của trang đầu, gửi lại cùng con trỏ để thứ tự không đổi giữa các trang
+    private Instant asOf;
+
+    public NewsfeedPageDto(List<PostResponseDto> content, int pageSize, boolean hasMore,
+                           Instant nextBeforeCreatedAt, Integer nextBeforeId,
+                           Boolean nextBeforePremium, Instant asOf) {
+        this.content = content;
+        this.pageSize = pageSize;
+        this.hasMore = hasMore;
+        this.nextBeforeCreatedAt = nextBeforeCreatedAt;
+        this.nextBeforeId = nextBeforeId;
+        this.nextBeforePremium = nextBeforePremium;
+        this.asOf = asOf;
+    }
+
+    public List<PostResponseDto> getContent() { return content; }
+    public void setContent(List<PostResponseDto> content) { this.content = content; }
+
+    public int getPageSize() { return pageSize; }
+    public void setPageSize(int pageSize) { this.pageSize = pageSize; }
+
+    public boolean isHasMore() { return hasMore; }
+    public void setHasMore(boolean hasMore) { this.hasMore = hasMore; }
+
+    public Instant getNextBeforeCreatedAt() { return nextBeforeCreatedAt; }
+    public void setNextBeforeCreatedAt(Instant nextBeforeCreatedAt) { this.nextBeforeCreatedAt = nextBeforeCreatedAt; }
+
+    public Integer getNextBeforeId() { return nextBeforeId; }
+    public void setNextBeforeId(Integer nextBeforeId) { this.nextBeforeId = nextBeforeId; }
+
+    public Boolean getNextBeforePremium() { return nextBeforePremium; }
+    public void setNextBeforePremium(Boolean nextBeforePremium) { this.nextBeforePremium = nextBeforePremium; }
+
+    public Instant getAsOf() { return asOf; }
+    public void setAsOf(Instant asOf) { this.asOf = asOf; }
+}
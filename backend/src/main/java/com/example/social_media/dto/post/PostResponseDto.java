@@ -201,4 +201,31 @@ public class PostResponseDto implements Serializable {
     public void setLongitude(Double longitude) {
         this.longitude = longitude;
     }
+
+    // Bản sao nông: DTO lấy từ cache feed được dùng chung nên không sửa trực tiếp
+    public PostResponseDto shallowCopy() {
+        PostResponseDto copy = new PostResponseDto();
+        copy.id = id;
+        copy.owner = owner;
+        copy.content = content;
+        copy.privacySetting = privacySetting;
+        copy.createdAt = createdAt;
+        copy.taggedUsers = taggedUsers;
+        copy.commentCount = commentCount;
+        copy.likeCount = likeCount;
+        copy.shareCount = shareCount;
+        copy.isSaved = isSaved;
+        copy.groupId = groupId;
+        copy.groupName = groupName;
+        copy.groupAvatarUrl = groupAvatarUrl;
+        copy.groupPrivacyLevel = groupPrivacyLevel;
+        copy.reactionCountMap = reactionCountMap;
+        copy.media = media;
+        copy.sharedPost = sharedPost;
+        copy.locationId = locationId;
+        copy.locationName = locationName;
+        copy.latitude = latitude;
+        copy.longitude = longitude;
+        return copy;
+    }
 }
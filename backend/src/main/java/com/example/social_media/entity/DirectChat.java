@@ -0,0 +1,57 @@
+package com.example.social_media.entity;
+
+import jakarta.persistence.*;
+import jakarta.validation.constraints.NotNull;
+import org.hibernate.annotations.ColumnDefault;
+
+import java.time.Instant;
+
+@Entity
+@Table(name = "tblDirectChat", schema = "dbo")
+public class DirectChat {
+    @EmbeddedId
+    private DirectChatId id;
+
+    @NotNull
+    @OneToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "chat_id", nullable = false, unique = true)
+    private Chat chat;
+
+    @ColumnDefault("getdate()")
+    @Column(name = "created_at")
+    private Instant createdAt;
+
+    public DirectChat() {
+    }
+
+    public DirectChat(DirectChatId id, Chat chat, Instant createdAt) {
+        this.id = id;
+        this.chat = chat;
+        this.createdAt = createdAt;
+    }
+
+    public DirectChatId getId() {
+        return id;
+    }
+
+    public void setId(DirectChatId id) {
+        this.id = id;
+    }
+
+    public Chat getChat() {
+        return chat;
+    }
+
+    public void setChat(Chat chat) {
+        this.chat = chat;
+    }
+
+    public Instant getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(Instant createdAt) {
+        this.createdAt = createdAt;
+    }
+
+}
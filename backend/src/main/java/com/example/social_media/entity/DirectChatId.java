@@ -0,0 +1,65 @@
+package com.example.social_media.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+import jakarta.validation.constraints.NotNull;
+import org.hibernate.Hibernate;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+@Embeddable
+public class DirectChatId implements Serializable {
+    private static final long serialVersionUID = 6021954387710253948L;
+    @NotNull
+    @Column(name = "user_low_id", nullable = false)
+    private Integer userLowId;
+
+    @NotNull
+    @Column(name = "user_high_id", nullable = false)
+    private Integer userHighId;
+
+    public DirectChatId() {
+    }
+
+    public DirectChatId(Integer userLowId, Integer userHighId) {
+        this.userLowId = userLowId;
+        this.userHighId = userHighId;
+    }
+
+    // Khóa chuẩn của cặp người dùng: (id nhỏ hơn, id lớn hơn)
+    public static DirectChatId of(Integer userId, Integer otherUserId) {
+        return new DirectChatId(Math.min(userId, otherUserId), Math.max(userId, otherUserId));
+    }
+
+    public Integer getUserLowId() {
+        return userLowId;
+    }
+
+    public void setUserLowId(Integer userLowId) {
+        this.userLowId = userLowId;
+    }
+
+    public Integer getUserHighId() {
+        return userHighId;
+    }
+
+    public void setUserHighId(Integer userHighId) {
+        this.userHighId = userHighId;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || Hibernate.getClass(this) != Hibernate.getClass(o)) return false;
+        DirectChatId entity = (DirectChatId) o;
+        return Objects.equals(this.userLowId, entity.userLowId) &&
+                Objects.equals(this.userHighId, entity.userHighId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(userLowId, userHighId);
+    }
+
+}
@@ -34,6 +34,25 @@ public class Media {
     @Column(name = "media_url", nullable = false, length = 512)
     private String mediaUrl;
 
+    @Size(max = 512)
+    @Column(name = "thumbnail_url", length = 512)
+    private String thumbnailUrl;
+
+    @Size(max = 512)
+    @Column(name = "feed_url", length = 512)
+    private String feedUrl;
+
+    @Size(max = 512)
+    @Column(name = "full_url", length = 512)
+    private String fullUrl;
+
+    @ColumnDefault("0")
+    @Column(name = "derivative_attempts", nullable = false)
+    private Integer derivativeAttempts = 0;
+
+    @Column(name = "derivative_retry_at")
+    private Instant derivativeRetryAt;
+
     @Size(max = 255)
     @Nationalized
     @Column(name = "caption")
@@ -91,6 +110,46 @@ public class Media {
         this.mediaUrl = mediaUrl;
     }
 
+    public String getThumbnailUrl() {
+        return thumbnailUrl;
+    }
+
+    public void setThumbnailUrl(String thumbnailUrl) {
+        this.thumbnailUrl = thumbnailUrl;
+    }
+
+    public String getFeedUrl() {
+        return feedUrl;
+    }
+
+    public void setFeedUrl(String feedUrl) {
+        this.feedUrl = feedUrl;
+    }
+
+    public String getFullUrl() {
+        return fullUrl;
+    }
+
+    public void setFullUrl(String fullUrl) {
+        this.fullUrl = fullUrl;
+    }
+
+    public Integer getDerivativeAttempts() {
+        return derivativeAttempts;
+    }
+
+    public void setDerivativeAttempts(Integer derivativeAttempts) {
+        this.derivativeAttempts = derivativeAttempts;
+    }
+
+    public Instant getDerivativeRetryAt() {
+        return derivativeRetryAt;
+    }
+
+    public void setDerivativeRetryAt(Instant derivativeRetryAt) {
+        this.derivativeRetryAt = derivativeRetryAt;
+    }
+
     public String getCaption() {
         return caption;
     }
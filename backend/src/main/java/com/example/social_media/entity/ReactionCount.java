@@ -0,0 +1,55 @@
+package com.example.social_media.entity;
+
+import jakarta.persistence.*;
+import org.hibernate.annotations.ColumnDefault;
+
+import java.time.Instant;
+
+@Entity
+@Table(name = "tblReactionCount", schema = "dbo")
+public class ReactionCount {
+    @EmbeddedId
+    private ReactionCountId id;
+
+    @ColumnDefault("0")
+    @Column(name = "reaction_count", nullable = false)
+    private Long reactionCount;
+
+    @ColumnDefault("getdate()")
+    @Column(name = "updated_at")
+    private Instant updatedAt;
+
+    public ReactionCount() {
+    }
+
+    public ReactionCount(ReactionCountId id, Long reactionCount, Instant updatedAt) {
+        this.id = id;
+        this.reactionCount = reactionCount;
+        this.updatedAt = updatedAt;
+    }
+
+    public ReactionCountId getId() {
+        return id;
+    }
+
+    public void setId(ReactionCountId id) {
+        this.id = id;
+    }
+
+    public Long getReactionCount() {
+        return reactionCount;
+    }
+
+    public void setReactionCount(Long reactionCount) {
+        this.reactionCount = reactionCount;
+    }
+
+    public Instant getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(Instant updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+
+}
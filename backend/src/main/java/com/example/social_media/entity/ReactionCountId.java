@@ -0,0 +1,74 @@
+package com.example.social_media.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+import jakarta.validation.constraints.NotNull;
+import org.hibernate.Hibernate;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+@Embeddable
+public class ReactionCountId implements Serializable {
+    private static final long serialVersionUID = 3518746092214785309L;
+    @NotNull
+    @Column(name = "target_type_id", nullable = false)
+    private Integer targetTypeId;
+
+    @NotNull
+    @Column(name = "target_id", nullable = false)
+    private Integer targetId;
+
+    @NotNull
+    @Column(name = "reaction_type_id", nullable = false)
+    private Integer reactionTypeId;
+
+    public ReactionCountId() {
+    }
+
+    public ReactionCountId(Integer targetTypeId, Integer targetId, Integer reactionTypeId) {
+        this.targetTypeId = targetTypeId;
+        this.targetId = targetId;
+        this.reactionTypeId = reactionTypeId;
+    }
+
+    public Integer getTargetTypeId() {
+        return targetTypeId;
+    }
+
+    public void setTargetTypeId(Integer targetTypeId) {
+        this.targetTypeId = targetTypeId;
+    }
+
+    public Integer getTargetId() {
+        return targetId;
+    }
+
+    public void setTargetId(Integer targetId) {
+        this.targetId = targetId;
+    }
+
+    public Integer getReactionTypeId() {
+        return reactionTypeId;
+    }
+
+    public void setReactionTypeId(Integer reactionTypeId) {
+        this.reactionTypeId = reactionTypeId;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || Hibernate.getClass(this) != Hibernate.getClass(o)) return false;
+        ReactionCountId entity = (ReactionCountId) o;
+        return Objects.equals(this.targetTypeId, entity.targetTypeId) &&
+                Objects.equals(this.targetId, entity.targetId) &&
+                Objects.equals(this.reactionTypeId, entity.reactionTypeId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(targetTypeId, targetId, reactionTypeId);
+    }
+
+}
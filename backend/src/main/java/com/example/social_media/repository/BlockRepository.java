@@ -5,6 +5,7 @@ import com.example.social_media.entity.BlockId;
 import com.example.social_media.entity.User;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import java.util.List;
 import java.util.Optional;
@@ -18,5 +19,17 @@ public interface BlockRepository extends JpaRepository<Block, BlockId> {
 
     List<Block> findByBlockedUserAndStatus(User blockedUser, boolean status);
 
+    // Tất cả user mà userId đã chặn hoặc đã chặn userId
+    @Query("""
+    SELECT CASE
+        WHEN b.user.id = :userId THEN b.blockedUser.id
+        ELSE b.user.id
+    END
+    FROM Block b
+    WHERE (b.user.id = :userId OR b.blockedUser.id = :userId)
+      AND b.status = true
+""")
+    List<Integer> findBlockedOrBlockingUserIds(@Param("userId") Integer userId);
+
 
 }
\ No newline at end of file
@@ -7,6 +7,7 @@ import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -35,4 +36,8 @@ public interface ChatMemberRepository extends JpaRepository<ChatMember, ChatMemb
     @Query("SELECT cm FROM ChatMember cm WHERE cm.chat.id = :chatId AND cm.isSpam = :isSpam")
     List<ChatMember> findByChatIdAndIsSpam(@Param("chatId") Integer chatId, @Param("isSpam") boolean isSpam);
 
+    // [userId, chatId] của các chat người dùng còn tham gia
+    @Query("SELECT cm.user.id, cm.chat.id FROM ChatMember cm WHERE cm.user.id IN :userIds AND cm.status = true")
+    List<Object[]> findActiveChatIdsByUserIds(@Param("userIds") Collection<Integer> userIds);
+
 }
\ No newline at end of file
@@ -7,6 +7,7 @@ import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface CommentRepository extends JpaRepository<Comment, Integer> {
@@ -22,4 +23,8 @@ public interface CommentRepository extends JpaRepository<Comment, Integer> {
 
     @Query("SELECT c.id FROM Comment c WHERE c.post.id = :postId")
     List<Integer> findIdsByPostId(@Param("postId") Integer postId);
+
+    // Đếm bình luận cho nhiều bài viết trong một truy vấn: [postId, count]
+    @Query("SELECT c.post.id, COUNT(c.id) FROM Comment c WHERE c.post.id IN :postIds AND c.status = true GROUP BY c.post.id")
+    List<Object[]> countActiveByPostIds(@Param("postIds") Collection<Integer> postIds);
 }
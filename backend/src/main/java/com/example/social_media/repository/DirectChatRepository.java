@@ -0,0 +1,19 @@
+package com.example.social_media.repository;
+
+import com.example.social_media.entity.Chat;
+import com.example.social_media.entity.DirectChat;
+import com.example.social_media.entity.DirectChatId;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface DirectChatRepository extends JpaRepository<DirectChat, DirectChatId> {
+
+    // Chat 1-1 của cặp (userLowId, userHighId): một lần đọc theo khóa chính
+    @Query("SELECT dc.chat FROM DirectChat dc WHERE dc.id = :id")
+    Optional<Chat> findChatById(@Param("id") DirectChatId id);
+}
@@ -46,6 +46,14 @@ public interface GroupMemberRepository extends JpaRepository<GroupMember, GroupM
             "WHERE gm.id.groupId = :groupId AND gm.status = true AND gm.inviteStatus = 'ACCEPTED'")
     List<User> findAcceptedUsersByGroupId(@Param("groupId") Integer groupId);
 
+    @Query("SELECT gm.id.userId FROM GroupMember gm " +
+            "WHERE gm.id.groupId = :groupId AND gm.status = true AND gm.inviteStatus = 'ACCEPTED'")
+    List<Integer> findAcceptedUserIdsByGroupId(@Param("groupId") Integer groupId);
+
+    @Query("SELECT gm.id.groupId FROM GroupMember gm " +
+            "WHERE gm.id.userId = :userId AND gm.status = true AND gm.inviteStatus = 'ACCEPTED'")
+    List<Integer> findAcceptedGroupIdsByUserId(@Param("userId") Integer userId);
+
     @Query("SELECT gm FROM GroupMember gm JOIN gm.user u " +
             "WHERE gm.id.groupId = :groupId AND gm.status = true AND gm.inviteStatus = 'ACCEPTED' " +
             "ORDER BY u.username ASC")
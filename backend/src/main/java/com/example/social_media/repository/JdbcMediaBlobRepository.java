@@ -0,0 +1,56 @@
+package com.example.social_media.repository;
+
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+/**
+ * Chỉ mục digest -> object trên GCS (tblMediaBlob) cho media lưu theo nội dung, kèm số dòng tblMedia đang tham chiếu.
+ */
+@Repository
+public class JdbcMediaBlobRepository {
+
+    private static final String ACQUIRE_SQL =
+            "UPDATE tblMediaBlob SET ref_count = ref_count + 1 OUTPUT inserted.media_url WHERE digest = ?";
+
+    private static final String INSERT_SQL =
+            "INSERT INTO tblMediaBlob (digest, media_url, size, ref_count, created_at) VALUES (?, ?, ?, 1, GETDATE())";
+
+    private static final String RELEASE_SQL =
+            "UPDATE tblMediaBlob SET ref_count = ref_count - 1 OUTPUT inserted.ref_count WHERE media_url = ? AND ref_count > 0";
+
+    private static final String DELETE_UNREFERENCED_SQL = "DELETE FROM tblMediaBlob WHERE media_url = ? AND ref_count = 0";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public JdbcMediaBlobRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    // Thêm một tham chiếu tới blob có cùng digest, trả về URL của blob nếu đã tồn tại
+    public Optional<String> acquire(String digest) {
+        return jdbcTemplate.queryForList(ACQUIRE_SQL, String.class, digest).stream().findFirst();
+    }
+
+    // Ghi blob mới với một tham chiếu; false nếu request khác vừa ghi cùng digest
+    public boolean insert(String digest, String mediaUrl, long size) {
+        try {
+            jdbcTemplate.update(INSERT_SQL, digest, mediaUrl, size);
+            return true;
+        } catch (DuplicateKeyException e) {
+            return false;
+        }
+    }
+
+    // Bớt một tham chiếu, trả về số tham chiếu còn lại; rỗng nếu URL không thuộc chỉ mục (file upload trước khi có dedup)
+    public Optional<Integer> release(String mediaUrl) {
+        return jdbcTemplate.queryForList(RELEASE_SQL, Integer.class, mediaUrl).stream().findFirst();
+    }
+
+    // Xóa khỏi chỉ mục nếu vẫn không còn tham chiếu (không có upload nào dùng lại trong lúc đó)
+    public boolean deleteIfUnreferenced(String mediaUrl) {
+        return jdbcTemplate.update(DELETE_UNREFERENCED_SQL, mediaUrl) == 1;
+    }
+}
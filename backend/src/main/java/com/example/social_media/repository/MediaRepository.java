@@ -4,12 +4,15 @@ import com.example.social_media.entity.Media;
 import com.example.social_media.entity.MediaType;
 import com.example.social_media.entity.TargetType;
 import io.lettuce.core.dynamic.annotation.Param;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -24,10 +27,43 @@ public interface MediaRepository extends JpaRepository<Media, Integer> {
         Boolean status
 );
     Optional<Media> findFirstByTargetIdAndTargetType_CodeAndMediaType_NameOrderByCreatedAtDesc(Integer userId, String profile, String image);
+
+    // [targetId, mediaUrl] của ảnh mới nhất mỗi target, cùng quy tắc với truy vấn findFirst...OrderByCreatedAtDesc ở trên
+    @Query("SELECT m.targetId, m.mediaUrl FROM Media m WHERE m.targetId IN ?1 AND m.targetType.code = ?2 AND m.mediaType.name = 'image' " +
+            "AND m.createdAt = (SELECT MAX(m2.createdAt) FROM Media m2 WHERE m2.targetId = m.targetId " +
+            "AND m2.targetType = m.targetType AND m2.mediaType = m.mediaType)")
+    List<Object[]> findLatestImageUrlsByTargetIds(Collection<Integer> targetIds, String targetTypeCode);
     List<Media> findByTargetIdAndTargetTypeCodeAndCaptionAndStatusTrue(Integer groupId, String group, String avatar);
     List<Media> findByTargetIdInAndTargetTypeIdAndStatus(List<Integer> targetIds, Integer targetTypeId, Boolean status);
     List<Media> findByTargetIdAndTargetType_CodeAndMediaType_NameAndStatus(
             Integer targetId, String targetTypeCode, String mediaTypeName, Boolean status);
+    List<Media> findByTargetIdAndTargetTypeIdAndMediaUrlIn(Integer targetId, Integer targetTypeId, Collection<String> mediaUrls);
+    Optional<Media> findFirstByMediaUrlAndThumbnailUrlIsNotNull(String mediaUrl);
+
+    // [id, mediaUrl] của ảnh còn hoạt động chưa có biến thể và đã tới lượt thử lại, quét theo id sau afterId để tạo bù
+    @Query("SELECT m.id, m.mediaUrl FROM Media m WHERE m.id > ?1 AND m.status = true AND m.thumbnailUrl IS NULL " +
+            "AND m.mediaType.name = 'image' AND m.createdAt < ?2 " +
+            "AND (m.derivativeRetryAt IS NULL OR m.derivativeRetryAt <= ?3) ORDER BY m.id")
+    List<Object[]> findImagesWithoutDerivatives(Integer afterId, Instant createdBefore, Instant retryBefore, Pageable pageable);
+
+    @Query("SELECT MAX(m.derivativeAttempts) FROM Media m WHERE m.mediaUrl = ?1")
+    Integer findDerivativeAttempts(String mediaUrl);
+
+    // Ghi nhận một lần tạo biến thể thất bại, lượt tạo bù bỏ qua ảnh này tới retryAt
+    @Modifying
+    @Transactional
+    @Query("UPDATE Media m SET m.derivativeAttempts = m.derivativeAttempts + 1, m.derivativeRetryAt = ?2 WHERE m.mediaUrl = ?1")
+    int recordDerivativeFailure(String mediaUrl, Instant retryAt);
+
+    // [targetTypeCode, targetId] của các dòng dùng URL này
+    @Query("SELECT m.targetType.code, m.targetId FROM Media m WHERE m.mediaUrl = ?1")
+    List<Object[]> findTargetsByMediaUrl(String mediaUrl);
+
+    // Cùng nội dung thì cùng URL, nên mọi dòng dùng URL này nhận chung bộ biến thể
+    @Modifying
+    @Transactional
+    @Query("UPDATE Media m SET m.thumbnailUrl = ?2, m.feedUrl = ?3, m.fullUrl = ?4 WHERE m.mediaUrl = ?1")
+    int updateDerivativeUrls(String mediaUrl, String thumbnailUrl, String feedUrl, String fullUrl);
 
     @Modifying
     @Transactional
@@ -0,0 +1,25 @@
+package com.example.social_media.repository;
+
+import com.example.social_media.entity.ReactionCount;
+import com.example.social_media.entity.ReactionCountId;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface ReactionCountRepository extends JpaRepository<ReactionCount, ReactionCountId> {
+
+    @Query("SELECT rc FROM ReactionCount rc WHERE rc.id.targetTypeId = :targetTypeId AND rc.id.targetId IN :targetIds")
+    List<ReactionCount> findByTargetTypeIdAndTargetIdIn(@Param("targetTypeId") Integer targetTypeId,
+                                                        @Param("targetIds") Collection<Integer> targetIds);
+
+    @Modifying
+    @Query("DELETE FROM ReactionCount rc WHERE rc.id.targetTypeId = :targetTypeId AND rc.id.targetId IN :targetIds")
+    void deleteByTargetTypeIdAndTargetIdIn(@Param("targetTypeId") Integer targetTypeId,
+                                           @Param("targetIds") Collection<Integer> targetIds);
+}
@@ -9,6 +9,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -37,6 +38,19 @@ public interface ReactionRepository extends JpaRepository<Reaction, ReactionId>
             @Param("targetIds") List<Integer> targetIds,
             @Param("targetTypeCode") String targetTypeCode);
 
+    // Đếm lại từ bảng gốc theo reaction_type_id: [targetId, reactionTypeId, count]
+    @Query("""
+    SELECT r.id.targetId, r.reactionType.id, COUNT(r)
+    FROM Reaction r
+    WHERE r.id.targetId IN :targetIds
+      AND r.id.targetTypeId = :targetTypeId
+      AND r.status = true
+    GROUP BY r.id.targetId, r.reactionType.id
+""")
+    List<Object[]> countByTargetIdsAndTargetTypeId(
+            @Param("targetIds") Collection<Integer> targetIds,
+            @Param("targetTypeId") Integer targetTypeId);
+
     @Modifying
     @Transactional
     @Query("DELETE FROM Reaction r WHERE r.id.targetId = :postId AND r.targetType.code = 'POST'")
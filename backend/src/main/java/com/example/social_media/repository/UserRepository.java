@@ -4,9 +4,12 @@ import com.example.social_media.entity.User;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.jpa.repository.query.Procedure;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -38,4 +41,7 @@ public interface UserRepository extends JpaRepository<User, Integer> {
     Optional<User> findFirstByIsSystemTrue();
 
     List<User> findAllByIsAdminTrue();
+
+    @Query("SELECT u.username FROM User u WHERE u.id IN :ids")
+    List<String> findUsernamesByIdIn(@Param("ids") Collection<Integer> ids);
 }
\ No newline at end of file
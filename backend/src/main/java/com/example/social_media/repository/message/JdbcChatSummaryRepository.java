@@ -0,0 +1,111 @@
+package com.example.social_media.repository.message;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Bản tóm tắt chat (tblChatSummary) cho hộp thư: tin nhắn cuối, người đối diện và thời điểm hoạt động cuối
+ * được đọc cùng một truy vấn thay vì 2 truy vấn cho mỗi chat.
+ */
+@Repository
+public class JdbcChatSummaryRepository {
+
+    // Ghi đè khi tin mới hơn tin đang lưu; HOLDLOCK tránh hai lần gửi đồng thời cùng chèn một chat
+    private static final String UPSERT_SQL = """
+            MERGE tblChatSummary WITH (HOLDLOCK) AS target
+            USING (SELECT ? AS chat_id, ? AS last_message_id, ? AS last_message_content, ? AS last_sender_id, ? AS updated_at) AS source
+            ON target.chat_id = source.chat_id
+            WHEN MATCHED AND (target.last_message_id IS NULL OR target.last_message_id < source.last_message_id) THEN
+                UPDATE SET last_message_id = source.last_message_id,
+                           last_message_content = source.last_message_content,
+                           last_sender_id = source.last_sender_id,
+                           updated_at = source.updated_at
+            WHEN NOT MATCHED THEN
+                INSERT (chat_id, last_message_id, last_message_content, last_sender_id, updated_at)
+                VALUES (source.chat_id, source.last_message_id, source.last_message_content, source.last_sender_id, source.updated_at);
+            """;
+
+    private static final String DELETE_SQL = "DELETE FROM tblChatSummary WHERE chat_id = ?";
+
+    private static final String REBUILD_SQL = """
+            INSERT INTO tblChatSummary (chat_id, last_message_id, last_message_content, last_sender_id, updated_at)
+            SELECT TOP 1 chat_id, id, content, sender_id, created_at
+            FROM tblMessage
+            WHERE chat_id = ?
+            ORDER BY id DESC
+            """;
+
+    // Người đối diện: thành viên đầu tiên khác người xem (cùng cách đặt tên chat như trước)
+    private static final String SELECT_SQL = """
+            SELECT c.id AS chat_id, c.name, cs.last_message_content,
+                   COALESCE(cs.updated_at, c.created_at) AS last_activity_at,
+                   peer.display_name AS peer_display_name
+            FROM tblChat c
+            LEFT JOIN tblChatSummary cs ON cs.chat_id = c.id
+            OUTER APPLY (
+                SELECT TOP 1 u.display_name
+                FROM tblChatMember pm
+                JOIN tblUser u ON u.id = pm.user_id
+                WHERE pm.chat_id = c.id AND pm.user_id <> ?
+                ORDER BY pm.user_id
+            ) peer
+            """;
+
+    private static final String INBOX_SQL = SELECT_SQL + """
+            JOIN tblChatMember me ON me.chat_id = c.id AND me.user_id = ? AND me.status = 1
+            WHERE COALESCE(cs.updated_at, c.created_at) < ?
+               OR (COALESCE(cs.updated_at, c.created_at) = ? AND c.id < ?)
+            ORDER BY last_activity_at DESC, c.id DESC
+            OFFSET 0 ROWS FETCH NEXT ? ROWS ONLY
+            """;
+
+    private static final String SINGLE_SQL = SELECT_SQL + "WHERE c.id = ?";
+
+    private static final RowMapper<ChatSummaryRow> ROW_MAPPER = (rs, rowNum) -> {
+        Timestamp lastActivityAt = rs.getTimestamp("last_activity_at");
+        return new ChatSummaryRow(
+                rs.getInt("chat_id"),
+                rs.getString("name"),
+                rs.getString("last_message_content"),
+                lastActivityAt != null ? lastActivityAt.toInstant() : null,
+                rs.getString("peer_display_name"));
+    };
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public JdbcChatSummaryRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    public void recordMessage(Integer chatId, Integer messageId, String content, Integer senderId, Instant createdAt) {
+        jdbcTemplate.update(UPSERT_SQL, chatId, messageId, content, senderId, Timestamp.from(createdAt));
+    }
+
+    // Tính lại từ tblMessage, ví dụ khi tin cuối bị xóa
+    public void rebuild(Integer chatId) {
+        jdbcTemplate.update(DELETE_SQL, chatId);
+        jdbcTemplate.update(REBUILD_SQL, chatId);
+    }
+
+    /**
+     * Một trang hộp thư của người dùng, hoạt động gần nhất trước; con trỏ (beforeActivityAt, beforeChatId) là chat cuối trang trước.
+     */
+    public List<ChatSummaryRow> findInbox(Integer userId, Instant beforeActivityAt, Integer beforeChatId, int limit) {
+        Timestamp before = Timestamp.from(beforeActivityAt);
+        return jdbcTemplate.query(INBOX_SQL, ROW_MAPPER, userId, userId, before, before, beforeChatId, limit);
+    }
+
+    public Optional<ChatSummaryRow> findByChatId(Integer chatId, Integer viewerId) {
+        return jdbcTemplate.query(SINGLE_SQL, ROW_MAPPER, viewerId, chatId).stream().findFirst();
+    }
+
+    public record ChatSummaryRow(Integer chatId, String name, String lastMessageContent,
+                                 Instant lastActivityAt, String peerDisplayName) {
+    }
+}
@@ -4,10 +4,66 @@ import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Repository;
 
 import java.sql.CallableStatement;
+import java.sql.Timestamp;
 import java.sql.Types;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.StringJoiner;
 
 @Repository
 public class JdbcMessageRepository {
+
+    // Đánh dấu đã đọc mọi tin của chat tới upToMessageId (bao gồm) cho một người dùng
+    private static final String MARK_READ_SQL = """
+            UPDATE ms SET ms.status = 'read'
+            FROM tblMessageStatus ms
+            JOIN tblMessage m ON m.id = ms.message_id
+            WHERE ms.user_id = ? AND ms.status = 'unread' AND m.chat_id = ? AND ms.message_id <= ?
+            """;
+
+    // SQL Server nhận tối đa 2100 tham số mỗi câu lệnh, mỗi tin dùng INSERT_PARAMS_PER_ROW tham số
+    private static final int MAX_STATEMENT_PARAMETERS = 2100;
+    private static final int INSERT_PARAMS_PER_ROW = 5;
+    public static final int MAX_INSERT_BATCH_SIZE = (MAX_STATEMENT_PARAMETERS - 1) / INSERT_PARAMS_PER_ROW;
+
+    // Ghi một lô tin với cùng các điều kiện như sp_SendMessage (chat còn hoạt động, người gửi là thành viên, không bị chặn).
+    // INSERT ... SELECT ... ORDER BY bảo đảm IDENTITY được cấp theo seq (thứ tự trong stream), id tin nhắn là con trỏ phân trang.
+    // ingest_id đã có (lô được ghi lại sau sự cố) thì bỏ qua; OUTPUT trả về id của các tin thực sự được ghi
+    private static final String INSERT_BATCH_SQL = """
+            INSERT INTO tblMessage (chat_id, sender_id, type_id, content, created_at, status, ingest_id)
+            OUTPUT inserted.ingest_id, inserted.id
+            SELECT v.chat_id, v.sender_id, 1, v.content, v.created_at, 1, v.ingest_id
+            FROM (VALUES %s) AS v(seq, ingest_id, chat_id, sender_id, content, created_at)
+            WHERE NOT EXISTS (SELECT 1 FROM tblMessage m WHERE m.ingest_id = v.ingest_id)
+              AND EXISTS (SELECT 1 FROM tblChat c WHERE c.id = v.chat_id AND c.status = 1)
+              AND EXISTS (SELECT 1 FROM tblChatMember cm WHERE cm.chat_id = v.chat_id AND cm.user_id = v.sender_id AND cm.status = 1)
+              AND NOT EXISTS (
+                  SELECT 1
+                  FROM tblChatMember cm
+                  JOIN tblBlock b ON (b.user_id = v.sender_id AND b.blocked_user_id = cm.user_id)
+                                  OR (b.user_id = cm.user_id AND b.blocked_user_id = v.sender_id)
+                  WHERE cm.chat_id = v.chat_id AND cm.user_id <> v.sender_id AND cm.status = 1 AND b.status = 1
+              )
+            ORDER BY v.seq;
+            """;
+
+    // Seek trên idx_message_chat_id (chat_id, id)
+    private static final String FIND_LATEST_ID_SQL = "SELECT MAX(id) FROM tblMessage WHERE chat_id = ?";
+
+    private static final String FIND_BY_INGEST_IDS_SQL = "SELECT ingest_id, id FROM tblMessage WHERE ingest_id IN (%s)";
+
+    // Dòng 'unread' cho người nhận, cùng điều kiện với sp_SendMessage
+    private static final String INSERT_UNREAD_STATUS_SQL = """
+            INSERT INTO tblMessageStatus (message_id, user_id, status, created_at)
+            SELECT ?, cm.user_id, 'unread', GETDATE()
+            FROM tblChatMember cm
+            WHERE cm.chat_id = ? AND cm.user_id <> ? AND cm.status = 1 AND cm.is_spam = 0
+            """;
+
     private final JdbcTemplate jdbcTemplate;
 
     public JdbcMessageRepository(JdbcTemplate jdbcTemplate) {
@@ -27,4 +83,69 @@ public class JdbcMessageRepository {
             return cs.getInt(4); // Lấy giá trị của @new_message_id
         });
     }
-}
\ No newline at end of file
+
+    /**
+     * Ghi một lô tin (tối đa {@link #MAX_INSERT_BATCH_SIZE}) trong một câu lệnh theo đúng thứ tự của danh sách,
+     * trả về ingestId -> id tin nhắn của những tin được ghi.
+     * Tin không có trong kết quả là bị từ chối (không còn quyền gửi, bị chặn) hoặc đã được ghi trước đó.
+     */
+    public Map<String, Integer> insertBatch(List<NewMessage> messages) {
+        Map<String, Integer> ids = new HashMap<>();
+        if (messages.isEmpty()) return ids;
+        if (messages.size() > MAX_INSERT_BATCH_SIZE) {
+            throw new IllegalArgumentException("Lô tin nhắn vượt quá " + MAX_INSERT_BATCH_SIZE + " tin: " + messages.size());
+        }
+
+        StringJoiner values = new StringJoiner(", ");
+        Object[] args = new Object[messages.size() * INSERT_PARAMS_PER_ROW];
+        for (int i = 0; i < messages.size(); i++) {
+            NewMessage message = messages.get(i);
+            // seq là số nguyên do code sinh ra, ghi thẳng vào câu lệnh để không tốn tham số
+            values.add("(" + i + ", ?, ?, ?, ?, ?)");
+            int offset = i * INSERT_PARAMS_PER_ROW;
+            args[offset] = message.ingestId();
+            args[offset + 1] = message.chatId();
+            args[offset + 2] = message.senderId();
+            args[offset + 3] = message.content();
+            args[offset + 4] = Timestamp.from(message.createdAt());
+        }
+        jdbcTemplate.query(INSERT_BATCH_SQL.formatted(values),
+                rs -> { ids.put(rs.getString(1), rs.getInt(2)); }, args);
+        return ids;
+    }
+
+    // ingestId -> id của các tin đã được ghi từ trước, để phân biệt tin ghi lại với tin bị từ chối
+    public Map<String, Integer> findIdsByIngestIds(List<String> ingestIds) {
+        Map<String, Integer> ids = new HashMap<>();
+        if (ingestIds.isEmpty()) return ids;
+        String placeholders = String.join(", ", Collections.nCopies(ingestIds.size(), "?"));
+        jdbcTemplate.query(FIND_BY_INGEST_IDS_SQL.formatted(placeholders),
+                rs -> { ids.put(rs.getString(1), rs.getInt(2)); }, ingestIds.toArray());
+        return ids;
+    }
+
+    // Id tin mới nhất đã ghi của chat; rỗng khi chat chưa có tin
+    public Optional<Integer> findLatestMessageId(Integer chatId) {
+        return Optional.ofNullable(jdbcTemplate.queryForObject(FIND_LATEST_ID_SQL, Integer.class, chatId));
+    }
+
+    // messageId -> tin đã ghi; một lượt JDBC batch cho cả lô
+    public void insertUnreadStatuses(Map<Integer, NewMessage> messagesById) {
+        jdbcTemplate.batchUpdate(INSERT_UNREAD_STATUS_SQL, messagesById.entrySet().stream()
+                .map(entry -> new Object[]{entry.getKey(), entry.getValue().chatId(), entry.getValue().senderId()})
+                .toList());
+    }
+
+    // Một lượt batch cho tất cả xác nhận đã đọc gom được
+    public void markReadUpTo(List<ReadReceipt> receipts) {
+        jdbcTemplate.batchUpdate(MARK_READ_SQL, receipts.stream()
+                .map(receipt -> new Object[]{receipt.userId(), receipt.chatId(), receipt.upToMessageId()})
+                .toList());
+    }
+
+    public record NewMessage(String ingestId, Integer chatId, Integer senderId, String content, Instant createdAt) {
+    }
+
+    public record ReadReceipt(Integer chatId, Integer userId, Integer upToMessageId) {
+    }
+}
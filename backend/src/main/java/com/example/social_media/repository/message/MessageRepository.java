@@ -1,10 +1,12 @@
 package com.example.social_media.repository.message;
 
 import com.example.social_media.entity.Message;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 
+import java.time.Instant;
 import java.util.List;
 import java.util.Optional;
 
@@ -13,4 +15,14 @@ public interface MessageRepository extends JpaRepository<Message, Integer> {
     Optional<Message> findTopByChatIdOrderByCreatedAtDesc(Integer chatId);
     @Query("SELECT m FROM Message m WHERE m.chat.id = :chatId AND m.sender.id IN :senderIds")
     List<Message> findByChatIdAndSenderIdIn(@Param("chatId") Integer chatId, @Param("senderIds") List<Integer> senderIds);
-}
\ No newline at end of file
+
+    // Trang tin nhắn có id < beforeId, mới nhất trước; chỉ lấy tin tạo sau thời điểm since
+    @Query("SELECT m FROM Message m WHERE m.chat.id = :chatId AND m.id < :beforeId AND m.createdAt > :since ORDER BY m.id DESC")
+    List<Message> findPageBefore(@Param("chatId") Integer chatId, @Param("beforeId") Integer beforeId,
+                                 @Param("since") Instant since, Pageable pageable);
+
+    // Trang tin nhắn có id > afterId, cũ nhất trước; chỉ lấy tin tạo sau thời điểm since
+    @Query("SELECT m FROM Message m WHERE m.chat.id = :chatId AND m.id > :afterId AND m.createdAt > :since ORDER BY m.id ASC")
+    List<Message> findPageAfter(@Param("chatId") Integer chatId, @Param("afterId") Integer afterId,
+                                @Param("since") Instant since, Pageable pageable);
+}
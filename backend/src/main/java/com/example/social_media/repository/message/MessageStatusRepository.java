@@ -8,6 +8,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface MessageStatusRepository extends JpaRepository<MessageStatus, MessageStatusId> {
@@ -28,6 +29,15 @@ public interface MessageStatusRepository extends JpaRepository<MessageStatus, Me
             """)
     int countUnreadChatsByUserId(@Param("userId") Integer userId);
 
+    // [userId, chatId, số tin chưa đọc] cho nhiều người dùng, dùng để nạp / đối soát bộ đếm chưa đọc
+    @Query("""
+                SELECT ms.id.userId, ms.message.chat.id, COUNT(ms)
+                FROM MessageStatus ms
+                WHERE ms.id.userId IN :userIds AND ms.status = 'unread'
+                GROUP BY ms.id.userId, ms.message.chat.id
+            """)
+    List<Object[]> countUnreadGroupedByUserIdAndChatId(@Param("userIds") Collection<Integer> userIds);
+
     @Modifying
     @Transactional
     @Query("UPDATE MessageStatus ms SET ms.status = 'read' WHERE ms.message.chat.id = :chatId AND ms.id.userId = :userId AND ms.status = 'unread'")
@@ -3,7 +3,9 @@ package com.example.social_media.repository.payment;
 import com.example.social_media.entity.AccountUpgrade;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
+import java.time.Instant;
 import java.util.Set;
 
 public interface AccountUpgradeRepository extends JpaRepository<AccountUpgrade, Long> {
@@ -13,4 +15,9 @@ public interface AccountUpgradeRepository extends JpaRepository<AccountUpgrade,
             "FROM AccountUpgrade a " +
             "WHERE a.status = true AND a.expireTime > CURRENT_TIMESTAMP")
     Set<Integer> findActivePremiumUserIds();
+
+    @Query("SELECT COUNT(a) > 0 " +
+            "FROM AccountUpgrade a " +
+            "WHERE a.user.id = :userId AND a.status = true AND a.expireTime > :asOf")
+    boolean isPremiumAt(@Param("userId") Integer userId, @Param("asOf") Instant asOf);
 }
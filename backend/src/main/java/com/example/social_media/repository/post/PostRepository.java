@@ -10,7 +10,9 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.jpa.repository.query.Procedure;
 import org.springframework.data.repository.query.Param;
 
+import java.time.Instant;
 import java.util.List;
+import java.util.Optional;
 
 public interface PostRepository extends JpaRepository<Post, Integer> {
     // Các phương thức hiện có giữ nguyên
@@ -64,6 +66,118 @@ public interface PostRepository extends JpaRepository<Post, Integer> {
     """, nativeQuery = true)
     List<Post> findNewsfeedPosts(@Param("userId") Integer userId);
 
+    // Newsfeed phân trang keyset trong một ngày [dayStart, dayEnd): cùng điều kiện hiển thị như findNewsfeedPosts,
+    // sắp xếp theo (premium, created_at, id) và chỉ đọc các bài đứng sau con trỏ (beforePremium, beforeCreatedAt, beforeId).
+    // Premium được tính tại thời điểm premiumAsOf cố định theo con trỏ để các trang của cùng một lượt đọc nhất quán
+    @Query(value = """
+    WITH feed AS (
+        SELECT p.*,
+               CASE WHEN EXISTS (
+                   SELECT 1 FROM tblAccountUpgrade au
+                   WHERE au.user_id = p.owner_id AND au.status = 1 AND au.expire_time > :premiumAsOf
+               ) THEN 1 ELSE 0 END AS is_premium
+        FROM tblPost p
+        WHERE p.status = 1
+          AND p.created_at >= :dayStart AND p.created_at < :dayEnd
+          AND (
+            p.owner_id = :userId
+            OR (
+                p.owner_id IN (
+                    SELECT friend_id FROM tblFriendship
+                    WHERE user_id = :userId AND friendship_status = 'accepted' AND status = 1
+                    UNION
+                    SELECT user_id FROM tblFriendship
+                    WHERE friend_id = :userId AND friendship_status = 'accepted' AND status = 1
+                )
+                AND p.privacy_setting IN ('friends', 'public')
+            )
+            OR p.privacy_setting = 'public'
+            OR (
+                p.group_id IN (
+                    SELECT group_id FROM tblGroupMember
+                    WHERE user_id = :userId AND invite_status = 'ACCEPTED' AND status = 1
+                )
+            )
+          )
+    )
+    SELECT f.*
+    FROM feed f
+    WHERE f.is_premium < :beforePremium
+       OR (
+            f.is_premium = :beforePremium
+            AND (f.created_at < :beforeCreatedAt OR (f.created_at = :beforeCreatedAt AND f.id < :beforeId))
+       )
+    ORDER BY f.is_premium DESC, f.created_at DESC, f.id DESC
+    OFFSET 0 ROWS FETCH NEXT :limit ROWS ONLY
+    """, nativeQuery = true)
+    List<Post> findNewsfeedPostsInDay(@Param("userId") Integer userId,
+                                      @Param("dayStart") Instant dayStart,
+                                      @Param("dayEnd") Instant dayEnd,
+                                      @Param("premiumAsOf") Instant premiumAsOf,
+                                      @Param("beforePremium") int beforePremium,
+                                      @Param("beforeCreatedAt") Instant beforeCreatedAt,
+                                      @Param("beforeId") Integer beforeId,
+                                      @Param("limit") int limit);
+
+    // Tối đa limit bài hiển thị mới nhất theo created_at, dùng để dựng lại timeline Redis
+    @Query(value = """
+    SELECT TOP (:limit) p.*
+    FROM tblPost p
+    WHERE p.status = 1
+      AND (
+        p.owner_id = :userId
+        OR (
+            p.owner_id IN (
+                SELECT friend_id FROM tblFriendship
+                WHERE user_id = :userId AND friendship_status = 'accepted' AND status = 1
+                UNION
+                SELECT user_id FROM tblFriendship
+                WHERE friend_id = :userId AND friendship_status = 'accepted' AND status = 1
+            )
+            AND p.privacy_setting IN ('friends', 'public')
+        )
+        OR p.privacy_setting = 'public'
+        OR (
+            p.group_id IN (
+                SELECT group_id FROM tblGroupMember
+                WHERE user_id = :userId AND invite_status = 'ACCEPTED' AND status = 1
+            )
+        )
+      )
+    ORDER BY p.created_at DESC, p.id DESC
+    """, nativeQuery = true)
+    List<Post> findLatestNewsfeedPosts(@Param("userId") Integer userId, @Param("limit") int limit);
+
+    // Bài hiển thị mới nhất trước mốc before, dùng để nhảy sang ngày có bài kế tiếp của newsfeed phân trang
+    @Query(value = """
+    SELECT TOP 1 p.*
+    FROM tblPost p
+    WHERE p.status = 1
+      AND p.created_at < :before
+      AND (
+        p.owner_id = :userId
+        OR (
+            p.owner_id IN (
+                SELECT friend_id FROM tblFriendship
+                WHERE user_id = :userId AND friendship_status = 'accepted' AND status = 1
+                UNION
+                SELECT user_id FROM tblFriendship
+                WHERE friend_id = :userId AND friendship_status = 'accepted' AND status = 1
+            )
+            AND p.privacy_setting IN ('friends', 'public')
+        )
+        OR p.privacy_setting = 'public'
+        OR (
+            p.group_id IN (
+                SELECT group_id FROM tblGroupMember
+                WHERE user_id = :userId AND invite_status = 'ACCEPTED' AND status = 1
+            )
+        )
+      )
+    ORDER BY p.created_at DESC, p.id DESC
+    """, nativeQuery = true)
+    Optional<Post> findLatestNewsfeedPostBefore(@Param("userId") Integer userId, @Param("before") Instant before);
+
     @EntityGraph(attributePaths = {"tblComments"})
     @Query("SELECT p FROM Post p WHERE p.owner.username = :username AND p.status = true ORDER BY p.createdAt DESC")
     List<Post> findActivePostsByUsername(String username);
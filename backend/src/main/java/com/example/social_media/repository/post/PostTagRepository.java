@@ -2,8 +2,11 @@ package com.example.social_media.repository.post;
 
 import com.example.social_media.entity.PostTag;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -14,4 +17,7 @@ public interface PostTagRepository extends JpaRepository<PostTag, Integer> {
     List<PostTag> findByPost_IdInAndStatusTrue(List<Integer> postIds);
 
     List<PostTag> findAllByPostIdInAndStatusTrue(List<Integer> postIds);
+
+    @Query("SELECT pt FROM PostTag pt JOIN FETCH pt.taggedUser WHERE pt.post.id IN :postIds AND pt.status = true")
+    List<PostTag> findActiveByPostIdsWithTaggedUser(@Param("postIds") Collection<Integer> postIds);
 }
\ No newline at end of file
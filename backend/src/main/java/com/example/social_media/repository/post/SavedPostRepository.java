@@ -8,6 +8,7 @@ import org.springframework.data.jpa.repository.query.Procedure;
 import org.springframework.data.repository.query.Param;
 
 import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -30,6 +31,12 @@ public interface SavedPostRepository extends JpaRepository<SavedPost, SavedPostI
             @Param("from") Instant from,
             @Param("to") Instant to);
 
+    @Query("SELECT sp.post.id FROM SavedPost sp WHERE sp.user.id = :userId AND sp.post.id IN :postIds AND sp.status = true")
+    List<Integer> findSavedPostIdsByUserIdAndPostIdIn(@Param("userId") Integer userId, @Param("postIds") Collection<Integer> postIds);
+
+    @Query("SELECT sp.user.username FROM SavedPost sp WHERE sp.post.id = :postId AND sp.status = true")
+    List<String> findUsernamesByPostId(@Param("postId") Integer postId);
+
     // Gọi stored procedure sp_SavePost
     @Procedure(procedureName = "sp_SavePost")
     void callSavePost(@Param("user_id") Integer userId, @Param("post_id") Integer postId);
@@ -3,16 +3,15 @@
     import com.example.social_media.dto.media.MediaDto;
     import com.example.social_media.dto.post.FlagResultDto;
     import com.example.social_media.entity.*;
-    import com.example.social_media.repository.TargetTypeRepository;
     import com.example.social_media.repository.UserRepository;
     import com.example.social_media.repository.post.PostAIModerationRepository;
     import com.example.social_media.repository.post.PostRepository;
     import com.example.social_media.repository.report.ReportHistoryRepository;
     import com.example.social_media.repository.report.ReportReasonRepository;
     import com.example.social_media.repository.report.ReportRepository;
-    import com.example.social_media.repository.report.ReportStatusRepository;
     import com.example.social_media.service.MediaService;
     import com.example.social_media.service.NotificationService;
+    import com.example.social_media.service.ReferenceDataRegistry;
     import lombok.RequiredArgsConstructor;
     import lombok.extern.slf4j.Slf4j;
     import org.springframework.data.domain.Pageable;
@@ -37,8 +36,7 @@
         private final ReportRepository reportRepository;
         private final ReportReasonRepository reportReasonRepository;
         private final ReportHistoryRepository reportHistoryRepository;
-        private final ReportStatusRepository reportStatusRepository;
-        private final TargetTypeRepository targetTypeRepository;
+        private final ReferenceDataRegistry referenceDataRegistry;
         private final UserRepository userRepository;
         private final NotificationService notificationService;
         private final MediaService mediaService;
@@ -117,10 +115,10 @@
         private void createAIReport(Post post, ReportReason reason, List<String> violations,
                                     Optional<FlagResultDto> contentResultOpt,
                                     Optional<FlagResultDto> imageResultOpt) {
-            TargetType targetType = targetTypeRepository.findById(1)
+            TargetType targetType = referenceDataRegistry.findTargetType(1)
                     .orElseThrow(() -> new IllegalStateException("Không tìm thấy loại đối tượng báo cáo"));
 
-            ReportStatus status = reportStatusRepository.findById(1)
+            ReportStatus status = referenceDataRegistry.findReportStatus(1)
                     .orElseThrow(() -> new IllegalStateException("Không tìm thấy trạng thái báo cáo"));
 
             User systemUser = userRepository.findFirstByIsSystemTrue()
@@ -7,7 +7,6 @@ import com.example.social_media.entity.User;
 import com.example.social_media.exception.UserNotFoundException;
 import com.example.social_media.repository.UserRepository;
 import com.example.social_media.repository.ActivityLogRepository;
-import com.example.social_media.repository.ActionTypeRepository;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
@@ -22,22 +21,22 @@ import java.util.stream.Collectors;
 @Service
 public class ActivityLogService {
     private final ActivityLogRepository activityLogRepository;
-    private final ActionTypeRepository actionTypeRepository;
+    private final ReferenceDataRegistry referenceDataRegistry;
     private final UserRepository userRepository;
 
     public ActivityLogService(
             ActivityLogRepository activityLogRepository,
-            ActionTypeRepository actionTypeRepository,
+            ReferenceDataRegistry referenceDataRegistry,
             UserRepository userRepository
     ) {
         this.activityLogRepository = activityLogRepository;
-        this.actionTypeRepository = actionTypeRepository;
+        this.referenceDataRegistry = referenceDataRegistry;
         this.userRepository = userRepository;
     }
 
     @Transactional
     public void logActivity(Integer userId, String actionTypeName, String ipAddress, String device, Integer targetId, String targetType) {
-        ActionType actionType = actionTypeRepository.findByName(actionTypeName)
+        ActionType actionType = referenceDataRegistry.findActionType(actionTypeName)
                 .orElseThrow(() -> new IllegalArgumentException("Invalid action type: " + actionTypeName));
 
         User user = userRepository.findById(userId)
@@ -58,7 +57,7 @@ public class ActivityLogService {
 
     @Transactional
     public void logUserActivity(Integer userId, String actionTypeName, String description) {
-        ActionType actionType = actionTypeRepository.findByName(actionTypeName)
+        ActionType actionType = referenceDataRegistry.findActionType(actionTypeName)
                 .orElseThrow(() -> new IllegalArgumentException("Invalid action type: " + actionTypeName));
 
         User user = userRepository.findById(userId)
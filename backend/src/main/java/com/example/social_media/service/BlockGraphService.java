@@ -0,0 +1,127 @@
+package com.example.social_media.service;
+
+import com.example.social_media.repository.BlockRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Tập user bị chặn / đã chặn của một người xem, nạp một lần rồi cache trong Redis ("blocks:{userId}").
+ * Dùng để lọc feed, bình luận, follow, tìm kiếm bằng phép kiểm tra trong bộ nhớ thay vì query từng cặp user.
+ */
+@Service
+public class BlockGraphService {
+
+    private static final Logger logger = LoggerFactory.getLogger(BlockGraphService.class);
+
+    private static final String CACHE_KEY_PREFIX = "blocks:";
+    private static final Duration CACHE_TTL = Duration.ofMinutes(30);
+
+    private final BlockRepository blockRepository;
+    private final StringRedisTemplate stringRedisTemplate;
+
+    public BlockGraphService(BlockRepository blockRepository, StringRedisTemplate stringRedisTemplate) {
+        this.blockRepository = blockRepository;
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    public BlockedUsers getBlockedUsers(Integer viewerId) {
+        if (viewerId == null) {
+            return BlockedUsers.EMPTY;
+        }
+        String cacheKey = CACHE_KEY_PREFIX + viewerId;
+        try {
+            String cached = stringRedisTemplate.opsForValue().get(cacheKey);
+            if (cached != null) {
+                return BlockedUsers.parse(cached);
+            }
+        } catch (Exception e) {
+            logger.warn("Không đọc được danh sách chặn từ Redis cho user {}: {}", viewerId, e.getMessage());
+        }
+
+        BlockedUsers blockedUsers = BlockedUsers.of(blockRepository.findBlockedOrBlockingUserIds(viewerId));
+        try {
+            // Lưu cả tập rỗng để không query lại DB cho user chưa chặn ai
+            stringRedisTemplate.opsForValue().set(cacheKey, blockedUsers.serialize(), CACHE_TTL);
+        } catch (Exception e) {
+            logger.warn("Không ghi được danh sách chặn vào Redis cho user {}: {}", viewerId, e.getMessage());
+        }
+        return blockedUsers;
+    }
+
+    public boolean isBlockedBetween(Integer viewerId, Integer otherUserId) {
+        return otherUserId != null && getBlockedUsers(viewerId).contains(otherUserId);
+    }
+
+    // Chặn / bỏ chặn thay đổi tập của cả hai phía; xóa sau khi commit để không nạp lại dữ liệu cũ
+    public void invalidate(Integer userId, Integer otherUserId) {
+        Runnable eviction = () -> {
+            try {
+                stringRedisTemplate.delete(List.of(CACHE_KEY_PREFIX + userId, CACHE_KEY_PREFIX + otherUserId));
+            } catch (Exception e) {
+                logger.warn("Không xóa được cache danh sách chặn của {} / {}: {}", userId, otherUserId, e.getMessage());
+            }
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    eviction.run();
+                }
+            });
+        } else {
+            eviction.run();
+        }
+    }
+
+    /**
+     * Tập id dạng int[] đã sắp xếp, kiểm tra bằng tìm kiếm nhị phân (không boxing).
+     */
+    public static final class BlockedUsers {
+
+        public static final BlockedUsers EMPTY = new BlockedUsers(new int[0]);
+
+        private final int[] sortedIds;
+
+        private BlockedUsers(int[] sortedIds) {
+            this.sortedIds = sortedIds;
+        }
+
+        static BlockedUsers of(List<Integer> ids) {
+            int[] array = ids.stream().mapToInt(Integer::intValue).distinct().sorted().toArray();
+            return array.length == 0 ? EMPTY : new BlockedUsers(array);
+        }
+
+        static BlockedUsers parse(String value) {
+            if (value.isEmpty()) {
+                return EMPTY;
+            }
+            int[] array = Arrays.stream(value.split(",")).mapToInt(Integer::parseInt).sorted().toArray();
+            return new BlockedUsers(array);
+        }
+
+        String serialize() {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < sortedIds.length; i++) {
+                if (i > 0) sb.append(',');
+                sb.append(sortedIds[i]);
+            }
+            return sb.toString();
+        }
+
+        public boolean contains(int userId) {
+            return Arrays.binarySearch(sortedIds, userId) >= 0;
+        }
+
+        public boolean isEmpty() {
+            return sortedIds.length == 0;
+        }
+    }
+}
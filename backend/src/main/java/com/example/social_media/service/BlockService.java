@@ -19,10 +19,15 @@ import java.util.stream.Collectors;
 public class BlockService {
     private final BlockRepository blockRepository;
     private final UserRepository userRepository;
+    private final BlockGraphService blockGraphService;
+    private final FeedCacheInvalidationService feedCacheInvalidationService;
 
-    public BlockService(BlockRepository blockRepository, UserRepository userRepository) {
+    public BlockService(BlockRepository blockRepository, UserRepository userRepository,
+                        BlockGraphService blockGraphService, FeedCacheInvalidationService feedCacheInvalidationService) {
         this.blockRepository = blockRepository;
         this.userRepository = userRepository;
+        this.blockGraphService = blockGraphService;
+        this.feedCacheInvalidationService = feedCacheInvalidationService;
     }
 
     @Transactional
@@ -50,6 +55,7 @@ public class BlockService {
         block.setStatus(true);
 
         blockRepository.save(block);
+        onBlockChanged(user, blockedUser);
     }
 
     @Transactional
@@ -61,6 +67,14 @@ public class BlockService {
         Block block = blockRepository.findByUserAndBlockedUserAndStatus(user, blockedUser, true)
                 .orElseThrow(() -> new IllegalArgumentException("User is not blocked"));
         blockRepository.delete(block);
+        onBlockChanged(user, blockedUser);
+    }
+
+    // Danh sách chặn và feed đã cache của cả hai phía không còn đúng
+    private void onBlockChanged(User user, User otherUser) {
+        blockGraphService.invalidate(user.getId(), otherUser.getId());
+        feedCacheInvalidationService.evictForViewerAction(user.getUsername());
+        feedCacheInvalidationService.evictForViewerAction(otherUser.getUsername());
     }
 
     @Transactional(readOnly = true)
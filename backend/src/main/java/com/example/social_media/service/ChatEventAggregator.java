@@ -0,0 +1,250 @@
+package com.example.social_media.service;
+
+import com.example.social_media.entity.User;
+import com.example.social_media.repository.ChatMemberRepository;
+import com.example.social_media.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Gom sự kiện đang gõ và trạng thái online trước khi phát qua WebSocket.
+ * Đang gõ (theo chat, theo người dùng): phát "bắt đầu" ngay ở frame đầu tiên, bỏ các frame lặp lại,
+ * chỉ phát "dừng" khi người dùng ngừng gõ quá {@code chat.typing.stop-debounce-ms} hoặc im lặng quá
+ * {@code chat.typing.timeout-ms}. Online: ping chỉ cập nhật thời điểm, mỗi chu kỳ gửi một frame
+ * /topic/presence/{chatId} chứa những thành viên vừa đổi trạng thái; đổi qua rồi đổi lại trong cùng chu kỳ thì không gửi.
+ * Trạng thái online dùng chung giữa các node trong Redis: ZSET "presence:sessions" (member "{userId}:{nodeId}",
+ * score = lần ping cuối) và HASH "presence:online" (userId -> số node đang có session). Một user chỉ đổi trạng thái
+ * khi node đầu tiên / node cuối cùng của họ thay đổi, và script cập nhật chạy nguyên tử nên mỗi lần đổi trạng thái
+ * chỉ được một node phát.
+ */
+@Service
+public class ChatEventAggregator {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChatEventAggregator.class);
+
+    private static final String PRESENCE_SESSIONS_KEY = "presence:sessions";
+    private static final String PRESENCE_ONLINE_KEY = "presence:online";
+    private static final int PRESENCE_REAP_LIMIT = 500;
+
+    /*
+     * ARGV: nodeId, now, cutoff, reapLimit, số user online cục bộ, các userId online cục bộ..., các userId đã rời node.
+     * Trả về cặp (userId, 1 = vừa online / 0 = vừa offline) cho những user đổi trạng thái trên toàn cluster.
+     * Member quá cutoff (node chết hoặc không ghi được) bị dọn ở đây nên trạng thái tự lành.
+     */
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> PRESENCE_SCRIPT = new DefaultRedisScript<>("""
+            local node = ARGV[1]
+            local now = ARGV[2]
+            local onlineCount = tonumber(ARGV[5])
+            local changes = {}
+            local function leave(member)
+                if redis.call('ZREM', KEYS[1], member) == 1 then
+                    local userId = string.match(member, '^(%d+):')
+                    if redis.call('HINCRBY', KEYS[2], userId, -1) <= 0 then
+                        redis.call('HDEL', KEYS[2], userId)
+                        table.insert(changes, userId)
+                        table.insert(changes, 0)
+                    end
+                end
+            end
+            for i = 6, 5 + onlineCount do
+                if redis.call('ZADD', KEYS[1], now, ARGV[i] .. ':' .. node) == 1 then
+                    if redis.call('HINCRBY', KEYS[2], ARGV[i], 1) == 1 then
+                        table.insert(changes, ARGV[i])
+                        table.insert(changes, 1)
+                    end
+                end
+            end
+            for i = 6 + onlineCount, #ARGV do
+                leave(ARGV[i] .. ':' .. node)
+            end
+            local stale = redis.call('ZRANGEBYSCORE', KEYS[1], '-inf', '(' .. ARGV[3], 'LIMIT', 0, tonumber(ARGV[4]))
+            for _, member in ipairs(stale) do
+                leave(member)
+            end
+            return changes
+            """, List.class);
+
+    private final SimpMessagingTemplate messagingTemplate;
+    private final UserRepository userRepository;
+    private final ChatMemberRepository chatMemberRepository;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final long typingStopDebounceMs;
+    private final long typingTimeoutMs;
+    private final long presenceTimeoutMs;
+
+    // Có entry nghĩa là "bắt đầu gõ" đã được phát và chưa phát "dừng"
+    private final Map<TypingKey, TypingState> typingStates = new ConcurrentHashMap<>();
+    private final Map<String, PresenceSession> sessions = new ConcurrentHashMap<>();
+    // Những user node này đã đăng ký online trong Redis; chỉ luồng flush định kỳ sửa
+    private final Set<Integer> registeredOnline = new HashSet<>();
+    // Thay đổi đã nhận từ Redis nhưng chưa phát được (lỗi tải danh sách chat), phát lại ở chu kỳ sau
+    private final Map<Integer, Boolean> pendingChanges = new HashMap<>();
+
+    public ChatEventAggregator(SimpMessagingTemplate messagingTemplate, UserRepository userRepository,
+                               ChatMemberRepository chatMemberRepository, StringRedisTemplate stringRedisTemplate,
+                               @Value("${chat.typing.stop-debounce-ms:1500}") long typingStopDebounceMs,
+                               @Value("${chat.typing.timeout-ms:6000}") long typingTimeoutMs,
+                               @Value("${chat.presence.timeout-ms:45000}") long presenceTimeoutMs) {
+        this.messagingTemplate = messagingTemplate;
+        this.userRepository = userRepository;
+        this.chatMemberRepository = chatMemberRepository;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.typingStopDebounceMs = typingStopDebounceMs;
+        this.typingTimeoutMs = typingTimeoutMs;
+        this.presenceTimeoutMs = presenceTimeoutMs;
+    }
+
+    public void onTyping(Integer chatId, Integer userId, boolean isTyping, Map<String, Object> payload) {
+        long now = System.currentTimeMillis();
+        AtomicReference<Map<String, Object>> started = new AtomicReference<>();
+        typingStates.compute(new TypingKey(chatId, userId), (key, state) -> {
+            if (state == null) {
+                if (!isTyping) return null; // Chưa phát "bắt đầu" thì không cần phát "dừng"
+                state = new TypingState();
+                started.set(payload);
+            }
+            state.payload = payload;
+            if (isTyping) {
+                state.lastTypingAt = now;
+                state.stopRequestedAt = 0;
+            } else if (state.stopRequestedAt == 0) {
+                state.stopRequestedAt = now;
+            }
+            return state;
+        });
+        if (started.get() != null) {
+            publishTyping(chatId, started.get(), true);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${chat.typing.flush-interval-ms:250}")
+    public void flushTyping() {
+        long now = System.currentTimeMillis();
+        for (TypingKey key : typingStates.keySet()) {
+            AtomicReference<Map<String, Object>> stopped = new AtomicReference<>();
+            typingStates.computeIfPresent(key, (k, state) -> {
+                boolean stop = (state.stopRequestedAt > 0 && now - state.stopRequestedAt >= typingStopDebounceMs)
+                        || now - state.lastTypingAt >= typingTimeoutMs;
+                if (!stop) return state;
+                stopped.set(state.payload);
+                return null;
+            });
+            if (stopped.get() != null) {
+                publishTyping(key.chatId(), stopped.get(), false);
+            }
+        }
+    }
+
+    public void onPing(String sessionId, String username) {
+        PresenceSession session = sessions.get(sessionId);
+        if (session == null) {
+            // Chỉ tra userId ở ping đầu tiên của session
+            Integer userId = userRepository.findByUsername(username).map(User::getId).orElse(null);
+            if (userId == null) return;
+            session = sessions.computeIfAbsent(sessionId, id -> new PresenceSession(userId));
+        }
+        session.lastPingAt = System.currentTimeMillis();
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent event) {
+        sessions.remove(event.getSessionId());
+    }
+
+    @Scheduled(fixedDelayString = "${chat.presence.flush-interval-ms:2000}")
+    public synchronized void flushPresence() {
+        long now = System.currentTimeMillis();
+        sessions.values().removeIf(session -> now - session.lastPingAt >= presenceTimeoutMs);
+        Set<Integer> online = new HashSet<>();
+        sessions.values().forEach(session -> online.add(session.userId));
+        List<Integer> left = registeredOnline.stream().filter(userId -> !online.contains(userId)).toList();
+
+        // Làm mới mọi user online cục bộ ở mỗi chu kỳ để score không quá cutoff
+        List<String> args = new ArrayList<>(5 + online.size() + left.size());
+        args.add(nodeId);
+        args.add(String.valueOf(now));
+        args.add(String.valueOf(now - presenceTimeoutMs));
+        args.add(String.valueOf(PRESENCE_REAP_LIMIT));
+        args.add(String.valueOf(online.size()));
+        online.forEach(userId -> args.add(String.valueOf(userId)));
+        left.forEach(userId -> args.add(String.valueOf(userId)));
+        try {
+            List<?> result = stringRedisTemplate.execute(PRESENCE_SCRIPT, List.of(PRESENCE_SESSIONS_KEY, PRESENCE_ONLINE_KEY),
+                    args.toArray());
+            registeredOnline.clear();
+            registeredOnline.addAll(online);
+            if (result != null) {
+                for (int i = 0; i + 1 < result.size(); i += 2) {
+                    Integer userId = Integer.valueOf(String.valueOf(result.get(i)));
+                    boolean isOnline = ((Number) result.get(i + 1)).longValue() == 1;
+                    // Đổi qua rồi đổi lại trước khi kịp phát thì không gửi
+                    if (pendingChanges.containsKey(userId) && pendingChanges.get(userId) != isOnline) {
+                        pendingChanges.remove(userId);
+                    } else {
+                        pendingChanges.put(userId, isOnline);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            // Giữ nguyên trạng thái đã đăng ký, chu kỳ sau gửi lại
+            logger.warn("Không cập nhật được trạng thái online trên Redis: {}", e.getMessage());
+        }
+        if (pendingChanges.isEmpty()) return;
+
+        Map<Integer, Map<Integer, Boolean>> changesByChat = new HashMap<>();
+        try {
+            for (Object[] row : chatMemberRepository.findActiveChatIdsByUserIds(pendingChanges.keySet())) {
+                Integer userId = (Integer) row[0];
+                changesByChat.computeIfAbsent((Integer) row[1], chatId -> new HashMap<>()).put(userId, pendingChanges.get(userId));
+            }
+        } catch (Exception e) {
+            logger.warn("Không tải được danh sách chat để phát trạng thái online: {}", e.getMessage());
+            return;
+        }
+        int changed = pendingChanges.size();
+        pendingChanges.clear();
+
+        changesByChat.forEach((chatId, presence) ->
+                messagingTemplate.convertAndSend("/topic/presence/" + chatId, Map.of("chatId", chatId, "presence", presence)));
+        logger.debug("Đã phát trạng thái online của {} người dùng tới {} chat", changed, changesByChat.size());
+    }
+
+    private void publishTyping(Integer chatId, Map<String, Object> payload, boolean isTyping) {
+        Map<String, Object> typingData = new HashMap<>(payload);
+        typingData.put("isTyping", isTyping);
+        messagingTemplate.convertAndSend("/topic/typing/" + chatId, typingData);
+    }
+
+    private record TypingKey(Integer chatId, Integer userId) {
+    }
+
+    // Chỉ được sửa bên trong compute của typingStates
+    private static class TypingState {
+        private long lastTypingAt;
+        private long stopRequestedAt;
+        private Map<String, Object> payload;
+    }
+
+    private static class PresenceSession {
+        private final Integer userId;
+        private volatile long lastPingAt;
+
+        private PresenceSession(Integer userId) {
+            this.userId = userId;
+        }
+    }
+}
@@ -6,8 +6,8 @@ import com.example.social_media.entity.*;
 import com.example.social_media.exception.UnauthorizedException;
 import com.example.social_media.repository.ChatMemberRepository;
 import com.example.social_media.repository.ChatRepository;
-import com.example.social_media.repository.message.MessageRepository;
-import com.example.social_media.repository.message.MessageStatusRepository;
+import com.example.social_media.repository.DirectChatRepository;
+import com.example.social_media.repository.message.JdbcChatSummaryRepository;
 import com.example.social_media.repository.UserRepository;
 import jakarta.persistence.EntityManager;
 import jakarta.persistence.PersistenceContext;
@@ -18,12 +18,18 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Instant;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 
 @Service
 public class ChatService {
 
+    private static final int MAX_INBOX_PAGE_SIZE = 100;
+    // Mốc con trỏ cho trang đầu tiên, lớn hơn mọi thời điểm thực tế (vẫn nằm trong miền DATETIME của SQL Server)
+    private static final Instant INBOX_CURSOR_START = Instant.parse("9000-01-01T00:00:00Z");
+
 
     @PersistenceContext
     private EntityManager entityManager;
@@ -37,6 +43,10 @@ public class ChatService {
     private ChatMemberRepository chatMemberRepository;
 
 
+    @Autowired
+    private DirectChatRepository directChatRepository;
+
+
     @Autowired
     private CustomUserDetailsService userDetailsService;
 
@@ -46,11 +56,11 @@ public class ChatService {
 
 
     @Autowired
-    private MessageRepository messageRepository;
+    private UnreadCounterService unreadCounterService;
 
 
     @Autowired
-    private MessageStatusRepository messageStatusRepository;
+    private JdbcChatSummaryRepository chatSummaryRepository;
 
 
     @Transactional
@@ -65,46 +75,43 @@ public class ChatService {
         System.out.println("Found currentUser: " + currentUser.getDisplayName() + ", targetUser: " + targetUser.getDisplayName());
 
 
-        // Kiểm tra chat 1-1 đã tồn tại
-        List<ChatMember> targetUserChats = chatMemberRepository.findByUserId(targetUser.getId());
-        for (ChatMember cm : targetUserChats) {
-            List<ChatMember> members = chatMemberRepository.findByChatId(cm.getChat().getId());
-            if (members.stream().anyMatch(m -> m.getUser().getId().equals(currentUser.getId())) &&
-                    members.size() == 2 && !cm.getChat().getIsGroup()) {
-                Chat existingChat = cm.getChat();
-                System.out.println("Found existing chat: ID=" + existingChat.getId());
-
-
-                // Khôi phục ChatMember cho currentUser với status=true và joinedAt mới
-                ChatMember existingMember = chatMemberRepository.findByChatIdAndUserId(existingChat.getId(), currentUser.getId())
-                        .orElse(null);
-                if (existingMember == null) {
-                    ChatMember newMember = new ChatMember();
-                    ChatMemberId memberId = new ChatMemberId();
-                    memberId.setChatId(existingChat.getId());
-                    memberId.setUserId(currentUser.getId());
-                    newMember.setId(memberId);
-                    newMember.setChat(existingChat);
-                    newMember.setUser(currentUser);
-                    newMember.setJoinedAt(Instant.now());
-                    newMember.setStatus(true);
-                    newMember.setIsAdmin(false);
-                    newMember.setIsSpam(false);
-                    try {
-                        chatMemberRepository.saveAndFlush(newMember);
-                        System.out.println("Restored ChatMember for userId: " + currentUser.getId() + ", chatId: " + existingChat.getId() + ", status=true");
-                    } catch (Exception e) {
-                        System.err.println("Error restoring ChatMember: " + e.getMessage());
-                        throw new RuntimeException("Failed to restore ChatMember due to: " + e.getMessage(), e);
-                    }
-                } else if (!existingMember.getStatus()) {
-                    existingMember.setStatus(true);
-                    existingMember.setJoinedAt(Instant.now()); // Cập nhật joinedAt để lọc tin nhắn
-                    chatMemberRepository.saveAndFlush(existingMember);
-                    System.out.println("Updated ChatMember status to true for userId: " + currentUser.getId() + ", chatId: " + existingChat.getId());
+        // Kiểm tra chat 1-1 đã tồn tại: một lần đọc theo cặp (id nhỏ, id lớn)
+        DirectChatId pairId = DirectChatId.of(currentUser.getId(), targetUser.getId());
+        Optional<Chat> directChat = directChatRepository.findChatById(pairId);
+        if (directChat.isPresent()) {
+            Chat existingChat = directChat.get();
+            System.out.println("Found existing chat: ID=" + existingChat.getId());
+
+
+            // Khôi phục ChatMember cho currentUser với status=true và joinedAt mới
+            ChatMember existingMember = chatMemberRepository.findByChatIdAndUserId(existingChat.getId(), currentUser.getId())
+                    .orElse(null);
+            if (existingMember == null) {
+                ChatMember newMember = new ChatMember();
+                ChatMemberId memberId = new ChatMemberId();
+                memberId.setChatId(existingChat.getId());
+                memberId.setUserId(currentUser.getId());
+                newMember.setId(memberId);
+                newMember.setChat(existingChat);
+                newMember.setUser(currentUser);
+                newMember.setJoinedAt(Instant.now());
+                newMember.setStatus(true);
+                newMember.setIsAdmin(false);
+                newMember.setIsSpam(false);
+                try {
+                    chatMemberRepository.saveAndFlush(newMember);
+                    System.out.println("Restored ChatMember for userId: " + currentUser.getId() + ", chatId: " + existingChat.getId() + ", status=true");
+                } catch (Exception e) {
+                    System.err.println("Error restoring ChatMember: " + e.getMessage());
+                    throw new RuntimeException("Failed to restore ChatMember due to: " + e.getMessage(), e);
                 }
-                return convertToDto(existingChat, currentUser.getId());
+            } else if (!existingMember.getStatus()) {
+                existingMember.setStatus(true);
+                existingMember.setJoinedAt(Instant.now()); // Cập nhật joinedAt để lọc tin nhắn
+                chatMemberRepository.saveAndFlush(existingMember);
+                System.out.println("Updated ChatMember status to true for userId: " + currentUser.getId() + ", chatId: " + existingChat.getId());
             }
+            return convertToDto(existingChat, currentUser.getId());
         }
 
 
@@ -167,6 +174,8 @@ public class ChatService {
         try {
             chatMemberRepository.saveAndFlush(member1);
             chatMemberRepository.saveAndFlush(member2);
+            // Khóa chính (user_low_id, user_high_id) chặn việc tạo hai chat 1-1 cho cùng một cặp
+            directChatRepository.saveAndFlush(new DirectChat(pairId, savedChat, Instant.now()));
             System.out.println("Saved ChatMembers for Chat id: " + savedChat.getId());
         } catch (Exception e) {
             System.err.println("Error during saveAndFlush ChatMember: " + e.getMessage());
@@ -180,12 +189,22 @@ public class ChatService {
     }
 
 
+    /**
+     * Một trang hộp thư, chat có hoạt động gần nhất trước. Tin nhắn cuối và tên người đối diện đọc trong một truy vấn
+     * từ tblChatSummary, số tin chưa đọc đọc một lần từ bộ đếm Redis.
+     */
     @Transactional(readOnly = true)
-    public List<ChatDto> getChats(String username) {
+    public List<ChatDto> getChats(String username, Instant beforeActivityAt, Integer beforeChatId, int size) {
         User user = userDetailsService.getUserByUsername(username);
-        List<ChatDto> chats = chatMemberRepository.findByUserId(user.getId()).stream()
-                .filter(cm -> cm.getStatus())
-                .map(cm -> convertToDto(cm.getChat(), user.getId()))
+        int pageSize = Math.max(1, Math.min(size, MAX_INBOX_PAGE_SIZE));
+
+        // Trang đầu tiên: dùng con trỏ "vô cực" để tránh bind tham số null
+        Instant cursorActivityAt = beforeActivityAt != null ? beforeActivityAt : INBOX_CURSOR_START;
+        Integer cursorChatId = beforeChatId != null ? beforeChatId : Integer.MAX_VALUE;
+
+        Map<Integer, Long> unreadCounts = unreadCounterService.getCounts(user.getId());
+        List<ChatDto> chats = chatSummaryRepository.findInbox(user.getId(), cursorActivityAt, cursorChatId, pageSize).stream()
+                .map(row -> toDto(row, unreadCounts.getOrDefault(row.chatId(), 0L).intValue()))
                 .collect(Collectors.toList());
         System.out.println("Returning chats for user " + username + ": count=" + chats.size());
         return chats;
@@ -224,29 +243,25 @@ public class ChatService {
 
 
     public ChatDto convertToDto(Chat chat, Integer currentUserId) {
-        Message lastMessage = messageRepository.findTopByChatIdOrderByCreatedAtDesc(chat.getId())
-                .orElse(null);
-        String recipientName = chatMemberRepository.findByChatId(chat.getId()).stream()
-                .filter(cm -> !cm.getUser().getId().equals(currentUserId))
-                .findFirst()
-                .map(cm -> cm.getUser().getDisplayName())
-                .orElse(chat.getName());
-        int unreadMessagesCount = messageStatusRepository.countUnreadByChatIdAndUserId(chat.getId(), currentUserId);
-        System.out.println("convertToDto: Chat ID=" + chat.getId() + ", Current User ID=" + currentUserId +
-                ", Recipient Name=" + recipientName +
-                ", Last Message=" + (lastMessage != null ? lastMessage.getContent() : "null") +
-                ", Unread Messages Count=" + unreadMessagesCount);
+        return chatSummaryRepository.findByChatId(chat.getId(), currentUserId)
+                .map(row -> toDto(row, unreadCounterService.getUnreadCount(currentUserId, chat.getId())))
+                .orElseGet(() -> new ChatDto(chat.getId(), chat.getName(), "", 0, chat.getCreatedAt()));
+    }
+
+
+    // Tên chat là tên hiển thị của người đối diện, không có thì dùng tên chat
+    private ChatDto toDto(JdbcChatSummaryRepository.ChatSummaryRow row, int unreadMessagesCount) {
         return new ChatDto(
-                chat.getId(),
-                recipientName,
-                lastMessage != null ? lastMessage.getContent() : "",
-                unreadMessagesCount
+                row.chatId(),
+                row.peerDisplayName() != null ? row.peerDisplayName() : row.name(),
+                row.lastMessageContent() != null ? row.lastMessageContent() : "",
+                unreadMessagesCount,
+                row.lastActivityAt()
         );
     }
 
 
-    @Transactional(readOnly = true)
     public int countUnreadByChatIdAndUserId(Integer chatId, Integer userId) {
-        return messageStatusRepository.countUnreadByChatIdAndUserId(chatId, userId);
+        return unreadCounterService.getUnreadCount(userId, chatId);
     }
 }
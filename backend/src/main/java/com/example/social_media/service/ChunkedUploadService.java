@@ -0,0 +1,301 @@
+package com.example.social_media.service;
+
+import com.example.social_media.dto.media.ChunkedUploadDto;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * Upload nhiều phần, tiếp tục được sau khi lỗi: khởi tạo -> gửi từng phần (PUT thân request thô, gửi lại phần lỗi)
+ * -> hoàn tất. Mỗi phần được chép thẳng lên một object tạm trên GCS nên request chỉ giữ luồng trong thời gian của
+ * một phần; khi hoàn tất các phần được ghép ngay trên GCS (compose). Trạng thái nằm ở HASH "upload:{uploadId}",
+ * dùng chung giữa các node. Upload đã hoàn tất được gắn vào bài viết / tin nhắn qua {@link #claim};
+ * upload bỏ dở hoặc không được gắn quá {@code media.chunked.session-ttl} bị dọn định kỳ.
+ */
+@Service
+public class ChunkedUploadService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChunkedUploadService.class);
+
+    static final String STATUS_UPLOADING = "UPLOADING";
+    static final String STATUS_COMPLETED = "COMPLETED";
+
+    private static final String ACTIVE_KEY = "uploads:active";
+    private static final String COMPLETED_KEY = "uploads:completed";
+    private static final String PART_FIELD_PREFIX = "part:";
+
+    // Lấy upload đã hoàn tất của đúng người dùng và loại target rồi xóa trạng thái trong một bước: mỗi upload chỉ gắn được một lần
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> CLAIM_SCRIPT = new DefaultRedisScript<>("""
+            local fields = redis.call('HMGET', KEYS[1], 'status', 'userId', 'targetType', 'url', 'contentType')
+            if fields[1] ~= ARGV[1] or fields[2] ~= ARGV[2] or fields[3] ~= ARGV[3] then
+                return nil
+            end
+            redis.call('DEL', KEYS[1])
+            redis.call('ZREM', KEYS[2], ARGV[4])
+            return {fields[4], fields[5]}
+            """, List.class);
+
+    // Xóa upload đã hoàn tất nhưng không được gắn, trả về URL để trả lại tham chiếu
+    private static final DefaultRedisScript<String> EXPIRE_COMPLETED_SCRIPT = new DefaultRedisScript<>("""
+            redis.call('ZREM', KEYS[2], ARGV[1])
+            if redis.call('HGET', KEYS[1], 'status') ~= ARGV[2] then
+                return nil
+            end
+            local url = redis.call('HGET', KEYS[1], 'url')
+            redis.call('DEL', KEYS[1])
+            return url
+            """, String.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final GcsService gcsService;
+    private final long maxSize;
+    private final long maxPartSize;
+    private final int maxParts;
+    private final Duration sessionTtl;
+
+    public ChunkedUploadService(StringRedisTemplate stringRedisTemplate, GcsService gcsService,
+                                @Value("${media.chunked.max-size:2GB}") DataSize maxSize,
+                                @Value("${media.chunked.max-part-size:32MB}") DataSize maxPartSize,
+                                @Value("${media.chunked.max-parts:1000}") int maxParts,
+                                @Value("${media.chunked.session-ttl:PT24H}") Duration sessionTtl) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.gcsService = gcsService;
+        this.maxSize = maxSize.toBytes();
+        this.maxPartSize = maxPartSize.toBytes();
+        this.maxParts = maxParts;
+        this.sessionTtl = sessionTtl;
+    }
+
+    // Loại file theo target được kiểm tra trước bởi MediaService.validateContentTypeByTarget
+    public ChunkedUploadDto init(Integer userId, String targetTypeCode, String filename, String contentType, long size) {
+        if (size <= 0 || size > maxSize) {
+            throw new IllegalArgumentException("Kích thước file không hợp lệ: " + size);
+        }
+        if (filename == null || filename.isBlank()) {
+            throw new IllegalArgumentException("Tên file không được để trống");
+        }
+        String uploadId = UUID.randomUUID().toString().replace("-", "");
+        Map<String, String> fields = new HashMap<>();
+        fields.put("userId", String.valueOf(userId));
+        fields.put("targetType", targetTypeCode);
+        fields.put("filename", filename);
+        fields.put("contentType", contentType);
+        fields.put("size", String.valueOf(size));
+        fields.put("status", STATUS_UPLOADING);
+        hashOps().putAll(key(uploadId), fields);
+        touch(uploadId);
+        return status(uploadId, userId);
+    }
+
+    // Gửi lại cùng số phần thì ghi đè phần cũ
+    public ChunkedUploadDto uploadPart(String uploadId, Integer userId, int partNumber, InputStream in, long contentLength) throws IOException {
+        Map<String, String> fields = requireSession(uploadId, userId);
+        if (!STATUS_UPLOADING.equals(fields.get("status")) || fields.containsKey("completing")) {
+            throw new IllegalStateException("Upload đã hoàn tất hoặc đang được ghép");
+        }
+        if (partNumber < 1 || partNumber > maxParts) {
+            throw new IllegalArgumentException("Số phần không hợp lệ: " + partNumber);
+        }
+        if (contentLength <= 0 || contentLength > maxPartSize) {
+            throw new IllegalArgumentException("Kích thước phần không hợp lệ (cần Content-Length, tối đa " + maxPartSize + " byte)");
+        }
+
+        long received = gcsService.uploadChunk(uploadId, partNumber, in, contentLength);
+        hashOps().put(key(uploadId), PART_FIELD_PREFIX + partNumber, String.valueOf(received));
+        touch(uploadId);
+        return status(uploadId, userId);
+    }
+
+    public ChunkedUploadDto status(String uploadId, Integer userId) {
+        Map<String, String> fields = requireSession(uploadId, userId);
+        Map<Integer, Long> parts = parts(fields);
+
+        ChunkedUploadDto dto = new ChunkedUploadDto();
+        dto.setUploadId(uploadId);
+        dto.setFilename(fields.get("filename"));
+        dto.setContentType(fields.get("contentType"));
+        dto.setSize(Long.valueOf(fields.get("size")));
+        dto.setStatus(fields.get("status"));
+        dto.setParts(parts);
+        dto.setReceivedBytes(parts.values().stream().mapToLong(Long::longValue).sum());
+        dto.setUrl(fields.get("url"));
+        return dto;
+    }
+
+    /**
+     * Ghép các phần 1..N (liên tục, tổng đúng kích thước đã khai báo) thành file cuối trên GCS.
+     * File giữ một tham chiếu tới khi được gắn qua {@link #claim} hoặc bị dọn khi hết hạn.
+     */
+    public ChunkedUploadDto complete(String uploadId, Integer userId) throws IOException {
+        Map<String, String> fields = requireSession(uploadId, userId);
+        if (STATUS_COMPLETED.equals(fields.get("status"))) {
+            return status(uploadId, userId);
+        }
+
+        Map<Integer, Long> parts = parts(fields);
+        long size = Long.parseLong(fields.get("size"));
+        long received = 0;
+        for (int part = 1; part <= parts.size(); part++) {
+            Long partSize = parts.get(part);
+            if (partSize == null) {
+                throw new IllegalStateException("Thiếu phần " + part);
+            }
+            received += partSize;
+        }
+        if (received != size) {
+            throw new IllegalStateException("Đã nhận " + received + "/" + size + " byte");
+        }
+        if (!Boolean.TRUE.equals(hashOps().putIfAbsent(key(uploadId), "completing", "1"))) {
+            throw new IllegalStateException("Upload đang được ghép");
+        }
+
+        String url;
+        try {
+            url = gcsService.composeChunks(uploadId, parts.size(), fields.get("filename"), fields.get("contentType"), size);
+        } catch (IOException | RuntimeException e) {
+            hashOps().delete(key(uploadId), "completing");
+            throw e;
+        }
+        hashOps().putAll(key(uploadId), Map.of("status", STATUS_COMPLETED, "url", url));
+        // Upload đã hoàn tất giữ một tham chiếu: không để key tự hết hạn mà dọn qua uploads:completed
+        stringRedisTemplate.persist(key(uploadId));
+        stringRedisTemplate.opsForZSet().remove(ACTIVE_KEY, uploadId);
+        stringRedisTemplate.opsForZSet().add(COMPLETED_KEY, uploadId, System.currentTimeMillis());
+        return status(uploadId, userId);
+    }
+
+    public void abort(String uploadId, Integer userId) {
+        Map<String, String> fields = requireSession(uploadId, userId);
+        if (STATUS_COMPLETED.equals(fields.get("status"))) {
+            expireCompleted(uploadId);
+            return;
+        }
+        stringRedisTemplate.delete(key(uploadId));
+        stringRedisTemplate.opsForZSet().remove(ACTIVE_KEY, uploadId);
+        gcsService.deleteChunks(uploadId);
+    }
+
+    /**
+     * Kiểm tra mọi upload trước khi claim: claim lấy file ra khỏi Redis, nên một uploadId sai ở giữa danh sách
+     * không được làm mất các upload hợp lệ đã được lấy ra trước nó.
+     */
+    public void requireClaimable(List<String> uploadIds, Integer userId, String targetTypeCode) {
+        for (String uploadId : uploadIds) {
+            Map<String, String> fields = requireSession(uploadId, userId);
+            if (!STATUS_COMPLETED.equals(fields.get("status"))) {
+                throw new IllegalArgumentException("Upload chưa hoàn tất: " + uploadId);
+            }
+            if (!targetTypeCode.equals(fields.get("targetType"))) {
+                throw new IllegalArgumentException("Upload " + uploadId + " không dành cho " + targetTypeCode);
+            }
+        }
+    }
+
+    /**
+     * Lấy file của upload đã hoàn tất để gắn vào target; tham chiếu của file chuyển sang dòng media được tạo.
+     * Transaction của người gọi rollback thì tham chiếu được trả lại.
+     */
+    public ClaimedUpload claim(String uploadId, Integer userId, String targetTypeCode) {
+        List<?> result = stringRedisTemplate.execute(CLAIM_SCRIPT, List.of(key(uploadId), COMPLETED_KEY),
+                STATUS_COMPLETED, String.valueOf(userId), targetTypeCode, uploadId);
+        if (result == null || result.size() < 2) {
+            throw new IllegalArgumentException("Upload " + uploadId + " không tồn tại, chưa hoàn tất hoặc không dành cho " + targetTypeCode);
+        }
+        ClaimedUpload claimed = new ClaimedUpload((String) result.get(0), (String) result.get(1));
+        releaseOnRollback(claimed.url());
+        return claimed;
+    }
+
+    @Scheduled(fixedDelayString = "${media.chunked.cleanup-interval-ms:600000}")
+    public void cleanupExpired() {
+        double cutoff = System.currentTimeMillis() - sessionTtl.toMillis();
+        try {
+            Set<String> abandoned = stringRedisTemplate.opsForZSet().rangeByScore(ACTIVE_KEY, 0, cutoff);
+            if (abandoned != null) {
+                for (String uploadId : abandoned) {
+                    // Key phiên đã hết hạn theo TTL; chỉ còn các phần tạm trên GCS
+                    Long removed = stringRedisTemplate.opsForZSet().remove(ACTIVE_KEY, uploadId);
+                    if (removed != null && removed > 0) {
+                        gcsService.deleteChunks(uploadId);
+                    }
+                }
+            }
+            Set<String> unclaimed = stringRedisTemplate.opsForZSet().rangeByScore(COMPLETED_KEY, 0, cutoff);
+            if (unclaimed != null) {
+                unclaimed.forEach(this::expireCompleted);
+            }
+        } catch (Exception e) {
+            logger.warn("Dọn upload nhiều phần hết hạn thất bại: {}", e.getMessage());
+        }
+    }
+
+    private void expireCompleted(String uploadId) {
+        String url = stringRedisTemplate.execute(EXPIRE_COMPLETED_SCRIPT, List.of(key(uploadId), COMPLETED_KEY),
+                uploadId, STATUS_COMPLETED);
+        if (url != null) {
+            logger.info("Upload {} không được gắn vào nội dung nào, trả lại file {}", uploadId, url);
+            gcsService.releaseFile(url);
+        }
+    }
+
+    private void releaseOnRollback(String url) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) return;
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_ROLLED_BACK) {
+                    gcsService.releaseFile(url);
+                }
+            }
+        });
+    }
+
+    // Làm mới TTL của phiên và thời điểm hoạt động cuối dùng để dọn phần tạm
+    private void touch(String uploadId) {
+        stringRedisTemplate.expire(key(uploadId), sessionTtl);
+        stringRedisTemplate.opsForZSet().add(ACTIVE_KEY, uploadId, System.currentTimeMillis());
+    }
+
+    private Map<String, String> requireSession(String uploadId, Integer userId) {
+        Map<String, String> fields = hashOps().entries(key(uploadId));
+        if (fields.isEmpty() || !String.valueOf(userId).equals(fields.get("userId"))) {
+            throw new IllegalArgumentException("Upload không tồn tại hoặc đã hết hạn: " + uploadId);
+        }
+        return fields;
+    }
+
+    private Map<Integer, Long> parts(Map<String, String> fields) {
+        Map<Integer, Long> parts = new TreeMap<>();
+        fields.forEach((field, value) -> {
+            if (field.startsWith(PART_FIELD_PREFIX)) {
+                parts.put(Integer.valueOf(field.substring(PART_FIELD_PREFIX.length())), Long.valueOf(value));
+            }
+        });
+        return parts;
+    }
+
+    private HashOperations<String, String, String> hashOps() {
+        return stringRedisTemplate.opsForHash();
+    }
+
+    private static String key(String uploadId) {
+        return "upload:" + uploadId;
+    }
+
+    public record ClaimedUpload(String url, String contentType) {
+    }
+}
@@ -34,6 +34,7 @@ public class CommentService {
     private final MediaService mediaService;
     private final NotificationService notificationService;
     private final PostRepository postRepository;
+    private final BlockGraphService blockGraphService;
 
     public CommentService(EntityManager entityManager,
                           CommentRepository commentRepository,
@@ -41,7 +42,8 @@ public class CommentService {
                           RedisTemplate<String, List<CommentResponseDto>> redisCommentTemplate,
                           MediaService mediaService,
                           NotificationService notificationService,
-                          PostRepository postRepository) { // Thêm vào constructor
+                          PostRepository postRepository,
+                          BlockGraphService blockGraphService) { // Thêm vào constructor
         this.entityManager = entityManager;
         this.commentRepository = commentRepository;
         this.privacyService = privacyService;
@@ -49,6 +51,7 @@ public class CommentService {
         this.mediaService = mediaService;
         this.notificationService = notificationService;
         this.postRepository = postRepository;
+        this.blockGraphService = blockGraphService;
     }
 
     @Transactional
@@ -208,16 +211,32 @@ public class CommentService {
         redisCommentTemplate.delete("comments:post:" + comment.getPost().getId());
     }
 
+    // Lọc bình luận (và trả lời) của những user mà người xem chặn / bị chặn; cache bình luận vẫn dùng chung cho mọi người xem
+    public List<CommentResponseDto> getCommentsByPostId(@NotNull Integer postId, Integer viewerId) {
+        List<CommentResponseDto> comments = getCommentsByPostId(postId);
+        BlockGraphService.BlockedUsers blockedUsers = blockGraphService.getBlockedUsers(viewerId);
+        if (blockedUsers.isEmpty()) return comments;
+        return filterBlocked(comments, blockedUsers);
+    }
+
+    private List<CommentResponseDto> filterBlocked(List<CommentResponseDto> comments, BlockGraphService.BlockedUsers blockedUsers) {
+        List<CommentResponseDto> result = new ArrayList<>();
+        for (CommentResponseDto comment : comments) {
+            if (comment.getUserId() != null && blockedUsers.contains(comment.getUserId())) continue;
+            if (comment.getReplies() != null && !comment.getReplies().isEmpty()) {
+                comment.setReplies(filterBlocked(comment.getReplies(), blockedUsers));
+            }
+            result.add(comment);
+        }
+        return result;
+    }
+
     public List<CommentResponseDto> getCommentsByPostId(@NotNull Integer postId) {
         String cacheKey = "comments:post:" + postId;
         List<CommentResponseDto> cached = redisCommentTemplate.opsForValue().get(cacheKey);
         if (cached != null) return cached;
 
         List<Comment> allComments = commentRepository.findByPostIdAndStatusTrue(postId);
-        Map<Integer, List<Comment>> repliesGrouped = allComments.stream()
-                .filter(c -> c.getParentComment() != null)
-                .collect(Collectors.groupingBy(c -> c.getParentComment().getId()));
-
         List<Integer> commentIds = allComments.stream()
                 .map(Comment::getId)
                 .collect(Collectors.toList());
@@ -229,19 +248,25 @@ public class CommentService {
             mediaMap.putAll(mediaService.getMediaByTargetIds(commentIds, "COMMENT", "video", true));
         }
 
-        List<Comment> parentComments = allComments.stream()
-                .filter(c -> c.getParentComment() == null)
-                .toList();
-
-        List<CommentResponseDto> result = parentComments.stream()
-                .map(c -> mapToDtoWithReplies(c, repliesGrouped, mediaMap))
-                .collect(Collectors.toList());
+        List<CommentResponseDto> result = buildCommentTree(allComments, mediaMap);
 
         redisCommentTemplate.opsForValue().set(cacheKey, result, java.time.Duration.ofMinutes(10));
         return result;
     }
 
-    private CommentResponseDto mapToDtoWithReplies(Comment comment, Map<Integer, List<Comment>> repliesGrouped, Map<Integer, List<MediaDto>> mediaMap) {
+    // Dựng cây bình luận: bình luận gốc ở cấp đầu, trả lời lồng theo parentComment
+    static List<CommentResponseDto> buildCommentTree(List<Comment> allComments, Map<Integer, List<MediaDto>> mediaMap) {
+        Map<Integer, List<Comment>> repliesGrouped = allComments.stream()
+                .filter(c -> c.getParentComment() != null)
+                .collect(Collectors.groupingBy(c -> c.getParentComment().getId()));
+
+        return allComments.stream()
+                .filter(c -> c.getParentComment() == null)
+                .map(c -> mapToDtoWithReplies(c, repliesGrouped, mediaMap))
+                .collect(Collectors.toList());
+    }
+
+    private static CommentResponseDto mapToDtoWithReplies(Comment comment, Map<Integer, List<Comment>> repliesGrouped, Map<Integer, List<MediaDto>> mediaMap) {
         User user = comment.getUser();
         UserBasicDisplayDto userDto = new UserBasicDisplayDto(
                 user.getId(), user.getDisplayName(), user.getUsername(), null
@@ -0,0 +1,180 @@
+package com.example.social_media.service;
+
+import com.example.social_media.config.TwoLevelCacheManager;
+import com.example.social_media.entity.Post;
+import com.example.social_media.repository.FriendshipRepository;
+import com.example.social_media.repository.GroupMemberRepository;
+import com.example.social_media.repository.UserRepository;
+import com.example.social_media.repository.post.SavedPostRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.data.redis.cache.BatchStrategies;
+import org.springframework.data.redis.cache.RedisCacheWriter;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Xóa cache feed theo phụ thuộc thay vì allEntries = true.
+ * Khóa cache được tính ngay trong transaction, việc xóa thực hiện sau khi commit
+ * để request khác không nạp lại dữ liệu cũ vào cache.
+ */
+@Service
+public class FeedCacheInvalidationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(FeedCacheInvalidationService.class);
+
+    public static final String NEWSFEED = "newsfeed";
+    public static final String POSTS_BY_USERNAME = "postsByUsername";
+    public static final String COMMUNITY_FEED = "communityFeed";
+    public static final String POSTS_BY_GROUP = "postsByGroup";
+    public static final String POSTS_BY_USER_IN_GROUP = "postsByUserInGroup";
+    public static final String SAVED_POSTS = "savedPosts";
+
+    private final CacheManager cacheManager;
+    private final RedisCacheWriter patternCacheWriter;
+    private final FriendshipRepository friendshipRepository;
+    private final GroupMemberRepository groupMemberRepository;
+    private final UserRepository userRepository;
+    private final SavedPostRepository savedPostRepository;
+
+    public FeedCacheInvalidationService(CacheManager cacheManager,
+                                        RedisConnectionFactory connectionFactory,
+                                        FriendshipRepository friendshipRepository,
+                                        GroupMemberRepository groupMemberRepository,
+                                        UserRepository userRepository,
+                                        SavedPostRepository savedPostRepository) {
+        this.cacheManager = cacheManager;
+        // Dùng SCAN thay vì KEYS khi xóa theo pattern
+        this.patternCacheWriter = RedisCacheWriter.nonLockingRedisCacheWriter(connectionFactory, BatchStrategies.scan(500));
+        this.friendshipRepository = friendshipRepository;
+        this.groupMemberRepository = groupMemberRepository;
+        this.userRepository = userRepository;
+        this.savedPostRepository = savedPostRepository;
+    }
+
+    /**
+     * Bài viết được tạo / sửa / xóa / chia sẻ: xóa newsfeed của tác giả và người xem liên quan,
+     * trang cá nhân của tác giả, cache nhóm chứa bài và savedPosts của những người đã lưu bài.
+     * Bài public còn nằm trong newsfeed của người lạ: các entry đó không bị xóa ở đây mà cũ đi tối đa
+     * một TTL của cache newsfeed (5 phút, xem RedisConfig). Thu hẹp quyền xem thì dùng evictForPublicVisibilityRemoved.
+     * Reaction không đi qua đây, số reaction được ghép lại lúc đọc (PostService.withCurrentReactions).
+     */
+    public void evictForPostChange(Post post) {
+        String ownerUsername = post.getOwner().getUsername();
+        Integer ownerId = post.getOwner().getId();
+
+        Set<Integer> audienceIds = new HashSet<>();
+        audienceIds.add(ownerId);
+        audienceIds.addAll(friendshipRepository.findBidirectionalFriendIdsByUserIdAndStatus(ownerId, "accepted"));
+
+        List<Runnable> evictions = new ArrayList<>();
+        evictions.add(() -> evictPattern(POSTS_BY_USERNAME, escape(ownerUsername) + ":*"));
+
+        if (post.getGroup() != null) {
+            Integer groupId = post.getGroup().getId();
+            List<Integer> memberIds = groupMemberRepository.findAcceptedUserIdsByGroupId(groupId);
+            audienceIds.addAll(memberIds);
+
+            evictions.add(() -> evictPattern(POSTS_BY_GROUP, groupId + ":*"));
+            evictions.add(() -> evictPattern(POSTS_BY_USER_IN_GROUP, groupId + ":" + escape(ownerUsername) + ":*"));
+
+            if ("public".equalsIgnoreCase(post.getGroup().getPrivacyLevel())) {
+                // Bài trong nhóm công khai xuất hiện ở communityFeed của mọi người
+                evictions.add(() -> clear(COMMUNITY_FEED));
+            } else {
+                List<String> memberUsernames = memberIds.isEmpty() ? List.of() : userRepository.findUsernamesByIdIn(memberIds);
+                evictions.add(() -> memberUsernames.forEach(username -> evict(COMMUNITY_FEED, username)));
+            }
+        }
+
+        List<String> audienceUsernames = userRepository.findUsernamesByIdIn(audienceIds);
+        evictions.add(() -> audienceUsernames.forEach(username -> evict(NEWSFEED, username)));
+
+        List<String> saverUsernames = post.getId() != null ? savedPostRepository.findUsernamesByPostId(post.getId()) : List.of();
+        evictions.add(() -> saverUsernames.forEach(username -> evictPattern(SAVED_POSTS, escape(username) + ":*")));
+
+        logger.debug("Xóa cache cho bài viết {}: {} newsfeed, {} savedPosts", post.getId(), audienceUsernames.size(), saverUsernames.size());
+        runAfterCommit(() -> evictions.forEach(Runnable::run));
+    }
+
+    /**
+     * Bài viết public bị xóa hoặc bị thu hẹp quyền riêng tư: bài có thể nằm trong newsfeed của bất kỳ ai,
+     * nên phải xóa toàn bộ newsfeed / communityFeed để không lộ nội dung.
+     */
+    public void evictForPublicVisibilityRemoved() {
+        runAfterCommit(() -> {
+            clear(NEWSFEED);
+            clear(COMMUNITY_FEED);
+        });
+    }
+
+    /**
+     * Người dùng lưu / ẩn / bỏ lưu bài viết hoặc chặn / bỏ chặn: chỉ các feed do chính người đó xem bị ảnh hưởng
+     * (cờ saved, danh sách bài ẩn, danh sách chặn).
+     */
+    public void evictForViewerAction(String username) {
+        String escaped = escape(username);
+        runAfterCommit(() -> {
+            evict(NEWSFEED, username);
+            evict(COMMUNITY_FEED, username);
+            evictPattern(SAVED_POSTS, escaped + ":*");
+            evictPattern(POSTS_BY_USERNAME, "*:" + escaped);
+            evictPattern(POSTS_BY_GROUP, "*:" + escaped);
+            evictPattern(POSTS_BY_USER_IN_GROUP, "*:" + escaped);
+        });
+    }
+
+    private void evict(String cacheName, String key) {
+        Cache cache = cacheManager.getCache(cacheName);
+        if (cache != null) {
+            cache.evict(key);
+        }
+    }
+
+    private void clear(String cacheName) {
+        Cache cache = cacheManager.getCache(cacheName);
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+
+    // Khóa Redis của RedisCacheManager có dạng "<cacheName>::<key>"
+    private void evictPattern(String cacheName, String keyPattern) {
+        patternCacheWriter.clean(cacheName, (cacheName + "::" + keyPattern).getBytes(StandardCharsets.UTF_8));
+        if (cacheManager instanceof TwoLevelCacheManager twoLevelCacheManager) {
+            twoLevelCacheManager.evictLocalByPattern(cacheName, keyPattern);
+        }
+    }
+
+    // Escape ký tự glob của Redis trong username
+    private String escape(String value) {
+        return value.replaceAll("([*?\\[\\]\\\\])", "\\\\$1");
+    }
+
+    private void runAfterCommit(Runnable action) {
+        Runnable safeAction = () -> {
+            try {
+                action.run();
+            } catch (Exception e) {
+                logger.warn("Lỗi khi xóa cache feed: {}", e.getMessage());
+            }
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    safeAction.run();
+                }
+            });
+        } else {
+            safeAction.run();
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package com.example.social_media.service;
+
+import com.example.social_media.dto.media.MediaDto;
+import com.example.social_media.dto.post.PostResponseDto;
+import com.example.social_media.dto.user.UserTagDto;
+import com.example.social_media.entity.*;
+import com.example.social_media.repository.CommentRepository;
+import com.example.social_media.repository.GroupRepository;
+import com.example.social_media.repository.UserRepository;
+import com.example.social_media.repository.post.PostShareRepository;
+import com.example.social_media.repository.post.PostTagRepository;
+import com.example.social_media.repository.post.SavedPostRepository;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Bước chuyển danh sách Post (đã lọc quyền truy cập) sang PostResponseDto dùng chung cho mọi timeline.
+ * Số truy vấn cố định theo lô, không phụ thuộc số bài viết: bài gốc của bài chia sẻ, chủ bài, nhóm,
+ * tag, media, reaction, số bình luận, số lượt chia sẻ và cờ đã lưu của người xem.
+ */
+@Service
+public class FeedHydrationService {
+
+    private final PostShareRepository postShareRepository;
+    private final PostTagRepository postTagRepository;
+    private final UserRepository userRepository;
+    private final GroupRepository groupRepository;
+    private final CommentRepository commentRepository;
+    private final SavedPostRepository savedPostRepository;
+    private final MediaService mediaService;
+    private final ReactionService reactionService;
+
+    public FeedHydrationService(PostShareRepository postShareRepository,
+                                PostTagRepository postTagRepository,
+                                UserRepository userRepository,
+                                GroupRepository groupRepository,
+                                CommentRepository commentRepository,
+                                SavedPostRepository savedPostRepository,
+                                MediaService mediaService,
+                                ReactionService reactionService) {
+        this.postShareRepository = postShareRepository;
+        this.postTagRepository = postTagRepository;
+        this.userRepository = userRepository;
+        this.groupRepository = groupRepository;
+        this.commentRepository = commentRepository;
+        this.savedPostRepository = savedPostRepository;
+        this.mediaService = mediaService;
+        this.reactionService = reactionService;
+    }
+
+    public PostResponseDto hydrate(Post post, Integer viewerId) {
+        return hydrate(List.of(post), viewerId).get(0);
+    }
+
+    public List<PostResponseDto> hydrate(List<Post> posts, Integer viewerId) {
+        if (posts.isEmpty()) return List.of();
+
+        List<Integer> postIds = posts.stream().map(Post::getId).distinct().toList();
+
+        // 1. Bài gốc của các bài chia sẻ (nạp cùng lô với bài chính)
+        Map<Integer, Post> originalBySharedId = postShareRepository.findOriginalsForSharedPosts(postIds).stream()
+                .collect(Collectors.toMap(ps -> ps.getSharedPost().getId(), PostShare::getOriginalPost, (a, b) -> a));
+
+        Map<Integer, Post> allPosts = new LinkedHashMap<>();
+        posts.forEach(p -> allPosts.putIfAbsent(p.getId(), p));
+        originalBySharedId.values().forEach(p -> allPosts.putIfAbsent(p.getId(), p));
+        List<Integer> allIds = new ArrayList<>(allPosts.keySet());
+
+        // 2. Chủ bài và nhóm: một truy vấn mỗi loại thay vì khởi tạo proxy lazy từng bài
+        Set<Integer> ownerIds = allPosts.values().stream().map(p -> p.getOwner().getId()).collect(Collectors.toSet());
+        Map<Integer, User> owners = userRepository.findAllById(ownerIds).stream()
+                .collect(Collectors.toMap(User::getId, Function.identity()));
+
+        Set<Integer> groupIds = allPosts.values().stream()
+                .filter(p -> p.getGroup() != null)
+                .map(p -> p.getGroup().getId())
+                .collect(Collectors.toSet());
+        Map<Integer, Group> groups = groupIds.isEmpty() ? Map.of() : groupRepository.findAllById(groupIds).stream()
+                .collect(Collectors.toMap(Group::getId, Function.identity()));
+        Map<Integer, String> groupAvatars = mediaService.getGroupAvatarUrls(groupIds);
+
+        // 3. Tag, media, reaction, số bình luận, số lượt chia sẻ, cờ đã lưu
+        Map<Integer, List<PostTag>> tagsByPost = postTagRepository.findActiveByPostIdsWithTaggedUser(allIds).stream()
+                .collect(Collectors.groupingBy(pt -> pt.getPost().getId()));
+        Map<Integer, List<MediaDto>> mediaByPost = mediaService.getMediaByTargetIds(allIds, "POST", null, true);
+        Map<Integer, Map<ReactionType, Long>> reactionsByPost = reactionService.countAllReactionsBatch(allIds, "POST");
+        Map<Integer, Long> commentCounts = toCountMap(commentRepository.countActiveByPostIds(allIds));
+        Map<Integer, Long> shareCounts = toCountMap(postShareRepository.findShareCountsForPosts(allIds));
+        Set<Integer> savedIds = viewerId == null ? Set.of()
+                : new HashSet<>(savedPostRepository.findSavedPostIdsByUserIdAndPostIdIn(viewerId, allIds));
+
+        HydrationContext context = new HydrationContext(owners, groups, groupAvatars, tagsByPost, mediaByPost,
+                reactionsByPost, commentCounts, shareCounts, savedIds);
+
+        return assemble(posts, originalBySharedId, context);
+    }
+
+    /**
+     * Ghép số reaction hiện tại (bộ đếm Redis, một pipeline cho cả trang) vào feed lấy từ cache.
+     * Reaction không xóa cache feed, nên số reaction trong DTO đã cache chỉ là giá trị lúc nạp;
+     * mỗi bài được trả về dưới dạng bản sao nông, DTO trong cache giữ nguyên.
+     */
+    public List<PostResponseDto> withCurrentReactions(List<PostResponseDto> posts) {
+        if (posts.isEmpty()) return posts;
+
+        List<Integer> postIds = posts.stream()
+                .flatMap(post -> post.getSharedPost() == null ? Stream.of(post.getId())
+                        : Stream.of(post.getId(), post.getSharedPost().getId()))
+                .distinct()
+                .toList();
+        Map<Integer, Map<ReactionType, Long>> reactionsByPost = reactionService.countAllReactionsBatch(postIds, "POST");
+
+        return posts.stream()
+                .map(post -> withReactions(post, reactionsByPost))
+                .toList();
+    }
+
+    private static PostResponseDto withReactions(PostResponseDto post, Map<Integer, Map<ReactionType, Long>> reactionsByPost) {
+        PostResponseDto copy = post.shallowCopy();
+        applyReactions(copy, reactionsByPost.getOrDefault(post.getId(), Map.of()));
+        if (post.getSharedPost() != null) {
+            copy.setSharedPost(withReactions(post.getSharedPost(), reactionsByPost));
+        }
+        return copy;
+    }
+
+    // Dựng DTO từ dữ liệu đã nạp sẵn, không truy cập DB
+    static List<PostResponseDto> assemble(List<Post> posts, Map<Integer, Post> originalBySharedId, HydrationContext context) {
+        return posts.stream()
+                .map(post -> {
+                    PostResponseDto dto = toDto(post, context);
+                    Post original = originalBySharedId.get(post.getId());
+                    if (original != null) {
+                        // Bài chia sẻ không có media riêng, hiển thị bài gốc bên trong
+                        dto.setSharedPost(toDto(original, context));
+                        dto.setMedia(List.of());
+                    }
+                    return dto;
+                })
+                .toList();
+    }
+
+    private static PostResponseDto toDto(Post post, HydrationContext context) {
+        PostResponseDto dto = new PostResponseDto();
+        dto.setId(post.getId());
+
+        User owner = context.owners().getOrDefault(post.getOwner().getId(), post.getOwner());
+        dto.setOwner(new UserTagDto(owner.getId(), owner.getUsername(), owner.getDisplayName()));
+        dto.setContent(post.getContent());
+        dto.setPrivacySetting(post.getPrivacySetting());
+        dto.setCreatedAt(post.getCreatedAt());
+        dto.setLatitude(post.getLatitude());
+        dto.setLongitude(post.getLongitude());
+        dto.setLocationName(post.getLocationName());
+
+        dto.setShareCount(context.shareCounts().getOrDefault(post.getId(), 0L).intValue());
+        dto.setCommentCount(context.commentCounts().getOrDefault(post.getId(), 0L).intValue());
+
+        dto.setTaggedUsers(context.tagsByPost().getOrDefault(post.getId(), List.of()).stream()
+                .map(pt -> new UserTagDto(pt.getTaggedUser().getId(), pt.getTaggedUser().getUsername(), pt.getTaggedUser().getDisplayName()))
+                .collect(Collectors.toList()));
+
+        applyReactions(dto, context.reactionsByPost().getOrDefault(post.getId(), Map.of()));
+
+        dto.setSaved(context.savedIds().contains(post.getId()));
+
+        if (post.getGroup() != null) {
+            Integer groupId = post.getGroup().getId();
+            Group group = context.groups().getOrDefault(groupId, post.getGroup());
+            dto.setGroupId(groupId);
+            dto.setGroupName(group.getName());
+            dto.setGroupAvatarUrl(context.groupAvatars().get(groupId));
+            dto.setGroupPrivacyLevel(group.getPrivacyLevel());
+        }
+
+        dto.setMedia(context.mediaByPost().getOrDefault(post.getId(), List.of()));
+        dto.setSharedPost(null);
+        return dto;
+    }
+
+    private static void applyReactions(PostResponseDto dto, Map<ReactionType, Long> reactions) {
+        dto.setReactionCountMap(reactions.entrySet().stream()
+                .collect(Collectors.toMap(entry -> entry.getKey().getName(), Map.Entry::getValue)));
+        dto.setLikeCount((int) reactions.entrySet().stream()
+                .filter(entry -> "like".equalsIgnoreCase(entry.getKey().getName()))
+                .mapToLong(Map.Entry::getValue)
+                .findFirst()
+                .orElse(0L));
+    }
+
+    private Map<Integer, Long> toCountMap(List<Object[]> rows) {
+        Map<Integer, Long> counts = new HashMap<>();
+        for (Object[] row : rows) {
+            counts.put((Integer) row[0], ((Number) row[1]).longValue());
+        }
+        return counts;
+    }
+
+    record HydrationContext(Map<Integer, User> owners,
+                            Map<Integer, Group> groups,
+                            Map<Integer, String> groupAvatars,
+                            Map<Integer, List<PostTag>> tagsByPost,
+                            Map<Integer, List<MediaDto>> mediaByPost,
+                            Map<Integer, Map<ReactionType, Long>> reactionsByPost,
+                            Map<Integer, Long> commentCounts,
+                            Map<Integer, Long> shareCounts,
+                            Set<Integer> savedIds) {
+    }
+}
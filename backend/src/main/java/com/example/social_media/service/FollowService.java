@@ -6,7 +6,6 @@ import com.example.social_media.entity.Follow;
 import com.example.social_media.entity.FollowId;
 import com.example.social_media.entity.User;
 import com.example.social_media.exception.UserNotFoundException;
-import com.example.social_media.repository.BlockRepository;
 import com.example.social_media.repository.FollowRepository;
 import com.example.social_media.repository.UserRepository;
 import org.springframework.data.domain.Page;
@@ -23,7 +22,7 @@ import java.util.stream.Collectors;
 public class FollowService {
     private final UserRepository userRepository;
     private final FollowRepository followRepository;
-    private final BlockRepository blockRepository;
+    private final BlockGraphService blockGraphService;
     private final PrivacyService privacyService;
     private final NotificationService notificationService;
     private final ActivityLogService activityLogService;
@@ -31,14 +30,14 @@ public class FollowService {
     public FollowService(
             UserRepository userRepository,
             FollowRepository followRepository,
-            BlockRepository blockRepository,
+            BlockGraphService blockGraphService,
             PrivacyService privacyService,
             NotificationService notificationService,
             ActivityLogService activityLogService
     ) {
         this.userRepository = userRepository;
         this.followRepository = followRepository;
-        this.blockRepository = blockRepository;
+        this.blockGraphService = blockGraphService;
         this.privacyService = privacyService;
         this.notificationService = notificationService;
         this.activityLogService = activityLogService;
@@ -55,10 +54,7 @@ public class FollowService {
         User followee = userRepository.findById(followeeId)
                 .orElseThrow(() -> new UserNotFoundException("User not found with id: " + followeeId));
 
-        if (blockRepository.existsByUserAndBlockedUserAndStatus(followee, follower, true)) {
-            throw new IllegalArgumentException("User is blocked");
-        }
-        if (blockRepository.existsByUserAndBlockedUserAndStatus(follower, followee, true)) {
+        if (blockGraphService.isBlockedBetween(followerId, followeeId)) {
             throw new IllegalArgumentException("User is blocked");
         }
 
@@ -128,10 +124,10 @@ public class FollowService {
         }
 
         Page<Follow> following = followRepository.findByFollowerAndStatus(user, true, pageable);
+        BlockGraphService.BlockedUsers blockedUsers = blockGraphService.getBlockedUsers(viewerId);
         List<UserTagDto> followingList = following.getContent().stream()
                 .map(f -> f.getFollowee())
-                .filter(followee -> !blockRepository.existsByUserAndBlockedUserAndStatus(followee, new User(viewerId), true) &&
-                        !blockRepository.existsByUserAndBlockedUserAndStatus(new User(viewerId), followee, true))
+                .filter(followee -> !blockedUsers.contains(followee.getId()))
                 .map(f -> new UserTagDto(f.getId(), f.getUsername(), f.getDisplayName()))
                 .collect(Collectors.toList());
 
@@ -155,10 +151,10 @@ public class FollowService {
         }
 
         Page<Follow> followers = followRepository.findByFolloweeAndStatus(user, true, pageable);
+        BlockGraphService.BlockedUsers blockedUsers = blockGraphService.getBlockedUsers(viewerId);
         List<UserTagDto> followersList = followers.getContent().stream()
                 .map(f -> f.getFollower())
-                .filter(follower -> !blockRepository.existsByUserAndBlockedUserAndStatus(follower, new User(viewerId), true) &&
-                        !blockRepository.existsByUserAndBlockedUserAndStatus(new User(viewerId), follower, true))
+                .filter(follower -> !blockedUsers.contains(follower.getId()))
                 .map(f -> new UserTagDto(f.getId(), f.getUsername(), f.getDisplayName()))
                 .collect(Collectors.toList());
 
@@ -1,5 +1,8 @@
 package com.example.social_media.service;
+import com.example.social_media.repository.JdbcMediaBlobRepository;
+import com.google.cloud.WriteChannel;
 import com.google.cloud.storage.Acl;
+import com.google.cloud.storage.Blob;
 import com.google.cloud.storage.BlobId;
 import com.google.cloud.storage.BlobInfo;
 import com.google.cloud.storage.Storage;
@@ -7,12 +10,33 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.UUID;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.CRC32C;
 
+/**
+ * Upload lên GCS theo luồng: file nhỏ hơn {@code gcs.upload.resumable-threshold} gửi trong một request,
+ * file lớn hơn được chép từ input stream vào WriteChannel (resumable upload) qua buffer cố định dùng lại,
+ * nên heap không phải giữ nguyên cả file. Kích thước và CRC32C được tính trong lúc chép và đối chiếu với GCS.
+ * File media được lưu theo nội dung ("cas/{sha256}"): file trùng nội dung dùng lại object có sẵn qua tblMediaBlob
+ * và không upload lại; mỗi lần uploadFile giữ một tham chiếu, trả lại bằng {@link #releaseFile}.
+ */
 @Service
 public class GcsService {
 
@@ -21,34 +45,222 @@ public class GcsService {
     @Value("${gcs.bucket.name}")
     private String bucketName;
 
+    // Trên ngưỡng này dùng resumable upload
+    @Value("${gcs.upload.resumable-threshold:8MB}")
+    private DataSize resumableThreshold;
+
+    @Value("${gcs.upload.buffer-size:256KB}")
+    private DataSize bufferSize;
+
+    // Phần WriteChannel giữ trong heap trước mỗi lần gửi; phải là bội số của 256KB
+    @Value("${gcs.upload.chunk-size:2MB}")
+    private DataSize chunkSize;
+
     private final Storage storage;
+    private final JdbcMediaBlobRepository mediaBlobRepository;
     private static final String FORMAT_URL_UPLOAD = "https://storage.googleapis.com/%s/%s";
+    private static final String CONTENT_ADDRESSED_PREFIX = "cas/";
+    private static final int MAX_REGISTER_ATTEMPTS = 3;
+    // Biến thể (ảnh thu nhỏ...) của object X có tên X@{variant}, bị xóa cùng object gốc
+    private static final String DERIVATIVE_SEPARATOR = "@";
+    private static final int MAX_POOLED_BUFFERS = 16;
+    // Phần tạm của upload nhiều phần: uploads/{uploadId}/part-{n}
+    private static final String CHUNK_PREFIX = "uploads/";
+    // Số object nguồn tối đa của một lệnh compose
+    private static final int MAX_COMPOSE_SOURCES = 32;
+    // Object ghép từ nhiều phần không băm nội dung; khóa trong tblMediaBlob là "chunked-{uploadId}"
+    private static final String CHUNKED_DIGEST_PREFIX = "chunked-";
+
+    private final Queue<byte[]> bufferPool = new ConcurrentLinkedQueue<>();
 
-    public GcsService(Storage storage) {
+    public GcsService(Storage storage, JdbcMediaBlobRepository mediaBlobRepository) {
         this.storage = storage;
+        this.mediaBlobRepository = mediaBlobRepository;
     }
 
 
+    /**
+     * Upload file media, trả về URL. File đã có trên GCS (cùng SHA-256) thì chỉ thêm tham chiếu, không upload lại.
+     * Người gọi sở hữu một tham chiếu tới URL trả về cho tới khi gọi {@link #releaseFile}.
+     */
     public String uploadFile(MultipartFile file) throws IOException {
         if (file.isEmpty()) {
             logger.error("File is empty");
             throw new IllegalArgumentException("File không được để trống");
         }
 
+        // Băm từ bản tạm cục bộ của multipart, chỉ upload khi chưa có blob cùng nội dung
+        String digest = sha256Hex(file);
+        for (int attempt = 0; attempt < MAX_REGISTER_ATTEMPTS; attempt++) {
+            Optional<String> existingUrl = mediaBlobRepository.acquire(digest);
+            if (existingUrl.isPresent()) {
+                logger.info("Reusing existing GCS object for digest {}: url={}", digest, existingUrl.get());
+                return existingUrl.get();
+            }
+            String fileUrl;
+            try (InputStream in = file.getInputStream()) {
+                fileUrl = upload(in, CONTENT_ADDRESSED_PREFIX + digest, file.getContentType(), file.getSize());
+            }
+            if (mediaBlobRepository.insert(digest, fileUrl, file.getSize())) {
+                return fileUrl;
+            }
+            // Request khác vừa ghi cùng nội dung vào cùng object: lấy tham chiếu từ bản ghi của nó
+        }
+        throw new IOException("Không đăng ký được file trong chỉ mục media: " + digest);
+    }
+
+    /**
+     * Trả lại tham chiếu có được từ {@link #uploadFile}. Object bị xóa khi không còn dòng media nào dùng;
+     * URL upload trước khi có chỉ mục nội dung được giữ nguyên.
+     */
+    public void releaseFile(String fileUrl) {
+        try {
+            Optional<Integer> remaining = mediaBlobRepository.release(fileUrl);
+            if (remaining.isEmpty() || remaining.get() > 0) return;
+
+            String prefix = String.format(FORMAT_URL_UPLOAD, bucketName, "");
+            BlobId blobId = BlobId.of(bucketName, fileUrl.substring(prefix.length()));
+            Blob blob = storage.get(blobId, Storage.BlobGetOption.fields(Storage.BlobField.GENERATION));
+            if (!mediaBlobRepository.deleteIfUnreferenced(fileUrl) || blob == null) return;
+            for (Blob derivative : storage.list(bucketName, Storage.BlobListOption.prefix(blobId.getName() + DERIVATIVE_SEPARATOR)).iterateAll()) {
+                derivative.delete();
+            }
+            // Chỉ xóa đúng thế hệ đã đọc, không xóa nhầm bản vừa được upload lại cùng tên
+            storage.delete(blobId, Storage.BlobSourceOption.generationMatch(blob.getGeneration()));
+            logger.info("Deleted unreferenced GCS object: url={}", fileUrl);
+        } catch (Exception e) {
+            logger.error("Failed to release GCS object {}: {}", fileUrl, e.getMessage());
+        }
+    }
+
+    // Content type của object theo URL; null nếu URL không thuộc bucket hoặc object không còn
+    public String getContentType(String fileUrl) {
+        String objectName = objectNameOf(fileUrl);
+        if (objectName == null) return null;
+        Blob blob = storage.get(BlobId.of(bucketName, objectName), Storage.BlobGetOption.fields(Storage.BlobField.CONTENT_TYPE));
+        return blob != null ? blob.getContentType() : null;
+    }
+
+    // Đọc object theo luồng, không tải cả file vào heap
+    public InputStream openFile(String fileUrl) throws IOException {
+        String objectName = objectNameOf(fileUrl);
+        if (objectName == null) {
+            throw new IOException("URL không thuộc bucket " + bucketName + ": " + fileUrl);
+        }
+        return Channels.newInputStream(storage.reader(BlobId.of(bucketName, objectName)));
+    }
+
+    // Ghi (hoặc ghi đè) biến thể của object gốc, trả về URL của biến thể
+    public String uploadDerivative(String fileUrl, String variant, byte[] content, String contentType) throws IOException {
+        String objectName = objectNameOf(fileUrl);
+        if (objectName == null) {
+            throw new IOException("URL không thuộc bucket " + bucketName + ": " + fileUrl);
+        }
+        return upload(new ByteArrayInputStream(content), objectName + DERIVATIVE_SEPARATOR + variant, contentType, content.length);
+    }
+
+    /**
+     * Ghi phần {@code partNumber} của upload nhiều phần vào object tạm (không public); gửi lại cùng phần thì ghi đè.
+     * Trả về số byte thực nhận.
+     */
+    public long uploadChunk(String uploadId, int partNumber, InputStream in, long size) throws IOException {
+        BlobInfo blobInfo = BlobInfo.newBuilder(BlobId.of(bucketName, chunkObjectName(uploadId, partNumber))).build();
+        try {
+            return size > resumableThreshold.toBytes() ? writeResumable(blobInfo, in) : writeDirect(blobInfo, in);
+        } catch (Exception e) {
+            logger.error("Failed to upload chunk {} of upload {}: {}", partNumber, uploadId, e.getMessage());
+            throw new IOException("Không thể tải phần " + partNumber + " lên GCS: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Ghép các phần 1..partCount thành object public "{uploadId}_{filename}" ngay trên GCS, xóa các phần tạm
+     * và đăng ký object vào tblMediaBlob với một tham chiếu cho người gọi (trả lại bằng {@link #releaseFile}).
+     */
+    public String composeChunks(String uploadId, int partCount, String filename, String contentType, long expectedSize) throws IOException {
+        List<String> sources = new ArrayList<>(partCount);
+        for (int part = 1; part <= partCount; part++) {
+            sources.add(chunkObjectName(uploadId, part));
+        }
+        String objectName = uploadId + "_" + filename;
+        Blob blob;
+        try {
+            // Mỗi lệnh compose nhận tối đa 32 nguồn: ghép theo tầng cho tới khi còn đủ cho một lệnh cuối
+            for (int round = 0; sources.size() > MAX_COMPOSE_SOURCES; round++) {
+                List<String> composed = new ArrayList<>();
+                for (int from = 0; from < sources.size(); from += MAX_COMPOSE_SOURCES) {
+                    String target = CHUNK_PREFIX + uploadId + "/compose-" + round + "-" + composed.size();
+                    storage.compose(Storage.ComposeRequest.newBuilder()
+                            .addSource(sources.subList(from, Math.min(from + MAX_COMPOSE_SOURCES, sources.size())))
+                            .setTarget(BlobInfo.newBuilder(bucketName, target).build())
+                            .build());
+                    composed.add(target);
+                }
+                sources = composed;
+            }
+            blob = storage.compose(Storage.ComposeRequest.newBuilder()
+                    .addSource(sources)
+                    .setTarget(BlobInfo.newBuilder(bucketName, objectName).setContentType(contentType).build())
+                    .setTargetOptions(Storage.BlobTargetOption.predefinedAcl(Storage.PredefinedAcl.PUBLIC_READ))
+                    .build());
+        } catch (Exception e) {
+            logger.error("Failed to compose upload {}: {}", uploadId, e.getMessage());
+            throw new IOException("Không thể ghép file trên GCS: " + e.getMessage(), e);
+        }
+
+        deleteChunks(uploadId);
+        if (blob.getSize() == null || blob.getSize() != expectedSize) {
+            storage.delete(blob.getBlobId());
+            throw new IOException("Kích thước file ghép không khớp: " + blob.getSize() + " != " + expectedSize);
+        }
+        String fileUrl = String.format(FORMAT_URL_UPLOAD, bucketName, objectName);
+        mediaBlobRepository.insert(CHUNKED_DIGEST_PREFIX + uploadId, fileUrl, expectedSize);
+        logger.info("Composed {} chunks of upload {}: url={}", partCount, uploadId, fileUrl);
+        return fileUrl;
+    }
+
+    // Xóa các phần tạm (và object ghép trung gian) của upload
+    public void deleteChunks(String uploadId) {
+        try {
+            List<BlobId> blobIds = new ArrayList<>();
+            for (Blob chunk : storage.list(bucketName, Storage.BlobListOption.prefix(CHUNK_PREFIX + uploadId + "/")).iterateAll()) {
+                blobIds.add(chunk.getBlobId());
+            }
+            if (!blobIds.isEmpty()) {
+                storage.delete(blobIds);
+            }
+        } catch (Exception e) {
+            logger.error("Failed to delete chunks of upload {}: {}", uploadId, e.getMessage());
+        }
+    }
+
+    private String chunkObjectName(String uploadId, int partNumber) {
+        return String.format("%s%s/part-%05d", CHUNK_PREFIX, uploadId, partNumber);
+    }
+
+    private String objectNameOf(String fileUrl) {
+        String prefix = String.format(FORMAT_URL_UPLOAD, bucketName, "");
+        return fileUrl != null && fileUrl.startsWith(prefix) ? fileUrl.substring(prefix.length()) : null;
+    }
 
-        String objectName = UUID.randomUUID() + "_" + file.getOriginalFilename();
-        logger.info("Uploading file to GCS: bucket={}, objectName={}", bucketName, objectName);
+    private String upload(InputStream in, String objectName, String contentType, long size) throws IOException {
+        boolean resumable = size > resumableThreshold.toBytes();
+        logger.info("Uploading file to GCS: bucket={}, objectName={}, size={}, resumable={}", bucketName, objectName, size, resumable);
 
 
         BlobId blobId = BlobId.of(bucketName, objectName);
         BlobInfo blobInfo = BlobInfo.newBuilder(blobId)
-                .setContentType(file.getContentType())
+                .setContentType(contentType)
                 .setAcl(Arrays.asList(Acl.of(Acl.User.ofAllUsers(), Acl.Role.READER)))
                 .build();
 
 
         try {
-            storage.create(blobInfo, file.getBytes());
+            if (resumable) {
+                writeResumable(blobInfo, in);
+            } else {
+                writeDirect(blobInfo, in);
+            }
             String fileUrl = String.format(FORMAT_URL_UPLOAD, bucketName, objectName);
             logger.info("File uploaded successfully: url={}", fileUrl);
             return fileUrl;
@@ -57,4 +269,83 @@ public class GcsService {
             throw new IOException("Không thể tải file lên GCS: " + e.getMessage(), e);
         }
     }
+
+    // File nhỏ: một request, đối chiếu CRC32C của object trả về với nội dung đã gửi
+    private long writeDirect(BlobInfo blobInfo, InputStream in) throws IOException {
+        byte[] content = in.readAllBytes();
+        CRC32C crc = new CRC32C();
+        crc.update(content, 0, content.length);
+        String expectedCrc = encodeCrc32c(crc);
+        Blob blob = storage.create(blobInfo.toBuilder().setCrc32c(expectedCrc).build(), content);
+        if (blob == null || !expectedCrc.equals(blob.getCrc32c())) {
+            storage.delete(blobInfo.getBlobId());
+            throw new IOException("Dữ liệu trên GCS không khớp với file gửi lên: " + blobInfo.getName());
+        }
+        return content.length;
+    }
+
+    // File lớn: chép qua buffer dùng lại vào WriteChannel, rồi đối chiếu kích thước và CRC32C với object đã tạo
+    private long writeResumable(BlobInfo blobInfo, InputStream in) throws IOException {
+        CRC32C crc = new CRC32C();
+        long written = 0;
+        byte[] buffer = acquireBuffer();
+        try (WriteChannel writer = storage.writer(blobInfo)) {
+            writer.setChunkSize((int) chunkSize.toBytes());
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                crc.update(buffer, 0, read);
+                written += read;
+                ByteBuffer chunk = ByteBuffer.wrap(buffer, 0, read);
+                while (chunk.hasRemaining()) {
+                    writer.write(chunk);
+                }
+            }
+        } finally {
+            releaseBuffer(buffer);
+        }
+
+        String expectedCrc = encodeCrc32c(crc);
+        Blob blob = storage.get(blobInfo.getBlobId(),
+                Storage.BlobGetOption.fields(Storage.BlobField.CRC32C, Storage.BlobField.SIZE));
+        if (blob == null || !expectedCrc.equals(blob.getCrc32c()) || blob.getSize() == null || blob.getSize() != written) {
+            storage.delete(blobInfo.getBlobId());
+            throw new IOException("Dữ liệu trên GCS không khớp với file gửi lên: " + blobInfo.getName());
+        }
+        return written;
+    }
+
+    private String sha256Hex(MultipartFile file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] buffer = acquireBuffer();
+        try (InputStream in = file.getInputStream()) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        } finally {
+            releaseBuffer(buffer);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private byte[] acquireBuffer() {
+        byte[] buffer = bufferPool.poll();
+        return buffer != null ? buffer : new byte[(int) bufferSize.toBytes()];
+    }
+
+    private void releaseBuffer(byte[] buffer) {
+        if (buffer.length == bufferSize.toBytes() && bufferPool.size() < MAX_POOLED_BUFFERS) {
+            bufferPool.offer(buffer);
+        }
+    }
+
+    // GCS lưu CRC32C dạng base64 của 4 byte big-endian
+    private static String encodeCrc32c(CRC32C crc) {
+        return Base64.getEncoder().encodeToString(ByteBuffer.allocate(4).putInt((int) crc.getValue()).array());
+    }
 }
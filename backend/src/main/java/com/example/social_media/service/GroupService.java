@@ -210,6 +210,8 @@ public class GroupService {
     public Map<String, Object> getGroupMembers(Integer groupId, int page, int size) {
         Pageable pageable = PageRequest.of(page, size);
         Page<GroupMember> members = groupMemberRepository.findAcceptedMembersByGroupId(groupId, pageable);
+        Map<Integer, String> avatars = mediaService.getAvatarUrlsByUserIds(
+                members.getContent().stream().map(m -> m.getUser().getId()).toList());
 
         List<GroupMemberDisplayDto> memberDtos = members
                 .map(m -> {
@@ -218,7 +220,7 @@ public class GroupService {
                             user.getId(),
                             user.getDisplayName(),
                             user.getUsername(),
-                            mediaService.getAvatarUrlByUserId(user.getId()),
+                            avatars.get(user.getId()),
                             Boolean.TRUE.equals(m.getIsAdmin()),
                             Boolean.TRUE.equals(m.getIsOwner())
                     );
@@ -374,12 +376,13 @@ public class GroupService {
                 .orElseThrow(() -> new UserNotFoundException("User not found"));
 
         List<Group> groups = groupMemberRepository.findGroupsByUserIdAndInviteStatus(user.getId(), "PENDING");
+        Map<Integer, String> avatars = mediaService.getGroupAvatarUrls(groups.stream().map(Group::getId).toList());
 
         return groups.stream()
                 .map(group -> new GroupSimpleDto(
                         group.getId(),
                         group.getName(),
-                        mediaService.getGroupAvatarUrl(group.getId())
+                        avatars.get(group.getId())
                 ))
                 .collect(Collectors.toList());
     }
@@ -522,14 +525,17 @@ public class GroupService {
         if (!group.getOwner().getId().equals(admin.getId()) && !isAdmin) {
             throw new UnauthorizedException("Chỉ admin hoặc chủ nhóm mới được xem yêu cầu tham gia");
         }
-        return groupMemberRepository.findById_GroupIdAndInviteStatus(groupId, "REQUESTED").stream()
+        List<GroupMember> requests = groupMemberRepository.findById_GroupIdAndInviteStatus(groupId, "REQUESTED");
+        Map<Integer, String> avatars = mediaService.getAvatarUrlsByUserIds(
+                requests.stream().map(member -> member.getUser().getId()).toList());
+        return requests.stream()
                 .map(member -> {
                     User user = member.getUser();
                     return new UserBasicDisplayDto(
                             user.getId(),
                             user.getDisplayName(),
                             user.getUsername(),
-                            mediaService.getAvatarUrlByUserId(user.getId())
+                            avatars.get(user.getId())
                     );
                 })
                 .collect(Collectors.toList());
@@ -582,6 +588,10 @@ public class GroupService {
 
         List<GroupMember> memberships = groupMemberRepository
                 .findByUserIdAndStatusTrueAndInviteStatusAccepted(user.getId());
+        Map<Integer, String> groupAvatars = mediaService.getGroupAvatarUrls(
+                memberships.stream().map(member -> member.getGroup().getId()).toList());
+        Map<Integer, String> ownerAvatars = mediaService.getAvatarUrlsByUserIds(
+                memberships.stream().map(member -> member.getGroup().getOwner().getId()).toList());
 
         return memberships.stream()
                 .map(member -> {
@@ -589,13 +599,13 @@ public class GroupService {
                     return new GroupDisplayDto(
                             group.getId(),
                             group.getName(),
-                            mediaService.getGroupAvatarUrl(group.getId()),
+                            groupAvatars.get(group.getId()),
                             group.getDescription(),
                             group.getCreatedAt().toString(),
                             groupMemberRepository.countByGroupIdAndStatusTrue(group.getId()),
                             group.getOwner().getUsername(),
                             group.getOwner().getDisplayName(),
-                            mediaService.getAvatarUrlByUserId(group.getOwner().getId()),
+                            ownerAvatars.get(group.getOwner().getId()),
                             member.getIsAdmin() != null && member.getIsAdmin(),
                             group.getOwner().getId().equals(user.getId()),
                             true, // ✅ isMember = true
@@ -696,6 +706,8 @@ public class GroupService {
         if (friendIds.isEmpty()) return List.of();
 
         List<GroupMember> members = groupMemberRepository.findAcceptedMembersByGroupIdAndUserIds(groupId, new ArrayList<>(friendIds));
+        Map<Integer, String> avatars = mediaService.getAvatarUrlsByUserIds(
+                members.stream().map(m -> m.getUser().getId()).toList());
 
         return members.stream()
                 .map(m -> {
@@ -704,7 +716,7 @@ public class GroupService {
                             u.getId(),
                             u.getDisplayName(),
                             u.getUsername(),
-                            mediaService.getAvatarUrlByUserId(u.getId())
+                            avatars.get(u.getId())
                     );
                 }).collect(Collectors.toList());
     }
@@ -0,0 +1,95 @@
+package com.example.social_media.service;
+
+import com.example.social_media.dto.media.MediaDto;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * Cache media đang hoạt động theo từng target: key "media:{targetType}:{targetId}" chứa mọi media (mọi loại) của target,
+ * kể cả danh sách rỗng. Đọc nhiều target bằng một lệnh MGET, ghi các target vừa tải bằng một pipeline;
+ * media của target thay đổi thì chỉ xóa key của target đó.
+ */
+@Component
+public class MediaCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(MediaCache.class);
+
+    private static final Duration CACHE_TTL = Duration.ofMinutes(10);
+    private static final TypeReference<List<MediaDto>> MEDIA_LIST = new TypeReference<>() {
+    };
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final ObjectMapper objectMapper;
+
+    public MediaCache(StringRedisTemplate stringRedisTemplate, ObjectMapper objectMapper) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.objectMapper = objectMapper;
+    }
+
+    // Chỉ chứa các target có trong cache; target vắng mặt cần tải từ DB
+    public Map<Integer, List<MediaDto>> getAll(String targetTypeCode, List<Integer> targetIds) {
+        List<String> values;
+        try {
+            values = stringRedisTemplate.opsForValue().multiGet(targetIds.stream().map(id -> key(targetTypeCode, id)).toList());
+        } catch (Exception e) {
+            logger.warn("Không đọc được cache media {}: {}", targetTypeCode, e.getMessage());
+            return Map.of();
+        }
+        if (values == null) return Map.of();
+
+        Map<Integer, List<MediaDto>> cached = new HashMap<>();
+        for (int i = 0; i < targetIds.size(); i++) {
+            String json = values.get(i);
+            if (json == null) continue;
+            try {
+                cached.put(targetIds.get(i), objectMapper.readValue(json, MEDIA_LIST));
+            } catch (Exception e) {
+                logger.warn("Bỏ qua cache media hỏng {}: {}", key(targetTypeCode, targetIds.get(i)), e.getMessage());
+            }
+        }
+        return cached;
+    }
+
+    public void putAll(String targetTypeCode, Map<Integer, List<MediaDto>> mediaByTarget) {
+        if (mediaByTarget.isEmpty()) return;
+        Map<byte[], byte[]> entries = new LinkedHashMap<>();
+        try {
+            for (Map.Entry<Integer, List<MediaDto>> entry : mediaByTarget.entrySet()) {
+                entries.put(key(targetTypeCode, entry.getKey()).getBytes(StandardCharsets.UTF_8),
+                        objectMapper.writeValueAsBytes(entry.getValue()));
+            }
+            Expiration expiration = Expiration.from(CACHE_TTL);
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                entries.forEach((key, value) ->
+                        connection.stringCommands().set(key, value, expiration, RedisStringCommands.SetOption.upsert()));
+                return null;
+            });
+        } catch (Exception e) {
+            logger.warn("Không ghi được cache media {}: {}", targetTypeCode, e.getMessage());
+        }
+    }
+
+    public void evict(String targetTypeCode, Collection<Integer> targetIds) {
+        if (targetIds.isEmpty()) return;
+        try {
+            stringRedisTemplate.delete(targetIds.stream().map(id -> key(targetTypeCode, id)).toList());
+        } catch (Exception e) {
+            logger.warn("Không xóa được cache media {} {}: {}", targetTypeCode, targetIds, e.getMessage());
+        }
+    }
+
+    private static String key(String targetTypeCode, Integer targetId) {
+        return "media:" + targetTypeCode + ":" + targetId;
+    }
+}
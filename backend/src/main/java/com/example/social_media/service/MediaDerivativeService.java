@@ -0,0 +1,259 @@
+package com.example.social_media.service;
+
+import com.example.social_media.entity.Media;
+import com.example.social_media.repository.MediaRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tạo nền các biến thể JPEG đã thu nhỏ (thumbnail, cỡ bảng tin, đầy đủ) cho ảnh vừa upload, trên một pool
+ * {@code media.derivative.workers} luồng với hàng đợi giới hạn {@code media.derivative.queue-capacity}.
+ * Biến thể được tạo một lần cho mỗi URL gốc và ghi vào mọi dòng tblMedia dùng URL đó. Ảnh bị bỏ qua khi hàng đợi đầy
+ * hoặc lỗi được tạo bù định kỳ, quét dần theo id; mỗi lần lỗi lùi lượt thử kế tiếp theo cấp số nhân, lỗi quá
+ * {@code MAX_ATTEMPTS} lần (ảnh hỏng) thì thôi. Ảnh không thu nhỏ được (gif, định dạng lạ, ảnh hỏng) dùng chính URL gốc.
+ */
+@Service
+public class MediaDerivativeService {
+
+    private static final Logger logger = LoggerFactory.getLogger(MediaDerivativeService.class);
+
+    private static final Set<String> RESIZABLE_TYPES = Set.of("image/jpeg", "image/jpg", "image/png", "image/bmp");
+    private static final int BACKFILL_BATCH_SIZE = 100;
+    // Ảnh mới upload đã được gửi vào pool sau commit, tạo bù chỉ nhận ảnh cũ hơn khoảng này
+    private static final Duration BACKFILL_GRACE = Duration.ofMinutes(1);
+    private static final int MAX_ATTEMPTS = 6;
+    private static final Duration RETRY_BASE_DELAY = Duration.ofMinutes(5);
+    private static final Duration RETRY_MAX_DELAY = Duration.ofHours(12);
+
+    // Xếp từ lớn đến nhỏ: mỗi biến thể được thu nhỏ từ biến thể trước
+    private enum Variant {
+        FULL("full", 2048),
+        FEED("feed", 1080),
+        THUMBNAIL("thumb", 320);
+
+        private final String suffix;
+        private final int maxEdge;
+
+        Variant(String suffix, int maxEdge) {
+            this.suffix = suffix;
+            this.maxEdge = maxEdge;
+        }
+    }
+
+    private final GcsService gcsService;
+    private final MediaRepository mediaRepository;
+    private final MediaCache mediaCache;
+    private final float jpegQuality;
+    private final ThreadPoolExecutor executor;
+    // URL đang chờ hoặc đang xử lý, tránh tạo trùng khi nhiều dòng cùng ảnh được gửi liên tiếp
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+    // Id cuối đã quét ở lượt tạo bù trước; hết danh sách thì quét lại từ đầu
+    private volatile int backfillCursor;
+
+    public MediaDerivativeService(GcsService gcsService, MediaRepository mediaRepository, MediaCache mediaCache,
+                                  @Value("${media.derivative.workers:2}") int workers,
+                                  @Value("${media.derivative.queue-capacity:500}") int queueCapacity,
+                                  @Value("${media.derivative.jpeg-quality:0.8}") float jpegQuality) {
+        this.gcsService = gcsService;
+        this.mediaRepository = mediaRepository;
+        this.mediaCache = mediaCache;
+        this.jpegQuality = jpegQuality;
+        this.executor = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                Thread.ofPlatform().name("media-derivative-", 0).daemon(true).factory(),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    public void submit(Collection<String> mediaUrls) {
+        for (String mediaUrl : mediaUrls) {
+            if (!inFlight.add(mediaUrl)) continue;
+            try {
+                executor.execute(() -> generate(mediaUrl));
+            } catch (RejectedExecutionException e) {
+                inFlight.remove(mediaUrl);
+                logger.warn("Hàng đợi tạo ảnh thu nhỏ đã đầy, để lượt tạo bù xử lý: {}", mediaUrl);
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${media.derivative.backfill-interval-ms:60000}")
+    public void backfill() {
+        if (executor.getQueue().remainingCapacity() < BACKFILL_BATCH_SIZE) return;
+        try {
+            Instant now = Instant.now();
+            List<Object[]> rows = mediaRepository.findImagesWithoutDerivatives(backfillCursor,
+                    now.minus(BACKFILL_GRACE), now, PageRequest.of(0, BACKFILL_BATCH_SIZE));
+            backfillCursor = rows.size() < BACKFILL_BATCH_SIZE ? 0 : (Integer) rows.get(rows.size() - 1)[0];
+            Set<String> mediaUrls = new LinkedHashSet<>();
+            for (Object[] row : rows) {
+                mediaUrls.add((String) row[1]);
+            }
+            submit(mediaUrls);
+        } catch (Exception e) {
+            logger.warn("Không tải được danh sách ảnh cần tạo bù biến thể: {}", e.getMessage());
+        }
+    }
+
+    private void generate(String mediaUrl) {
+        try {
+            // Ảnh trùng nội dung đã có biến thể từ trước: chỉ chép URL sang các dòng mới
+            Optional<Media> derived = mediaRepository.findFirstByMediaUrlAndThumbnailUrlIsNotNull(mediaUrl);
+            if (derived.isPresent()) {
+                Media media = derived.get();
+                saveDerivativeUrls(mediaUrl, media.getThumbnailUrl(), media.getFeedUrl(), media.getFullUrl());
+                return;
+            }
+
+            String contentType = gcsService.getContentType(mediaUrl);
+            BufferedImage image = contentType != null && RESIZABLE_TYPES.contains(contentType) ? read(mediaUrl) : null;
+            if (image == null) {
+                saveDerivativeUrls(mediaUrl, mediaUrl, mediaUrl, mediaUrl);
+                return;
+            }
+
+            String[] urls = new String[Variant.values().length];
+            for (Variant variant : Variant.values()) {
+                image = scaleDown(image, variant.maxEdge);
+                urls[variant.ordinal()] = gcsService.uploadDerivative(mediaUrl, variant.suffix + ".jpg", encodeJpeg(image), "image/jpeg");
+            }
+            saveDerivativeUrls(mediaUrl,
+                    urls[Variant.THUMBNAIL.ordinal()], urls[Variant.FEED.ordinal()], urls[Variant.FULL.ordinal()]);
+            logger.info("Đã tạo biến thể cho ảnh {}", mediaUrl);
+        } catch (Exception e) {
+            recordFailure(mediaUrl, e);
+        } finally {
+            inFlight.remove(mediaUrl);
+        }
+    }
+
+    private void recordFailure(String mediaUrl, Exception cause) {
+        try {
+            Integer previous = mediaRepository.findDerivativeAttempts(mediaUrl);
+            int attempts = (previous != null ? previous : 0) + 1;
+            if (attempts >= MAX_ATTEMPTS) {
+                logger.warn("Tạo biến thể cho ảnh {} thất bại {} lần, dùng ảnh gốc: {}", mediaUrl, attempts, cause.getMessage());
+                saveDerivativeUrls(mediaUrl, mediaUrl, mediaUrl, mediaUrl);
+                return;
+            }
+            Instant retryAt = Instant.now().plus(retryDelay(attempts));
+            mediaRepository.recordDerivativeFailure(mediaUrl, retryAt);
+            logger.warn("Tạo biến thể cho ảnh {} thất bại (lần {}), thử lại sau {}: {}",
+                    mediaUrl, attempts, retryAt, cause.getMessage());
+        } catch (Exception e) {
+            logger.warn("Không ghi nhận được lỗi tạo biến thể cho ảnh {}: {}", mediaUrl, e.getMessage());
+        }
+    }
+
+    // RETRY_BASE_DELAY, gấp đôi sau mỗi lần lỗi, tối đa RETRY_MAX_DELAY
+    static Duration retryDelay(int attempts) {
+        Duration delay = RETRY_BASE_DELAY.multipliedBy(1L << Math.min(attempts - 1, 16));
+        return delay.compareTo(RETRY_MAX_DELAY) > 0 ? RETRY_MAX_DELAY : delay;
+    }
+
+    // Ghi URL biến thể vào mọi dòng dùng ảnh này rồi xóa cache media của các target tương ứng
+    private void saveDerivativeUrls(String mediaUrl, String thumbnailUrl, String feedUrl, String fullUrl) {
+        mediaRepository.updateDerivativeUrls(mediaUrl, thumbnailUrl, feedUrl, fullUrl);
+        Map<String, List<Integer>> targets = new HashMap<>();
+        for (Object[] row : mediaRepository.findTargetsByMediaUrl(mediaUrl)) {
+            targets.computeIfAbsent((String) row[0], code -> new ArrayList<>()).add((Integer) row[1]);
+        }
+        targets.forEach(mediaCache::evict);
+    }
+
+    // Giải mã có lấy mẫu thưa với ảnh lớn hơn nhiều so với biến thể lớn nhất, tránh giữ nguyên ảnh hàng chục megapixel
+    private BufferedImage read(String mediaUrl) throws IOException {
+        try (InputStream in = gcsService.openFile(mediaUrl);
+             ImageInputStream imageIn = ImageIO.createImageInputStream(in)) {
+            if (imageIn == null) return null;
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(imageIn);
+            if (!readers.hasNext()) return null;
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(imageIn, true, true);
+                int longestEdge = Math.max(reader.getWidth(0), reader.getHeight(0));
+                int subsampling = Math.max(1, longestEdge / Variant.FULL.maxEdge);
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    // Không phóng to; luôn chuyển sang RGB nền trắng để nén JPEG được cả ảnh có kênh alpha
+    private BufferedImage scaleDown(BufferedImage source, int maxEdge) {
+        double scale = Math.min(1.0, (double) maxEdge / Math.max(source.getWidth(), source.getHeight()));
+        if (scale == 1.0 && source.getType() == BufferedImage.TYPE_INT_RGB) return source;
+        int width = Math.max(1, (int) Math.round(source.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(source.getHeight() * scale));
+        BufferedImage target = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = target.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(source, 0, 0, width, height, Color.WHITE, null);
+        } finally {
+            graphics.dispose();
+        }
+        return target;
+    }
+
+    private byte[] encodeJpeg(BufferedImage image) throws IOException {
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ImageOutputStream imageOut = ImageIO.createImageOutputStream(out)) {
+            writer.setOutput(imageOut);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(jpegQuality);
+            param.setProgressiveMode(ImageWriteParam.MODE_DEFAULT);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return out.toByteArray();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+}
@@ -3,14 +3,18 @@ package com.example.social_media.service;
 import com.example.social_media.dto.media.MediaDto;
 import com.example.social_media.entity.*;
 import com.example.social_media.repository.*;
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
@@ -21,30 +25,34 @@ public class MediaService {
 
     private final MediaRepository mediaRepository;
     private final UserRepository userRepository;
-    private final MediaTypeRepository mediaTypeRepository;
-    private final TargetTypeRepository targetTypeRepository;
+    private final ReferenceDataRegistry referenceDataRegistry;
     private final GcsService gcsService;
-    private final RedisTemplate<String, String> redisAvatarTemplate;
-    private final RedisTemplate<String, String> redisMediaTemplate;
-    private final ObjectMapper objectMapper;
+    private final MediaUploadExecutor mediaUploadExecutor;
+    private final MediaDerivativeService mediaDerivativeService;
+    private final ChunkedUploadService chunkedUploadService;
+    private final StringRedisTemplate stringRedisTemplate;
+    private final MediaCache mediaCache;
 
     private static final Set<String> COMMON_ALLOWED_TYPES = Set.of("image/jpeg", "image/jpg", "video/mp4", "audio/mpeg");
     private static final Set<String> COMMENT_MESSAGE_ALLOWED_TYPES = Set.of("image/jpeg", "image/jpg", "image/gif", "video/mp4", "audio/mpeg");
-    private static final Duration CACHE_TTL = Duration.ofMinutes(10);
     private static final Duration AVATAR_CACHE_TTL = Duration.ofMinutes(5);
-
-    public MediaService(MediaRepository mediaRepository, UserRepository userRepository, MediaTypeRepository mediaTypeRepository,
-            TargetTypeRepository targetTypeRepository, GcsService gcsService,
-            RedisTemplate<String, String> redisAvatarTemplate, RedisTemplate<String, String> redisMediaTemplate,
-            ObjectMapper objectMapper) {
+    // Giá trị cache cho target chưa có avatar
+    private static final String NO_AVATAR = "";
+
+    public MediaService(MediaRepository mediaRepository, UserRepository userRepository,
+            ReferenceDataRegistry referenceDataRegistry, GcsService gcsService,
+            StringRedisTemplate stringRedisTemplate, MediaCache mediaCache,
+            MediaUploadExecutor mediaUploadExecutor, MediaDerivativeService mediaDerivativeService,
+            ChunkedUploadService chunkedUploadService) {
         this.mediaRepository = mediaRepository;
         this.userRepository = userRepository;
-        this.mediaTypeRepository = mediaTypeRepository;
-        this.targetTypeRepository = targetTypeRepository;
+        this.referenceDataRegistry = referenceDataRegistry;
         this.gcsService = gcsService;
-        this.redisAvatarTemplate = redisAvatarTemplate;
-        this.redisMediaTemplate = redisMediaTemplate;
-        this.objectMapper = objectMapper;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.mediaCache = mediaCache;
+        this.mediaUploadExecutor = mediaUploadExecutor;
+        this.mediaDerivativeService = mediaDerivativeService;
+        this.chunkedUploadService = chunkedUploadService;
     }
 
     public String getFirstMediaUrlByTarget(Integer targetId, String targetTypeCode) {
@@ -55,57 +63,31 @@ public class MediaService {
         return mediaOpt.map(Media::getMediaUrl).orElse(null);
     }
 
-    private String buildCacheKey(List<Integer> targetIds, String targetTypeCode, String mediaTypeName) {
-        List<Integer> sortedIds = new ArrayList<>(targetIds);
-        Collections.sort(sortedIds);
-        return String.format("media:%s:%s:%s", sortedIds, targetTypeCode, mediaTypeName);
-    }
-
     public MediaDto uploadMedia(Integer userId, Integer targetId, String targetTypeCode, String mediaTypeName, MultipartFile file, String caption) throws IOException {
         validateFileTypeByTarget(targetTypeCode, file);
 
         User owner = userRepository.findById(userId).orElseThrow(() -> new IllegalArgumentException("Người dùng không tồn tại"));
-        TargetType targetType = targetTypeRepository.findByCode(targetTypeCode).orElseThrow(() -> new IllegalArgumentException("Loại target không hợp lệ"));
-        MediaType mediaType = mediaTypeRepository.findByName(mediaTypeName).orElseThrow(() -> new IllegalArgumentException("Loại media không hợp lệ"));
+        TargetType targetType = referenceDataRegistry.findTargetType(targetTypeCode).orElseThrow(() -> new IllegalArgumentException("Loại target không hợp lệ"));
+        MediaType mediaType = referenceDataRegistry.findMediaType(mediaTypeName).orElseThrow(() -> new IllegalArgumentException("Loại media không hợp lệ"));
         String mediaUrl = gcsService.uploadFile(file);
 
-        Media media = new Media();
-        media.setOwner(owner);
-        media.setTargetId(targetId);
-        media.setTargetType(targetType);
-        media.setMediaType(mediaType);
-        media.setMediaUrl(mediaUrl);
-        media.setCaption(caption);
-        media.setCreatedAt(Instant.now());
-        media.setStatus(true);
-
-        Media savedMedia = mediaRepository.save(media);
-        redisAvatarTemplate.delete("avatar:" + userId);
+        Media savedMedia = attachMedia(owner, targetId, targetType, List.of(mediaType), List.of(mediaUrl), caption).get(0);
+        stringRedisTemplate.delete("avatar:" + userId);
         return toDto(savedMedia);
     }
 
     public MediaDto saveMediaWithUrl(Integer userId, Integer targetId, String targetTypeCode, String mediaTypeName, String mediaUrl, String caption) {
         User owner = userRepository.findById(userId).orElseThrow(() -> new IllegalArgumentException("Người dùng không tồn tại"));
-        TargetType targetType = targetTypeRepository.findByCode(targetTypeCode).orElseThrow(() -> new IllegalArgumentException("Loại target không hợp lệ"));
-        MediaType mediaType = mediaTypeRepository.findByName(mediaTypeName).orElseThrow(() -> new IllegalArgumentException("Loại media không hợp lệ"));
-
-        Media media = new Media();
-        media.setOwner(owner);
-        media.setTargetId(targetId);
-        media.setTargetType(targetType);
-        media.setMediaType(mediaType);
-        media.setMediaUrl(mediaUrl);
-        media.setCaption(caption);
-        media.setCreatedAt(Instant.now());
-        media.setStatus(true);
-
-        Media savedMedia = mediaRepository.save(media);
+        TargetType targetType = referenceDataRegistry.findTargetType(targetTypeCode).orElseThrow(() -> new IllegalArgumentException("Loại target không hợp lệ"));
+        MediaType mediaType = referenceDataRegistry.findMediaType(mediaTypeName).orElseThrow(() -> new IllegalArgumentException("Loại media không hợp lệ"));
+
+        Media savedMedia = attachMedia(owner, targetId, targetType, List.of(mediaType), List.of(mediaUrl), caption).get(0);
         return toDto(savedMedia);
     }
 
     public List<MediaDto> getMediaByTargetDto(Integer targetId, String targetTypeCode, String mediaTypeName, Boolean status) {
-        TargetType targetType = targetTypeRepository.findByCode(targetTypeCode).orElseThrow(() -> new IllegalArgumentException("Loại target không hợp lệ"));
-        MediaType mediaType = mediaTypeRepository.findByName(mediaTypeName).orElseThrow(() -> new IllegalArgumentException("Loại media không hợp lệ"));
+        TargetType targetType = referenceDataRegistry.findTargetType(targetTypeCode).orElseThrow(() -> new IllegalArgumentException("Loại target không hợp lệ"));
+        MediaType mediaType = referenceDataRegistry.findMediaType(mediaTypeName).orElseThrow(() -> new IllegalArgumentException("Loại media không hợp lệ"));
         List<Media> mediaList = mediaRepository.findByTargetIdAndTargetTypeIdAndMediaTypeIdAndStatus(
                 targetId, targetType.getId(), mediaType.getId(), status);
         return mediaList.stream().map(this::toDto).collect(Collectors.toList());
@@ -113,114 +95,170 @@ public class MediaService {
 
     @Transactional
     public void disableOldProfileMedia(Integer userId) {
-        TargetType targetType = targetTypeRepository.findByCode("PROFILE").orElseThrow(() -> new IllegalArgumentException("Loại target không hợp lệ"));
-        MediaType mediaType = mediaTypeRepository.findByName("image").orElseThrow(() -> new IllegalArgumentException("Loại media không hợp lệ"));
+        TargetType targetType = referenceDataRegistry.findTargetType("PROFILE").orElseThrow(() -> new IllegalArgumentException("Loại target không hợp lệ"));
+        MediaType mediaType = referenceDataRegistry.findMediaType("image").orElseThrow(() -> new IllegalArgumentException("Loại media không hợp lệ"));
         List<Media> oldMedia = mediaRepository.findByTargetIdAndTargetTypeAndMediaTypeAndStatusTrue(userId, targetType, mediaType);
         for (Media media : oldMedia) {
             media.setStatus(false);
         }
         mediaRepository.saveAll(oldMedia);
-        redisAvatarTemplate.delete("avatar:" + userId);
+        releaseAfterCommit(oldMedia.stream().map(Media::getMediaUrl).toList());
+        evictTargetMedia("PROFILE", userId);
+        stringRedisTemplate.delete("avatar:" + userId);
     }
 
     public List<MediaDto> uploadPostMediaFiles(Integer userId, Integer postId, List<MultipartFile> files, String caption) {
-        User owner = userRepository.findById(userId).orElseThrow(() -> new IllegalArgumentException("Người dùng không tồn tại"));
-        TargetType postTargetType = targetTypeRepository.findByCode("POST").orElseThrow(() -> new IllegalArgumentException("Loại target không hợp lệ"));
+        return uploadMediaFiles(userId, postId, files, caption, "POST");
+    }
 
+    /**
+     * Upload song song qua MediaUploadExecutor rồi lưu toàn bộ bản ghi media trong một lần saveAll.
+     * Kiểm tra loại file trước khi upload để file sai loại không để lại object trên GCS.
+     */
+    public List<MediaDto> uploadMediaFiles(Integer userId, Integer targetId, List<MultipartFile> files, String caption, String targetTypeCode) {
+        userRepository.findById(userId).orElseThrow(() -> new IllegalArgumentException("Người dùng không tồn tại"));
+        referenceDataRegistry.findTargetType(targetTypeCode).orElseThrow(() -> new IllegalArgumentException("Loại target không hợp lệ: " + targetTypeCode));
+
+        List<String> mediaTypeNames = new ArrayList<>(files.size());
         for (MultipartFile file : files) {
-            validateFileTypeByTarget("POST", file);
+            validateFileTypeByTarget(targetTypeCode, file);
+            mediaTypeNames.add(resolveMediaTypeName(file));
         }
 
-        List<Media> savedMediaList = files.stream().map(file -> {
-            String contentType = file.getContentType();
-            String mediaTypeName;
-
-            assert contentType != null;
-            if (contentType.startsWith("image/")) {
-                mediaTypeName = "image";
-            } else if (contentType.startsWith("video/")) {
-                mediaTypeName = "video";
-            } else if (contentType.startsWith("audio/")) {
-                mediaTypeName = "audio";
-            } else {
-                throw new IllegalArgumentException("Không thể xác định loại media.");
-            }
+        List<String> mediaUrls;
+        try {
+            mediaUrls = mediaUploadExecutor.uploadAll(files);
+        } catch (IOException e) {
+            throw new RuntimeException("Lỗi khi upload file: " + e.getMessage(), e);
+        }
+        return saveMediaWithUrls(userId, targetId, targetTypeCode, mediaTypeNames, mediaUrls, caption);
+    }
 
-            MediaType mediaType = mediaTypeRepository.findByName(mediaTypeName).orElseThrow(() -> new IllegalArgumentException("Loại media không hợp lệ"));
+    // Lưu nhiều media đã upload cho cùng một target trong một lần saveAll; mediaTypeNames và mediaUrls cùng thứ tự
+    public List<MediaDto> saveMediaWithUrls(Integer userId, Integer targetId, String targetTypeCode,
+                                            List<String> mediaTypeNames, List<String> mediaUrls, String caption) {
+        User owner = userRepository.findById(userId).orElseThrow(() -> new IllegalArgumentException("Người dùng không tồn tại"));
+        TargetType targetType = referenceDataRegistry.findTargetType(targetTypeCode).orElseThrow(() -> new IllegalArgumentException("Loại target không hợp lệ: " + targetTypeCode));
 
-            try {
-                String mediaUrl = gcsService.uploadFile(file);
+        List<MediaType> mediaTypes = new ArrayList<>(mediaTypeNames.size());
+        for (String mediaTypeName : mediaTypeNames) {
+            mediaTypes.add(referenceDataRegistry.findMediaType(mediaTypeName).orElseThrow(() -> new IllegalArgumentException("Loại media không hợp lệ")));
+        }
+
+        return attachMedia(owner, targetId, targetType, mediaTypes, mediaUrls, caption).stream().map(this::toDto).collect(Collectors.toList());
+    }
+
+    /**
+     * Lưu các URL (mỗi URL mang một tham chiếu từ GcsService.uploadFile) thành media của target.
+     * File trùng nội dung có cùng URL nên target đã có dòng với URL đó (UQ_Media) thì dùng lại dòng cũ:
+     * dòng đã tắt được bật lại và nhận tham chiếu; dòng còn hoạt động hoặc URL lặp lại trong lô
+     * thì tham chiếu thừa được trả lại sau commit. Ảnh chưa có biến thể thu nhỏ được gửi sang MediaDerivativeService sau commit.
+     */
+    private List<Media> attachMedia(User owner, Integer targetId, TargetType targetType,
+                                    List<MediaType> mediaTypes, List<String> mediaUrls, String caption) {
+        Map<String, Media> existing = new HashMap<>();
+        for (Media media : mediaRepository.findByTargetIdAndTargetTypeIdAndMediaUrlIn(targetId, targetType.getId(), new HashSet<>(mediaUrls))) {
+            existing.put(media.getMediaUrl(), media);
+        }
 
-                Media media = new Media();
+        Map<String, Media> attached = new LinkedHashMap<>();
+        List<String> redundantUrls = new ArrayList<>();
+        for (int i = 0; i < mediaUrls.size(); i++) {
+            String mediaUrl = mediaUrls.get(i);
+            Media media = existing.get(mediaUrl);
+            if (attached.containsKey(mediaUrl) || (media != null && Boolean.TRUE.equals(media.getStatus()))) {
+                redundantUrls.add(mediaUrl);
+                attached.putIfAbsent(mediaUrl, media);
+                continue;
+            }
+            if (media == null) {
+                media = new Media();
                 media.setOwner(owner);
-                media.setTargetId(postId);
-                media.setTargetType(postTargetType);
-                media.setMediaType(mediaType);
-                media.setMediaUrl(mediaUrl);
-                media.setCaption(caption);
-                media.setCreatedAt(Instant.now());
-                media.setStatus(true);
-
-                return media;
-            } catch (IOException e) {
-                throw new RuntimeException("Lỗi khi upload file: " + file.getOriginalFilename(), e);
+                media.setTargetId(targetId);
+                media.setTargetType(targetType);
             }
-        }).collect(Collectors.toList());
+            media.setMediaType(mediaTypes.get(i));
+            media.setMediaUrl(mediaUrl);
+            media.setCaption(caption);
+            media.setCreatedAt(Instant.now());
+            media.setStatus(true);
+            attached.put(mediaUrl, media);
+        }
 
-        mediaRepository.saveAll(savedMediaList);
-        return savedMediaList.stream().map(this::toDto).collect(Collectors.toList());
+        List<Media> saved = mediaRepository.saveAll(attached.values());
+        releaseAfterCommit(redundantUrls);
+        evictTargetMedia(targetType.getCode(), targetId);
+        evictAvatar(targetType.getCode(), targetId);
+
+        List<String> pendingImageUrls = saved.stream()
+                .filter(media -> "image".equals(media.getMediaType().getName()) && media.getThumbnailUrl() == null)
+                .map(Media::getMediaUrl)
+                .toList();
+        if (!pendingImageUrls.isEmpty()) {
+            runAfterCommit(() -> mediaDerivativeService.submit(pendingImageUrls));
+        }
+        return saved;
     }
 
-    public List<MediaDto> uploadMediaFiles(Integer userId, Integer targetId, List<MultipartFile> files, String caption, String targetTypeCode) {
-        User owner = userRepository.findById(userId).orElseThrow(() -> new IllegalArgumentException("Người dùng không tồn tại"));
-        TargetType targetType = targetTypeRepository.findByCode(targetTypeCode).orElseThrow(() -> new IllegalArgumentException("Loại target không hợp lệ: " + targetTypeCode));
+    // Trả lại tham chiếu file của các media vừa tắt/bỏ; rollback thì media vẫn giữ file
+    private void releaseAfterCommit(List<String> mediaUrls) {
+        if (mediaUrls.isEmpty()) return;
+        runAfterCommit(() -> mediaUrls.forEach(gcsService::releaseFile));
+    }
 
-        for (MultipartFile file : files) {
-            validateFileTypeByTarget(targetTypeCode, file);
+    private void runAfterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
         }
-
-        List<Media> savedMediaList = files.stream().map(file -> {
-            String contentType = file.getContentType();
-            String mediaTypeName;
-
-            assert contentType != null;
-            if (contentType.startsWith("image/")) {
-                mediaTypeName = "image";
-            } else if (contentType.startsWith("video/")) {
-                mediaTypeName = "video";
-            } else if (contentType.startsWith("audio/")) {
-                mediaTypeName = "audio";
-            } else {
-                throw new IllegalArgumentException("Không thể xác định loại media.");
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
             }
+        });
+    }
 
-            MediaType mediaType = mediaTypeRepository.findByName(mediaTypeName).orElseThrow(() -> new IllegalArgumentException("Loại media không hợp lệ"));
-
-            try {
-                String mediaUrl = gcsService.uploadFile(file);
+    /**
+     * Gắn các file đã upload nhiều phần (ChunkedUploadService) vào target theo uploadId, trong một lần saveAll.
+     */
+    @Transactional
+    public List<MediaDto> attachChunkedUploads(Integer userId, Integer targetId, String targetTypeCode, List<String> uploadIds, String caption) {
+        List<String> mediaTypeNames = new ArrayList<>(uploadIds.size());
+        List<String> mediaUrls = new ArrayList<>(uploadIds.size());
+        chunkedUploadService.requireClaimable(uploadIds, userId, targetTypeCode);
+        for (String uploadId : uploadIds) {
+            ChunkedUploadService.ClaimedUpload upload = chunkedUploadService.claim(uploadId, userId, targetTypeCode);
+            mediaTypeNames.add(resolveMediaTypeName(upload.contentType()));
+            mediaUrls.add(upload.url());
+        }
+        return saveMediaWithUrls(userId, targetId, targetTypeCode, mediaTypeNames, mediaUrls, caption);
+    }
 
-                Media media = new Media();
-                media.setOwner(owner);
-                media.setTargetId(targetId);
-                media.setTargetType(targetType);
-                media.setMediaType(mediaType);
-                media.setMediaUrl(mediaUrl);
-                media.setCaption(caption);
-                media.setCreatedAt(Instant.now());
-                media.setStatus(true);
-
-                return media;
-            } catch (IOException e) {
-                throw new RuntimeException("Lỗi khi upload file: " + file.getOriginalFilename(), e);
-            }
-        }).collect(Collectors.toList());
+    // "image" / "video" / "audio" theo content type của file
+    public String resolveMediaTypeName(MultipartFile file) {
+        return resolveMediaTypeName(file.getContentType());
+    }
 
-        mediaRepository.saveAll(savedMediaList);
-        return savedMediaList.stream().map(this::toDto).collect(Collectors.toList());
+    public String resolveMediaTypeName(String contentType) {
+        if (contentType == null) {
+            throw new IllegalArgumentException("Không xác định được loại file.");
+        }
+        if (contentType.startsWith("image/")) {
+            return "image";
+        } else if (contentType.startsWith("video/")) {
+            return "video";
+        } else if (contentType.startsWith("audio/")) {
+            return "audio";
+        }
+        throw new IllegalArgumentException("Không thể xác định loại media.");
     }
 
     public void validateFileTypeByTarget(String targetTypeCode, MultipartFile file) {
-        String contentType = file.getContentType();
+        validateContentTypeByTarget(targetTypeCode, file.getContentType());
+    }
+
+    public void validateContentTypeByTarget(String targetTypeCode, String contentType) {
         if (contentType == null) {
             throw new IllegalArgumentException("Không xác định được loại file.");
         }
@@ -239,14 +277,22 @@ public class MediaService {
 
     public void deleteMediaById(Integer mediaId) {
         Media media = mediaRepository.findById(mediaId).orElseThrow(() -> new IllegalArgumentException("Media không tồn tại"));
+        boolean wasActive = Boolean.TRUE.equals(media.getStatus());
         media.setStatus(false);
         mediaRepository.save(media);
+        if (wasActive) {
+            releaseAfterCommit(List.of(media.getMediaUrl()));
+            evictTargetMedia(media.getTargetType().getCode(), media.getTargetId());
+        }
     }
 
     private MediaDto toDto(Media media) {
         MediaDto dto = new MediaDto();
         dto.setId(media.getId());
         dto.setUrl(media.getMediaUrl());
+        dto.setThumbnailUrl(Objects.requireNonNullElse(media.getThumbnailUrl(), media.getMediaUrl()));
+        dto.setFeedUrl(Objects.requireNonNullElse(media.getFeedUrl(), media.getMediaUrl()));
+        dto.setFullUrl(Objects.requireNonNullElse(media.getFullUrl(), media.getMediaUrl()));
         dto.setType(media.getMediaType().getName());
         dto.setTargetId(media.getTargetId());
         dto.setTargetType(media.getTargetType().getCode());
@@ -255,83 +301,120 @@ public class MediaService {
     }
 
     public String getAvatarUrlByUserId(Integer userId) {
-        String cacheKey = "avatar:" + userId;
-        String cachedUrl = redisAvatarTemplate.opsForValue().get(cacheKey);
-        if (cachedUrl != null) {
-            return cachedUrl;
-        }
-
-        Optional<Media> mediaOpt = mediaRepository.findFirstByTargetIdAndTargetType_CodeAndMediaType_NameOrderByCreatedAtDesc(
-                userId, "PROFILE", "image"
-        );
-
-        String mediaUrl = mediaOpt.map(Media::getMediaUrl).orElse(null);
-        if (mediaUrl != null) {
-            redisAvatarTemplate.opsForValue().set(cacheKey, mediaUrl, AVATAR_CACHE_TTL);
-        }
+        return getAvatarUrlsByUserIds(List.of(userId)).get(userId);
+    }
 
-        return mediaUrl;
+    // userId -> URL avatar; người dùng chưa có avatar không có trong map
+    public Map<Integer, String> getAvatarUrlsByUserIds(Collection<Integer> userIds) {
+        return resolveAvatarUrls(userIds, "avatar:", "PROFILE");
     }
 
+    /**
+     * Media theo từng target, nhóm theo targetId (target không có media thì không có trong map).
+     * Media đang hoạt động đọc qua MediaCache theo từng target: chỉ các target chưa có trong cache
+     * được tải từ DB trong một truy vấn IN rồi ghi lại cache.
+     */
     public Map<Integer, List<MediaDto>> getMediaByTargetIds(List<Integer> targetIds, String targetTypeCode, String mediaTypeName, Boolean status) {
-        String cacheKey = buildCacheKey(targetIds, targetTypeCode, mediaTypeName);
+        if (targetIds == null || targetIds.isEmpty()) return new HashMap<>();
 
-        try {
-            String json = redisMediaTemplate.opsForValue().get(cacheKey);
-            if (json != null) {
-                List<MediaDto> cachedList = objectMapper.readValue(json, new TypeReference<>() {
-                });
-                return cachedList.stream().collect(Collectors.groupingBy(MediaDto::getTargetId));
-            }
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-
-        TargetType targetType = targetTypeRepository.findByCode(targetTypeCode)
+        TargetType targetType = referenceDataRegistry.findTargetType(targetTypeCode)
                 .orElseThrow(() -> new IllegalArgumentException("Loại target không hợp lệ"));
-
-        List<Media> mediaList;
-
         // ✅ Nếu mediaTypeName null => lấy tất cả media type
-        if (mediaTypeName != null) {
-            MediaType mediaType = mediaTypeRepository.findByName(mediaTypeName)
-                    .orElseThrow(() -> new IllegalArgumentException("Loại media không hợp lệ"));
-            mediaList = mediaRepository.findByTargetIdInAndTargetTypeIdAndMediaTypeIdAndStatus(
-                    targetIds, targetType.getId(), mediaType.getId(), status);
-        } else {
-            mediaList = mediaRepository.findByTargetIdInAndTargetTypeIdAndStatus(
-                    targetIds, targetType.getId(), status);
+        MediaType mediaType = mediaTypeName == null ? null : referenceDataRegistry.findMediaType(mediaTypeName)
+                .orElseThrow(() -> new IllegalArgumentException("Loại media không hợp lệ"));
+
+        if (!Boolean.TRUE.equals(status)) {
+            List<Media> mediaList = mediaType != null
+                    ? mediaRepository.findByTargetIdInAndTargetTypeIdAndMediaTypeIdAndStatus(targetIds, targetType.getId(), mediaType.getId(), status)
+                    : mediaRepository.findByTargetIdInAndTargetTypeIdAndStatus(targetIds, targetType.getId(), status);
+            return mediaList.stream().map(this::toDto).collect(Collectors.groupingBy(MediaDto::getTargetId));
         }
 
-        List<MediaDto> dtoList = mediaList.stream().map(this::toDto).collect(Collectors.toList());
+        List<Integer> distinctIds = targetIds.stream().distinct().toList();
+        Map<Integer, List<MediaDto>> mediaByTarget = new HashMap<>(mediaCache.getAll(targetTypeCode, distinctIds));
+        List<Integer> missingIds = distinctIds.stream().filter(id -> !mediaByTarget.containsKey(id)).toList();
+        if (!missingIds.isEmpty()) {
+            // Target không có media cũng được cache (danh sách rỗng)
+            Map<Integer, List<MediaDto>> loaded = new HashMap<>();
+            missingIds.forEach(id -> loaded.put(id, new ArrayList<>()));
+            for (Media media : mediaRepository.findByTargetIdInAndTargetTypeIdAndStatus(missingIds, targetType.getId(), true)) {
+                loaded.get(media.getTargetId()).add(toDto(media));
+            }
+            mediaCache.putAll(targetTypeCode, loaded);
+            mediaByTarget.putAll(loaded);
+        }
 
-        try {
-            redisMediaTemplate.opsForValue().set(cacheKey, objectMapper.writeValueAsString(dtoList), CACHE_TTL);
-        } catch (Exception e) {
-            e.printStackTrace();
+        Map<Integer, List<MediaDto>> result = new HashMap<>();
+        mediaByTarget.forEach((targetId, mediaList) -> {
+            List<MediaDto> matching = mediaTypeName == null ? mediaList
+                    : mediaList.stream().filter(dto -> mediaTypeName.equals(dto.getType())).collect(Collectors.toList());
+            if (!matching.isEmpty()) {
+                result.put(targetId, matching);
+            }
+        });
+        return result;
+    }
+
+    // Avatar là ảnh mới nhất của PROFILE / GROUP: xóa cache (kể cả giá trị "chưa có avatar") khi target có media mới
+    private void evictAvatar(String targetTypeCode, Integer targetId) {
+        if ("PROFILE".equals(targetTypeCode)) {
+            runAfterCommit(() -> stringRedisTemplate.delete("avatar:" + targetId));
+        } else if ("GROUP".equals(targetTypeCode)) {
+            runAfterCommit(() -> stringRedisTemplate.delete("groupAvatar:" + targetId));
         }
+    }
 
-        return dtoList.stream().collect(Collectors.groupingBy(MediaDto::getTargetId));
+    // Xóa cache media của target sau khi media của nó bị xóa trực tiếp trong DB
+    public void evictTargetMedia(String targetTypeCode, Integer targetId) {
+        runAfterCommit(() -> mediaCache.evict(targetTypeCode, List.of(targetId)));
     }
 
     public String getGroupAvatarUrl(Integer groupId) {
-        String cacheKey = "groupAvatar:" + groupId;
-        String cachedUrl = redisAvatarTemplate.opsForValue().get(cacheKey);
-        if (cachedUrl != null) {
-            return cachedUrl;
-        }
+        return getGroupAvatarUrls(List.of(groupId)).get(groupId);
+    }
 
-        Optional<Media> mediaOpt = mediaRepository
-                .findFirstByTargetIdAndTargetType_CodeAndMediaType_NameOrderByCreatedAtDesc(
-                        groupId, "GROUP", "image"
-                );
+    // groupId -> URL avatar nhóm; nhóm chưa có avatar không có trong map
+    public Map<Integer, String> getGroupAvatarUrls(Collection<Integer> groupIds) {
+        return resolveAvatarUrls(groupIds, "groupAvatar:", "GROUP");
+    }
 
-        String mediaUrl = mediaOpt.map(Media::getMediaUrl).orElse(null);
-        if (mediaUrl != null) {
-            redisAvatarTemplate.opsForValue().set(cacheKey, mediaUrl, AVATAR_CACHE_TTL);
+    /**
+     * Avatar (ảnh mới nhất của target) cho nhiều target: một lệnh MGET, các target chưa có trong cache được tải
+     * trong một truy vấn rồi ghi lại bằng một pipeline. Target không có ảnh được cache bằng chuỗi rỗng.
+     */
+    private Map<Integer, String> resolveAvatarUrls(Collection<Integer> targetIds, String keyPrefix, String targetTypeCode) {
+        Map<Integer, String> avatars = new HashMap<>();
+        List<Integer> ids = targetIds.stream().filter(Objects::nonNull).distinct().toList();
+        if (ids.isEmpty()) return avatars;
+
+        List<String> cached = stringRedisTemplate.opsForValue().multiGet(ids.stream().map(id -> keyPrefix + id).toList());
+        List<Integer> missingIds = new ArrayList<>();
+        for (int i = 0; i < ids.size(); i++) {
+            String cachedUrl = cached != null ? cached.get(i) : null;
+            if (cachedUrl == null) {
+                missingIds.add(ids.get(i));
+            } else if (!cachedUrl.isEmpty()) {
+                avatars.put(ids.get(i), cachedUrl);
+            }
         }
+        if (missingIds.isEmpty()) return avatars;
 
-        return mediaUrl;
+        Map<Integer, String> loaded = new HashMap<>();
+        for (Object[] row : mediaRepository.findLatestImageUrlsByTargetIds(missingIds, targetTypeCode)) {
+            loaded.putIfAbsent((Integer) row[0], (String) row[1]);
+        }
+        avatars.putAll(loaded);
+
+        Expiration expiration = Expiration.from(AVATAR_CACHE_TTL);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Integer id : missingIds) {
+                connection.stringCommands().set((keyPrefix + id).getBytes(StandardCharsets.UTF_8),
+                        loaded.getOrDefault(id, NO_AVATAR).getBytes(StandardCharsets.UTF_8),
+                        expiration, RedisStringCommands.SetOption.upsert());
+            }
+            return null;
+        });
+        return avatars;
     }
 
     @Transactional
@@ -345,6 +428,8 @@ public class MediaService {
         }
 
         mediaRepository.saveAll(oldAvatars);
+        releaseAfterCommit(oldAvatars.stream().map(Media::getMediaUrl).toList());
+        evictTargetMedia("GROUP", groupId);
     }
 
     /**
@@ -368,34 +453,23 @@ public class MediaService {
         // 2. Lấy các thông tin cần thiết từ DB
         User owner = userRepository.findById(userId)
                 .orElseThrow(() -> new IllegalArgumentException("Người dùng không tồn tại với ID: " + userId));
-        TargetType targetType = targetTypeRepository.findByCode(targetTypeCode)
+        TargetType targetType = referenceDataRegistry.findTargetType(targetTypeCode)
                 .orElseThrow(() -> new IllegalArgumentException("Loại target không hợp lệ: " + targetTypeCode));
-        MediaType mediaType = mediaTypeRepository.findByName(mediaTypeName)
+        MediaType mediaType = referenceDataRegistry.findMediaType(mediaTypeName)
                 .orElseThrow(() -> new IllegalArgumentException("Loại media không hợp lệ: " + mediaTypeName));
 
         // 3. Upload file lên Google Cloud Storage và lấy URL
         String mediaUrl = gcsService.uploadFile(file);
 
-        // 4. Tạo đối tượng Media mới để lưu vào DB
-        Media media = new Media();
-        media.setOwner(owner);
-        media.setTargetId(targetId);
-        media.setTargetType(targetType);
-        media.setMediaType(mediaType);
-        media.setMediaUrl(mediaUrl);
-        media.setCaption(caption);
-        media.setCreatedAt(Instant.now());
-        media.setStatus(true);
-
-        // 5. Lưu vào DB
-        Media savedMedia = mediaRepository.save(media);
+        // 4. Lưu vào DB (dùng lại dòng media cũ nếu target đã có file cùng nội dung)
+        Media savedMedia = attachMedia(owner, targetId, targetType, List.of(mediaType), List.of(mediaUrl), caption).get(0);
 
         // (Tùy chọn) Xóa cache liên quan nếu cần. Ví dụ, nếu đây là upload avatar mới.
         if ("PROFILE".equals(targetTypeCode)) {
-            redisAvatarTemplate.delete("avatar:" + userId);
+            stringRedisTemplate.delete("avatar:" + userId);
         }
 
-        // 6. Chuyển đổi sang DTO và trả về
+        // 5. Chuyển đổi sang DTO và trả về
         return toDto(savedMedia);
     }
 }
@@ -0,0 +1,121 @@
+package com.example.social_media.service;
+
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Upload một lô file lên GCS song song trên virtual thread, tối đa {@code media.upload.max-concurrency} file
+ * cùng lúc cho mỗi request. Kết quả giữ đúng thứ tự file đầu vào; lỗi ở bất kỳ file nào thì hủy phần còn lại
+ * và trả lại các file đã upload (object bị xóa nếu không còn ai dùng). Transaction của request rollback sau đó cũng vậy.
+ */
+@Component
+public class MediaUploadExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(MediaUploadExecutor.class);
+
+    private final GcsService gcsService;
+    private final int maxConcurrency;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public MediaUploadExecutor(GcsService gcsService,
+                               @Value("${media.upload.max-concurrency:4}") int maxConcurrency) {
+        this.gcsService = gcsService;
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    /**
+     * Upload tất cả file, trả về URL theo cùng thứ tự với {@code files}.
+     */
+    public List<String> uploadAll(List<MultipartFile> files) throws IOException {
+        if (files.isEmpty()) return List.of();
+
+        Semaphore permits = new Semaphore(Math.max(1, maxConcurrency));
+        AtomicBoolean failed = new AtomicBoolean();
+        List<Future<String>> futures = new ArrayList<>(files.size());
+        for (MultipartFile file : files) {
+            futures.add(executor.submit(() -> {
+                permits.acquire();
+                try {
+                    // Lô đã lỗi: file chưa bắt đầu thì không upload nữa
+                    if (failed.get()) throw new CancellationException();
+                    return gcsService.uploadFile(file);
+                } catch (Exception e) {
+                    failed.set(true);
+                    throw e;
+                } finally {
+                    permits.release();
+                }
+            }));
+        }
+
+        List<String> urls = new ArrayList<>(files.size());
+        try {
+            for (Future<String> future : futures) {
+                urls.add(future.get());
+            }
+        } catch (ExecutionException | InterruptedException e) {
+            if (e instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+            }
+            failed.set(true);
+            Throwable rootFailure = deleteUploaded(futures);
+            Throwable cause = rootFailure != null ? rootFailure : e instanceof ExecutionException ? e.getCause() : e;
+            if (cause instanceof IllegalArgumentException illegalArgument) {
+                throw illegalArgument;
+            }
+            throw cause instanceof IOException io ? io : new IOException("Lỗi khi upload media: " + cause.getMessage(), cause);
+        }
+
+        deleteOnRollback(urls);
+        return urls;
+    }
+
+    // Chờ các upload đang chạy kết thúc rồi xóa những file đã lên GCS; trả về lỗi gốc (không tính các file bị bỏ qua)
+    private Throwable deleteUploaded(List<Future<String>> futures) {
+        Throwable rootFailure = null;
+        for (Future<String> future : futures) {
+            try {
+                gcsService.releaseFile(future.get());
+            } catch (ExecutionException e) {
+                if (rootFailure == null && !(e.getCause() instanceof CancellationException)) {
+                    rootFailure = e.getCause();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.warn("Bị ngắt khi dọn các file đã upload, có thể còn object mồ côi trên GCS");
+                break;
+            }
+        }
+        return rootFailure;
+    }
+
+    private void deleteOnRollback(List<String> urls) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) return;
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_ROLLED_BACK) {
+                    logger.info("Transaction rollback, trả lại {} file vừa upload", urls.size());
+                    urls.forEach(gcsService::releaseFile);
+                }
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
@@ -0,0 +1,175 @@
+package com.example.social_media.service;
+
+import com.example.social_media.repository.message.JdbcMessageRepository;
+import com.example.social_media.repository.message.JdbcMessageRepository.NewMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.connection.stream.*;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.StreamOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Hàng đợi ghi tin nhắn trên Redis STREAM "chat:ingest". Gửi tin chỉ cần XADD thành công là được xác nhận;
+ * MessageIngestWriter đọc theo lô qua consumer group "chat-writers", ghi DB rồi XACK + XDEL.
+ * Bản ghi chưa được XACK quá {@code chat.ingest.claim-idle} (node chết giữa chừng) được node khác nhận lại.
+ * Mỗi thời điểm chỉ node giữ lease "chat:ingest:writer" được ghi, nên id tin nhắn được cấp theo đúng thứ tự stream.
+ */
+@Service
+public class MessageIngestQueue {
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageIngestQueue.class);
+
+    static final String STREAM_KEY = "chat:ingest";
+    static final String GROUP = "chat-writers";
+    private static final String WRITER_LEASE_KEY = "chat:ingest:writer";
+
+    // Chiếm lease khi trống hoặc gia hạn nếu node này đang giữ
+    private static final DefaultRedisScript<Long> ACQUIRE_LEASE_SCRIPT = new DefaultRedisScript<>("""
+            local owner = redis.call('GET', KEYS[1])
+            if owner == false then
+                redis.call('SET', KEYS[1], ARGV[1], 'PX', ARGV[2])
+                return 1
+            end
+            if owner == ARGV[1] then
+                redis.call('PEXPIRE', KEYS[1], ARGV[2])
+                return 1
+            end
+            return 0
+            """, Long.class);
+
+    private static final DefaultRedisScript<Long> RELEASE_LEASE_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('GET', KEYS[1]) == ARGV[1] then
+                return redis.call('DEL', KEYS[1])
+            end
+            return 0
+            """, Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final String consumerName = UUID.randomUUID().toString();
+    private final int batchSize;
+    private final Duration linger;
+    private final Duration claimIdle;
+    private final Duration writerLease;
+
+    public MessageIngestQueue(StringRedisTemplate stringRedisTemplate,
+                              @Value("${chat.ingest.batch-size:200}") int batchSize,
+                              @Value("${chat.ingest.linger:PT0.005S}") Duration linger,
+                              @Value("${chat.ingest.claim-idle:PT30S}") Duration claimIdle,
+                              @Value("${chat.ingest.writer-lease:PT15S}") Duration writerLease) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("chat.ingest.batch-size phải lớn hơn 0: " + batchSize);
+        }
+        if (batchSize > JdbcMessageRepository.MAX_INSERT_BATCH_SIZE) {
+            logger.warn("chat.ingest.batch-size={} vượt giới hạn tham số của SQL Server, dùng {}",
+                    batchSize, JdbcMessageRepository.MAX_INSERT_BATCH_SIZE);
+            batchSize = JdbcMessageRepository.MAX_INSERT_BATCH_SIZE;
+        }
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.batchSize = batchSize;
+        this.linger = linger;
+        this.claimIdle = claimIdle;
+        this.writerLease = writerLease;
+    }
+
+    Duration getWriterLease() {
+        return writerLease;
+    }
+
+    // Trả về id bản ghi trong stream, dùng làm ingest_id của tin nhắn
+    public String enqueue(Integer chatId, Integer senderId, String content, Instant createdAt) {
+        MapRecord<String, String, String> record = StreamRecords.newRecord()
+                .in(STREAM_KEY)
+                .ofMap(Map.of(
+                        "chatId", String.valueOf(chatId),
+                        "senderId", String.valueOf(senderId),
+                        "content", content != null ? content : "",
+                        "createdAt", String.valueOf(createdAt.toEpochMilli())));
+        RecordId id = streamOps().add(record);
+        return id != null ? id.getValue() : null;
+    }
+
+    void ensureGroup() {
+        try {
+            streamOps().createGroup(STREAM_KEY, ReadOffset.from("0-0"), GROUP);
+        } catch (RedisSystemException e) {
+            // BUSYGROUP: group đã được node khác tạo
+            logger.debug("Consumer group {} đã tồn tại: {}", GROUP, e.getMessage());
+        } catch (DataAccessException e) {
+            logger.warn("Không tạo được consumer group {} cho hàng đợi tin nhắn: {}", GROUP, e.getMessage());
+        }
+    }
+
+    boolean acquireWriterLease() {
+        Long acquired = stringRedisTemplate.execute(ACQUIRE_LEASE_SCRIPT, List.of(WRITER_LEASE_KEY),
+                consumerName, String.valueOf(writerLease.toMillis()));
+        return acquired != null && acquired == 1;
+    }
+
+    void releaseWriterLease() {
+        try {
+            stringRedisTemplate.execute(RELEASE_LEASE_SCRIPT, List.of(WRITER_LEASE_KEY), consumerName);
+        } catch (DataAccessException e) {
+            logger.warn("Không trả được lease ghi tin nhắn, node khác nhận sau khi hết hạn: {}", e.getMessage());
+        }
+    }
+
+    // Chờ tối đa linger để gom các tin mới
+    List<NewMessage> readBatch() {
+        // read(...) nhận StreamOffset<String>... nên javac cảnh báo tạo mảng generic; chỉ có một offset, an toàn
+        @SuppressWarnings("unchecked")
+        List<MapRecord<String, Object, Object>> records = streamOps().read(
+                Consumer.from(GROUP, consumerName),
+                StreamReadOptions.empty().count(batchSize).block(linger),
+                StreamOffset.create(STREAM_KEY, ReadOffset.lastConsumed()));
+        return toMessages(records);
+    }
+
+    // Nhận lại các bản ghi đã giao nhưng chưa XACK quá lâu, kể cả của chính node này sau khi ghi lỗi
+    List<NewMessage> claimStale() {
+        PendingMessages pending = streamOps().pending(STREAM_KEY, GROUP, Range.unbounded(), batchSize);
+        RecordId[] stale = pending.stream()
+                .filter(message -> message.getElapsedTimeSinceLastDelivery().compareTo(claimIdle) >= 0)
+                .map(PendingMessage::getId)
+                .toArray(RecordId[]::new);
+        if (stale.length == 0) return List.of();
+        return toMessages(streamOps().claim(STREAM_KEY, GROUP, consumerName, claimIdle, stale));
+    }
+
+    void complete(List<NewMessage> messages) {
+        if (messages.isEmpty()) return;
+        String[] ids = messages.stream().map(NewMessage::ingestId).toArray(String[]::new);
+        streamOps().acknowledge(STREAM_KEY, GROUP, ids);
+        streamOps().delete(STREAM_KEY, ids);
+    }
+
+    private List<NewMessage> toMessages(List<MapRecord<String, Object, Object>> records) {
+        if (records == null) return List.of();
+        return records.stream()
+                .map(record -> {
+                    Map<Object, Object> fields = record.getValue();
+                    return new NewMessage(
+                            record.getId().getValue(),
+                            Integer.valueOf(fields.get("chatId").toString()),
+                            Integer.valueOf(fields.get("senderId").toString()),
+                            fields.get("content").toString(),
+                            Instant.ofEpochMilli(Long.parseLong(fields.get("createdAt").toString())));
+                })
+                .toList();
+    }
+
+    private StreamOperations<String, Object, Object> streamOps() {
+        return stringRedisTemplate.opsForStream();
+    }
+}
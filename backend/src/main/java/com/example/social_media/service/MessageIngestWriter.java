@@ -0,0 +1,154 @@
+package com.example.social_media.service;
+
+import com.example.social_media.repository.message.JdbcMessageRepository.NewMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Luồng ghi nền của hàng đợi tin nhắn: đọc một lô từ MessageIngestQueue, ghi tin và dòng trạng thái trong
+ * một transaction qua {@link MessageService#ingestBatch}, broadcast sau commit rồi mới XACK.
+ * Lô lỗi được thử lại từng tin; tin vi phạm ràng buộc dữ liệu bị bỏ và người gửi được báo lỗi, lỗi khác
+ * (DB tạm mất kết nối) để nguyên trong pending và được nhận lại sau {@code chat.ingest.claim-idle}.
+ * Chỉ ghi khi đang giữ lease của MessageIngestQueue, gia hạn sau mỗi một phần ba thời hạn lease.
+ */
+@Component
+public class MessageIngestWriter implements SmartLifecycle {
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageIngestWriter.class);
+
+    private final MessageIngestQueue messageIngestQueue;
+    private final MessageService messageService;
+    private final Duration claimInterval;
+    private final Duration errorBackoff;
+
+    private volatile boolean running;
+    private Thread worker;
+    private boolean leaseHeld;
+    private long leaseCheckAt;
+
+    public MessageIngestWriter(MessageIngestQueue messageIngestQueue, MessageService messageService,
+                               @Value("${chat.ingest.claim-interval:PT10S}") Duration claimInterval,
+                               @Value("${chat.ingest.error-backoff:PT1S}") Duration errorBackoff) {
+        this.messageIngestQueue = messageIngestQueue;
+        this.messageService = messageService;
+        this.claimInterval = claimInterval;
+        this.errorBackoff = errorBackoff;
+    }
+
+    @Override
+    public void start() {
+        messageIngestQueue.ensureGroup();
+        running = true;
+        worker = Thread.ofPlatform().name("message-ingest-writer").daemon(true).start(this::run);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (worker != null) {
+            try {
+                worker.join(errorBackoff.toMillis() + 1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        // Trả lease sớm để node khác tiếp tục ghi ngay thay vì chờ hết hạn
+        messageIngestQueue.releaseWriterLease();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void run() {
+        long nextClaimAt = 0;
+        while (running) {
+            try {
+                if (!holdLease()) {
+                    sleepQuietly(leaseCheckInterval());
+                    continue;
+                }
+                List<NewMessage> batch = List.of();
+                if (System.currentTimeMillis() >= nextClaimAt) {
+                    batch = messageIngestQueue.claimStale();
+                    nextClaimAt = System.currentTimeMillis() + claimInterval.toMillis();
+                }
+                if (batch.isEmpty()) {
+                    batch = messageIngestQueue.readBatch();
+                }
+                if (!batch.isEmpty()) {
+                    write(batch);
+                }
+            } catch (Exception e) {
+                logger.error("Lỗi trong luồng ghi tin nhắn: {}", e.getMessage());
+                leaseCheckAt = 0;
+                // Stream / group có thể đã mất (Redis khởi động lại): tạo lại trước lần đọc sau
+                messageIngestQueue.ensureGroup();
+                sleepQuietly(errorBackoff);
+            }
+        }
+    }
+
+    private boolean holdLease() {
+        long now = System.currentTimeMillis();
+        if (now >= leaseCheckAt) {
+            boolean held = messageIngestQueue.acquireWriterLease();
+            if (held != leaseHeld) {
+                logger.info(held ? "Node này nhận lease ghi tin nhắn" : "Node này mất lease ghi tin nhắn");
+            }
+            leaseHeld = held;
+            leaseCheckAt = now + leaseCheckInterval().toMillis();
+        }
+        return leaseHeld;
+    }
+
+    private Duration leaseCheckInterval() {
+        return messageIngestQueue.getWriterLease().dividedBy(3);
+    }
+
+    private void write(List<NewMessage> batch) {
+        try {
+            messageService.ingestBatch(batch);
+            messageIngestQueue.complete(batch);
+            return;
+        } catch (Exception e) {
+            logger.warn("Ghi lô {} tin nhắn thất bại, thử lại từng tin: {}", batch.size(), e.getMessage());
+        }
+
+        List<NewMessage> done = new ArrayList<>(batch.size());
+        for (NewMessage message : batch) {
+            try {
+                messageService.ingestBatch(List.of(message));
+                done.add(message);
+            } catch (DataIntegrityViolationException e) {
+                logger.error("Bỏ tin nhắn {} của chat {}: {}", message.ingestId(), message.chatId(), e.getMessage());
+                messageService.notifySendFailed(message);
+                done.add(message);
+            } catch (Exception e) {
+                logger.warn("Không ghi được tin nhắn {}, để lại trong hàng đợi: {}", message.ingestId(), e.getMessage());
+            }
+        }
+        messageIngestQueue.complete(done);
+        if (done.size() < batch.size()) {
+            sleepQuietly(errorBackoff);
+        }
+    }
+
+    private void sleepQuietly(Duration duration) {
+        try {
+            Thread.sleep(duration);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+}
@@ -1,44 +1,150 @@
 package com.example.social_media.service;
 
 import com.example.social_media.dto.message.MessageDto;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisZSetCommands;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+/**
+ * Bộ đệm tin nhắn gần nhất của từng chat trên Redis, dùng để gửi bù khi client reconnect.
+ * Mỗi chat là một ZSET "chat:{chatId}:log" với score là số thứ tự seq cấp bởi INCR "chat:{chatId}:seq";
+ * chỉ giữ {@code chat.buffer.size} tin mới nhất.
+ * ZSET "chat:{chatId}:log-ids" (member = messageId, cùng score seq, cắt cùng lúc với log) cho phép xóa tin theo id
+ * mà không phải đọc và serialize lại toàn bộ bộ đệm.
+ */
 @Service
 public class MessageQueueService {
 
+    private static final Logger logger = LoggerFactory.getLogger(MessageQueueService.class);
+
+    // seq là duy nhất trong một chat nên xóa theo khoảng score [seq, seq] chỉ bỏ đúng tin đó
+    private static final DefaultRedisScript<Long> REMOVE_SCRIPT = new DefaultRedisScript<>("""
+            local seq = redis.call('ZSCORE', KEYS[2], ARGV[1])
+            if not seq then
+                return 0
+            end
+            redis.call('ZREMRANGEBYSCORE', KEYS[1], seq, seq)
+            redis.call('ZREM', KEYS[2], ARGV[1])
+            return 1
+            """, Long.class);
+
     private final RedisTemplate<String, MessageDto> redisTemplate;
+    private final StringRedisTemplate stringRedisTemplate;
     private final SimpMessagingTemplate messagingTemplate;
+    private final int bufferSize;
+    private final Duration bufferTtl;
 
-    public MessageQueueService(RedisTemplate<String, MessageDto> redisTemplate, SimpMessagingTemplate messagingTemplate) {
+    public MessageQueueService(RedisTemplate<String, MessageDto> redisTemplate, StringRedisTemplate stringRedisTemplate,
+                               SimpMessagingTemplate messagingTemplate,
+                               @Value("${chat.buffer.size:100}") int bufferSize,
+                               @Value("${chat.buffer.ttl:P7D}") Duration bufferTtl) {
         this.redisTemplate = redisTemplate;
+        this.stringRedisTemplate = stringRedisTemplate;
         this.messagingTemplate = messagingTemplate;
+        this.bufferSize = bufferSize;
+        this.bufferTtl = bufferTtl;
     }
 
     @Transactional
     public void queueAndSendMessage(MessageDto messageDto) {
-        // Lưu tin nhắn vào Redis với key là chatId
-        String key = "chat:" + messageDto.getChatId() + ":messages";
-        System.out.println("Queuing message for chatId: " + messageDto.getChatId() + ", content: " + messageDto.getContent());
-        redisTemplate.opsForList().rightPush(key, messageDto);
-
-        // Giới hạn số tin nhắn lưu (ví dụ: 100 tin nhắn gần nhất)
-        redisTemplate.opsForList().trim(key, 0, 99);
-        System.out.println("Broadcasting message to /topic/chat/" + messageDto.getChatId() + ": " + messageDto.getContent());
+        Integer chatId = messageDto.getChatId();
+        try {
+            Long seq = redisTemplate.opsForValue().increment(seqKey(chatId));
+            messageDto.setSeq(seq);
+            appendToLog(chatId, messageDto, seq);
+        } catch (DataAccessException e) {
+            // Redis lỗi: vẫn broadcast, client sẽ đồng bộ lại qua API lịch sử khi reconnect
+            logger.warn("Không ghi được tin nhắn vào bộ đệm Redis cho chatId {}: {}", chatId, e.getMessage());
+        }
+
         // Broadcast ngay lập tức
-        messagingTemplate.convertAndSend("/topic/chat/" + messageDto.getChatId(), messageDto);
+        messagingTemplate.convertAndSend("/topic/chat/" + chatId, messageDto);
     }
 
-    @Transactional
-    public void resendQueuedMessages(String chatId, String sessionId) {
-        String key = "chat:" + chatId + ":messages";
-        List<MessageDto> queuedMessages = redisTemplate.opsForList().range(key, 0, -1);
-        for (MessageDto message : queuedMessages) {
+    /**
+     * Gửi lại cho session các tin có seq > lastSeq. Không có lastSeq thì gửi toàn bộ bộ đệm.
+     * Nếu khoảng bị lỡ đã trôi khỏi bộ đệm, gửi thêm thông báo resync để client tải lại lịch sử từ API.
+     */
+    public void resendQueuedMessages(String chatId, String sessionId, Long lastSeq) {
+        String key = logKey(chatId);
+        Set<MessageDto> missed = lastSeq == null
+                ? redisTemplate.opsForZSet().range(key, 0, -1)
+                : redisTemplate.opsForZSet().rangeByScore(key, lastSeq + 1, Double.POSITIVE_INFINITY);
+
+        if (lastSeq != null && hasGapBeyondBuffer(chatId, missed, lastSeq)) {
+            Long fromSeq = missed == null || missed.isEmpty() ? null : missed.iterator().next().getSeq();
+            messagingTemplate.convertAndSendToUser(sessionId, "/topic/chat/" + chatId + "/resync",
+                    fromSeq == null ? Map.of("chatId", chatId) : Map.of("chatId", chatId, "fromSeq", fromSeq));
+        }
+
+        if (missed == null) return;
+        for (MessageDto message : missed) {
             messagingTemplate.convertAndSendToUser(sessionId, "/topic/chat/" + chatId, message);
         }
     }
-}
\ No newline at end of file
+
+    // Bỏ tin đã bị xóa khỏi bộ đệm để reconnect không gửi lại
+    public void removeMessage(Integer chatId, Integer messageId) {
+        stringRedisTemplate.execute(REMOVE_SCRIPT, List.of(logKey(chatId), idsKey(chatId)), String.valueOf(messageId));
+    }
+
+    // Ghi tin và chỉ mục id trong một pipeline; cả hai ZSET được cắt theo cùng thứ hạng nên luôn chứa cùng các seq
+    @SuppressWarnings("unchecked")
+    private void appendToLog(Integer chatId, MessageDto messageDto, long seq) {
+        byte[] logKey = logKey(chatId).getBytes(StandardCharsets.UTF_8);
+        byte[] idsKey = idsKey(chatId).getBytes(StandardCharsets.UTF_8);
+        byte[] member = ((RedisSerializer<MessageDto>) redisTemplate.getValueSerializer()).serialize(messageDto);
+        byte[] messageId = String.valueOf(messageDto.getId()).getBytes(StandardCharsets.UTF_8);
+        long ttlSeconds = bufferTtl.toSeconds();
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            RedisZSetCommands zSet = connection.zSetCommands();
+            zSet.zAdd(logKey, seq, member);
+            zSet.zAdd(idsKey, seq, messageId);
+            // Xóa các tin cũ nhất, giữ lại bufferSize tin mới nhất
+            zSet.zRemRange(logKey, 0, -(bufferSize + 1L));
+            zSet.zRemRange(idsKey, 0, -(bufferSize + 1L));
+            // Bộ đếm seq không hết hạn để seq không quay về 1 sau khi bộ đệm của chat ít hoạt động bị xóa
+            connection.keyCommands().expire(logKey, ttlSeconds);
+            connection.keyCommands().expire(idsKey, ttlSeconds);
+            return null;
+        });
+    }
+
+    private boolean hasGapBeyondBuffer(String chatId, Set<MessageDto> missed, long lastSeq) {
+        if (missed != null && !missed.isEmpty()) {
+            Long oldestSeq = missed.iterator().next().getSeq();
+            return oldestSeq != null && oldestSeq > lastSeq + 1;
+        }
+        // Bộ đệm rỗng (hết hạn hoặc Redis bị xóa) nhưng bộ đếm đã vượt lastSeq
+        Long currentSeq = redisTemplate.opsForValue().increment(seqKey(chatId), 0);
+        return currentSeq != null && currentSeq > lastSeq;
+    }
+
+    private static String logKey(Object chatId) {
+        return "chat:" + chatId + ":log";
+    }
+
+    private static String idsKey(Object chatId) {
+        return "chat:" + chatId + ":log-ids";
+    }
+
+    private static String seqKey(Object chatId) {
+        return "chat:" + chatId + ":seq";
+    }
+}
@@ -1,144 +1,247 @@
 package com.example.social_media.service;
 
 import com.example.social_media.dto.media.MediaDto;
-import com.example.social_media.dto.message.ChatDto;
 import com.example.social_media.dto.message.MessageDto;
 import com.example.social_media.entity.*;
 import com.example.social_media.exception.UnauthorizedException;
 import com.example.social_media.repository.ChatMemberRepository;
 import com.example.social_media.repository.ChatRepository;
+import com.example.social_media.repository.message.JdbcChatSummaryRepository;
 import com.example.social_media.repository.message.JdbcMessageRepository;
 import com.example.social_media.repository.message.MessageRepository;
 import com.example.social_media.repository.UserRepository;
-import com.example.social_media.repository.message.MessageStatusRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
 import java.time.Instant;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 import java.util.stream.Collectors;
 
 @Service
 public class MessageService {
 
+    private static final Logger logger = LoggerFactory.getLogger(MessageService.class);
+    private static final int MAX_MESSAGE_PAGE_SIZE = 100;
+
     private final MessageRepository messageRepository;
     private final ChatRepository chatRepository;
     private final UserRepository userRepository;
     private final SimpMessagingTemplate messagingTemplate;
     private final ChatService chatService;
     private final ChatMemberRepository chatMemberRepository;
-    private final MessageStatusRepository messageStatusRepository;
     private final MessageQueueService messageQueueService;
     private final MediaService mediaService;
-    private final GcsService gcsService;
+    private final MediaUploadExecutor mediaUploadExecutor;
+    private final ChunkedUploadService chunkedUploadService;
     private final JdbcMessageRepository jdbcMessageRepository;
+    private final UnreadCounterService unreadCounterService;
+    private final JdbcChatSummaryRepository chatSummaryRepository;
+    private final ReadReceiptCoalescer readReceiptCoalescer;
+    private final MessageIngestQueue messageIngestQueue;
+    private final TransactionTemplate transactionTemplate;
 
     public MessageService(MessageRepository messageRepository,
                           ChatRepository chatRepository, UserRepository userRepository,
                           SimpMessagingTemplate messagingTemplate, ChatService chatService,
-                          ChatMemberRepository chatMemberRepository, MessageStatusRepository messageStatusRepository,
+                          ChatMemberRepository chatMemberRepository,
                           MessageQueueService messageQueueService,
-                          MediaService mediaService, GcsService gcsService, JdbcMessageRepository jdbcMessageRepository) {
+                          MediaService mediaService, MediaUploadExecutor mediaUploadExecutor, JdbcMessageRepository jdbcMessageRepository,
+                          UnreadCounterService unreadCounterService, JdbcChatSummaryRepository chatSummaryRepository,
+                          ReadReceiptCoalescer readReceiptCoalescer, MessageIngestQueue messageIngestQueue,
+                          PlatformTransactionManager transactionManager, ChunkedUploadService chunkedUploadService) {
         this.messageRepository = messageRepository;
         this.chatRepository = chatRepository;
         this.userRepository = userRepository;
         this.messagingTemplate = messagingTemplate;
         this.chatService = chatService;
         this.chatMemberRepository = chatMemberRepository;
-        this.messageStatusRepository = messageStatusRepository;
         this.messageQueueService = messageQueueService;
         this.mediaService = mediaService;
-        this.gcsService = gcsService;
+        this.mediaUploadExecutor = mediaUploadExecutor;
+        this.chunkedUploadService = chunkedUploadService;
         this.jdbcMessageRepository = jdbcMessageRepository;
+        this.unreadCounterService = unreadCounterService;
+        this.chatSummaryRepository = chatSummaryRepository;
+        this.readReceiptCoalescer = readReceiptCoalescer;
+        this.messageIngestQueue = messageIngestQueue;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
     }
 
-    @Transactional
+    /**
+     * Kiểm tra quyền rồi đưa tin vào hàng đợi ghi (MessageIngestQueue); tin được ghi DB theo lô và broadcast
+     * sau khi commit bởi MessageIngestWriter. Tin trả về chưa có id.
+     */
     public MessageDto sendMessage(MessageDto messageDto, String username) {
-        System.out.println("Processing sendMessage for chatId: " + messageDto.getChatId() + ", username: " + username);
         chatService.checkChatAccess(messageDto.getChatId(), username);
 
         User sender = userRepository.findByUsername(username)
                 .orElseThrow(() -> new IllegalArgumentException("Sender not found"));
 
-        System.out.println("Sender found: " + sender.getId());
+        messageDto.setSenderId(sender.getId());
+        messageDto.setCreatedAt(Instant.now());
         try {
-            // Gửi tin nhắn
-            Integer messageId = jdbcMessageRepository.sendMessage(
-                    messageDto.getChatId(),
-                    sender.getId(),
-                    messageDto.getContent()
-            );
-            System.out.println("Message saved with ID: " + messageId);
-            messageDto.setId(messageId);
-
-            // Lưu media nếu có
-//            if (messageDto.getMediaList() != null && !messageDto.getMediaList().isEmpty()) {
-//                for (MediaDto media : messageDto.getMediaList()) {
-//                    if (media.getUrl() == null || media.getType() == null) continue;
-//                    mediaService.saveMediaWithUrl(
-//                            sender.getId(),
-//                            messageId,
-//                            "MESSAGE",
-//                            media.getType(),
-//                            media.getUrl(),
-//                            null
-//                    );
-//                }
-//            }
-//
-//            List<MediaDto> savedMediaList = mediaService.getMediaByTargetDto(messageId, "MESSAGE", null, true);
-//            messageDto.setMediaList(savedMediaList);
-
-            messageDto.setSenderId(sender.getId());
-            messageDto.setCreatedAt(Instant.now());
+            messageIngestQueue.enqueue(messageDto.getChatId(), sender.getId(),
+                    messageDto.getContent(), messageDto.getCreatedAt());
+            logger.debug("Đã đưa tin nhắn của user {} vào hàng đợi ghi của chat {}", sender.getId(), messageDto.getChatId());
+        } catch (DataAccessException e) {
+            // Redis lỗi: ghi trực tiếp qua cùng đường ghi theo lô
+            logger.warn("Không đưa được tin nhắn vào hàng đợi, ghi trực tiếp: {}", e.getMessage());
+            ingestBatch(List.of(new JdbcMessageRepository.NewMessage(UUID.randomUUID().toString(),
+                    messageDto.getChatId(), sender.getId(), messageDto.getContent(), messageDto.getCreatedAt())));
+        }
+        return messageDto;
+    }
 
-            messageQueueService.queueAndSendMessage(messageDto);
+    /**
+     * Ghi một lô tin trong một transaction: tin nhắn (một câu INSERT theo thứ tự lô), dòng trạng thái 'unread' (JDBC batch),
+     * kích hoạt lại thành viên đã rời chat và tóm tắt chat; sau khi commit mới broadcast và báo lỗi cho người gửi tin bị từ chối.
+     */
+    public void ingestBatch(List<JdbcMessageRepository.NewMessage> batch) {
+        IngestedBatch ingested = transactionTemplate.execute(status -> persistBatch(batch));
+        if (ingested == null) return;
+        ingested.rejected().forEach(this::notifySendFailed);
+        if (ingested.messages().isEmpty()) return;
+        try {
+            deliver(ingested);
+        } catch (Exception e) {
+            // Tin đã được lưu; client sẽ thấy qua API lịch sử
+            logger.error("Lỗi khi broadcast lô tin nhắn đã ghi: {}", e.getMessage());
+        }
+    }
 
-            // Gửi thông báo đến các thành viên chat
-            List<ChatMember> members = chatMemberRepository.findByChatId(messageDto.getChatId());
-            for (ChatMember member : members) {
-                if (!member.getUser().getId().equals(sender.getId()) && !member.getStatus()) {
-                    member.setStatus(true);
-                    member.setJoinedAt(Instant.now());
-                    chatMemberRepository.save(member);
-                    ChatDto chatDto = chatService.convertToDto(
-                            chatRepository.findById(messageDto.getChatId()).orElseThrow(),
-                            member.getUser().getId()
-                    );
-                    messagingTemplate.convertAndSend("/topic/chats/" + member.getUser().getId(), chatDto);
-                }
+    // Tin đã được xác nhận lúc đưa vào hàng đợi nhưng không ghi được (bị chặn, không còn là thành viên)
+    public void notifySendFailed(JdbcMessageRepository.NewMessage message) {
+        Map<String, Object> payload = new HashMap<>();
+        payload.put("chatId", message.chatId());
+        payload.put("content", message.content());
+        payload.put("createdAt", message.createdAt().toString());
+        payload.put("reason", "rejected");
+        try {
+            messagingTemplate.convertAndSend("/topic/message-failed/" + message.senderId(), payload);
+        } catch (Exception e) {
+            logger.warn("Không báo được lỗi gửi tin cho user {}: {}", message.senderId(), e.getMessage());
+        }
+    }
+
+    private IngestedBatch persistBatch(List<JdbcMessageRepository.NewMessage> batch) {
+        Map<String, Integer> ids = jdbcMessageRepository.insertBatch(batch);
+        Map<Integer, JdbcMessageRepository.NewMessage> savedById = new LinkedHashMap<>();
+        List<MessageDto> messages = new ArrayList<>(ids.size());
+        List<JdbcMessageRepository.NewMessage> missing = new ArrayList<>();
+        for (JdbcMessageRepository.NewMessage message : batch) {
+            Integer messageId = ids.get(message.ingestId());
+            if (messageId == null) {
+                missing.add(message);
+                continue;
+            }
+            savedById.put(messageId, message);
+            messages.add(new MessageDto(messageId, message.chatId(), message.senderId(), message.content(), 1, message.createdAt()));
+        }
+
+        // Tin vắng mặt trong kết quả: hoặc đã được ghi ở lần trước (bỏ qua), hoặc bị từ chối (báo người gửi)
+        List<JdbcMessageRepository.NewMessage> rejected = List.of();
+        if (!missing.isEmpty()) {
+            Set<String> alreadySaved = jdbcMessageRepository.findIdsByIngestIds(
+                    missing.stream().map(JdbcMessageRepository.NewMessage::ingestId).toList()).keySet();
+            rejected = missing.stream().filter(message -> !alreadySaved.contains(message.ingestId())).toList();
+            for (JdbcMessageRepository.NewMessage message : rejected) {
+                logger.warn("Tin nhắn {} của user {} gửi tới chat {} bị từ chối khi ghi",
+                        message.ingestId(), message.senderId(), message.chatId());
+            }
+        }
+        if (messages.isEmpty()) {
+            return new IngestedBatch(List.of(), Map.of(), rejected);
+        }
+        jdbcMessageRepository.insertUnreadStatuses(savedById);
+
+        Map<Integer, ChatDelivery> chats = new HashMap<>();
+        for (MessageDto message : messages) {
+            chats.computeIfAbsent(message.getChatId(), this::prepareDelivery);
+            // Tin sau cùng của mỗi chat trong lô thắng nhờ điều kiện last_message_id trong MERGE
+            chatSummaryRepository.recordMessage(message.getChatId(), message.getId(), message.getContent(),
+                    message.getSenderId(), message.getCreatedAt());
+        }
+        return new IngestedBatch(messages, chats, rejected);
+    }
+
+    // Chụp danh sách thành viên trước khi kích hoạt lại những người đã rời chat (họ không có dòng 'unread')
+    private ChatDelivery prepareDelivery(Integer chatId) {
+        List<ChatMember> members = chatMemberRepository.findByChatId(chatId);
+        List<Integer> memberIds = new ArrayList<>(members.size());
+        List<Integer> unreadCandidateIds = new ArrayList<>();
+        Set<Integer> spamMemberIds = new HashSet<>();
+        List<Integer> reactivatedIds = new ArrayList<>();
+        for (ChatMember member : members) {
+            Integer userId = member.getUser().getId();
+            memberIds.add(userId);
+            if (Boolean.TRUE.equals(member.getIsSpam())) {
+                spamMemberIds.add(userId);
+            } else if (Boolean.TRUE.equals(member.getStatus())) {
+                unreadCandidateIds.add(userId);
+            }
+            if (!Boolean.TRUE.equals(member.getStatus())) {
+                member.setStatus(true);
+                member.setJoinedAt(Instant.now());
+                reactivatedIds.add(userId);
+            }
+        }
+        if (!reactivatedIds.isEmpty()) {
+            chatMemberRepository.saveAll(members);
+        }
+        return new ChatDelivery(memberIds, unreadCandidateIds, spamMemberIds, reactivatedIds);
+    }
+
+    private void deliver(IngestedBatch ingested) {
+        ingested.chats().forEach((chatId, chat) -> {
+            if (chat.reactivatedIds().isEmpty()) return;
+            // Thành viên vừa được kích hoạt lại: bộ đếm của họ được đối soát lại ở lượt sau
+            unreadCounterService.markForReconcile(chat.reactivatedIds());
+            Chat chatEntity = chatRepository.findById(chatId).orElseThrow();
+            for (Integer userId : chat.reactivatedIds()) {
+                messagingTemplate.convertAndSend("/topic/chats/" + userId, chatService.convertToDto(chatEntity, userId));
             }
+        });
+
+        for (MessageDto messageDto : ingested.messages()) {
+            messageQueueService.queueAndSendMessage(messageDto);
 
-            for (ChatMember member : members) {
-                if (!member.getUser().getId().equals(sender.getId())) {
-                    ChatMember senderMember = chatMemberRepository.findByChatIdAndUserId(
-                            messageDto.getChatId(), sender.getId()
-                    ).orElseThrow(() -> new IllegalArgumentException("Sender not found in chat"));
-
-                    if (senderMember.getIsSpam()) {
-                        messagingTemplate.convertAndSend("/topic/spam-messages/" + messageDto.getChatId(), messageDto);
-                    } else {
-                        messagingTemplate.convertAndSend("/topic/messages/" + member.getUser().getId(), messageDto);
-                        int updatedUnreadCount = messageStatusRepository.countUnreadChatsByUserId(member.getUser().getId());
-                        messagingTemplate.convertAndSend("/topic/unread-count/" + member.getUser().getId(), Map.of("unreadCount", updatedUnreadCount));
+            ChatDelivery chat = ingested.chats().get(messageDto.getChatId());
+            Integer senderId = messageDto.getSenderId();
+            if (chat.spamMemberIds().contains(senderId)) {
+                messagingTemplate.convertAndSend("/topic/spam-messages/" + messageDto.getChatId(), messageDto);
+            } else {
+                for (Integer memberId : chat.memberIds()) {
+                    if (!memberId.equals(senderId)) {
+                        messagingTemplate.convertAndSend("/topic/messages/" + memberId, messageDto);
                     }
                 }
             }
-
-            return messageDto;
-        } catch (Exception e) {
-            System.err.println("Error sending message: " + e.getMessage());
-            throw new RuntimeException("Failed to send message: " + e.getMessage());
+            unreadCounterService.recordMessage(messageDto.getChatId(), chat.unreadCandidateIds().stream()
+                    .filter(userId -> !userId.equals(senderId))
+                    .toList());
         }
     }
 
+    /**
+     * Một trang lịch sử chat theo con trỏ id, sắp xếp tăng dần theo id.
+     * Không có con trỏ: trang mới nhất; beforeId: các tin cũ hơn; afterId: các tin mới hơn.
+     * Chỉ trang mới nhất và trang afterId đánh dấu đã đọc, cuộn lên xem tin cũ thì không.
+     */
     @Transactional
-    public List<MessageDto> getChatMessages(Integer chatId, String username) {
+    public List<MessageDto> getChatMessages(Integer chatId, String username, Integer beforeId, Integer afterId, int size) {
+        if (beforeId != null && afterId != null) {
+            throw new IllegalArgumentException("Chỉ được dùng một trong hai con trỏ before hoặc after");
+        }
         User user = userRepository.findByUsername(username)
                 .orElseThrow(() -> new IllegalArgumentException("User not found"));
 
@@ -149,24 +252,32 @@ public class MessageService {
             return List.of();
         }
 
-        Instant joinedAt = chatMember.getJoinedAt();
+        // Chỉ lấy tin nhắn sau thời điểm joinedAt
+        Instant joinedAt = chatMember.getJoinedAt() != null ? chatMember.getJoinedAt() : Instant.EPOCH;
+        Pageable page = PageRequest.of(0, Math.max(1, Math.min(size, MAX_MESSAGE_PAGE_SIZE)));
+
+        List<Message> messages;
+        if (afterId != null) {
+            messages = messageRepository.findPageAfter(chatId, afterId, joinedAt, page);
+        } else {
+            messages = new ArrayList<>(messageRepository.findPageBefore(chatId,
+                    beforeId != null ? beforeId : Integer.MAX_VALUE, joinedAt, page));
+            Collections.reverse(messages);
+        }
 
-        // Đánh dấu đã đọc
-        messageStatusRepository.markAllAsReadByChatIdAndUserId(chatId, user.getId());
-        int updatedUnreadCount = messageStatusRepository.countUnreadChatsByUserId(user.getId());
-        messagingTemplate.convertAndSend("/topic/unread-count/" + user.getId(), Map.of("unreadCount", updatedUnreadCount));
+        if (messages.isEmpty()) {
+            return List.of();
+        }
 
-        // Lấy tất cả message sau thời điểm joinedAt
-        List<Message> messages = messageRepository.findByChatId(chatId).stream()
-                .filter(msg -> msg.getCreatedAt().isAfter(joinedAt))
-                .collect(Collectors.toList());
+        if (beforeId == null) {
+            // Đánh dấu đã đọc tới tin mới nhất của trang; được gom và ghi xuống DB theo lô
+            readReceiptCoalescer.record(chatId, user.getId(), messages.get(messages.size() - 1).getId());
+        }
 
-        // Lấy danh sách messageId
+        // Media chỉ nạp cho các tin trong trang
         List<Integer> messageIds = messages.stream()
                 .map(Message::getId)
                 .collect(Collectors.toList());
-
-        // Map messageId -> List<MediaDto>
         Map<Integer, List<MediaDto>> mediaMap = mediaService.getMediaByTargetIds(messageIds, "MESSAGE", null, true);
 
         // Gộp vào MessageDto
@@ -193,88 +304,70 @@ public class MessageService {
             throw new UnauthorizedException("You can only delete your own messages.");
         }
         messageRepository.delete(message);
+        messageRepository.flush();
+        // Tin cuối có thể vừa bị xóa: tính lại tóm tắt chat cho hộp thư
+        chatSummaryRepository.rebuild(chatId);
+        // Tin chưa đọc bị xóa làm lệch bộ đếm của các thành viên: đếm lại ở lần đối soát sau
+        unreadCounterService.markForReconcile(chatMemberRepository.findByChatId(chatId).stream()
+                .map(member -> member.getUser().getId())
+                .toList());
         messagingTemplate.convertAndSend("/topic/chat/" + chatId, new MessageDto(messageId, chatId, null, "Message deleted", 0, Instant.now()));
     }
 
     @Transactional(readOnly = true)
     public int getUnreadMessageCount(Integer userId) {
-        int count = messageStatusRepository.countUnreadChatsByUserId(userId);
-        System.out.println("Unread **chat** count for userId " + userId + ": " + count);
+        int count = unreadCounterService.getUnreadChatCount(userId);
+        logger.debug("Số chat chưa đọc của user {}: {}", userId, count);
         return count;
     }
 
-    public void markMessagesAsRead(Integer chatId, Integer userId) {
-        messageStatusRepository.markAllAsReadByChatIdAndUserId(chatId, userId);
+    // Không có upToMessageId: đánh dấu tới tin mới nhất tại thời điểm nhận yêu cầu, tin tới sau khi đó vẫn là chưa đọc
+    public void markMessagesAsRead(Integer chatId, Integer userId, Integer upToMessageId) {
+        Integer readUpTo = upToMessageId != null ? upToMessageId
+                : jdbcMessageRepository.findLatestMessageId(chatId).orElse(null);
+        if (readUpTo == null) return;
+        readReceiptCoalescer.record(chatId, userId, readUpTo);
     }
 
+    // uploadIds: file đã upload nhiều phần qua ChunkedUploadService (video lớn), gắn cùng các file gửi kèm
     @Transactional
-    public MessageDto sendMessageWithMedia(Integer chatId, Integer senderId, String content, List<MultipartFile> files) {
+    public MessageDto sendMessageWithMedia(Integer chatId, Integer senderId, String content, List<MultipartFile> files, List<String> uploadIds) {
         // ✅ Validate user
         User sender = userRepository.findById(senderId)
                 .orElseThrow(() -> new IllegalArgumentException("Người gửi không tồn tại"));
 
-        // ✅ Upload và phân loại media
-        String mediaUrl = null;
-        String mediaType = null;
-        List<MediaDto> uploadedMediaList = new ArrayList<>();
-
-        if (files != null && !files.isEmpty()) {
-            MultipartFile file = files.get(0); // Chỉ lấy file đầu tiên để lưu qua stored procedure
+        // ✅ Kiểm tra loại file và mọi upload nhiều phần trước khi upload hay claim bất kỳ file nào
+        List<MultipartFile> mediaFiles = files != null ? files : List.of();
+        List<String> claimUploadIds = uploadIds != null ? uploadIds : List.of();
+        List<String> mediaTypes = new ArrayList<>(mediaFiles.size() + claimUploadIds.size());
+        for (MultipartFile file : mediaFiles) {
             mediaService.validateFileTypeByTarget("MESSAGE", file);
-            try {
-                mediaUrl = gcsService.uploadFile(file);
-                String contentType = file.getContentType();
-                if (contentType == null) throw new IllegalArgumentException("Không xác định loại media");
-
-                if (contentType.startsWith("image/")) mediaType = "image";
-                else if (contentType.startsWith("video/")) mediaType = "video";
-                else if (contentType.startsWith("audio/")) mediaType = "audio";
-                else throw new IllegalArgumentException("Media không hợp lệ: " + contentType);
-
-                uploadedMediaList.add(new MediaDto(null, mediaUrl, mediaType, null, "MESSAGE", true));
-
-                // Upload các file còn lại (nếu có)
-                for (int i = 1; i < files.size(); i++) {
-                    MultipartFile additionalFile = files.get(i);
-                    mediaService.validateFileTypeByTarget("MESSAGE", additionalFile);
-                    String additionalUrl = gcsService.uploadFile(additionalFile);
-                    String additionalContentType = additionalFile.getContentType();
-                    String additionalMediaType;
-
-                    if (additionalContentType == null) throw new IllegalArgumentException("Không xác định loại media");
-                    if (additionalContentType.startsWith("image/")) additionalMediaType = "image";
-                    else if (additionalContentType.startsWith("video/")) additionalMediaType = "video";
-                    else if (additionalContentType.startsWith("audio/")) additionalMediaType = "audio";
-                    else throw new IllegalArgumentException("Media không hợp lệ: " + additionalContentType);
-
-                    uploadedMediaList.add(new MediaDto(null, additionalUrl, additionalMediaType, null, "MESSAGE", true));
-                }
-            } catch (IOException e) {
-                throw new RuntimeException("Lỗi khi upload media", e);
-            }
+            mediaTypes.add(mediaService.resolveMediaTypeName(file));
+        }
+        chunkedUploadService.requireClaimable(claimUploadIds, senderId, "MESSAGE");
+
+        List<String> mediaUrls;
+        try {
+            mediaUrls = new ArrayList<>(mediaUploadExecutor.uploadAll(mediaFiles));
+        } catch (IOException e) {
+            throw new RuntimeException("Lỗi khi upload media", e);
+        }
+        for (String uploadId : claimUploadIds) {
+            ChunkedUploadService.ClaimedUpload upload = chunkedUploadService.claim(uploadId, senderId, "MESSAGE");
+            mediaTypes.add(mediaService.resolveMediaTypeName(upload.contentType()));
+            mediaUrls.add(upload.url());
         }
 
         // ✅ Tạo message
         Integer messageId = jdbcMessageRepository.sendMessage(chatId, senderId, content);
 
-        // ✅ Lưu media còn lại (nếu có)
-        for (MediaDto media : uploadedMediaList) {
-            if (media.getUrl() == null || media.getType() == null) continue;
-            // Chỉ lưu media nếu chưa được lưu trong stored procedure
-            if (!media.getUrl().equals(mediaUrl)) {
-                mediaService.saveMediaWithUrl(
-                        senderId,
-                        messageId,
-                        "MESSAGE",
-                        media.getType(),
-                        media.getUrl(),
-                        null
-                );
-            }
-        }
+        // ✅ Lưu toàn bộ media của tin trong một lần saveAll
+        List<MediaDto> uploadedMediaList = mediaUrls.isEmpty() ? new ArrayList<>()
+                : mediaService.saveMediaWithUrls(senderId, messageId, "MESSAGE", mediaTypes, mediaUrls, null);
 
         // ✅ Tạo MessageDto để gửi realtime
         MessageDto dto = new MessageDto(messageId, chatId, senderId, content, null, Instant.now(), uploadedMediaList);
+        chatSummaryRepository.recordMessage(chatId, messageId, content, senderId, dto.getCreatedAt());
 
         // ✅ Đưa vào hàng đợi gửi + gửi WebSocket nếu cần
         messageQueueService.queueAndSendMessage(dto);
@@ -284,13 +377,28 @@ public class MessageService {
         for (ChatMember member : members) {
             if (!member.getUser().getId().equals(senderId)) {
                 messagingTemplate.convertAndSend("/topic/messages/" + member.getUser().getId(), dto);
-
-                int unreadCount = messageStatusRepository.countUnreadChatsByUserId(member.getUser().getId());
-                messagingTemplate.convertAndSend("/topic/unread-count/" + member.getUser().getId(), Map.of("unreadCount", unreadCount));
             }
         }
+        unreadCounterService.recordMessage(chatId, unreadRecipientIds(members, senderId));
 
         return dto;
     }
-}
 
+    // Cùng điều kiện với phần tạo tblMessageStatus trong sp_SendMessage
+    private List<Integer> unreadRecipientIds(List<ChatMember> members, Integer senderId) {
+        return members.stream()
+                .filter(member -> !member.getUser().getId().equals(senderId))
+                .filter(member -> Boolean.TRUE.equals(member.getStatus()) && !Boolean.TRUE.equals(member.getIsSpam()))
+                .map(member -> member.getUser().getId())
+                .toList();
+    }
+
+    private record IngestedBatch(List<MessageDto> messages, Map<Integer, ChatDelivery> chats,
+                                 List<JdbcMessageRepository.NewMessage> rejected) {
+    }
+
+    // Thành viên của một chat tại thời điểm ghi lô; unreadCandidateIds là những người sp_SendMessage cũng tạo dòng 'unread'
+    private record ChatDelivery(List<Integer> memberIds, List<Integer> unreadCandidateIds,
+                                Set<Integer> spamMemberIds, List<Integer> reactivatedIds) {
+    }
+}
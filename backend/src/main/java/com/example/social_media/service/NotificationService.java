@@ -13,14 +13,13 @@ import org.springframework.transaction.annotation.Transactional;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import java.time.Instant;
+import java.util.HashMap;
 import java.util.Map;
 
 @Service
 public class NotificationService {
     private final NotificationRepository notificationRepository;
-    private final NotificationTypeRepository notificationTypeRepository;
-    private final TargetTypeRepository targetTypeRepository;
-    private final NotificationStatusRepository notificationStatusRepository;
+    private final ReferenceDataRegistry referenceDataRegistry;
     private final UserRepository userRepository;
     private final GroupRepository groupRepository;
     private final MediaService mediaService;
@@ -30,9 +29,7 @@ public class NotificationService {
     @Autowired
     public NotificationService(
             NotificationRepository notificationRepository,
-            NotificationTypeRepository notificationTypeRepository,
-            TargetTypeRepository targetTypeRepository,
-            NotificationStatusRepository notificationStatusRepository,
+            ReferenceDataRegistry referenceDataRegistry,
             UserRepository userRepository,
             GroupRepository groupRepository,
             MediaService mediaService,
@@ -40,9 +37,7 @@ public class NotificationService {
             PostRepository postRepository
     ) {
         this.notificationRepository = notificationRepository;
-        this.notificationTypeRepository = notificationTypeRepository;
-        this.targetTypeRepository = targetTypeRepository;
-        this.notificationStatusRepository = notificationStatusRepository;
+        this.referenceDataRegistry = referenceDataRegistry;
         this.userRepository = userRepository;
         this.groupRepository = groupRepository;
         this.mediaService = mediaService;
@@ -57,13 +52,13 @@ public class NotificationService {
 
     @Transactional
     public NotificationDto  sendNotification(Integer userId, String notificationTypeName, String message, Integer targetId, String targetTypeCode, String image) {
-        NotificationType notificationType = notificationTypeRepository.findByNameAndStatus(notificationTypeName, true)
+        NotificationType notificationType = referenceDataRegistry.findActiveNotificationType(notificationTypeName)
                 .orElseThrow(() -> new IllegalArgumentException("Invalid notification type: " + notificationTypeName));
 
-        TargetType targetType = targetTypeRepository.findByCode(targetTypeCode)
+        TargetType targetType = referenceDataRegistry.findTargetType(targetTypeCode)
                 .orElseThrow(() -> new IllegalArgumentException("Invalid target type: " + targetTypeCode));
 
-        NotificationStatus status = notificationStatusRepository.findByName("unread")
+        NotificationStatus status = referenceDataRegistry.findNotificationStatus("unread")
                 .orElseThrow(() -> new IllegalArgumentException("Invalid notification status: unread"));
 
         User user = userRepository.findById(userId)
@@ -134,10 +129,13 @@ public class NotificationService {
     }
 
     public Page<NotificationDto> getNotifications(Integer userId, Pageable pageable) {
-        return notificationRepository.findByUserId(userId, pageable).map(notification -> {
+        // notificationId -> id nhóm / người dùng có avatar làm ảnh thông báo, tra avatar một lần cho cả trang
+        Map<Integer, Integer> avatarGroupIds = new HashMap<>();
+        Map<Integer, Integer> avatarUserIds = new HashMap<>();
+
+        Page<NotificationDto> notifications = notificationRepository.findByUserId(userId, pageable).map(notification -> {
             String displayName;
             String username;
-            String image;
 
             String targetType = notification.getTargetType().getCode();
 
@@ -146,7 +144,7 @@ public class NotificationService {
                         .orElseThrow(() -> new IllegalArgumentException("Group not found with id: " + notification.getTargetId()));
                 displayName = group.getName();
                 username = group.getOwner().getUsername();
-                image = mediaService.getGroupAvatarUrl(notification.getTargetId());
+                avatarGroupIds.put(notification.getId(), notification.getTargetId());
 
             } else if ("POST".equals(targetType)) {
                 Post post = postRepository.findById(notification.getTargetId())
@@ -155,14 +153,14 @@ public class NotificationService {
 
                 displayName = owner.getDisplayName() != null ? owner.getDisplayName() : owner.getUsername();
                 username = owner.getUsername();
-                image = mediaService.getAvatarUrlByUserId(owner.getId());
+                avatarUserIds.put(notification.getId(), owner.getId());
 
             } else { // Mặc định là USER
                 User targetUser = userRepository.findById(notification.getTargetId())
                         .orElseThrow(() -> new UserNotFoundException("User not found with id: " + notification.getTargetId()));
                 displayName = targetUser.getDisplayName() != null ? targetUser.getDisplayName() : targetUser.getUsername();
                 username = targetUser.getUsername();
-                image = mediaService.getAvatarUrlByUserId(notification.getTargetId());
+                avatarUserIds.put(notification.getId(), notification.getTargetId());
             }
 
             NotificationDto dto = new NotificationDto();
@@ -175,9 +173,15 @@ public class NotificationService {
             dto.setUsername(username);
             dto.setCreatedAt(notification.getCreatedAt());
             dto.setStatus(notification.getStatus().getName());
-            dto.setImage(image);
             return dto;
         });
+
+        Map<Integer, String> groupAvatars = mediaService.getGroupAvatarUrls(avatarGroupIds.values());
+        Map<Integer, String> userAvatars = mediaService.getAvatarUrlsByUserIds(avatarUserIds.values());
+        notifications.forEach(dto -> dto.setImage(avatarGroupIds.containsKey(dto.getId())
+                ? groupAvatars.get(avatarGroupIds.get(dto.getId()))
+                : userAvatars.get(avatarUserIds.get(dto.getId()))));
+        return notifications;
     }
 
     @Transactional
@@ -185,7 +189,7 @@ public class NotificationService {
         Notification notification = notificationRepository.findByIdAndUserId(notificationId, userId)
                 .orElseThrow(() -> new IllegalArgumentException("Notification not found or unauthorized"));
 
-        NotificationStatus status = notificationStatusRepository.findByName(statusName)
+        NotificationStatus status = referenceDataRegistry.findNotificationStatus(statusName)
                 .orElseThrow(() -> new IllegalArgumentException("Invalid notification status: " + statusName));
 
         notification.setStatus(status);
@@ -200,7 +204,7 @@ public class NotificationService {
 
     @Transactional
     public void markAllAsRead(Integer userId) {
-        NotificationStatus readStatus = notificationStatusRepository.findByName("read")
+        NotificationStatus readStatus = referenceDataRegistry.findNotificationStatus("read")
                 .orElseThrow(() -> new IllegalArgumentException("Invalid notification status: read"));
 
         notificationRepository.updateAllStatusByUserId(userId, readStatus.getId());
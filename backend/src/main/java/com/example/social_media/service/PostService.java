@@ -1,9 +1,8 @@
 package com.example.social_media.service;
 
-import com.example.social_media.dto.media.MediaDto;
+import com.example.social_media.dto.post.NewsfeedPageDto;
 import com.example.social_media.dto.post.PostRequestDto;
 import com.example.social_media.dto.post.PostResponseDto;
-import com.example.social_media.dto.user.UserTagDto;
 import com.example.social_media.entity.*;
 import com.example.social_media.exception.RegistrationException;
 import com.example.social_media.exception.UserNotFoundException;
@@ -15,7 +14,6 @@ import com.example.social_media.repository.post.*;
 import com.google.maps.model.GeocodingResult;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -33,6 +31,10 @@ import com.example.social_media.dto.post.SharePostRequestDto;
 public class PostService {
 
     private static final Logger logger = LoggerFactory.getLogger(PostService.class);
+    private static final int MAX_NEWSFEED_PAGE_SIZE = 50;
+    // Mốc con trỏ đầu một ngày, lớn hơn mọi created_at thực tế (vẫn nằm trong miền DATETIME của SQL Server)
+    private static final Instant NEWSFEED_CURSOR_START = Instant.parse("9000-01-01T00:00:00Z");
+    static final ZoneId NEWSFEED_ZONE = ZoneId.of("Asia/Ho_Chi_Minh");
 
     private final PostRepository postRepository;
     private final PostTagRepository postTagRepository;
@@ -47,13 +49,16 @@ public class PostService {
     private final GroupRepository groupRepository;
     private final GroupMemberRepository groupMemberRepository;
     private final ReactionService reactionService;
-    private final TargetTypeRepository targetTypeRepository;
+    private final ReferenceDataRegistry referenceDataRegistry;
     private final PostShareRepository postShareRepository;
     private final PostAIModerationRepository postAIModerationRepository;
     private final GeocodingService geocodingService;
-    private final BlockService blockService;
+    private final BlockGraphService blockGraphService;
 
     private final AccountUpgradeRepository accountUpgradeRepository;
+    private final TimelineService timelineService;
+    private final FeedCacheInvalidationService feedCacheInvalidationService;
+    private final FeedHydrationService feedHydrationService;
 
     public PostService(
             PostRepository postRepository,
@@ -69,11 +74,13 @@ public class PostService {
             GroupRepository groupRepository,
             GroupMemberRepository groupMemberRepository,
             ReactionService reactionService,
-            TargetTypeRepository targetTypeRepository,
+            ReferenceDataRegistry referenceDataRegistry,
             PostShareRepository postShareRepository,
             PostAIModerationRepository postAIModerationRepository,
             GeocodingService geocodingService,
-            BlockService blockService, AccountUpgradeRepository accountUpgradeRepository) {
+            BlockGraphService blockGraphService, AccountUpgradeRepository accountUpgradeRepository,
+            TimelineService timelineService, FeedCacheInvalidationService feedCacheInvalidationService,
+            FeedHydrationService feedHydrationService) {
         this.postRepository = postRepository;
         this.postTagRepository = postTagRepository;
         this.userRepository = userRepository;
@@ -87,15 +94,17 @@ public class PostService {
         this.groupRepository = groupRepository;
         this.groupMemberRepository = groupMemberRepository;
         this.reactionService = reactionService;
-        this.targetTypeRepository = targetTypeRepository;
+        this.referenceDataRegistry = referenceDataRegistry;
         this.postShareRepository = postShareRepository;
         this.postAIModerationRepository = postAIModerationRepository;
         this.geocodingService = geocodingService;
-        this.blockService = blockService;
+        this.blockGraphService = blockGraphService;
         this.accountUpgradeRepository = accountUpgradeRepository;
+        this.timelineService = timelineService;
+        this.feedCacheInvalidationService = feedCacheInvalidationService;
+        this.feedHydrationService = feedHydrationService;
     }
 
-    @CacheEvict(value = {"newsfeed", "postsByUsername", "communityFeed", "postsByGroup", "postsByUserInGroup", "savedPosts"}, allEntries = true)
     @Transactional
     public PostResponseDto createPost(PostRequestDto dto, String username, List<MultipartFile> mediaFiles) {
         logger.info("Tạo bài viết cho người dùng: {}", username);
@@ -161,7 +170,7 @@ public class PostService {
                     id.setContentId(newPostId);
                     id.setContentTypeId(1);
                     newPrivacy.setId(id);
-                    newPrivacy.setContentType(targetTypeRepository.findByCode("post")
+                    newPrivacy.setContentType(referenceDataRegistry.findTargetType("post")
                             .orElseThrow(() -> new IllegalArgumentException("Loại mục tiêu không hợp lệ: post")));
                     newPrivacy.setStatus(true);
                     return newPrivacy;
@@ -170,6 +179,9 @@ public class PostService {
         contentPrivacy.setCustomList(customList);
         contentPrivacyRepository.save(contentPrivacy);
 
+        timelineService.fanOutPost(latestPost);
+        feedCacheInvalidationService.evictForPostChange(latestPost);
+
         if (mediaFiles != null && !mediaFiles.isEmpty()) {
             try {
                 mediaService.uploadPostMediaFiles(user.getId(), newPostId, mediaFiles, dto.getContent());
@@ -179,7 +191,6 @@ public class PostService {
             }
         }
 
-        List<PostTag> postTags = List.of();
         if (dto.getTaggedUserIds() != null) {
             postTagRepository.deleteByPostId(newPostId);
             for (Integer taggedUserId : dto.getTaggedUserIds()) {
@@ -191,26 +202,11 @@ public class PostService {
                 postTag.setStatus(true);
                 postTagRepository.save(postTag);
             }
-            postTags = postTagRepository.findByPostIdAndStatusTrue(newPostId);
         }
 
-        List<SavedPost> savedPosts = savedPostRepository.findByUserIdAndStatusTrue(user.getId());
-        List<Integer> savedPostIds = savedPosts.stream()
-                .map(sp -> sp.getPost().getId())
-                .collect(Collectors.toList());
-
-        Map<Integer, List<MediaDto>> mediaMap = new HashMap<>();
-        mediaMap.putAll(mediaService.getMediaByTargetIds(List.of(newPostId), "POST", "image", true));
-        mediaMap.putAll(mediaService.getMediaByTargetIds(List.of(newPostId), "POST", "video", true));
-
-        Map<Integer, Map<ReactionType, Long>> reactionCountMap = Map.of(
-                newPostId, reactionService.countAllReactions(newPostId, "POST")
-        );
-
-        return convertToDto(latestPost, user.getId(), savedPostIds, Map.of(newPostId, postTags), mediaMap, reactionCountMap);
+        return feedHydrationService.hydrate(latestPost, user.getId());
     }
 
-    @CacheEvict(value = {"newsfeed", "postsByUsername", "communityFeed", "postsByGroup", "postsByUserInGroup", "savedPosts"}, allEntries = true)
     @Transactional
     public PostResponseDto updatePost(Integer postId, PostRequestDto dto, String username) {
         logger.info("Cập nhật bài viết {} cho người dùng: {}", postId, username);
@@ -254,7 +250,7 @@ public class PostService {
                     id.setContentId(postId);
                     id.setContentTypeId(1);
                     newPrivacy.setId(id);
-                    newPrivacy.setContentType(targetTypeRepository.findByCode("post")
+                    newPrivacy.setContentType(referenceDataRegistry.findTargetType("post")
                             .orElseThrow(() -> new IllegalArgumentException("Loại mục tiêu không hợp lệ: post")));
                     newPrivacy.setStatus(true);
                     return newPrivacy;
@@ -272,6 +268,8 @@ public class PostService {
             }
         }
 
+        boolean wasPublic = "public".equals(post.getPrivacySetting());
+
         post.setContent(dto.getContent());
         post.setPrivacySetting(privacySetting);
         post.setLatitude(dto.getLatitude());
@@ -279,7 +277,11 @@ public class PostService {
         post.setLocationName(dto.getLocationName());
         postRepository.save(post);
 
-        List<PostTag> postTags = List.of();
+        feedCacheInvalidationService.evictForPostChange(post);
+        if (wasPublic && !"public".equals(privacySetting)) {
+            feedCacheInvalidationService.evictForPublicVisibilityRemoved();
+        }
+
         if (dto.getTaggedUserIds() != null) {
             postTagRepository.deleteByPostId(postId);
             for (Integer taggedUserId : dto.getTaggedUserIds()) {
@@ -291,26 +293,11 @@ public class PostService {
                 postTag.setStatus(true);
                 postTagRepository.save(postTag);
             }
-            postTags = postTagRepository.findByPostIdAndStatusTrue(postId);
         }
 
-        List<SavedPost> savedPosts = savedPostRepository.findByUserIdAndStatusTrue(user.getId());
-        List<Integer> savedPostIds = savedPosts.stream()
-                .map(sp -> sp.getPost().getId())
-                .collect(Collectors.toList());
-
-        Map<Integer, List<MediaDto>> mediaMap = new HashMap<>();
-        mediaMap.putAll(mediaService.getMediaByTargetIds(List.of(postId), "POST", "image", true));
-        mediaMap.putAll(mediaService.getMediaByTargetIds(List.of(postId), "POST", "video", true));
-
-        Map<Integer, Map<ReactionType, Long>> reactionCountMap = Map.of(
-                postId, reactionService.countAllReactions(postId, "POST")
-        );
-
-        return convertToDto(post, user.getId(), savedPostIds, Map.of(postId, postTags), mediaMap, reactionCountMap);
+        return feedHydrationService.hydrate(post, user.getId());
     }
 
-    @CacheEvict(value = {"newsfeed", "postsByUsername", "communityFeed", "postsByGroup", "postsByUserInGroup", "savedPosts"}, allEntries = true)
     @Transactional
     public void deletePost(Integer postId, String username) {
         logger.info("Xóa bài viết {} cho người dùng: {}", postId, username);
@@ -337,6 +324,18 @@ public class PostService {
         logger.debug("Xóa mềm bài viết với id: {}", postId);
         post.setStatus(false);
         postRepository.save(post);
+
+        feedCacheInvalidationService.evictForPostChange(post);
+        if ("public".equals(post.getPrivacySetting())) {
+            feedCacheInvalidationService.evictForPublicVisibilityRemoved();
+        }
+    }
+
+    /**
+     * Số reaction của feed lấy từ cache được đọc lại từ bộ đếm lúc trả về, nên reaction không cần xóa cache feed.
+     */
+    public List<PostResponseDto> withCurrentReactions(List<PostResponseDto> posts) {
+        return feedHydrationService.withCurrentReactions(posts);
     }
 
    @Cacheable(value = "newsfeed", key = "#username")
@@ -346,61 +345,177 @@ public class PostService {
         User user = userRepository.findByUsernameAndStatusTrue(username)
                 .orElseThrow(() -> new UserNotFoundException("Không tìm thấy người dùng hoặc người dùng không hoạt động"));
 
-        List<Post> posts = postRepository.findNewsfeedPosts(user.getId());
+        List<Post> posts = loadNewsfeedPosts(user.getId());
         if (posts.isEmpty()) return List.of();
 
+       Set<Integer> premiumUserIds = accountUpgradeRepository.findActivePremiumUserIds();
+
+       List<Post> sortedPosts = sortForNewsfeed(posts, premiumUserIds, NEWSFEED_ZONE);
+
+       return buildNewsfeedDtos(user, sortedPosts);
+   }
+
+    // Ngày mới hơn lên trước; cùng ngày thì bài của tài khoản premium lên trước, sau đó bài mới hơn lên trước
+    static List<Post> sortForNewsfeed(List<Post> posts, Set<Integer> premiumUserIds, ZoneId zone) {
+        return posts.stream()
+                .sorted((p1, p2) -> {
+                    LocalDate date1 = p1.getCreatedAt().atZone(zone).toLocalDate();
+                    LocalDate date2 = p2.getCreatedAt().atZone(zone).toLocalDate();
+
+                    // 1. Ngày mới hơn lên trước
+                    int dateCompare = date2.compareTo(date1);
+                    if (dateCompare != 0) {
+                        return dateCompare;
+                    }
+
+                    // 2. Nếu cùng ngày → premium lên trước
+                    boolean isP1Premium = premiumUserIds.contains(p1.getOwner().getId());
+                    boolean isP2Premium = premiumUserIds.contains(p2.getOwner().getId());
+                    if (isP1Premium != isP2Premium) {
+                        return isP1Premium ? -1 : 1;
+                    }
+
+                    // 3. Nếu cùng loại → ai đăng sau thì lên trước (Instant mới hơn)
+                    return p2.getCreatedAt().compareTo(p1.getCreatedAt());
+                })
+                .toList();
+    }
+
+    // Đọc danh sách postId từ timeline Redis rồi nạp bài viết bằng một truy vấn IN; lỗi Redis thì quay về truy vấn SQL
+    private List<Post> loadNewsfeedPosts(Integer userId) {
+        List<Integer> timelineIds;
+        try {
+            timelineIds = timelineService.readTimeline(userId, timelineService.getMaxSize());
+        } catch (Exception e) {
+            logger.warn("Không đọc được timeline của user {}, dùng truy vấn newsfeed: {}", userId, e.getMessage());
+            return postRepository.findNewsfeedPosts(userId);
+        }
+        if (timelineIds.isEmpty()) return List.of();
+
+        Map<Integer, Post> postById = postRepository.findAllById(timelineIds).stream()
+                .filter(post -> Boolean.TRUE.equals(post.getStatus()))
+                .collect(Collectors.toMap(Post::getId, post -> post));
+        return timelineIds.stream()
+                .map(postById::get)
+                .filter(Objects::nonNull)
+                .toList();
+    }
+
+    public NewsfeedPageDto getNewsfeedPage(String username, Instant beforeCreatedAt, Integer beforeId,
+                                           Boolean beforePremium, Instant asOf, int size) {
+        logger.info("Lấy newsfeed phân trang cho người dùng: {}, before=({}, {}, {}), asOf={}, size={}",
+                username, beforeCreatedAt, beforeId, beforePremium, asOf, size);
+
+        User user = userRepository.findByUsernameAndStatusTrue(username)
+                .orElseThrow(() -> new UserNotFoundException("Không tìm thấy người dùng hoặc người dùng không hoạt động"));
+
+        int pageSize = Math.max(1, Math.min(size, MAX_NEWSFEED_PAGE_SIZE));
+        // Trang đầu tiên chốt thời điểm tính premium, các trang sau dùng lại qua con trỏ
+        Instant premiumAsOf = asOf != null ? asOf : Instant.now();
+
+        NewsfeedSlice slice = readNewsfeedPage(user.getId(), beforeCreatedAt, beforeId,
+                Boolean.TRUE.equals(beforePremium), premiumAsOf, pageSize);
+        if (slice.posts().isEmpty()) {
+            return new NewsfeedPageDto(List.of(), pageSize, false, null, null, null, null);
+        }
+        return new NewsfeedPageDto(buildNewsfeedDtos(user, slice.posts()), pageSize, slice.hasMore(),
+                slice.nextBeforeCreatedAt(), slice.nextBeforeId(), slice.nextBeforePremium(),
+                slice.hasMore() ? premiumAsOf : null);
+    }
+
+    // Một trang đọc từ DB, trước khi lọc quyền truy cập; con trỏ trang sau chỉ có khi hasMore
+    record NewsfeedSlice(List<Post> posts, boolean hasMore,
+                         Instant nextBeforeCreatedAt, Integer nextBeforeId, Boolean nextBeforePremium) {
+    }
+
+    /**
+     * Đọc một trang newsfeed theo từng ngày của NEWSFEED_ZONE: trong ngày của con trỏ đọc các bài đứng sau
+     * (premium, created_at, id); ngày đó hết bài thì nhảy sang ngày có bài hiển thị gần nhất trước đó và đọc từ đầu ngày.
+     * Mỗi truy vấn chỉ quét created_at trong một ngày nên không phải sắp xếp toàn bộ bài hiển thị được.
+     */
+    NewsfeedSlice readNewsfeedPage(Integer userId, Instant beforeCreatedAt, Integer beforeId,
+                                   boolean beforePremium, Instant premiumAsOf, int pageSize) {
+        int limit = pageSize + 1;
+        LocalDate day;
+        int cursorPremium;
+        Instant cursorCreatedAt;
+        int cursorId;
+        if (beforeCreatedAt != null) {
+            day = beforeCreatedAt.atZone(NEWSFEED_ZONE).toLocalDate();
+            cursorPremium = beforePremium ? 1 : 0;
+            cursorCreatedAt = beforeCreatedAt;
+            cursorId = beforeId;
+        } else {
+            Optional<Post> latest = postRepository.findLatestNewsfeedPostBefore(userId, NEWSFEED_CURSOR_START);
+            if (latest.isEmpty()) {
+                return new NewsfeedSlice(List.of(), false, null, null, null);
+            }
+            day = latest.get().getCreatedAt().atZone(NEWSFEED_ZONE).toLocalDate();
+            cursorPremium = 1;
+            cursorCreatedAt = NEWSFEED_CURSOR_START;
+            cursorId = Integer.MAX_VALUE;
+        }
+
+        // Đọc dư 1 bài để biết còn trang sau hay không
+        List<Post> rows = new ArrayList<>();
+        while (rows.size() < limit) {
+            Instant dayStart = day.atStartOfDay(NEWSFEED_ZONE).toInstant();
+            Instant dayEnd = day.plusDays(1).atStartOfDay(NEWSFEED_ZONE).toInstant();
+            rows.addAll(postRepository.findNewsfeedPostsInDay(userId, dayStart, dayEnd, premiumAsOf,
+                    cursorPremium, cursorCreatedAt, cursorId, limit - rows.size()));
+            if (rows.size() >= limit) break;
+
+            Optional<Post> previous = postRepository.findLatestNewsfeedPostBefore(userId, dayStart);
+            if (previous.isEmpty()) break;
+            day = previous.get().getCreatedAt().atZone(NEWSFEED_ZONE).toLocalDate();
+            cursorPremium = 1;
+            cursorCreatedAt = NEWSFEED_CURSOR_START;
+            cursorId = Integer.MAX_VALUE;
+        }
+
+        boolean hasMore = rows.size() > pageSize;
+        List<Post> pagePosts = hasMore ? rows.subList(0, pageSize) : rows;
+        if (!hasMore) {
+            return new NewsfeedSlice(pagePosts, false, null, null, null);
+        }
+        // Con trỏ lấy theo bài cuối đọc từ DB (kể cả khi bài đó bị lọc) để trang sau không lặp lại
+        Post last = pagePosts.get(pagePosts.size() - 1);
+        boolean lastPremium = accountUpgradeRepository.isPremiumAt(last.getOwner().getId(), premiumAsOf);
+        return new NewsfeedSlice(pagePosts, true, last.getCreatedAt(), last.getId(), lastPremium);
+    }
+
+    // Lọc danh sách bài đã sắp xếp theo quyền truy cập rồi nạp dữ liệu hiển thị theo lô
+    private List<PostResponseDto> buildNewsfeedDtos(User user, List<Post> posts) {
         List<Integer> postIds = posts.stream().map(Post::getId).toList();
         Set<Integer> hiddenPostIds = new HashSet<>(hiddenPostRepository.findHiddenPostIdsByUserId(user.getId()));
-        Set<Integer> savedPostIds = savedPostRepository.findByUserIdAndStatusTrue(user.getId())
-                .stream().map(sp -> sp.getPost().getId()).collect(Collectors.toSet());
         Set<Integer> joinedGroupIds = groupMemberRepository
                 .findByUserIdAndStatusTrueAndInviteStatusAccepted(user.getId())
                 .stream().map(m -> m.getGroup().getId()).collect(Collectors.toSet());
 
         Map<Integer, Boolean> accessMap = privacyService.checkContentAccessBatch(user.getId(), postIds, "post");
 
-        Map<Integer, List<PostTag>> postTagsMap = postTagRepository.findByPost_IdInAndStatusTrue(postIds)
-                .stream().collect(Collectors.groupingBy(pt -> pt.getPost().getId()));
-        Map<Integer, List<MediaDto>> mediaMap = mediaService.getMediaByTargetIds(postIds, "POST", null, true);
-        Map<Integer, Map<ReactionType, Long>> reactionCountMap = reactionService.countAllReactionsBatch(postIds, "POST");
-
         Set<Integer> flaggedPostIds = new HashSet<>(postAIModerationRepository.findFlaggedPostIds());
-        List<Integer> savedPostIdList = new ArrayList<>(savedPostIds);
-
+        BlockGraphService.BlockedUsers blockedUsers = blockGraphService.getBlockedUsers(user.getId());
 
-       Set<Integer> premiumUserIds = accountUpgradeRepository.findActivePremiumUserIds();
-
-       ZoneId zone = ZoneId.of("Asia/Ho_Chi_Minh"); // hoặc ZoneId.systemDefault()
-
-       return posts.stream()
-               .sorted((p1, p2) -> {
-                   LocalDate date1 = p1.getCreatedAt().atZone(zone).toLocalDate();
-                   LocalDate date2 = p2.getCreatedAt().atZone(zone).toLocalDate();
-
-                   // 1. Ngày mới hơn lên trước
-                   int dateCompare = date2.compareTo(date1);
-                   if (dateCompare != 0) {
-                       return dateCompare;
-                   }
-
-                   // 2. Nếu cùng ngày → premium lên trước
-                   boolean isP1Premium = premiumUserIds.contains(p1.getOwner().getId());
-                   boolean isP2Premium = premiumUserIds.contains(p2.getOwner().getId());
-                   if (isP1Premium != isP2Premium) {
-                       return isP1Premium ? -1 : 1;
-                   }
-
-                   // 3. Nếu cùng loại → ai đăng sau thì lên trước (Instant mới hơn)
-                   return p2.getCreatedAt().compareTo(p1.getCreatedAt());
-               })
-               .filter(post -> isValidPostForUser(post, user.getId(), accessMap, hiddenPostIds, flaggedPostIds, joinedGroupIds))
-               .filter(post -> !blockService.isBlockedBetweenUsers(user.getId(), post.getOwner().getId()))
-               .map(post -> convertToDto(post, user.getId(), savedPostIdList, postTagsMap, mediaMap, reactionCountMap))
-               .toList();
+        List<Post> visiblePosts = filterNewsfeedPosts(posts, user.getId(), accessMap, hiddenPostIds,
+                flaggedPostIds, joinedGroupIds, blockedUsers);
+        return feedHydrationService.hydrate(visiblePosts, user.getId());
+    }
 
-   }
+    static List<Post> filterNewsfeedPosts(List<Post> posts,
+                                          int userId,
+                                          Map<Integer, Boolean> accessMap,
+                                          Set<Integer> hiddenPostIds,
+                                          Set<Integer> flaggedPostIds,
+                                          Set<Integer> joinedGroupIds,
+                                          BlockGraphService.BlockedUsers blockedUsers) {
+        return posts.stream()
+                .filter(post -> isValidPostForUser(post, userId, accessMap, hiddenPostIds, flaggedPostIds, joinedGroupIds))
+                .filter(post -> !blockedUsers.contains(post.getOwner().getId()))
+                .toList();
+    }
 
-        private boolean isValidPostForUser(Post post,
+        private static boolean isValidPostForUser(Post post,
                                            int userId,
                                            Map<Integer, Boolean> accessMap,
                                            Set<Integer> hiddenPostIds,
@@ -431,36 +546,15 @@ public class PostService {
 
         List<Integer> hiddenPostIds = hiddenPostRepository.findHiddenPostIdsByUserId(currentUser.getId());
 
-        List<SavedPost> savedPosts = savedPostRepository.findByUserIdAndStatusTrue(currentUser.getId());
-        List<Integer> savedPostIds = savedPosts.stream()
-                .map(sp -> sp.getPost().getId())
-                .collect(Collectors.toList());
-
         List<Post> posts = postRepository.findActivePostsByUsername(targetUsername);
         List<Integer> postIds = posts.stream().map(Post::getId).collect(Collectors.toList());
         Map<Integer, Boolean> accessMap = privacyService.checkContentAccessBatch(currentUser.getId(), postIds, "post");
 
-        Map<Integer, List<PostTag>> postTagsMap = postIds.stream()
-                .flatMap(postId -> postTagRepository.findByPostIdAndStatusTrue(postId).stream())
-                .collect(Collectors.groupingBy(pt -> pt.getPost().getId()));
-
-        Map<Integer, List<MediaDto>> mediaMap = new HashMap<>();
-        if (!postIds.isEmpty()) {
-            mediaMap.putAll(mediaService.getMediaByTargetIds(postIds, "POST", "image", true));
-            mediaMap.putAll(mediaService.getMediaByTargetIds(postIds, "POST", "video", true));
-        }
-
-        Map<Integer, Map<ReactionType, Long>> reactionCountMap = postIds.stream()
-                .collect(Collectors.toMap(
-                        postId -> postId,
-                        postId -> reactionService.countAllReactions(postId, "POST")
-                ));
-
-        return posts.stream()
+        List<Post> visiblePosts = posts.stream()
                 .filter(post -> !hiddenPostIds.contains(post.getId()))
                 .filter(post -> accessMap.getOrDefault(post.getId(), false))
-                .map(post -> convertToDto(post, currentUser.getId(), savedPostIds, postTagsMap, mediaMap, reactionCountMap))
-                .collect(Collectors.toList());
+                .toList();
+        return feedHydrationService.hydrate(visiblePosts, currentUser.getId());
     }
 
     @Cacheable(value = "communityFeed", key = "#username")
@@ -480,42 +574,13 @@ public class PostService {
         // ✅ Kiểm tra quyền truy cập
         Map<Integer, Boolean> accessMap = privacyService.checkContentAccessBatch(userId, postIds, "post");
 
-        // ✅ Bài viết đã lưu
-
-        List<Integer> savedPostIds = savedPostRepository.findByUserIdAndStatusTrue(userId).stream()
-                .map(sp -> sp.getPost().getId()).distinct().collect(Collectors.toList());
-
-        // ✅ Gắn tag bài viết
-        Map<Integer, List<PostTag>> postTagsMap = postTagRepository.findAllByPostIdInAndStatusTrue(postIds).stream()
-                .collect(Collectors.groupingBy(pt -> pt.getPost().getId()));
-
-        // ✅ Media
-        Map<Integer, List<MediaDto>> mediaMap = new HashMap<>();
-        if (!postIds.isEmpty()) {
-            mediaMap.putAll(mediaService.getMediaByTargetIds(postIds, "POST", "image", true));
-            mediaMap.putAll(mediaService.getMediaByTargetIds(postIds, "POST", "video", true));
-        }
-
-        // ✅ Reaction
-        Map<Integer, Map<ReactionType, Long>> reactionCountMap = postIds.stream()
-                .collect(Collectors.toMap(
-                        postId -> postId,
-                        postId -> reactionService.countAllReactions(postId, "POST")
-                ));
-
-        // ✅ Trả về DTO
-        return posts.stream()
+        // ✅ Lọc bài bị chặn rồi nạp dữ liệu hiển thị theo lô
+        BlockGraphService.BlockedUsers blockedUsers = blockGraphService.getBlockedUsers(userId);
+        List<Post> visiblePosts = posts.stream()
                 .filter(post -> accessMap.getOrDefault(post.getId(), false))
-                .filter(post -> !blockService.isBlockedBetweenUsers(userId, post.getOwner().getId())) // <- thêm dòng này
-                .map(post -> convertToDto(
-                        post,
-                        userId,
-                        savedPostIds,
-                        postTagsMap,
-                        mediaMap,
-                        reactionCountMap
-                ))
+                .filter(post -> !blockedUsers.contains(post.getOwner().getId()))
                 .toList();
+        return feedHydrationService.hydrate(visiblePosts, userId);
     }
 
     @Cacheable(value = "postsByGroup", key = "#groupId + ':' + #username")
@@ -539,36 +604,15 @@ public class PostService {
 
         List<Integer> hiddenPostIds = hiddenPostRepository.findHiddenPostIdsByUserId(user.getId());
 
-        List<SavedPost> savedPosts = savedPostRepository.findByUserIdAndStatusTrue(user.getId());
-        List<Integer> savedPostIds = savedPosts.stream()
-                .map(sp -> sp.getPost().getId())
-                .collect(Collectors.toList());
-
         List<Post> posts = postRepository.findByGroupIdAndStatusTrueOrderByCreatedAtDesc(groupId);
         List<Integer> postIds = posts.stream().map(Post::getId).collect(Collectors.toList());
         Map<Integer, Boolean> accessMap = privacyService.checkContentAccessBatch(user.getId(), postIds, "post");
 
-        Map<Integer, List<PostTag>> postTagsMap = postIds.stream()
-                .flatMap(postId -> postTagRepository.findByPostIdAndStatusTrue(postId).stream())
-                .collect(Collectors.groupingBy(pt -> pt.getPost().getId()));
-
-        Map<Integer, List<MediaDto>> mediaMap = new HashMap<>();
-        if (!postIds.isEmpty()) {
-            mediaMap.putAll(mediaService.getMediaByTargetIds(postIds, "POST", "image", true));
-            mediaMap.putAll(mediaService.getMediaByTargetIds(postIds, "POST", "video", true));
-        }
-
-        Map<Integer, Map<ReactionType, Long>> reactionCountMap = postIds.stream()
-                .collect(Collectors.toMap(
-                        postId -> postId,
-                        postId -> reactionService.countAllReactions(postId, "POST")
-                ));
-
-        return posts.stream()
+        List<Post> visiblePosts = posts.stream()
                 .filter(post -> !hiddenPostIds.contains(post.getId()))
                 .filter(post -> accessMap.getOrDefault(post.getId(), false))
-                .map(post -> convertToDto(post, user.getId(), savedPostIds, postTagsMap, mediaMap, reactionCountMap))
-                .collect(Collectors.toList());
+                .toList();
+        return feedHydrationService.hydrate(visiblePosts, user.getId());
     }
 
     @Cacheable(value = "postsByUserInGroup", key = "#groupId + ':' + #targetUsername + ':' + #currentUsername")
@@ -595,40 +639,18 @@ public class PostService {
 
         List<Integer> hiddenPostIds = hiddenPostRepository.findHiddenPostIdsByUserId(currentUser.getId());
 
-        List<SavedPost> savedPosts = savedPostRepository.findByUserIdAndStatusTrue(currentUser.getId());
-        List<Integer> savedPostIds = savedPosts.stream()
-                .map(sp -> sp.getPost().getId())
-                .collect(Collectors.toList());
-
         List<Post> posts = postRepository.findByOwnerIdAndGroupIdAndStatusTrueOrderByCreatedAtDesc(
                 targetUser.getId(), groupId);
         List<Integer> postIds = posts.stream().map(Post::getId).collect(Collectors.toList());
         Map<Integer, Boolean> accessMap = privacyService.checkContentAccessBatch(currentUser.getId(), postIds, "post");
 
-        Map<Integer, List<PostTag>> postTagsMap = postIds.stream()
-                .flatMap(postId -> postTagRepository.findByPostIdAndStatusTrue(postId).stream())
-                .collect(Collectors.groupingBy(pt -> pt.getPost().getId()));
-
-        Map<Integer, List<MediaDto>> mediaMap = new HashMap<>();
-        if (!postIds.isEmpty()) {
-            mediaMap.putAll(mediaService.getMediaByTargetIds(postIds, "POST", "image", true));
-            mediaMap.putAll(mediaService.getMediaByTargetIds(postIds, "POST", "video", true));
-        }
-
-        Map<Integer, Map<ReactionType, Long>> reactionCountMap = postIds.stream()
-                .collect(Collectors.toMap(
-                        postId -> postId,
-                        postId -> reactionService.countAllReactions(postId, "POST")
-                ));
-
-        return posts.stream()
+        List<Post> visiblePosts = posts.stream()
                 .filter(post -> !hiddenPostIds.contains(post.getId()))
                 .filter(post -> accessMap.getOrDefault(post.getId(), false))
-                .map(post -> convertToDto(post, currentUser.getId(), savedPostIds, postTagsMap, mediaMap, reactionCountMap))
-                .collect(Collectors.toList());
+                .toList();
+        return feedHydrationService.hydrate(visiblePosts, currentUser.getId());
     }
 
-    @CacheEvict(value = {"savedPosts", "newsfeed"}, allEntries = true)
     @Transactional
     public void savePost(Integer postId, String username) {
         logger.info("Lưu bài viết {} cho người dùng: {}", postId, username);
@@ -642,6 +664,7 @@ public class PostService {
         try {
             savedPostRepository.callSavePost(user.getId(), postId);
             logger.debug("Đã gọi stored procedure sp_SavePost cho userId: {}, postId: {}", user.getId(), postId);
+            feedCacheInvalidationService.evictForViewerAction(username);
         } catch (Exception e) {
             logger.error("Lỗi khi gọi stored procedure sp_SavePost: {}", e.getMessage());
 
@@ -653,7 +676,6 @@ public class PostService {
         }
     }
 
-    @CacheEvict(value = {"savedPosts", "newsfeed"}, allEntries = true)
     @Transactional
     public void hidePost(Integer postId, String username) {
         logger.info("Ẩn bài viết {} cho người dùng: {}", postId, username);
@@ -667,13 +689,13 @@ public class PostService {
         try {
             hiddenPostRepository.callHidePost(user.getId(), postId);
             logger.debug("Đã gọi stored procedure sp_HidePost cho userId: {}, postId: {}", user.getId(), postId);
+            feedCacheInvalidationService.evictForViewerAction(username);
         } catch (Exception e) {
             logger.error("Lỗi khi gọi stored procedure sp_HidePost: {}", e.getMessage());
             throw new RuntimeException("Không thể ẩn bài viết: " + e.getMessage(), e);
         }
     }
 
-    @CacheEvict(value = {"savedPosts", "newsfeed"}, allEntries = true)
     @Transactional
     public void unsavePost(Integer postId, String username) {
         var user = userRepository.findByUsernameAndStatusTrue(username)
@@ -688,6 +710,7 @@ public class PostService {
             SavedPost savedPost = savedPostOpt.get();
             savedPost.setStatus(false);
             savedPostRepository.save(savedPost);
+            feedCacheInvalidationService.evictForViewerAction(username);
         } else {
             throw new IllegalArgumentException("Bài viết chưa được lưu trước đó");
         }
@@ -699,9 +722,6 @@ public class PostService {
                 .orElseThrow(() -> new UserNotFoundException("Không tìm thấy người dùng hoặc người dùng không hoạt động"));
 
         List<SavedPost> savedPosts = savedPostRepository.findActiveSavedPostsByUserIdAndSaveTimeBetween(user.getId(), from, to);
-        List<Integer> savedPostIds = savedPosts.stream()
-                .map(sp -> sp.getPost().getId())
-                .collect(Collectors.toList());
 
         List<Post> posts = savedPosts.stream()
                 .map(SavedPost::getPost)
@@ -710,26 +730,10 @@ public class PostService {
         List<Integer> postIds = posts.stream().map(Post::getId).collect(Collectors.toList());
         Map<Integer, Boolean> accessMap = privacyService.checkContentAccessBatch(user.getId(), postIds, "post");
 
-        Map<Integer, List<PostTag>> postTagsMap = postIds.stream()
-                .flatMap(postId -> postTagRepository.findByPostIdAndStatusTrue(postId).stream())
-                .collect(Collectors.groupingBy(pt -> pt.getPost().getId()));
-
-        Map<Integer, List<MediaDto>> mediaMap = new HashMap<>();
-        if (!postIds.isEmpty()) {
-            mediaMap.putAll(mediaService.getMediaByTargetIds(postIds, "POST", "image", true));
-            mediaMap.putAll(mediaService.getMediaByTargetIds(postIds, "POST", "video", true));
-        }
-
-        Map<Integer, Map<ReactionType, Long>> reactionCountMap = postIds.stream()
-                .collect(Collectors.toMap(
-                        postId -> postId,
-                        postId -> reactionService.countAllReactions(postId, "POST")
-                ));
-
-        return posts.stream()
+        List<Post> visiblePosts = posts.stream()
                 .filter(post -> accessMap.getOrDefault(post.getId(), false))
-                .map(post -> convertToDto(post, user.getId(), savedPostIds, postTagsMap, mediaMap, reactionCountMap))
-                .collect(Collectors.toList());
+                .toList();
+        return feedHydrationService.hydrate(visiblePosts, user.getId());
     }
 
     public long countAllPosts() {
@@ -737,7 +741,6 @@ public class PostService {
     }
 
     @Transactional
-    @CacheEvict(value = {"newsfeed", "postsByUsername", "communityFeed", "postsByGroup", "postsByUserInGroup"}, allEntries = true)
     public PostResponseDto sharePost(SharePostRequestDto dto, String username) {
         logger.info("Người dùng {} đang chia sẻ bài viết ID: {}", username, dto.getOriginalPostId());
 
@@ -771,77 +774,10 @@ public class PostService {
         shareRecord.setStatus(true);
         postShareRepository.save(shareRecord);
 
-        // 3. Chuyển đổi bài viết vừa tạo thành DTO để trả về cho client
-        List<Integer> savedPostIds = savedPostRepository.findByUserIdAndStatusTrue(sharer.getId())
-                .stream().map(sp -> sp.getPost().getId()).collect(Collectors.toList());
-
-        // Truyền các map rỗng vì đây là một bài viết hoàn toàn mới, chưa có reaction hay tag
-        return convertToDto(savedSharePostEntity, sharer.getId(), savedPostIds,
-                Collections.emptyMap(), Collections.emptyMap(), Collections.emptyMap());
-    }
-
-    private PostResponseDto convertToDto(Post post, Integer currentUserId,
-            List<Integer> savedPostIds, Map<Integer, List<PostTag>> postTagsMap,
-            Map<Integer, List<MediaDto>> mediaMap, Map<Integer, Map<ReactionType, Long>> reactionCountMap) {
-
-        PostResponseDto dto = new PostResponseDto();
-        dto.setId(post.getId());
-        dto.setOwner(new UserTagDto(post.getOwner().getId(), post.getOwner().getUsername(), post.getOwner().getDisplayName()));
-        dto.setContent(post.getContent());
-        dto.setPrivacySetting(post.getPrivacySetting());
-        dto.setCreatedAt(post.getCreatedAt());
-        dto.setLatitude(post.getLatitude());
-        dto.setLongitude(post.getLongitude());
-        dto.setLocationName(post.getLocationName());
-
-        // Lấy shareCount từ bảng tblPostShare thay vì từ tblPost
-        dto.setShareCount((int) postShareRepository.countByOriginalPostAndStatusTrue(post));
-
-        dto.setCommentCount(commentRepository.countByPostIdAndStatusTrue(post.getId()));
-
-        List<PostTag> postTags = postTagsMap.getOrDefault(post.getId(), List.of());
-        dto.setTaggedUsers(postTags.stream()
-                .map(postTag -> new UserTagDto(postTag.getTaggedUser().getId(), postTag.getTaggedUser().getUsername(), postTag.getTaggedUser().getDisplayName()))
-                .collect(Collectors.toList()));
-
-        Map<ReactionType, Long> reactions = reactionCountMap.getOrDefault(post.getId(), Map.of());
-        dto.setReactionCountMap(reactions.entrySet().stream()
-                .collect(Collectors.toMap(entry -> entry.getKey().getName(), Map.Entry::getValue)));
-        dto.setLikeCount(reactions.getOrDefault(
-                reactionService.getMainReactions().stream().filter(rt -> "like".equalsIgnoreCase(rt.getName())).findFirst().orElse(null), 0L).intValue());
-
-        dto.setSaved(savedPostIds.contains(post.getId()));
-
-        if (post.getGroup() != null) {
-            dto.setGroupId(post.getGroup().getId());
-            dto.setGroupName(post.getGroup().getName());
-            dto.setGroupAvatarUrl(mediaService.getFirstMediaUrlByTarget(post.getGroup().getId(), "GROUP"));
-            dto.setGroupPrivacyLevel(post.getGroup().getPrivacyLevel());
-        }
-
-        // Logic quan trọng: Kiểm tra xem `post` này có phải là một bài chia sẻ không
-        Optional<PostShare> shareRecordOpt = postShareRepository.findBySharedPostAndStatusTrue(post);
-
-        if (shareRecordOpt.isPresent()) {
-            // Nếu ĐÚNG, thì `post` là bài viết chứa bình luận, và chúng ta cần lấy bài gốc
-            Post originalPost = shareRecordOpt.get().getOriginalPost();
-
-            // Tải dữ liệu cần thiết cho bài viết gốc để hiển thị
-            Map<Integer, List<MediaDto>> originalMediaMap = mediaService.getMediaByTargetIds(List.of(originalPost.getId()), "POST", null, true);
-            Map<Integer, Map<ReactionType, Long>> originalReactionMap = reactionService.countAllReactionsBatch(List.of(originalPost.getId()), "POST");
-            Map<Integer, List<PostTag>> originalTagsMap = postTagRepository.findByPost_IdInAndStatusTrue(List.of(originalPost.getId()))
-                    .stream().collect(Collectors.groupingBy(pt -> pt.getPost().getId()));
-
-            // Gọi đệ quy convertToDto để tạo DTO cho bài viết gốc
-            PostResponseDto sharedPostDto = convertToDto(originalPost, currentUserId, savedPostIds, originalTagsMap, originalMediaMap, originalReactionMap);
-            dto.setSharedPost(sharedPostDto); // Gán bài viết gốc vào trường sharedPost của DTO
-            dto.setMedia(List.of()); // Bài viết chia sẻ không có media của riêng nó
-        } else {
-            // Nếu KHÔNG, thì `post` là một bài viết bình thường
-            dto.setMedia(mediaMap.getOrDefault(post.getId(), List.of()));
-            dto.setSharedPost(null);
-        }
+        timelineService.fanOutPost(savedSharePostEntity);
+        feedCacheInvalidationService.evictForPostChange(savedSharePostEntity);
 
-        return dto;
+        // 3. Chuyển đổi bài viết vừa tạo thành DTO để trả về cho client (kèm bài gốc)
+        return feedHydrationService.hydrate(savedSharePostEntity, sharer.getId());
     }
 }
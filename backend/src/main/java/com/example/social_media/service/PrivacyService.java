@@ -22,7 +22,7 @@ public class PrivacyService {
     private final CustomPrivacyListMemberRepository customPrivacyListMemberRepository;
     private final UserRepository userRepository;
     private final ContentPrivacyRepository contentPrivacyRepository;
-    private final TargetTypeRepository targetTypeRepository;
+    private final ReferenceDataRegistry referenceDataRegistry;
     private final PrivacySettingRepository privacySettingRepository;
     private final FriendshipRepository friendshipRepository;
 
@@ -31,7 +31,7 @@ public class PrivacyService {
             CustomPrivacyListMemberRepository customPrivacyListMemberRepository,
             UserRepository userRepository,
             ContentPrivacyRepository contentPrivacyRepository,
-            TargetTypeRepository targetTypeRepository,
+            ReferenceDataRegistry referenceDataRegistry,
             PrivacySettingRepository privacySettingRepository,
             FriendshipRepository friendshipRepository
     ) {
@@ -39,7 +39,7 @@ public class PrivacyService {
         this.customPrivacyListMemberRepository = customPrivacyListMemberRepository;
         this.userRepository = userRepository;
         this.contentPrivacyRepository = contentPrivacyRepository;
-        this.targetTypeRepository = targetTypeRepository;
+        this.referenceDataRegistry = referenceDataRegistry;
         this.privacySettingRepository = privacySettingRepository;
         this.friendshipRepository = friendshipRepository;
     }
@@ -58,7 +58,7 @@ public class PrivacyService {
     public boolean checkContentAccess(Integer viewerId, Integer contentId, String targetTypeCode) {
         logger.debug("Checking access for viewerId: {}, contentId: {}, targetTypeCode: {}", viewerId, contentId, targetTypeCode);
 
-        TargetType targetType = targetTypeRepository.findByCode(targetTypeCode)
+        TargetType targetType = referenceDataRegistry.findTargetType(targetTypeCode)
                 .orElseThrow(() -> new IllegalArgumentException("Invalid target type: " + targetTypeCode));
 
         // ✅ Nếu là PROFILE → xử lý riêng
@@ -263,7 +263,7 @@ public class PrivacyService {
         logger.debug("Kiểm tra quyền truy cập hàng loạt cho viewerId: {}, contentIds: {}, targetTypeCode: {}", viewerId, contentIds, targetTypeCode);
 
         // Lấy TargetType
-        TargetType targetType = targetTypeRepository.findByCode(targetTypeCode)
+        TargetType targetType = referenceDataRegistry.findTargetType(targetTypeCode)
                 .orElseThrow(() -> new IllegalArgumentException("Loại mục tiêu không hợp lệ: " + targetTypeCode));
 
         // Lấy thông tin viewer
@@ -0,0 +1,297 @@
+package com.example.social_media.service;
+
+import com.example.social_media.entity.ReactionCount;
+import com.example.social_media.repository.ReactionCountRepository;
+import com.example.social_media.repository.ReactionRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Bộ đếm reaction theo đối tượng trong Redis: HASH "reactions:{targetTypeId}:{targetId}" (reactionTypeId -> count).
+ * Thêm / đổi / bỏ reaction cập nhật HASH bằng HINCRBY sau khi commit và đánh dấu đối tượng vào tập "reactions:dirty".
+ * Tác vụ định kỳ đếm lại các đối tượng bị đánh dấu từ tblReaction, ghi vào tblReactionCount và đồng bộ lại HASH,
+ * nên sai lệch do ghi đồng thời chỉ tồn tại tối đa một chu kỳ flush.
+ */
+@Service
+public class ReactionCounterService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReactionCounterService.class);
+
+    private static final String KEY_PREFIX = "reactions:";
+    private static final String DIRTY_KEY = "reactions:dirty";
+    // Field đánh dấu HASH đã được nạp, để đối tượng chưa có reaction nào vẫn có key trong Redis
+    private static final String LOADED_FIELD = "_";
+    private static final Duration COUNTER_TTL = Duration.ofDays(1);
+    private static final int FLUSH_BATCH_SIZE = 1000;
+
+    private static final String INSERT_AGGREGATE_SQL =
+            "INSERT INTO tblReactionCount (target_type_id, target_id, reaction_type_id, reaction_count, updated_at) VALUES (?, ?, ?, ?, ?)";
+
+    // Chỉ cộng dồn vào HASH đã được nạp; HASH chưa có sẽ được nạp đầy đủ khi đọc
+    private static final DefaultRedisScript<Long> CHANGE_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('EXISTS', KEYS[1]) == 1 then
+                if ARGV[1] ~= '' and redis.call('HINCRBY', KEYS[1], ARGV[1], -1) <= 0 then
+                    redis.call('HDEL', KEYS[1], ARGV[1])
+                end
+                if ARGV[2] ~= '' then
+                    redis.call('HINCRBY', KEYS[1], ARGV[2], 1)
+                end
+            end
+            redis.call('SADD', KEYS[2], ARGV[3])
+            return 1
+            """, Long.class);
+
+    // ARGV[1] = TTL (giây), ARGV[2] = '1' để ghi đè, ARGV[i + 2] = "typeId:count,..." cho KEYS[i]
+    private static final DefaultRedisScript<Long> LOAD_SCRIPT = new DefaultRedisScript<>("""
+            local ttl = tonumber(ARGV[1])
+            local overwrite = ARGV[2] == '1'
+            for i, key in ipairs(KEYS) do
+                if overwrite or redis.call('EXISTS', key) == 0 then
+                    redis.call('DEL', key)
+                    redis.call('HSET', key, '_', 0)
+                    for typeId, count in string.gmatch(ARGV[i + 2], '(%d+):(%d+)') do
+                        redis.call('HSET', key, typeId, count)
+                    end
+                    redis.call('EXPIRE', key, ttl)
+                end
+            end
+            return 1
+            """, Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final ReactionRepository reactionRepository;
+    private final ReactionCountRepository reactionCountRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    public ReactionCounterService(StringRedisTemplate stringRedisTemplate,
+                                  ReactionRepository reactionRepository,
+                                  ReactionCountRepository reactionCountRepository,
+                                  JdbcTemplate jdbcTemplate,
+                                  PlatformTransactionManager transactionManager) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.reactionRepository = reactionRepository;
+        this.reactionCountRepository = reactionCountRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Ghi nhận một thay đổi reaction của đối tượng: {@code removedTypeId} bị trừ 1, {@code addedTypeId} được cộng 1
+     * (null nếu không có). Thực hiện sau khi transaction hiện tại commit.
+     */
+    public void recordChange(Integer targetTypeId, Integer targetId, Integer removedTypeId, Integer addedTypeId) {
+        if (Objects.equals(removedTypeId, addedTypeId)) return;
+
+        Runnable change = () -> {
+            try {
+                stringRedisTemplate.execute(CHANGE_SCRIPT,
+                        List.of(counterKey(targetTypeId, targetId), DIRTY_KEY),
+                        removedTypeId != null ? String.valueOf(removedTypeId) : "",
+                        addedTypeId != null ? String.valueOf(addedTypeId) : "",
+                        dirtyMember(targetTypeId, targetId));
+            } catch (DataAccessException e) {
+                // Xóa HASH để lần đọc sau nạp lại từ DB thay vì dùng số đếm đã lệch
+                logger.warn("Không cập nhật được bộ đếm reaction {}:{}: {}", targetTypeId, targetId, e.getMessage());
+                evictQuietly(counterKey(targetTypeId, targetId));
+            }
+        };
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    change.run();
+                }
+            });
+        } else {
+            change.run();
+        }
+    }
+
+    /**
+     * Số reaction theo reactionTypeId cho từng đối tượng. Đọc HGETALL trong một pipeline;
+     * đối tượng chưa có trong Redis được nạp từ tblReactionCount (hoặc đếm từ tblReaction nếu chưa có bản tổng hợp).
+     */
+    public Map<Integer, Map<Integer, Long>> getCounts(Integer targetTypeId, Collection<Integer> targetIds) {
+        List<Integer> ids = targetIds.stream().filter(Objects::nonNull).distinct().toList();
+        if (ids.isEmpty()) return Map.of();
+
+        Map<Integer, Map<Integer, Long>> result = new HashMap<>();
+        List<Integer> missingIds = new ArrayList<>();
+        try {
+            List<Object> hashes = stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public <K, V> Object execute(RedisOperations<K, V> operations) {
+                    RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                    for (Integer id : ids) {
+                        ops.opsForHash().entries(counterKey(targetTypeId, id));
+                    }
+                    return null;
+                }
+            });
+            for (int i = 0; i < ids.size(); i++) {
+                Object hash = hashes.get(i);
+                if (hash instanceof Map<?, ?> fields && !fields.isEmpty()) {
+                    result.put(ids.get(i), parseHash(fields));
+                } else {
+                    missingIds.add(ids.get(i));
+                }
+            }
+        } catch (DataAccessException e) {
+            logger.warn("Không đọc được bộ đếm reaction từ Redis, đọc từ DB: {}", e.getMessage());
+            return loadFromDatabase(targetTypeId, ids);
+        }
+
+        if (!missingIds.isEmpty()) {
+            Map<Integer, Map<Integer, Long>> loaded = loadFromDatabase(targetTypeId, missingIds);
+            writeToRedis(targetTypeId, missingIds, loaded, false);
+            missingIds.forEach(id -> result.put(id, loaded.getOrDefault(id, Map.of())));
+        }
+        return result;
+    }
+
+    /**
+     * Đếm lại các đối tượng bị đánh dấu từ tblReaction, ghi vào tblReactionCount và đồng bộ lại Redis.
+     * SPOP đảm bảo mỗi đối tượng chỉ được một instance xử lý.
+     */
+    @Scheduled(fixedDelayString = "${reaction.counter.flush-interval-ms:10000}")
+    public void flushDirtyCounters() {
+        List<String> members;
+        try {
+            members = stringRedisTemplate.opsForSet().pop(DIRTY_KEY, FLUSH_BATCH_SIZE);
+        } catch (DataAccessException e) {
+            logger.warn("Không đọc được danh sách bộ đếm reaction cần ghi: {}", e.getMessage());
+            return;
+        }
+        if (members == null || members.isEmpty()) return;
+
+        Map<Integer, Set<Integer>> targetIdsByType = new HashMap<>();
+        for (String member : members) {
+            String[] parts = member.split(":");
+            targetIdsByType.computeIfAbsent(Integer.valueOf(parts[0]), k -> new HashSet<>()).add(Integer.valueOf(parts[1]));
+        }
+
+        try {
+            targetIdsByType.forEach(this::flushTargets);
+            logger.debug("Đã ghi {} bộ đếm reaction vào tblReactionCount", members.size());
+        } catch (Exception e) {
+            logger.error("Lỗi khi ghi bộ đếm reaction, sẽ thử lại ở chu kỳ sau: {}", e.getMessage());
+            try {
+                stringRedisTemplate.opsForSet().add(DIRTY_KEY, members.toArray(new String[0]));
+            } catch (DataAccessException redisError) {
+                logger.warn("Không đánh dấu lại được bộ đếm reaction: {}", redisError.getMessage());
+            }
+        }
+    }
+
+    private void flushTargets(Integer targetTypeId, Set<Integer> targetIds) {
+        Map<Integer, Map<Integer, Long>> counts = countFromSource(targetTypeId, targetIds);
+        Timestamp now = Timestamp.from(Instant.now());
+
+        List<Object[]> rows = new ArrayList<>();
+        counts.forEach((targetId, byType) -> byType.forEach((typeId, count) ->
+                rows.add(new Object[]{targetTypeId, targetId, typeId, count, now})));
+
+        transactionTemplate.executeWithoutResult(status -> {
+            reactionCountRepository.deleteByTargetTypeIdAndTargetIdIn(targetTypeId, targetIds);
+            if (!rows.isEmpty()) {
+                jdbcTemplate.batchUpdate(INSERT_AGGREGATE_SQL, rows);
+            }
+        });
+
+        writeToRedis(targetTypeId, targetIds, counts, true);
+    }
+
+    private Map<Integer, Map<Integer, Long>> loadFromDatabase(Integer targetTypeId, Collection<Integer> targetIds) {
+        Map<Integer, Map<Integer, Long>> result = new HashMap<>();
+        for (ReactionCount row : reactionCountRepository.findByTargetTypeIdAndTargetIdIn(targetTypeId, targetIds)) {
+            result.computeIfAbsent(row.getId().getTargetId(), k -> new HashMap<>())
+                    .put(row.getId().getReactionTypeId(), row.getReactionCount());
+        }
+
+        // Đối tượng chưa từng được ghi vào bảng tổng hợp (dữ liệu cũ hoặc chưa có reaction): đếm trực tiếp
+        List<Integer> uncounted = targetIds.stream().filter(id -> !result.containsKey(id)).toList();
+        if (!uncounted.isEmpty()) {
+            result.putAll(countFromSource(targetTypeId, uncounted));
+        }
+        return result;
+    }
+
+    private Map<Integer, Map<Integer, Long>> countFromSource(Integer targetTypeId, Collection<Integer> targetIds) {
+        Map<Integer, Map<Integer, Long>> result = new HashMap<>();
+        for (Object[] row : reactionRepository.countByTargetIdsAndTargetTypeId(targetIds, targetTypeId)) {
+            result.computeIfAbsent((Integer) row[0], k -> new HashMap<>())
+                    .put((Integer) row[1], ((Number) row[2]).longValue());
+        }
+        return result;
+    }
+
+    private void writeToRedis(Integer targetTypeId, Collection<Integer> targetIds,
+                              Map<Integer, Map<Integer, Long>> counts, boolean overwrite) {
+        List<String> keys = new ArrayList<>(targetIds.size());
+        List<String> args = new ArrayList<>(targetIds.size() + 2);
+        args.add(String.valueOf(COUNTER_TTL.toSeconds()));
+        args.add(overwrite ? "1" : "0");
+        for (Integer targetId : targetIds) {
+            keys.add(counterKey(targetTypeId, targetId));
+            args.add(counts.getOrDefault(targetId, Map.of()).entrySet().stream()
+                    .map(entry -> entry.getKey() + ":" + entry.getValue())
+                    .collect(Collectors.joining(",")));
+        }
+        try {
+            stringRedisTemplate.execute(LOAD_SCRIPT, keys, args.toArray());
+        } catch (DataAccessException e) {
+            logger.warn("Không ghi được bộ đếm reaction vào Redis: {}", e.getMessage());
+            if (overwrite) {
+                keys.forEach(this::evictQuietly);
+            }
+        }
+    }
+
+    private Map<Integer, Long> parseHash(Map<?, ?> fields) {
+        Map<Integer, Long> counts = new HashMap<>();
+        fields.forEach((field, value) -> {
+            if (LOADED_FIELD.equals(field)) return;
+            long count = Long.parseLong(value.toString());
+            if (count > 0) {
+                counts.put(Integer.valueOf(field.toString()), count);
+            }
+        });
+        return counts;
+    }
+
+    private void evictQuietly(String key) {
+        try {
+            stringRedisTemplate.delete(key);
+        } catch (DataAccessException e) {
+            logger.warn("Không xóa được bộ đếm reaction {}: {}", key, e.getMessage());
+        }
+    }
+
+    private String counterKey(Integer targetTypeId, Integer targetId) {
+        return KEY_PREFIX + targetTypeId + ":" + targetId;
+    }
+
+    private String dirtyMember(Integer targetTypeId, Integer targetId) {
+        return targetTypeId + ":" + targetId;
+    }
+}
@@ -8,10 +8,7 @@ import com.example.social_media.entity.ReactionId;
 import com.example.social_media.entity.ReactionType;
 import com.example.social_media.entity.TargetType;
 import com.example.social_media.repository.ReactionRepository;
-import com.example.social_media.repository.ReactionTypeRepository;
-import com.example.social_media.repository.TargetTypeRepository;
 import com.example.social_media.repository.UserRepository;
-import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -23,32 +20,29 @@ import java.util.stream.Collectors;
 public class ReactionService {
 
     private final ReactionRepository reactionRepository;
-    private final ReactionTypeRepository reactionTypeRepository;
     private final UserRepository userRepository;
-    private final TargetTypeRepository targetTypeRepository;
+    private final ReferenceDataRegistry referenceDataRegistry;
     private final MediaService mediaService;
+    private final ReactionCounterService reactionCounterService;
 
     private static final Set<String> MAIN_REACTIONS = Set.of("like", "love", "smile", "sad", "wow", "angry", "sleepy");
 
     public ReactionService(ReactionRepository reactionRepository,
-                           ReactionTypeRepository reactionTypeRepository,
                            UserRepository userRepository,
-                           TargetTypeRepository targetTypeRepository,
-                           MediaService mediaService) {
+                           ReferenceDataRegistry referenceDataRegistry,
+                           MediaService mediaService,
+                           ReactionCounterService reactionCounterService) {
         this.reactionRepository = reactionRepository;
-        this.reactionTypeRepository = reactionTypeRepository;
         this.userRepository = userRepository;
-        this.targetTypeRepository = targetTypeRepository;
+        this.referenceDataRegistry = referenceDataRegistry;
         this.mediaService = mediaService;
+        this.reactionCounterService = reactionCounterService;
     }
 
-    @CacheEvict(
-            value = {"newsfeed", "postsByUsername", "communityFeed", "postsByGroup", "postsByUserInGroup"},
-            allEntries = true
-    )
+    @Transactional
     public void addOrUpdateReaction(Integer userId, Integer targetId, String targetTypeCode, String emojiName) {
         TargetType targetType = getTargetTypeByCode(targetTypeCode);
-        ReactionType reactionType = reactionTypeRepository.findByNameIgnoreCase(emojiName.trim())
+        ReactionType reactionType = referenceDataRegistry.findReactionType(emojiName.trim())
                 .orElseThrow(() -> new IllegalArgumentException("Loại cảm xúc không hợp lệ: " + emojiName));
 
         ReactionId reactionId = new ReactionId(userId, targetId, targetType.getId());
@@ -56,10 +50,13 @@ public class ReactionService {
 
         if (existing != null) {
             if (!existing.getReactionType().getId().equals(reactionType.getId())) {
+                // Reaction cũ đã bị vô hiệu thì không còn nằm trong bộ đếm
+                Integer previousTypeId = Boolean.TRUE.equals(existing.getStatus()) ? existing.getReactionType().getId() : null;
                 existing.setReactionType(reactionType);
                 existing.setCreatedAt(Instant.now());
                 existing.setStatus(true);
                 reactionRepository.save(existing);
+                reactionCounterService.recordChange(targetType.getId(), targetId, previousTypeId, reactionType.getId());
             }
         } else {
             Reaction reaction = new Reaction();
@@ -70,27 +67,25 @@ public class ReactionService {
             reaction.setCreatedAt(Instant.now());
             reaction.setStatus(true);
             reactionRepository.save(reaction);
+            reactionCounterService.recordChange(targetType.getId(), targetId, null, reactionType.getId());
         }
     }
 
-    @CacheEvict(
-            value = {"newsfeed", "postsByUsername", "communityFeed", "postsByGroup", "postsByUserInGroup"},
-            allEntries = true
-    )
     @Transactional
     public void removeReaction(Integer userId, Integer targetId, String targetTypeCode) {
         TargetType targetType = getTargetTypeByCode(targetTypeCode);
+        Reaction existing = reactionRepository.findByIdUserIdAndIdTargetIdAndIdTargetTypeId(userId, targetId, targetType.getId())
+                .orElse(null);
+        if (existing == null) return;
+
         reactionRepository.deleteByIdUserIdAndIdTargetIdAndIdTargetTypeId(userId, targetId, targetType.getId());
+        if (Boolean.TRUE.equals(existing.getStatus())) {
+            reactionCounterService.recordChange(targetType.getId(), targetId, existing.getReactionType().getId(), null);
+        }
     }
 
     public List<ReactionTypeCountDto> getTop3Reactions(Integer targetId, String targetTypeCode) {
-        System.out.println("[DB FETCH] Getting top3 reactions for targetId=" + targetId + ", type=" + targetTypeCode);
-
-        TargetType targetType = getTargetTypeByCode(targetTypeCode);
-        List<Reaction> reactions = reactionRepository.findById_TargetIdAndId_TargetTypeIdAndStatusTrue(targetId, targetType.getId());
-
-        Map<ReactionType, Long> grouped = reactions.stream()
-                .collect(Collectors.groupingBy(Reaction::getReactionType, Collectors.counting()));
+        Map<ReactionType, Long> grouped = countAllReactions(targetId, targetTypeCode);
 
         return grouped.entrySet().stream()
                 .sorted(Map.Entry.<ReactionType, Long>comparingByValue().reversed())
@@ -100,19 +95,17 @@ public class ReactionService {
     }
 
     public Map<ReactionType, Long> countAllReactions(Integer targetId, String targetTypeCode) {
-        TargetType targetType = getTargetTypeByCode(targetTypeCode);
-        List<Reaction> reactions = reactionRepository.findById_TargetIdAndId_TargetTypeIdAndStatusTrue(targetId, targetType.getId());
-        return reactions.stream().collect(Collectors.groupingBy(Reaction::getReactionType, Collectors.counting()));
+        return countAllReactionsBatch(List.of(targetId), targetTypeCode).getOrDefault(targetId, new HashMap<>());
     }
 
     public List<ReactionType> getAvailableReactionsForMessaging() {
-        return reactionTypeRepository.findAll().stream()
+        return referenceDataRegistry.getReactionTypes().stream()
                 .filter(rt -> Boolean.TRUE.equals(rt.getStatus()))
                 .toList();
     }
 
     public List<ReactionType> getMainReactions() {
-        return reactionTypeRepository.findAll().stream()
+        return referenceDataRegistry.getReactionTypes().stream()
                 .filter(rt -> MAIN_REACTIONS.contains(rt.getName().toLowerCase()))
                 .toList();
     }
@@ -125,41 +118,41 @@ public class ReactionService {
 
     public List<UserBasicDisplayDto> getUsersByReactionType(Integer targetId, String targetTypeCode, String emojiName) {
         TargetType targetType = getTargetTypeByCode(targetTypeCode);
-        ReactionType reactionType = reactionTypeRepository.findByNameIgnoreCase(emojiName)
+        ReactionType reactionType = referenceDataRegistry.findReactionType(emojiName)
                 .orElseThrow(() -> new IllegalArgumentException("Loại emoji không tồn tại"));
 
         List<Reaction> reactions = reactionRepository.findByIdTargetIdAndIdTargetTypeIdAndReactionTypeIdAndStatusTrue(
                 targetId, targetType.getId(), reactionType.getId());
 
+        Map<Integer, String> avatars = mediaService.getAvatarUrlsByUserIds(
+                reactions.stream().map(r -> r.getUser().getId()).toList());
+
         return reactions.stream()
                 .map(r -> new UserBasicDisplayDto(
                         r.getUser().getId(),
                         r.getUser().getDisplayName(),
                         r.getUser().getUsername(),
-                        mediaService.getAvatarUrlByUserId(r.getUser().getId())
+                        avatars.get(r.getUser().getId())
                 )).toList();
     }
 
     private TargetType getTargetTypeByCode(String code) {
-        return targetTypeRepository.findByCode(code.trim())
+        return referenceDataRegistry.findTargetType(code.trim())
                 .orElseThrow(() -> new IllegalArgumentException("Loại đối tượng không hợp lệ: " + code));
     }
 
+    // Số đếm lấy từ bộ đếm Redis, loại reaction tra trong ReferenceDataRegistry
     public Map<Integer, Map<ReactionType, Long>> countAllReactionsBatch(List<Integer> targetIds, String targetTypeCode) {
-        List<Object[]> rows = reactionRepository.countAllByTargetIdsAndType(targetIds, targetTypeCode);
-
-        Map<Integer, Map<ReactionType, Long>> result = new HashMap<>();
-        for (Object[] row : rows) {
-            Integer targetId = (Integer) row[0];
-            String reactionName = (String) row[1];
-            Long count = (Long) row[2];
-
-            ReactionType type = reactionTypeRepository.findByNameIgnoreCase(reactionName)
-                    .orElseThrow(() -> new RuntimeException("Không tìm thấy ReactionType: " + reactionName));
+        if (targetIds.isEmpty()) return new HashMap<>();
 
-            result.computeIfAbsent(targetId, k -> new HashMap<>()).put(type, count);
-        }
+        TargetType targetType = getTargetTypeByCode(targetTypeCode);
+        Map<Integer, Map<Integer, Long>> counts = reactionCounterService.getCounts(targetType.getId(), targetIds);
 
+        Map<Integer, Map<ReactionType, Long>> result = new HashMap<>();
+        counts.forEach((targetId, byType) -> byType.forEach((typeId, count) ->
+                referenceDataRegistry.findReactionType(typeId)
+                        .filter(type -> count > 0)
+                        .ifPresent(type -> result.computeIfAbsent(targetId, k -> new HashMap<>()).put(type, count))));
         return result;
     }
 }
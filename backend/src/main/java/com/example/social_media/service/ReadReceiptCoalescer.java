@@ -0,0 +1,121 @@
+package com.example.social_media.service;
+
+import com.example.social_media.repository.message.JdbcMessageRepository;
+import com.example.social_media.repository.message.JdbcMessageRepository.ReadReceipt;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Gom các xác nhận đã đọc tin nhắn: mỗi lần mở chat / cuộn / gọi mark-read chỉ ghi messageId lớn nhất đã đọc
+ * vào HASH "read-receipts:pending" ("chatId:userId" -> messageId). Tác vụ định kỳ lấy toàn bộ HASH,
+ * cập nhật tblMessageStatus bằng một lượt batch UPDATE rồi đếm lại bộ đếm chưa đọc, mỗi người dùng một sự kiện.
+ */
+@Service
+public class ReadReceiptCoalescer {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReadReceiptCoalescer.class);
+
+    private static final String PENDING_KEY = "read-receipts:pending";
+
+    // KEYS[1] = HASH chờ ghi; ARGV[1] = "chatId:userId", ARGV[2] = messageId. Chỉ giữ messageId lớn nhất
+    private static final DefaultRedisScript<Long> RECORD_SCRIPT = new DefaultRedisScript<>("""
+            local current = tonumber(redis.call('HGET', KEYS[1], ARGV[1]) or '0')
+            if tonumber(ARGV[2]) > current then
+                redis.call('HSET', KEYS[1], ARGV[1], ARGV[2])
+                return 1
+            end
+            return 0
+            """, Long.class);
+
+    // Lấy và xóa HASH trong một bước để mỗi xác nhận chỉ được một node ghi xuống DB
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> DRAIN_SCRIPT = new DefaultRedisScript<>("""
+            local entries = redis.call('HGETALL', KEYS[1])
+            redis.call('DEL', KEYS[1])
+            return entries
+            """, List.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final JdbcMessageRepository jdbcMessageRepository;
+    private final UnreadCounterService unreadCounterService;
+
+    public ReadReceiptCoalescer(StringRedisTemplate stringRedisTemplate,
+                                JdbcMessageRepository jdbcMessageRepository,
+                                UnreadCounterService unreadCounterService) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.jdbcMessageRepository = jdbcMessageRepository;
+        this.unreadCounterService = unreadCounterService;
+    }
+
+    /**
+     * Người dùng đã đọc tới upToMessageId (bao gồm) trong chat. Được ghi xuống DB ở lượt flush kế tiếp.
+     */
+    public void record(Integer chatId, Integer userId, Integer upToMessageId) {
+        try {
+            stringRedisTemplate.execute(RECORD_SCRIPT, List.of(PENDING_KEY),
+                    chatId + ":" + userId, String.valueOf(upToMessageId));
+        } catch (DataAccessException e) {
+            // Redis lỗi: ghi thẳng như trước khi có bộ gom
+            logger.warn("Không ghi được xác nhận đã đọc {}:{} vào Redis, ghi trực tiếp DB: {}", chatId, userId, e.getMessage());
+            jdbcMessageRepository.markReadUpTo(List.of(new ReadReceipt(chatId, userId, upToMessageId)));
+            unreadCounterService.refreshCounts(List.of(userId));
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${chat.read-receipt.flush-interval-ms:300}")
+    public void flush() {
+        List<?> entries;
+        try {
+            entries = stringRedisTemplate.execute(DRAIN_SCRIPT, List.of(PENDING_KEY));
+        } catch (DataAccessException e) {
+            logger.warn("Không đọc được xác nhận đã đọc đang chờ: {}", e.getMessage());
+            return;
+        }
+        if (entries == null || entries.isEmpty()) return;
+
+        List<ReadReceipt> receipts = new ArrayList<>(entries.size() / 2);
+        for (int i = 0; i + 1 < entries.size(); i += 2) {
+            String[] field = entries.get(i).toString().split(":");
+            receipts.add(new ReadReceipt(Integer.valueOf(field[0]), Integer.valueOf(field[1]),
+                    Integer.valueOf(entries.get(i + 1).toString())));
+        }
+
+        try {
+            jdbcMessageRepository.markReadUpTo(receipts);
+        } catch (DataAccessException e) {
+            logger.error("Lỗi khi ghi {} xác nhận đã đọc, sẽ thử lại ở lượt sau: {}", receipts.size(), e.getMessage());
+            requeue(receipts);
+            return;
+        }
+
+        Set<Integer> userIds = receipts.stream().map(ReadReceipt::userId).collect(Collectors.toSet());
+        try {
+            unreadCounterService.refreshCounts(userIds);
+        } catch (Exception e) {
+            logger.warn("Không đếm lại được bộ đếm chưa đọc sau khi ghi xác nhận đã đọc: {}", e.getMessage());
+            unreadCounterService.markForReconcile(userIds);
+        }
+        logger.debug("Đã ghi {} xác nhận đã đọc cho {} người dùng", receipts.size(), userIds.size());
+    }
+
+    private void requeue(List<ReadReceipt> receipts) {
+        for (ReadReceipt receipt : receipts) {
+            try {
+                stringRedisTemplate.execute(RECORD_SCRIPT, List.of(PENDING_KEY),
+                        receipt.chatId() + ":" + receipt.userId(), String.valueOf(receipt.upToMessageId()));
+            } catch (DataAccessException e) {
+                logger.warn("Mất xác nhận đã đọc {}:{}: {}", receipt.chatId(), receipt.userId(), e.getMessage());
+            }
+        }
+    }
+}
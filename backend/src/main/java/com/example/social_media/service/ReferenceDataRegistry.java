@@ -0,0 +1,182 @@
+package com.example.social_media.service;
+
+import com.example.social_media.entity.*;
+import com.example.social_media.repository.*;
+import com.example.social_media.repository.report.ReportStatusRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Bảng tra cứu nhỏ (TargetType, MediaType, ReactionType, NotificationType, NotificationStatus, ReportStatus, ActionType)
+ * được nạp một lần khi khởi động và giữ trong bộ nhớ dưới dạng snapshot bất biến.
+ * Tra cứu theo code / name không phân biệt hoa thường, giống collation mặc định của SQL Server.
+ * Admin gọi {@link #refresh()} sau khi sửa dữ liệu; các node khác nạp lại qua kênh Redis {@link #REFRESH_CHANNEL}.
+ */
+@Service
+public class ReferenceDataRegistry implements MessageListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReferenceDataRegistry.class);
+
+    public static final String REFRESH_CHANNEL = "reference-data-refresh";
+
+    private final TargetTypeRepository targetTypeRepository;
+    private final MediaTypeRepository mediaTypeRepository;
+    private final ReactionTypeRepository reactionTypeRepository;
+    private final NotificationTypeRepository notificationTypeRepository;
+    private final NotificationStatusRepository notificationStatusRepository;
+    private final ReportStatusRepository reportStatusRepository;
+    private final ActionTypeRepository actionTypeRepository;
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private volatile Snapshot snapshot;
+
+    public ReferenceDataRegistry(TargetTypeRepository targetTypeRepository,
+                                 MediaTypeRepository mediaTypeRepository,
+                                 ReactionTypeRepository reactionTypeRepository,
+                                 NotificationTypeRepository notificationTypeRepository,
+                                 NotificationStatusRepository notificationStatusRepository,
+                                 ReportStatusRepository reportStatusRepository,
+                                 ActionTypeRepository actionTypeRepository,
+                                 StringRedisTemplate stringRedisTemplate) {
+        this.targetTypeRepository = targetTypeRepository;
+        this.mediaTypeRepository = mediaTypeRepository;
+        this.reactionTypeRepository = reactionTypeRepository;
+        this.notificationTypeRepository = notificationTypeRepository;
+        this.notificationStatusRepository = notificationStatusRepository;
+        this.reportStatusRepository = reportStatusRepository;
+        this.actionTypeRepository = actionTypeRepository;
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.snapshot = load();
+    }
+
+    public Optional<TargetType> findTargetType(String code) {
+        return code == null ? Optional.empty() : Optional.ofNullable(snapshot.targetTypesByCode().get(normalize(code)));
+    }
+
+    public Optional<TargetType> findTargetType(Integer id) {
+        return Optional.ofNullable(snapshot.targetTypesById().get(id));
+    }
+
+    public Optional<MediaType> findMediaType(String name) {
+        return name == null ? Optional.empty() : Optional.ofNullable(snapshot.mediaTypesByName().get(normalize(name)));
+    }
+
+    public Optional<ReactionType> findReactionType(String name) {
+        return name == null ? Optional.empty() : Optional.ofNullable(snapshot.reactionTypesByName().get(normalize(name)));
+    }
+
+    public Optional<ReactionType> findReactionType(Integer id) {
+        return Optional.ofNullable(snapshot.reactionTypesById().get(id));
+    }
+
+    public List<ReactionType> getReactionTypes() {
+        return snapshot.reactionTypes();
+    }
+
+    // Chỉ trả về loại thông báo đang hoạt động (status = true)
+    public Optional<NotificationType> findActiveNotificationType(String name) {
+        return name == null ? Optional.empty() : Optional.ofNullable(snapshot.activeNotificationTypesByName().get(normalize(name)));
+    }
+
+    public Optional<NotificationStatus> findNotificationStatus(String name) {
+        return name == null ? Optional.empty() : Optional.ofNullable(snapshot.notificationStatusesByName().get(normalize(name)));
+    }
+
+    public Optional<ReportStatus> findReportStatus(Integer id) {
+        return Optional.ofNullable(snapshot.reportStatusesById().get(id));
+    }
+
+    public Optional<ActionType> findActionType(String name) {
+        return name == null ? Optional.empty() : Optional.ofNullable(snapshot.actionTypesByName().get(normalize(name)));
+    }
+
+    /**
+     * Nạp lại toàn bộ bảng tra cứu trên node hiện tại và báo các node khác nạp lại.
+     */
+    public void refresh() {
+        reload();
+        try {
+            stringRedisTemplate.convertAndSend(REFRESH_CHANNEL, "refresh");
+        } catch (DataAccessException e) {
+            logger.warn("Không gửi được yêu cầu nạp lại dữ liệu tra cứu tới các node khác: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        try {
+            reload();
+        } catch (Exception e) {
+            logger.error("Lỗi khi nạp lại dữ liệu tra cứu: {}", e.getMessage());
+        }
+    }
+
+    private void reload() {
+        snapshot = load();
+        logger.info("Đã nạp lại dữ liệu tra cứu");
+    }
+
+    private Snapshot load() {
+        List<TargetType> targetTypes = targetTypeRepository.findAll();
+        List<ReactionType> reactionTypes = reactionTypeRepository.findAll();
+        List<NotificationType> notificationTypes = notificationTypeRepository.findAll();
+
+        // tblActionType có thể chứa tên trùng: giữ bản ghi có id nhỏ nhất
+        List<ActionType> actionTypes = actionTypeRepository.findAll().stream()
+                .sorted(Comparator.comparing(ActionType::getId))
+                .toList();
+
+        return new Snapshot(
+                indexBy(targetTypes, TargetType::getCode),
+                indexById(targetTypes, TargetType::getId),
+                indexBy(mediaTypeRepository.findAll(), MediaType::getName),
+                List.copyOf(reactionTypes),
+                indexBy(reactionTypes, ReactionType::getName),
+                indexById(reactionTypes, ReactionType::getId),
+                indexBy(notificationTypes.stream().filter(nt -> Boolean.TRUE.equals(nt.getStatus())).toList(), NotificationType::getName),
+                indexBy(notificationStatusRepository.findAll(), NotificationStatus::getName),
+                indexById(reportStatusRepository.findAll(), ReportStatus::getId),
+                indexBy(actionTypes, ActionType::getName)
+        );
+    }
+
+    private static <T> Map<String, T> indexBy(List<T> values, Function<T, String> keyExtractor) {
+        Map<String, T> index = new HashMap<>();
+        for (T value : values) {
+            String key = keyExtractor.apply(value);
+            if (key != null) {
+                index.putIfAbsent(normalize(key), value);
+            }
+        }
+        return Map.copyOf(index);
+    }
+
+    private static <K, T> Map<K, T> indexById(List<T> values, Function<T, K> idExtractor) {
+        return values.stream().collect(Collectors.toUnmodifiableMap(idExtractor, Function.identity(), (a, b) -> a));
+    }
+
+    private static String normalize(String value) {
+        return value.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private record Snapshot(Map<String, TargetType> targetTypesByCode,
+                            Map<Integer, TargetType> targetTypesById,
+                            Map<String, MediaType> mediaTypesByName,
+                            List<ReactionType> reactionTypes,
+                            Map<String, ReactionType> reactionTypesByName,
+                            Map<Integer, ReactionType> reactionTypesById,
+                            Map<String, NotificationType> activeNotificationTypesByName,
+                            Map<String, NotificationStatus> notificationStatusesByName,
+                            Map<Integer, ReportStatus> reportStatusesById,
+                            Map<String, ActionType> actionTypesByName) {
+    }
+}
@@ -13,7 +13,6 @@ import com.example.social_media.repository.post.PostAIModerationRepository;
 import com.example.social_media.repository.post.PostFlagRepository;
 import com.example.social_media.repository.post.PostRepository;
 import com.example.social_media.repository.report.*;
-import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
@@ -36,7 +35,7 @@ public class ReportService {
     private final ReportRepository reportRepository;
     private final UserRepository userRepository;
     private final ReportReasonRepository reportReasonRepository;
-    private final ReportStatusRepository reportStatusRepository;
+    private final ReferenceDataRegistry referenceDataRegistry;
     private final ReportHistoryRepository reportHistoryRepository;
     private final PostRepository postRepository;
     private final SimpMessagingTemplate messagingTemplate;
@@ -49,6 +48,7 @@ public class ReportService {
     private final GroupRepository groupRepository;
     private final GroupMemberRepository groupMemberRepository;
     private final MediaService mediaService;
+    private final FeedCacheInvalidationService feedCacheInvalidationService;
 
     private static final int MAX_REPORTS_PER_DAY = 3;
 
@@ -56,7 +56,7 @@ public class ReportService {
             ReportRepository reportRepository,
             UserRepository userRepository,
             ReportReasonRepository reportReasonRepository,
-            ReportStatusRepository reportStatusRepository,
+            ReferenceDataRegistry referenceDataRegistry,
             ReportHistoryRepository reportHistoryRepository,
             PostRepository postRepository,
             SimpMessagingTemplate messagingTemplate,
@@ -68,12 +68,13 @@ public class ReportService {
             ReactionRepository reactionRepository,
             GroupRepository groupRepository,
             GroupMemberRepository groupMemberRepository,
-            MediaService mediaService
+            MediaService mediaService,
+            FeedCacheInvalidationService feedCacheInvalidationService
     ) {
         this.reportRepository = reportRepository;
         this.userRepository = userRepository;
         this.reportReasonRepository = reportReasonRepository;
-        this.reportStatusRepository = reportStatusRepository;
+        this.referenceDataRegistry = referenceDataRegistry;
         this.reportHistoryRepository = reportHistoryRepository;
         this.postRepository = postRepository;
         this.messagingTemplate = messagingTemplate;
@@ -86,6 +87,7 @@ public class ReportService {
         this.groupRepository = groupRepository;
         this.groupMemberRepository = groupMemberRepository;
         this.mediaService = mediaService;
+        this.feedCacheInvalidationService = feedCacheInvalidationService;
     }
 
     @Transactional(readOnly = true)
@@ -125,7 +127,7 @@ public class ReportService {
         }
 
         try {
-            ReportStatus status = reportStatusRepository.findById(1)
+            ReportStatus status = referenceDataRegistry.findReportStatus(1)
                     .orElseThrow(() -> new IllegalArgumentException("Trạng thái báo cáo không tồn tại với id: 1"));
 
             Integer reportId = reportRepository.addReport(
@@ -262,10 +264,6 @@ public class ReportService {
         Page<Report> reportPage = reportRepository.findByTargetTypeIdAndProcessingStatusId(targetTypeId, processingStatusId, pageable);
         return reportPage.map(this::convertToReportResponseDto);
     }
-    @CacheEvict(
-            value = {"newsfeed", "postsByUsername", "communityFeed", "postsByGroup", "postsByUserInGroup", "savedPosts"},
-            allEntries = true
-    )
     @Transactional
     public void updateReportStatus(Integer reportId, UpdateReportStatusRequestDto request) {
         String currentUsername = SecurityContextHolder.getContext().getAuthentication().getName();
@@ -358,6 +356,12 @@ public class ReportService {
                     commentRepository.deleteAllByPostId(reportedPost.getId());
                     reactionRepository.deleteAllByPostId(reportedPost.getId());
                     mediaRepository.deleteAllPostMedia(reportedPost.getId());
+                    mediaService.evictTargetMedia("POST", reportedPost.getId());
+                    // Khóa cache được tính trước khi xóa bài, xóa cache sau khi commit
+                    feedCacheInvalidationService.evictForPostChange(reportedPost);
+                    if ("public".equals(reportedPost.getPrivacySetting())) {
+                        feedCacheInvalidationService.evictForPublicVisibilityRemoved();
+                    }
                     postRepository.delete(reportedPost);
 
                     String reasonContent = updatedReport.getReason() != null
@@ -0,0 +1,234 @@
+package com.example.social_media.service;
+
+import com.example.social_media.entity.Post;
+import com.example.social_media.repository.FriendshipRepository;
+import com.example.social_media.repository.GroupMemberRepository;
+import com.example.social_media.repository.post.PostRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * Timeline newsfeed lưu trong Redis (fan-out-on-write).
+ * Mỗi user có một ZSET "timeline:home:{userId}" chứa postId với score = created_at (epoch millis).
+ * Chủ bài / nhóm có quá nhiều người theo dõi không được fan-out mà được đọc lúc lấy feed (fan-out-on-read).
+ * Timeline dựng lại mà không có bài nào vẫn được ghi với một member đánh dấu rỗng để không truy vấn DB lại ở mỗi lần đọc.
+ */
+@Service
+public class TimelineService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TimelineService.class);
+
+    private static final String HOME_KEY_PREFIX = "timeline:home:";
+    private static final String AUTHOR_KEY_PREFIX = "timeline:author:";
+    private static final String GROUP_KEY_PREFIX = "timeline:group:";
+    private static final String PUBLIC_KEY = "timeline:public";
+    private static final String FANOUT_READ_USERS_KEY = "timeline:fanout-read:users";
+    private static final String FANOUT_READ_GROUPS_KEY = "timeline:fanout-read:groups";
+    private static final Duration HOME_TTL = Duration.ofDays(7);
+    // Score 0 luôn nhỏ nhất nên member này bị cắt trước mọi bài viết khi timeline đầy
+    private static final String EMPTY_MARKER = "empty";
+    private static final int FANOUT_BATCH_SIZE = 500;
+
+    // Chỉ ghi vào timeline đã được khởi tạo; timeline chưa có sẽ được dựng lại đầy đủ từ DB khi đọc
+    private static final DefaultRedisScript<Long> FANOUT_SCRIPT = new DefaultRedisScript<>("""
+            local member = ARGV[1]
+            local score = ARGV[2]
+            local maxSize = tonumber(ARGV[3])
+            local written = 0
+            for _, key in ipairs(KEYS) do
+                if redis.call('EXISTS', key) == 1 then
+                    redis.call('ZADD', key, score, member)
+                    redis.call('ZREMRANGEBYRANK', key, 0, -(maxSize + 1))
+                    written = written + 1
+                end
+            end
+            return written
+            """, Long.class);
+
+    @Value("${timeline.max-size:500}")
+    private int maxSize;
+
+    @Value("${timeline.fanout-threshold:5000}")
+    private int fanoutThreshold;
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final FriendshipRepository friendshipRepository;
+    private final GroupMemberRepository groupMemberRepository;
+    private final PostRepository postRepository;
+
+    public TimelineService(StringRedisTemplate stringRedisTemplate,
+                           FriendshipRepository friendshipRepository,
+                           GroupMemberRepository groupMemberRepository,
+                           PostRepository postRepository) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.friendshipRepository = friendshipRepository;
+        this.groupMemberRepository = groupMemberRepository;
+        this.postRepository = postRepository;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * Fan-out chạy sau khi transaction tạo bài viết commit: không giữ transaction trong lúc gọi Redis
+     * và không ghi vào timeline một bài viết có thể bị rollback.
+     */
+    public void fanOutPost(Post post) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    fanOutCommittedPost(post);
+                }
+            });
+        } else {
+            fanOutCommittedPost(post);
+        }
+    }
+
+    private void fanOutCommittedPost(Post post) {
+        try {
+            Integer ownerId = post.getOwner().getId();
+            String member = String.valueOf(post.getId());
+            double score = post.getCreatedAt().toEpochMilli();
+
+            Set<Integer> audience = new HashSet<>();
+            audience.add(ownerId);
+
+            if (!"only_me".equals(post.getPrivacySetting())) {
+                List<Integer> friendIds = friendshipRepository.findBidirectionalFriendIdsByUserIdAndStatus(ownerId, "accepted");
+                if (friendIds.size() > fanoutThreshold) {
+                    stringRedisTemplate.opsForSet().add(FANOUT_READ_USERS_KEY, String.valueOf(ownerId));
+                    addCapped(AUTHOR_KEY_PREFIX + ownerId, member, score);
+                } else {
+                    audience.addAll(friendIds);
+                }
+
+                if ("public".equals(post.getPrivacySetting())) {
+                    addCapped(PUBLIC_KEY, member, score);
+                }
+            }
+
+            if (post.getGroup() != null) {
+                Integer groupId = post.getGroup().getId();
+                List<Integer> memberIds = groupMemberRepository.findAcceptedUserIdsByGroupId(groupId);
+                if (memberIds.size() > fanoutThreshold) {
+                    stringRedisTemplate.opsForSet().add(FANOUT_READ_GROUPS_KEY, String.valueOf(groupId));
+                    addCapped(GROUP_KEY_PREFIX + groupId, member, score);
+                } else {
+                    audience.addAll(memberIds);
+                }
+            }
+
+            List<String> homeKeys = audience.stream().map(id -> HOME_KEY_PREFIX + id).toList();
+            long written = 0;
+            for (int i = 0; i < homeKeys.size(); i += FANOUT_BATCH_SIZE) {
+                List<String> batch = homeKeys.subList(i, Math.min(i + FANOUT_BATCH_SIZE, homeKeys.size()));
+                Long result = stringRedisTemplate.execute(FANOUT_SCRIPT, batch,
+                        member, String.valueOf((long) score), String.valueOf(maxSize));
+                written += result != null ? result : 0;
+            }
+            logger.debug("Fan-out bài viết {} tới {} timeline (audience={})", post.getId(), written, audience.size());
+        } catch (RuntimeException e) {
+            // Timeline chỉ là bản sao phục vụ đọc nhanh; bài viết đã commit, lỗi fan-out chỉ được ghi log
+            logger.warn("Không thể fan-out bài viết {} vào timeline: {}", post.getId(), e.getMessage());
+        }
+    }
+
+    /**
+     * Trả về tối đa {@code limit} postId mới nhất của newsfeed, đã gộp timeline cá nhân,
+     * bài public và các nguồn fan-out-on-read mà user theo dõi.
+     */
+    public List<Integer> readTimeline(Integer userId, int limit) {
+        String homeKey = HOME_KEY_PREFIX + userId;
+        if (!Boolean.TRUE.equals(stringRedisTemplate.hasKey(homeKey))) {
+            rebuildHomeTimeline(userId);
+        }
+
+        List<String> keys = new ArrayList<>();
+        keys.add(homeKey);
+        keys.add(PUBLIC_KEY);
+
+        Set<String> fanoutReadUsers = stringRedisTemplate.opsForSet().members(FANOUT_READ_USERS_KEY);
+        if (fanoutReadUsers != null && !fanoutReadUsers.isEmpty()) {
+            friendshipRepository.findBidirectionalFriendIdsByUserIdAndStatus(userId, "accepted").stream()
+                    .map(String::valueOf)
+                    .filter(fanoutReadUsers::contains)
+                    .forEach(id -> keys.add(AUTHOR_KEY_PREFIX + id));
+        }
+
+        Set<String> fanoutReadGroups = stringRedisTemplate.opsForSet().members(FANOUT_READ_GROUPS_KEY);
+        if (fanoutReadGroups != null && !fanoutReadGroups.isEmpty()) {
+            groupMemberRepository.findAcceptedGroupIdsByUserId(userId).stream()
+                    .map(String::valueOf)
+                    .filter(fanoutReadGroups::contains)
+                    .forEach(id -> keys.add(GROUP_KEY_PREFIX + id));
+        }
+
+        List<Object> results = stringRedisTemplate.executePipelined(new SessionCallback<Object>() {
+            @Override
+            @SuppressWarnings("unchecked")
+            public <K, V> Object execute(RedisOperations<K, V> operations) {
+                RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                for (String key : keys) {
+                    ops.opsForZSet().reverseRangeWithScores(key, 0, limit - 1);
+                }
+                return null;
+            }
+        });
+
+        // Gộp các nguồn, loại trùng, sắp xếp theo (score, postId) giảm dần
+        Map<Integer, Double> merged = new HashMap<>();
+        for (Object result : results) {
+            if (!(result instanceof Set<?> tuples)) continue;
+            for (Object t : tuples) {
+                if (t instanceof ZSetOperations.TypedTuple<?> tuple && tuple.getValue() != null && tuple.getScore() != null
+                        && !EMPTY_MARKER.equals(tuple.getValue().toString())) {
+                    merged.merge(Integer.valueOf(tuple.getValue().toString()), tuple.getScore(), Math::max);
+                }
+            }
+        }
+
+        return merged.entrySet().stream()
+                .sorted(Map.Entry.<Integer, Double>comparingByValue().reversed()
+                        .thenComparing(Map.Entry.<Integer, Double>comparingByKey().reversed()))
+                .limit(limit)
+                .map(Map.Entry::getKey)
+                .toList();
+    }
+
+    private void rebuildHomeTimeline(Integer userId) {
+        List<Post> posts = postRepository.findLatestNewsfeedPosts(userId, maxSize);
+
+        Set<ZSetOperations.TypedTuple<String>> tuples = new HashSet<>();
+        for (Post post : posts) {
+            tuples.add(new DefaultTypedTuple<>(String.valueOf(post.getId()), (double) post.getCreatedAt().toEpochMilli()));
+        }
+        if (tuples.isEmpty()) {
+            tuples.add(new DefaultTypedTuple<>(EMPTY_MARKER, 0d));
+        }
+        String key = HOME_KEY_PREFIX + userId;
+        stringRedisTemplate.opsForZSet().add(key, tuples);
+        stringRedisTemplate.expire(key, HOME_TTL);
+        logger.info("Dựng lại timeline cho user {}: {} bài viết", userId, posts.size());
+    }
+
+    private void addCapped(String key, String member, double score) {
+        stringRedisTemplate.opsForZSet().add(key, member, score);
+        stringRedisTemplate.opsForZSet().removeRange(key, 0, -(maxSize + 1));
+    }
+}
@@ -0,0 +1,290 @@
+package com.example.social_media.service;
+
+import com.example.social_media.repository.message.MessageStatusRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Bộ đếm tin nhắn chưa đọc trong Redis: HASH "unread:{userId}" (chatId -> số tin chưa đọc).
+ * Gửi tin cộng 1 cho người nhận sau khi commit và đẩy số chat chưa đọc tới /topic/unread-count/{userId}
+ * mà không cần truy vấn SQL; xác nhận đã đọc được ReadReceiptCoalescer gom lại rồi đếm lại một lần mỗi lượt flush.
+ * Chỉ những đường dễ gây lệch mới đánh dấu người dùng vào "unread:dirty": cộng thất bại, ghi đè sau khi đếm lại
+ * (có thể chạy chen với lệnh cộng của tin đã commit nhưng chưa cộng), thay đổi thành viên và xóa tin.
+ * Tác vụ định kỳ đếm lại những người dùng này từ tblMessageStatus và ghi đè HASH, nên sai lệch chỉ tồn tại
+ * tối đa một chu kỳ đối soát mà không phải đếm lại mọi người nhận của mọi tin.
+ */
+@Service
+public class UnreadCounterService {
+
+    private static final Logger logger = LoggerFactory.getLogger(UnreadCounterService.class);
+
+    private static final String KEY_PREFIX = "unread:";
+    private static final String DIRTY_KEY = "unread:dirty";
+    // Field đánh dấu HASH đã được nạp, để người dùng không có tin chưa đọc vẫn có key trong Redis
+    private static final String LOADED_FIELD = "_";
+    private static final Duration COUNTER_TTL = Duration.ofDays(1);
+    private static final int RECONCILE_BATCH_SIZE = 500;
+
+    // Đếm số chat có tin chưa đọc trong HASH, -1 nếu HASH chưa được nạp
+    private static final String COUNT_UNREAD_CHATS = """
+            local function unreadChats(key)
+                local values = redis.call('HGETALL', key)
+                local total = 0
+                for j = 1, #values, 2 do
+                    if values[j] ~= '_' and tonumber(values[j + 1]) > 0 then
+                        total = total + 1
+                    end
+                end
+                return total
+            end
+            """;
+
+    // KEYS[i] = HASH người nhận; ARGV[1] = chatId
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> INCREMENT_SCRIPT = new DefaultRedisScript<>(COUNT_UNREAD_CHATS + """
+            local result = {}
+            for i = 1, #KEYS do
+                if redis.call('EXISTS', KEYS[i]) == 1 then
+                    redis.call('HINCRBY', KEYS[i], ARGV[1], 1)
+                    result[i] = unreadChats(KEYS[i])
+                else
+                    result[i] = -1
+                end
+            end
+            return result
+            """, List.class);
+
+    // ARGV[1] = TTL (giây), ARGV[2] = '1' để ghi đè, ARGV[i + 2] = "chatId:count,..." cho KEYS[i]
+    private static final DefaultRedisScript<Long> LOAD_SCRIPT = new DefaultRedisScript<>("""
+            local ttl = tonumber(ARGV[1])
+            local overwrite = ARGV[2] == '1'
+            for i, key in ipairs(KEYS) do
+                if overwrite or redis.call('EXISTS', key) == 0 then
+                    redis.call('DEL', key)
+                    redis.call('HSET', key, '_', 0)
+                    for chatId, count in string.gmatch(ARGV[i + 2], '(%d+):(%d+)') do
+                        redis.call('HSET', key, chatId, count)
+                    end
+                    redis.call('EXPIRE', key, ttl)
+                end
+            end
+            return 1
+            """, Long.class);
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final MessageStatusRepository messageStatusRepository;
+    private final SimpMessagingTemplate messagingTemplate;
+
+    public UnreadCounterService(StringRedisTemplate stringRedisTemplate,
+                                MessageStatusRepository messageStatusRepository,
+                                SimpMessagingTemplate messagingTemplate) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.messageStatusRepository = messageStatusRepository;
+        this.messagingTemplate = messagingTemplate;
+    }
+
+    /**
+     * Tin nhắn mới trong chat: cộng 1 cho từng người nhận (những người sp_SendMessage tạo dòng 'unread')
+     * và đẩy số chat chưa đọc mới cho họ. Thực hiện sau khi transaction hiện tại commit.
+     */
+    public void recordMessage(Integer chatId, Collection<Integer> recipientIds) {
+        List<Integer> userIds = recipientIds.stream().filter(Objects::nonNull).distinct().toList();
+        if (userIds.isEmpty()) return;
+
+        runAfterCommit(() -> {
+            List<String> keys = userIds.stream().map(this::counterKey).toList();
+
+            List<?> unreadChats;
+            try {
+                unreadChats = stringRedisTemplate.execute(INCREMENT_SCRIPT, keys, String.valueOf(chatId));
+            } catch (DataAccessException e) {
+                // Xóa HASH để lần đọc sau nạp lại từ DB thay vì dùng số đếm đã lệch; lệnh có thể đã chạy một phần
+                logger.warn("Không cập nhật được bộ đếm chưa đọc của chat {}: {}", chatId, e.getMessage());
+                userIds.forEach(userId -> evictQuietly(counterKey(userId)));
+                addDirty(userIds);
+                unreadChats = null;
+            }
+
+            for (int i = 0; i < userIds.size(); i++) {
+                long count = unreadChats != null ? ((Number) unreadChats.get(i)).longValue() : -1;
+                pushUnreadChatCount(userIds.get(i), count >= 0 ? (int) count : getUnreadChatCount(userIds.get(i)));
+            }
+        });
+    }
+
+    /**
+     * Đếm lại từ tblMessageStatus bộ đếm của những người dùng vừa có tin được đánh dấu đã đọc, ghi đè HASH
+     * và đẩy số chat chưa đọc mới, mỗi người dùng một sự kiện. Một truy vấn GROUP BY cho cả lượt.
+     * Tin commit trước lúc đếm nhưng chưa được cộng sẽ bị cộng thêm lần nữa, nên những người dùng này được đối soát lại.
+     */
+    public void refreshCounts(Collection<Integer> userIds) {
+        if (userIds.isEmpty()) return;
+        Map<Integer, Map<Integer, Long>> counts = countFromDatabase(userIds);
+        writeToRedis(userIds, counts, true);
+        addDirty(userIds);
+        for (Integer userId : userIds) {
+            pushUnreadChatCount(userId, (int) counts.getOrDefault(userId, Map.of()).values().stream()
+                    .filter(count -> count > 0)
+                    .count());
+        }
+    }
+
+    /**
+     * Dữ liệu tin nhắn bị thay đổi ngoài luồng gửi / đọc (ví dụ xóa tin, thành viên được kích hoạt lại):
+     * đánh dấu để lần đối soát sau đếm lại.
+     */
+    public void markForReconcile(Collection<Integer> userIds) {
+        if (userIds.isEmpty()) return;
+        runAfterCommit(() -> addDirty(userIds));
+    }
+
+    // Số tin chưa đọc của người dùng trong một chat
+    public int getUnreadCount(Integer userId, Integer chatId) {
+        return getCounts(userId).getOrDefault(chatId, 0L).intValue();
+    }
+
+    // Số chat có tin chưa đọc của người dùng (badge tin nhắn)
+    public int getUnreadChatCount(Integer userId) {
+        return (int) getCounts(userId).values().stream().filter(count -> count > 0).count();
+    }
+
+    /**
+     * Số tin chưa đọc theo chatId. Đọc HGETALL; người dùng chưa có trong Redis được đếm từ tblMessageStatus rồi nạp vào.
+     */
+    public Map<Integer, Long> getCounts(Integer userId) {
+        try {
+            Map<Object, Object> fields = stringRedisTemplate.opsForHash().entries(counterKey(userId));
+            if (!fields.isEmpty()) {
+                return parseHash(fields);
+            }
+        } catch (DataAccessException e) {
+            logger.warn("Không đọc được bộ đếm chưa đọc từ Redis, đọc từ DB: {}", e.getMessage());
+            return countFromDatabase(List.of(userId)).getOrDefault(userId, Map.of());
+        }
+
+        Map<Integer, Map<Integer, Long>> loaded = countFromDatabase(List.of(userId));
+        writeToRedis(List.of(userId), loaded, false);
+        return loaded.getOrDefault(userId, Map.of());
+    }
+
+    /**
+     * Đếm lại bộ đếm của những người dùng bị đánh dấu từ tblMessageStatus và ghi đè HASH trong Redis.
+     * SPOP đảm bảo mỗi người dùng chỉ được một instance xử lý.
+     */
+    @Scheduled(fixedDelayString = "${unread.counter.reconcile-interval-ms:60000}")
+    public void reconcileDirtyCounters() {
+        List<String> members;
+        try {
+            members = stringRedisTemplate.opsForSet().pop(DIRTY_KEY, RECONCILE_BATCH_SIZE);
+        } catch (DataAccessException e) {
+            logger.warn("Không đọc được danh sách bộ đếm chưa đọc cần đối soát: {}", e.getMessage());
+            return;
+        }
+        if (members == null || members.isEmpty()) return;
+
+        try {
+            Set<Integer> userIds = members.stream().map(Integer::valueOf).collect(Collectors.toSet());
+            writeToRedis(userIds, countFromDatabase(userIds), true);
+            logger.debug("Đã đối soát {} bộ đếm chưa đọc", userIds.size());
+        } catch (Exception e) {
+            logger.error("Lỗi khi đối soát bộ đếm chưa đọc, sẽ thử lại ở chu kỳ sau: {}", e.getMessage());
+            try {
+                stringRedisTemplate.opsForSet().add(DIRTY_KEY, members.toArray(new String[0]));
+            } catch (DataAccessException redisError) {
+                logger.warn("Không đánh dấu lại được bộ đếm chưa đọc: {}", redisError.getMessage());
+            }
+        }
+    }
+
+    private Map<Integer, Map<Integer, Long>> countFromDatabase(Collection<Integer> userIds) {
+        Map<Integer, Map<Integer, Long>> result = new HashMap<>();
+        for (Object[] row : messageStatusRepository.countUnreadGroupedByUserIdAndChatId(userIds)) {
+            result.computeIfAbsent((Integer) row[0], k -> new HashMap<>())
+                    .put((Integer) row[1], ((Number) row[2]).longValue());
+        }
+        return result;
+    }
+
+    private void writeToRedis(Collection<Integer> userIds, Map<Integer, Map<Integer, Long>> counts, boolean overwrite) {
+        List<String> keys = new ArrayList<>(userIds.size());
+        List<String> args = new ArrayList<>(userIds.size() + 2);
+        args.add(String.valueOf(COUNTER_TTL.toSeconds()));
+        args.add(overwrite ? "1" : "0");
+        for (Integer userId : userIds) {
+            keys.add(counterKey(userId));
+            args.add(counts.getOrDefault(userId, Map.of()).entrySet().stream()
+                    .map(entry -> entry.getKey() + ":" + entry.getValue())
+                    .collect(Collectors.joining(",")));
+        }
+        try {
+            stringRedisTemplate.execute(LOAD_SCRIPT, keys, args.toArray());
+        } catch (DataAccessException e) {
+            logger.warn("Không ghi được bộ đếm chưa đọc vào Redis: {}", e.getMessage());
+            if (overwrite) {
+                keys.forEach(this::evictQuietly);
+            }
+        }
+    }
+
+    private void addDirty(Collection<Integer> userIds) {
+        try {
+            stringRedisTemplate.opsForSet().add(DIRTY_KEY, userIds.stream().map(String::valueOf).toArray(String[]::new));
+        } catch (DataAccessException e) {
+            logger.warn("Không đánh dấu được bộ đếm chưa đọc cần đối soát: {}", e.getMessage());
+            userIds.forEach(userId -> evictQuietly(counterKey(userId)));
+        }
+    }
+
+    private void pushUnreadChatCount(Integer userId, int unreadChats) {
+        messagingTemplate.convertAndSend("/topic/unread-count/" + userId, Map.of("unreadCount", unreadChats));
+    }
+
+    private Map<Integer, Long> parseHash(Map<?, ?> fields) {
+        Map<Integer, Long> counts = new HashMap<>();
+        fields.forEach((field, value) -> {
+            if (LOADED_FIELD.equals(field)) return;
+            long count = Long.parseLong(value.toString());
+            if (count > 0) {
+                counts.put(Integer.valueOf(field.toString()), count);
+            }
+        });
+        return counts;
+    }
+
+    private void evictQuietly(String key) {
+        try {
+            stringRedisTemplate.delete(key);
+        } catch (DataAccessException e) {
+            logger.warn("Không xóa được bộ đếm chưa đọc {}: {}", key, e.getMessage());
+        }
+    }
+
+    private void runAfterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private String counterKey(Integer userId) {
+        return KEY_PREFIX + userId;
+    }
+}
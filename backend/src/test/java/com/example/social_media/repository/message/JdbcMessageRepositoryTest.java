@@ -0,0 +1,79 @@
+package com.example.social_media.repository.message;
+
+import com.example.social_media.repository.message.JdbcMessageRepository.NewMessage;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JdbcMessageRepositoryTest {
+
+    // Ghi lại câu lệnh và tham số thay vì gọi DB
+    private static class RecordingJdbcTemplate extends JdbcTemplate {
+        private String sql;
+        private Object[] args;
+
+        @Override
+        public void query(String sql, RowCallbackHandler rch, Object... args) {
+            this.sql = sql;
+            this.args = args;
+        }
+    }
+
+    private final RecordingJdbcTemplate jdbcTemplate = new RecordingJdbcTemplate();
+    private final JdbcMessageRepository repository = new JdbcMessageRepository(jdbcTemplate);
+
+    @Test
+    void batchRowsAreBoundInListOrder() {
+        List<NewMessage> batch = messages(3);
+
+        repository.insertBatch(batch);
+
+        assertEquals(batch.size() * 5, jdbcTemplate.args.length);
+        for (int i = 0; i < batch.size(); i++) {
+            NewMessage message = batch.get(i);
+            assertEquals(message.ingestId(), jdbcTemplate.args[i * 5]);
+            assertEquals(message.chatId(), jdbcTemplate.args[i * 5 + 1]);
+            assertEquals(message.senderId(), jdbcTemplate.args[i * 5 + 2]);
+            assertEquals(message.content(), jdbcTemplate.args[i * 5 + 3]);
+            assertEquals(Timestamp.from(message.createdAt()), jdbcTemplate.args[i * 5 + 4]);
+        }
+    }
+
+    @Test
+    void maxBatchStaysUnderSqlServerParameterLimit() {
+        repository.insertBatch(messages(JdbcMessageRepository.MAX_INSERT_BATCH_SIZE));
+
+        assertTrue(jdbcTemplate.args.length < 2100);
+        assertEquals(JdbcMessageRepository.MAX_INSERT_BATCH_SIZE * 5, jdbcTemplate.args.length);
+    }
+
+    @Test
+    void oversizedBatchIsRejectedBeforeReachingTheDatabase() {
+        List<NewMessage> batch = messages(JdbcMessageRepository.MAX_INSERT_BATCH_SIZE + 1);
+
+        assertThrows(IllegalArgumentException.class, () -> repository.insertBatch(batch));
+        assertNull(jdbcTemplate.sql);
+    }
+
+    @Test
+    void emptyBatchDoesNotQuery() {
+        assertTrue(repository.insertBatch(List.of()).isEmpty());
+        assertNull(jdbcTemplate.sql);
+    }
+
+    private static List<NewMessage> messages(int count) {
+        List<NewMessage> messages = new ArrayList<>(count);
+        Instant createdAt = Instant.parse("2024-05-01T00:00:00Z");
+        for (int i = 0; i < count; i++) {
+            messages.add(new NewMessage("1714521600000-" + i, 1 + i % 3, 10 + i % 5, "tin " + i, createdAt.plusMillis(i)));
+        }
+        return messages;
+    }
+}
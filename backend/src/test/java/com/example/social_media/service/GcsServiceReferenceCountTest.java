@@ -0,0 +1,164 @@
+package com.example.social_media.service;
+
+import com.example.social_media.repository.JdbcMediaBlobRepository;
+import com.google.api.gax.paging.Page;
+import com.google.cloud.storage.Blob;
+import com.google.cloud.storage.BlobId;
+import com.google.cloud.storage.BlobInfo;
+import com.google.cloud.storage.Storage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Đếm tham chiếu của media lưu theo nội dung: object trên GCS chỉ bị xóa khi tham chiếu cuối cùng được trả lại,
+ * kể cả khi một upload cùng nội dung chen vào giữa lúc đếm về 0 và lúc xóa.
+ */
+class GcsServiceReferenceCountTest {
+
+    private static final String BUCKET = "test-bucket";
+    private static final long GENERATION = 7L;
+
+    // tblMediaBlob trong bộ nhớ, cùng ngữ nghĩa với các câu lệnh SQL của repository thật
+    private static class InMemoryMediaBlobRepository extends JdbcMediaBlobRepository {
+        private final Map<String, String> urlByDigest = new HashMap<>();
+        private final Map<String, Integer> refCountByUrl = new HashMap<>();
+
+        InMemoryMediaBlobRepository() {
+            super(null);
+        }
+
+        @Override
+        public Optional<String> acquire(String digest) {
+            String url = urlByDigest.get(digest);
+            if (url != null) {
+                refCountByUrl.merge(url, 1, Integer::sum);
+            }
+            return Optional.ofNullable(url);
+        }
+
+        @Override
+        public boolean insert(String digest, String mediaUrl, long size) {
+            if (urlByDigest.putIfAbsent(digest, mediaUrl) != null) return false;
+            refCountByUrl.put(mediaUrl, 1);
+            return true;
+        }
+
+        @Override
+        public Optional<Integer> release(String mediaUrl) {
+            Integer count = refCountByUrl.get(mediaUrl);
+            if (count == null || count == 0) return Optional.empty();
+            refCountByUrl.put(mediaUrl, count - 1);
+            return Optional.of(count - 1);
+        }
+
+        @Override
+        public boolean deleteIfUnreferenced(String mediaUrl) {
+            if (refCountByUrl.getOrDefault(mediaUrl, -1) != 0) return false;
+            refCountByUrl.remove(mediaUrl);
+            urlByDigest.values().remove(mediaUrl);
+            return true;
+        }
+
+        int refCount(String mediaUrl) {
+            return refCountByUrl.getOrDefault(mediaUrl, 0);
+        }
+    }
+
+    private final Storage storage = mock(Storage.class);
+    private final InMemoryMediaBlobRepository blobRepository = new InMemoryMediaBlobRepository();
+    private final Blob derivative = mock(Blob.class);
+    private GcsService gcsService;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        gcsService = new GcsService(storage, blobRepository);
+        ReflectionTestUtils.setField(gcsService, "bucketName", BUCKET);
+        ReflectionTestUtils.setField(gcsService, "resumableThreshold", DataSize.ofMegabytes(8));
+        ReflectionTestUtils.setField(gcsService, "bufferSize", DataSize.ofKilobytes(256));
+        ReflectionTestUtils.setField(gcsService, "chunkSize", DataSize.ofMegabytes(2));
+
+        // Object tạo ra trả về đúng CRC32C đã gửi
+        when(storage.create(any(BlobInfo.class), any(byte[].class), any(Storage.BlobTargetOption[].class)))
+                .thenAnswer(invocation -> {
+                    BlobInfo info = invocation.getArgument(0);
+                    Blob blob = mock(Blob.class);
+                    when(blob.getCrc32c()).thenReturn(info.getCrc32c());
+                    return blob;
+                });
+        Blob stored = mock(Blob.class);
+        when(stored.getGeneration()).thenReturn(GENERATION);
+        when(storage.get(any(BlobId.class), any(Storage.BlobGetOption[].class))).thenReturn(stored);
+        Page<Blob> derivatives = mock(Page.class);
+        when(derivatives.iterateAll()).thenReturn(List.of(derivative));
+        when(storage.list(anyString(), any(Storage.BlobListOption[].class))).thenReturn(derivatives);
+    }
+
+    @Test
+    void sameContentIsStoredOnceAndCounted() throws Exception {
+        String first = gcsService.uploadFile(file("a.jpg", "same bytes"));
+        String second = gcsService.uploadFile(file("b.jpg", "same bytes"));
+
+        assertEquals(first, second);
+        assertEquals(2, blobRepository.refCount(first));
+        verify(storage, times(1)).create(any(BlobInfo.class), any(byte[].class), any(Storage.BlobTargetOption[].class));
+    }
+
+    @Test
+    void sharedObjectSurvivesUntilLastReferenceIsReleased() throws Exception {
+        String url = gcsService.uploadFile(file("a.jpg", "shared"));
+        gcsService.uploadFile(file("b.jpg", "shared"));
+
+        gcsService.releaseFile(url);
+        verify(storage, never()).delete(any(BlobId.class), any(Storage.BlobSourceOption[].class));
+        verify(derivative, never()).delete(any(Blob.BlobSourceOption[].class));
+        assertEquals(1, blobRepository.refCount(url));
+
+        gcsService.releaseFile(url);
+        BlobId blobId = BlobId.of(BUCKET, url.substring(("https://storage.googleapis.com/" + BUCKET + "/").length()));
+        verify(storage).delete(eq(blobId), any(Storage.BlobSourceOption[].class));
+        verify(derivative).delete(any(Blob.BlobSourceOption[].class));
+    }
+
+    @Test
+    void uploadDuringDeletionKeepsTheObject() throws Exception {
+        String url = gcsService.uploadFile(file("a.jpg", "racing"));
+        // Upload cùng nội dung chen vào sau khi đếm về 0, trước khi xóa khỏi chỉ mục
+        when(storage.get(any(BlobId.class), any(Storage.BlobGetOption[].class))).thenAnswer(invocation -> {
+            assertEquals(url, gcsService.uploadFile(file("b.jpg", "racing")));
+            Blob stored = mock(Blob.class);
+            when(stored.getGeneration()).thenReturn(GENERATION);
+            return stored;
+        });
+
+        gcsService.releaseFile(url);
+
+        assertEquals(1, blobRepository.refCount(url));
+        verify(storage, never()).delete(any(BlobId.class), any(Storage.BlobSourceOption[].class));
+        verify(derivative, never()).delete(any(Blob.BlobSourceOption[].class));
+    }
+
+    @Test
+    void urlOutsideTheIndexIsNeverDeleted() {
+        gcsService.releaseFile("https://storage.googleapis.com/" + BUCKET + "/legacy_a.jpg");
+
+        verify(storage, never()).get(any(BlobId.class), any(Storage.BlobGetOption[].class));
+        verify(storage, never()).delete(any(BlobId.class), any(Storage.BlobSourceOption[].class));
+    }
+
+    private static MockMultipartFile file(String name, String content) {
+        return new MockMultipartFile("file", name, "image/jpeg", content.getBytes(StandardCharsets.UTF_8));
+    }
+}
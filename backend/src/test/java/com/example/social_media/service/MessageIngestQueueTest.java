@@ -0,0 +1,75 @@
+package com.example.social_media.service;
+
+import com.example.social_media.repository.message.JdbcMessageRepository;
+import com.example.social_media.repository.message.JdbcMessageRepository.NewMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.connection.stream.*;
+import org.springframework.data.redis.core.StreamOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class MessageIngestQueueTest {
+
+    private static final long CREATED_AT = 1714521600000L;
+
+    private final StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+    @SuppressWarnings("unchecked")
+    private final StreamOperations<String, Object, Object> streamOps = mock(StreamOperations.class);
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        when(redisTemplate.opsForStream()).thenReturn(streamOps);
+        when(streamOps.read(any(Consumer.class), any(StreamReadOptions.class), any(StreamOffset.class)))
+                .thenReturn(List.of(MapRecord.create(MessageIngestQueue.STREAM_KEY, Map.<Object, Object>of(
+                                "chatId", "7",
+                                "senderId", "3",
+                                "content", "xin chào",
+                                "createdAt", String.valueOf(CREATED_AT)))
+                        .withId(RecordId.of(CREATED_AT + "-0"))));
+    }
+
+    @Test
+    void batchSizeAboveParameterLimitCapsTheStreamRead() {
+        List<NewMessage> batch = queue(1000).readBatch();
+
+        assertEquals(Long.valueOf(JdbcMessageRepository.MAX_INSERT_BATCH_SIZE), requestedCount());
+        assertEquals(List.of(new NewMessage(CREATED_AT + "-0", 7, 3, "xin chào", Instant.ofEpochMilli(CREATED_AT))), batch);
+    }
+
+    @Test
+    void batchSizeWithinLimitIsRequestedAsIs() {
+        queue(200).readBatch();
+
+        assertEquals(Long.valueOf(200), requestedCount());
+    }
+
+    @Test
+    void nonPositiveBatchSizeFailsAtStartup() {
+        assertThrows(IllegalArgumentException.class, () -> queue(0));
+    }
+
+    // COUNT của XREADGROUP là số tin tối đa một lô ghi nhận được
+    @SuppressWarnings("unchecked")
+    private Long requestedCount() {
+        ArgumentCaptor<StreamReadOptions> options = ArgumentCaptor.forClass(StreamReadOptions.class);
+        verify(streamOps).read(any(Consumer.class), options.capture(), any(StreamOffset.class));
+        return options.getValue().getCount();
+    }
+
+    private MessageIngestQueue queue(int batchSize) {
+        return new MessageIngestQueue(redisTemplate, batchSize, Duration.ofMillis(5),
+                Duration.ofSeconds(30), Duration.ofSeconds(15));
+    }
+}
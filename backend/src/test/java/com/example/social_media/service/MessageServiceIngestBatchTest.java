@@ -0,0 +1,105 @@
+package com.example.social_media.service;
+
+import com.example.social_media.dto.message.MessageDto;
+import com.example.social_media.repository.ChatMemberRepository;
+import com.example.social_media.repository.ChatRepository;
+import com.example.social_media.repository.UserRepository;
+import com.example.social_media.repository.message.JdbcChatSummaryRepository;
+import com.example.social_media.repository.message.JdbcMessageRepository;
+import com.example.social_media.repository.message.JdbcMessageRepository.NewMessage;
+import com.example.social_media.repository.message.MessageRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Ghi lô tin nhắn: tin vắng mặt trong kết quả INSERT được phân loại qua findIdsByIngestIds thành tin đã ghi ở lần trước
+ * (bỏ qua, không broadcast lại) và tin bị từ chối (báo người gửi qua /topic/message-failed).
+ */
+class MessageServiceIngestBatchTest {
+
+    private static final int CHAT_ID = 5;
+    private static final int SAVED_SENDER = 11;
+    private static final int REPLAYED_SENDER = 12;
+    private static final int REJECTED_SENDER = 13;
+
+    private final JdbcMessageRepository jdbcMessageRepository = mock(JdbcMessageRepository.class);
+    private final SimpMessagingTemplate messagingTemplate = mock(SimpMessagingTemplate.class);
+    private final MessageQueueService messageQueueService = mock(MessageQueueService.class);
+    private MessageService messageService;
+
+    private final NewMessage saved = message("1714521600000-0", SAVED_SENDER, "đã ghi");
+    private final NewMessage replayed = message("1714521600000-1", REPLAYED_SENDER, "ghi ở lần trước");
+    private final NewMessage rejected = message("1714521600000-2", REJECTED_SENDER, "bị từ chối");
+
+    @BeforeEach
+    void setUp() {
+        messageService = new MessageService(mock(MessageRepository.class), mock(ChatRepository.class),
+                mock(UserRepository.class), messagingTemplate, mock(ChatService.class), mock(ChatMemberRepository.class),
+                messageQueueService, mock(MediaService.class), mock(MediaUploadExecutor.class), jdbcMessageRepository,
+                mock(UnreadCounterService.class), mock(JdbcChatSummaryRepository.class), mock(ReadReceiptCoalescer.class),
+                mock(MessageIngestQueue.class), mock(PlatformTransactionManager.class), mock(ChunkedUploadService.class));
+    }
+
+    @Test
+    void missingMessagesAreSplitIntoReplaysAndRejections() {
+        when(jdbcMessageRepository.insertBatch(anyList())).thenReturn(Map.of(saved.ingestId(), 100));
+        when(jdbcMessageRepository.findIdsByIngestIds(anyList())).thenReturn(Map.of(replayed.ingestId(), 99));
+
+        messageService.ingestBatch(List.of(saved, replayed, rejected));
+
+        // Chỉ tra cứu những tin không có trong kết quả INSERT
+        verify(jdbcMessageRepository).findIdsByIngestIds(List.of(replayed.ingestId(), rejected.ingestId()));
+
+        ArgumentCaptor<Object> payload = ArgumentCaptor.forClass(Object.class);
+        verify(messagingTemplate).convertAndSend(eq("/topic/message-failed/" + REJECTED_SENDER), payload.capture());
+        Map<?, ?> failure = (Map<?, ?>) payload.getValue();
+        assertEquals(CHAT_ID, failure.get("chatId"));
+        assertEquals(rejected.content(), failure.get("content"));
+        assertEquals("rejected", failure.get("reason"));
+        verify(messagingTemplate, never()).convertAndSend(eq("/topic/message-failed/" + REPLAYED_SENDER), any(Object.class));
+        verify(messagingTemplate, never()).convertAndSend(eq("/topic/message-failed/" + SAVED_SENDER), any(Object.class));
+
+        // Tin ghi ở lần trước đã được broadcast khi đó, chỉ tin vừa ghi được gửi đi
+        ArgumentCaptor<MessageDto> delivered = ArgumentCaptor.forClass(MessageDto.class);
+        verify(messageQueueService).queueAndSendMessage(delivered.capture());
+        assertEquals(100, delivered.getValue().getId());
+    }
+
+    @Test
+    void fullyInsertedBatchSkipsTheLookup() {
+        when(jdbcMessageRepository.insertBatch(anyList())).thenReturn(Map.of(saved.ingestId(), 100, replayed.ingestId(), 101));
+
+        messageService.ingestBatch(List.of(saved, replayed));
+
+        verify(jdbcMessageRepository, never()).findIdsByIngestIds(anyList());
+        verify(messagingTemplate, never()).convertAndSend(startsWith("/topic/message-failed/"), any(Object.class));
+        verify(messageQueueService, times(2)).queueAndSendMessage(any(MessageDto.class));
+    }
+
+    @Test
+    void fullyRejectedBatchOnlyNotifiesSenders() {
+        when(jdbcMessageRepository.insertBatch(anyList())).thenReturn(Map.of());
+        when(jdbcMessageRepository.findIdsByIngestIds(anyList())).thenReturn(Map.of());
+
+        messageService.ingestBatch(List.of(rejected));
+
+        verify(messagingTemplate).convertAndSend(eq("/topic/message-failed/" + REJECTED_SENDER), any(Object.class));
+        verify(jdbcMessageRepository, never()).insertUnreadStatuses(anyMap());
+        verify(messageQueueService, never()).queueAndSendMessage(any(MessageDto.class));
+    }
+
+    private static NewMessage message(String ingestId, int senderId, String content) {
+        return new NewMessage(ingestId, CHAT_ID, senderId, content, Instant.parse("2024-05-01T00:00:00Z"));
+    }
+}
@@ -0,0 +1,199 @@
+package com.example.social_media.service;
+
+import com.example.social_media.entity.Post;
+import com.example.social_media.entity.User;
+import com.example.social_media.repository.*;
+import com.example.social_media.repository.payment.AccountUpgradeRepository;
+import com.example.social_media.repository.post.PostAIModerationRepository;
+import com.example.social_media.repository.post.PostRepository;
+import com.example.social_media.repository.post.PostShareRepository;
+import com.example.social_media.repository.post.PostTagRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Phân trang newsfeed theo con trỏ: repository giả lập lại điều kiện của các truy vấn theo ngày trên danh sách trong bộ nhớ,
+ * ghép mọi trang lại phải trùng thứ tự của {@link PostService#sortForNewsfeed}.
+ */
+class PostServiceNewsfeedPageTest {
+
+    private static final int VIEWER_ID = 1;
+    private static final int PREMIUM_OWNER = 10;
+    private static final int REGULAR_OWNER = 20;
+
+    private final List<Post> posts = new ArrayList<>();
+    // ownerId -> thời điểm hết hạn premium
+    private final Map<Integer, Instant> premiumUntil = new HashMap<>();
+    private final List<Instant[]> dayRanges = new ArrayList<>();
+
+    private PostService postService;
+
+    @BeforeEach
+    void setUp() {
+        PostRepository postRepository = mock(PostRepository.class);
+        AccountUpgradeRepository accountUpgradeRepository = mock(AccountUpgradeRepository.class);
+
+        when(postRepository.findNewsfeedPostsInDay(anyInt(), any(), any(), any(), anyInt(), any(), anyInt(), anyInt()))
+                .thenAnswer(invocation -> {
+                    Instant dayStart = invocation.getArgument(1);
+                    Instant dayEnd = invocation.getArgument(2);
+                    Instant asOf = invocation.getArgument(3);
+                    int beforePremium = invocation.getArgument(4);
+                    Instant beforeCreatedAt = invocation.getArgument(5);
+                    int beforeId = invocation.getArgument(6);
+                    int limit = invocation.getArgument(7);
+                    dayRanges.add(new Instant[]{dayStart, dayEnd});
+                    Comparator<Post> order = Comparator.<Post>comparingInt(p -> premium(p, asOf)).reversed()
+                            .thenComparing(Post::getCreatedAt, Comparator.reverseOrder())
+                            .thenComparing(Post::getId, Comparator.reverseOrder());
+                    return posts.stream()
+                            .filter(p -> !p.getCreatedAt().isBefore(dayStart) && p.getCreatedAt().isBefore(dayEnd))
+                            .filter(p -> premium(p, asOf) < beforePremium
+                                    || (premium(p, asOf) == beforePremium
+                                    && (p.getCreatedAt().isBefore(beforeCreatedAt)
+                                    || (p.getCreatedAt().equals(beforeCreatedAt) && p.getId() < beforeId))))
+                            .sorted(order)
+                            .limit(limit)
+                            .toList();
+                });
+        when(postRepository.findLatestNewsfeedPostBefore(anyInt(), any()))
+                .thenAnswer(invocation -> {
+                    Instant before = invocation.getArgument(1);
+                    return posts.stream()
+                            .filter(p -> p.getCreatedAt().isBefore(before))
+                            .max(Comparator.comparing(Post::getCreatedAt).thenComparing(Post::getId));
+                });
+        when(accountUpgradeRepository.isPremiumAt(anyInt(), any()))
+                .thenAnswer(invocation -> isPremium(invocation.getArgument(0), invocation.getArgument(1)));
+
+        postService = new PostService(postRepository, mock(PostTagRepository.class), mock(UserRepository.class),
+                mock(ContentPrivacyRepository.class), mock(CustomPrivacyListRepository.class), mock(PrivacyService.class),
+                mock(MediaService.class), mock(CommentRepository.class), mock(SavedPostRepository.class),
+                mock(HiddenPostRepository.class), mock(GroupRepository.class), mock(GroupMemberRepository.class),
+                mock(ReactionService.class), mock(ReferenceDataRegistry.class), mock(PostShareRepository.class),
+                mock(PostAIModerationRepository.class), mock(GeocodingService.class), mock(BlockGraphService.class),
+                accountUpgradeRepository, mock(TimelineService.class), mock(FeedCacheInvalidationService.class),
+                mock(FeedHydrationService.class));
+    }
+
+    @Test
+    void pagesAcrossDaysAndPremiumMatchFullSort() {
+        premiumUntil.put(PREMIUM_OWNER, Instant.parse("2100-01-01T00:00:00Z"));
+        // 17:30Z là 00:30 ngày hôm sau theo giờ Việt Nam: phải rơi vào ngày sau, không phải ngày UTC
+        addPost(1, REGULAR_OWNER, "2024-05-01T01:00:00Z");
+        addPost(2, PREMIUM_OWNER, "2024-05-01T02:00:00Z");
+        addPost(3, REGULAR_OWNER, "2024-05-01T16:59:00Z");
+        addPost(4, REGULAR_OWNER, "2024-05-01T17:30:00Z");
+        addPost(5, PREMIUM_OWNER, "2024-05-01T18:00:00Z");
+        addPost(6, REGULAR_OWNER, "2024-05-02T03:00:00Z");
+        addPost(7, PREMIUM_OWNER, "2024-05-02T04:00:00Z");
+        addPost(8, REGULAR_OWNER, "2024-05-04T05:00:00Z");
+        addPost(9, PREMIUM_OWNER, "2024-05-04T01:00:00Z");
+        addPost(10, REGULAR_OWNER, "2024-05-04T06:00:00Z");
+
+        Instant asOf = Instant.parse("2024-06-01T00:00:00Z");
+        for (int pageSize = 1; pageSize <= posts.size() + 1; pageSize++) {
+            assertEquals(expectedOrder(asOf), readAllPages(asOf, pageSize), "pageSize=" + pageSize);
+        }
+    }
+
+    @Test
+    void premiumExpiringBetweenPagesKeepsFrozenOrder() {
+        Instant asOf = Instant.parse("2024-06-01T00:00:00Z");
+        // Hết hạn ngay sau trang đầu: các trang sau vẫn tính premium tại asOf nên không lặp hay bỏ sót bài
+        premiumUntil.put(PREMIUM_OWNER, asOf.plusSeconds(1));
+        for (int i = 1; i <= 8; i++) {
+            addPost(i, i % 2 == 0 ? PREMIUM_OWNER : REGULAR_OWNER, "2024-05-01T0" + i + ":00:00Z");
+        }
+
+        PostService.NewsfeedSlice first = postService.readNewsfeedPage(VIEWER_ID, null, null, false, asOf, 3);
+        assertEquals(List.of(8, 6, 4), ids(first.posts()));
+        assertTrue(first.nextBeforePremium());
+
+        List<Integer> all = new ArrayList<>(ids(first.posts()));
+        PostService.NewsfeedSlice slice = first;
+        while (slice.hasMore()) {
+            slice = postService.readNewsfeedPage(VIEWER_ID, slice.nextBeforeCreatedAt(), slice.nextBeforeId(),
+                    slice.nextBeforePremium(), asOf, 3);
+            all.addAll(ids(slice.posts()));
+        }
+        assertEquals(List.of(8, 6, 4, 2, 7, 5, 3, 1), all);
+    }
+
+    @Test
+    void everyQueryIsBoundedToOneLocalDay() {
+        addPost(1, REGULAR_OWNER, "2024-05-01T01:00:00Z");
+        addPost(2, REGULAR_OWNER, "2024-05-03T20:00:00Z");
+        addPost(3, REGULAR_OWNER, "2024-05-09T10:00:00Z");
+
+        readAllPages(Instant.parse("2024-06-01T00:00:00Z"), 2);
+
+        assertFalse(dayRanges.isEmpty());
+        for (Instant[] range : dayRanges) {
+            ZonedDateTime start = range[0].atZone(PostService.NEWSFEED_ZONE);
+            assertEquals(0, start.toLocalTime().toSecondOfDay());
+            assertEquals(Duration.ofDays(1), Duration.between(range[0], range[1]));
+        }
+    }
+
+    @Test
+    void emptyFeedHasNoCursor() {
+        PostService.NewsfeedSlice slice = postService.readNewsfeedPage(VIEWER_ID, null, null, false, Instant.now(), 20);
+        assertTrue(slice.posts().isEmpty());
+        assertFalse(slice.hasMore());
+        assertNull(slice.nextBeforeCreatedAt());
+    }
+
+    private List<Integer> readAllPages(Instant asOf, int pageSize) {
+        List<Integer> all = new ArrayList<>();
+        PostService.NewsfeedSlice slice = postService.readNewsfeedPage(VIEWER_ID, null, null, false, asOf, pageSize);
+        all.addAll(ids(slice.posts()));
+        while (slice.hasMore()) {
+            assertEquals(pageSize, slice.posts().size());
+            slice = postService.readNewsfeedPage(VIEWER_ID, slice.nextBeforeCreatedAt(), slice.nextBeforeId(),
+                    slice.nextBeforePremium(), asOf, pageSize);
+            all.addAll(ids(slice.posts()));
+        }
+        return all;
+    }
+
+    private List<Integer> expectedOrder(Instant asOf) {
+        Set<Integer> premiumUserIds = new HashSet<>();
+        premiumUntil.keySet().stream().filter(id -> isPremium(id, asOf)).forEach(premiumUserIds::add);
+        return ids(PostService.sortForNewsfeed(posts, premiumUserIds, PostService.NEWSFEED_ZONE));
+    }
+
+    private int premium(Post post, Instant asOf) {
+        return isPremium(post.getOwner().getId(), asOf) ? 1 : 0;
+    }
+
+    private boolean isPremium(Integer userId, Instant asOf) {
+        Instant until = premiumUntil.get(userId);
+        return until != null && until.isAfter(asOf);
+    }
+
+    private void addPost(int id, int ownerId, String createdAt) {
+        User owner = new User();
+        owner.setId(ownerId);
+        Post post = new Post();
+        post.setId(id);
+        post.setOwner(owner);
+        post.setCreatedAt(Instant.parse(createdAt));
+        post.setStatus(true);
+        posts.add(post);
+    }
+
+    private static List<Integer> ids(List<Post> posts) {
+        return posts.stream().map(Post::getId).toList();
+    }
+}